@@ -1,27 +1,70 @@
 package com.sg.guess_the_number.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameBatchCreationResult;
 import com.sg.guess_the_number.models.NumberGameCreationResult;
 import com.sg.guess_the_number.models.NumberGameGuess;
+import com.sg.guess_the_number.models.NumberGameGuessResult;
+import com.sg.guess_the_number.models.NumberGameHint;
+import com.sg.guess_the_number.models.NumberGameLookupResult;
+import com.sg.guess_the_number.models.NumberGameVariant;
 import com.sg.guess_the_number.models.game.NumberGameInstance;
 import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameRoundPage;
 import com.sg.guess_the_number.models.game.NumberGameInstanceView;
 import com.sg.guess_the_number.models.game.NumberGameInstanceViewFactory;
+import com.sg.guess_the_number.models.game.NumberGamePage;
+import com.sg.guess_the_number.models.game.NumberGameRecord;
+import com.sg.guess_the_number.service.GameFinishedException;
 import com.sg.guess_the_number.service.InvalidGuessException;
+import com.sg.guess_the_number.service.InvalidVariantException;
+import com.sg.guess_the_number.service.NumberGameEventHub;
 import com.sg.guess_the_number.service.NumberGameService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The main REST controller for the guess_the_number backend
  */
 @RestController
 public class NumberGuessController {
+    /**
+     * The number of games listed per page when no limit is given
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    /**
+     * The most games listed per page
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+    /**
+     * The most games created by a single batch
+     */
+    public static final int MAX_BATCH_SIZE = 10000;
+    /**
+     * The most guesses processed by a single batch
+     */
+    public static final int MAX_GUESS_BATCH_SIZE = 1000;
+    /**
+     * The media type of newline delimited JSON
+     */
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
 
     /**
      * The service used by the controller
@@ -29,13 +72,62 @@ public class NumberGuessController {
     @Autowired
     private NumberGameService service;
 
+    /**
+     * The hub game events are streamed from
+     */
+    @Autowired
+    private NumberGameEventHub events;
+
+    /**
+     * The object mapper exports are written with
+     */
+    @Autowired
+    private ObjectMapper mapper;
+
     /**
      * Starts a new game
+     * @param variant The rules of the game. If this is omitted, the game uses 4 distinct decimal digits
      * @return The ID of the created game
+     *
+     * - If the rules are not supported, HTTP 422 UNPROCESSABLE ENTITY is returned
+     * - If the game was created, HTTP 201 CREATED is returned
      */
     @PostMapping("begin")
-    public ResponseEntity<NumberGameCreationResult> startGame() {
-        return new ResponseEntity<>(new NumberGameCreationResult(service.createGame()), HttpStatus.CREATED);
+    public ResponseEntity<NumberGameCreationResult> startGame(@RequestBody(required = false) NumberGameVariant variant) {
+        int gameId;
+        try {
+            gameId = variant == null ? service.createGame() : service.createGame(variant);
+        }
+        catch(InvalidVariantException e) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        return new ResponseEntity<>(new NumberGameCreationResult(gameId), HttpStatus.CREATED);
+    }
+
+    /**
+     * Starts several new games with the same rules at once
+     * @param count The number of games to start, at most MAX_BATCH_SIZE
+     * @param variant The rules of the games. If this is omitted, the games use 4 distinct decimal digits
+     * @return The IDs of the created games
+     *
+     * - If the count is not between 1 and MAX_BATCH_SIZE, or the rules are not supported,
+     *   HTTP 422 UNPROCESSABLE ENTITY is returned
+     * - If the games were created, HTTP 201 CREATED is returned
+     */
+    @PostMapping("begin/batch")
+    public ResponseEntity<NumberGameBatchCreationResult> startGames(@RequestParam int count,
+                                                                    @RequestBody(required = false) NumberGameVariant variant) {
+        if(count <= 0 || count > MAX_BATCH_SIZE) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        int[] gameIds;
+        try {
+            gameIds = service.createGames(variant == null ? new NumberGameVariant() : variant, count);
+        }
+        catch(InvalidVariantException e) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        return new ResponseEntity<>(new NumberGameBatchCreationResult(gameIds), HttpStatus.CREATED);
     }
 
     /**
@@ -45,18 +137,18 @@ public class NumberGuessController {
      *
      * - If the guess was in an invalid format, HTTP 422 UNPROCESSABLE ENTITY is returned
      * - If the game id of the guess was invalid, HTTP 404 NOT FOUND is returned
+     * - If the game is already finished, HTTP 423 LOCKED is returned
      * - If the guess is valid, HTTP 200 OK is returned
      */
     @PostMapping("guess")
     public ResponseEntity<NumberGameRound> guessNumber(@RequestBody NumberGameGuess guess) {
         NumberGameRound round;
         try {
-            NumberGameInstance instance = service.getGameById(guess.getGameId());
-            if(instance.getStatus() == ENumberGameStatus.FINISHED) {
-                return new ResponseEntity<>(null, HttpStatus.LOCKED);
-            }
             round = service.guessForGame(guess.getGameId(), guess.getGuess());
         }
+        catch(GameFinishedException e) {
+            return new ResponseEntity<>(null, HttpStatus.LOCKED);
+        }
         catch(InvalidGuessException e) {
             return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
         }
@@ -67,20 +159,165 @@ public class NumberGuessController {
     }
 
     /**
-     * Gets all games currently stored
-     * @return A list of all currently stored games
+     * Processes several guesses at once, for any number of games
+     * @param guesses The guesses, where guesses for the same game are processed in order
+     * @return The result of every guess, in the order the guesses were given. Each result
+     * carries the HTTP status POST /guess would have responded to the guess with:
+     * 422 for an invalid guess, 404 for an unknown game, 423 for a finished game, or 200
+     * along with the round created from the guess.
+     *
+     * - If there are no guesses or more than MAX_GUESS_BATCH_SIZE, HTTP 422 UNPROCESSABLE ENTITY is returned
+     * - Otherwise, HTTP 200 OK is returned
+     */
+    @PostMapping("guess/batch")
+    public ResponseEntity<List<NumberGameGuessResult>> guessNumbers(@RequestBody List<NumberGameGuess> guesses) {
+        if(guesses.isEmpty() || guesses.size() > MAX_GUESS_BATCH_SIZE) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        return ResponseEntity.ok(service.guessForGames(guesses));
+    }
+
+    /**
+     * Gets a page of the games currently stored, in ascending order of their ID
+     * @param afterId Only games with a greater ID than this are listed
+     * @param limit The most games to list, at most MAX_PAGE_SIZE
+     * @param status Only games with this status are listed, if given
+     * @return The page of games, along with the ID to continue the listing after if there may be more.
+     *
+     * - If the limit is not positive, HTTP 422 UNPROCESSABLE ENTITY is returned
+     * - Otherwise, HTTP 200 OK is returned
      */
     @GetMapping("game")
-    public List<NumberGameInstanceView> getGames() {
-        ArrayList<NumberGameInstanceView> views = new ArrayList<>();
-        service.getAllGames().forEach(i -> views.add(NumberGameInstanceViewFactory.createFromInstance(i)));
-        return views;
+    public ResponseEntity<NumberGamePage> getGames(@RequestParam(defaultValue = "0") int afterId,
+                                                   @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+                                                   @RequestParam(required = false) ENumberGameStatus status) {
+        if(limit <= 0) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        List<NumberGameInstance> games = service.getGames(afterId, Math.min(limit, MAX_PAGE_SIZE), status);
+        ArrayList<NumberGameInstanceView> views = new ArrayList<>(games.size());
+        games.forEach(i -> views.add(NumberGameInstanceViewFactory.createFromInstance(i)));
+        // A short page is the last one, so only full pages carry a cursor
+        Integer nextAfterId = games.size() == Math.min(limit, MAX_PAGE_SIZE) ?
+                games.get(games.size() - 1).getGameId() : null;
+        return ResponseEntity.ok(new NumberGamePage(views, nextAfterId));
+    }
+
+    /**
+     * Gets game information for several games at once
+     * @param ids The IDs of the games to get information for, at most MAX_PAGE_SIZE distinct IDs
+     * @return The information about every game that was found, by its ID in the order requested,
+     * along with the IDs of the games that could not be found
+     *
+     * - If there are more than MAX_PAGE_SIZE distinct IDs, HTTP 422 UNPROCESSABLE ENTITY is returned
+     * - Otherwise, HTTP 200 OK is returned, even if some of the games could not be found
+     */
+    @GetMapping(value = "game", params = "ids")
+    public ResponseEntity<NumberGameLookupResult<NumberGameInstanceView>> getGamesByIds(@RequestParam List<Integer> ids) {
+        Set<Integer> requested = new LinkedHashSet<>(ids);
+        if(requested.size() > MAX_PAGE_SIZE) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        Map<Integer, NumberGameInstance> games = service.getGamesByIds(requested);
+        Map<Integer, NumberGameInstanceView> views = new LinkedHashMap<>();
+        List<Integer> missingIds = new ArrayList<>();
+        for(int gameId : requested) {
+            NumberGameInstance instance = games.get(gameId);
+            if(instance == null) {
+                missingIds.add(gameId);
+            }
+            else {
+                views.put(gameId, NumberGameInstanceViewFactory.createFromInstance(instance));
+            }
+        }
+        return ResponseEntity.ok(new NumberGameLookupResult<>(views, missingIds));
+    }
+
+    /**
+     * Gets the rounds played for several games at once
+     * @param gameIds The IDs of the games to get rounds for, at most MAX_PAGE_SIZE distinct IDs
+     * @return The rounds of every game that was found, by its ID in the order requested,
+     * along with the IDs of the games that could not be found
+     *
+     * - If there are more than MAX_PAGE_SIZE distinct IDs, HTTP 422 UNPROCESSABLE ENTITY is returned
+     * - Otherwise, HTTP 200 OK is returned, even if some of the games could not be found
+     */
+    @GetMapping(value = "rounds", params = "gameIds")
+    public ResponseEntity<NumberGameLookupResult<List<NumberGameRound>>> getRoundsByIds(@RequestParam List<Integer> gameIds) {
+        Set<Integer> requested = new LinkedHashSet<>(gameIds);
+        if(requested.size() > MAX_PAGE_SIZE) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        Map<Integer, List<NumberGameRound>> rounds = service.getRoundsForGames(requested);
+        Map<Integer, List<NumberGameRound>> found = new LinkedHashMap<>();
+        List<Integer> missingIds = new ArrayList<>();
+        for(int gameId : requested) {
+            List<NumberGameRound> gameRounds = rounds.get(gameId);
+            if(gameRounds == null) {
+                missingIds.add(gameId);
+            }
+            else {
+                found.put(gameId, gameRounds);
+            }
+        }
+        return ResponseEntity.ok(new NumberGameLookupResult<>(found, missingIds));
+    }
+
+    /**
+     * Exports every game along with its rounds, in ascending order of the game IDs
+     *
+     * The export is written as the games are read, so neither the server nor the response
+     * ever holds more than one game at a time.
+     *
+     * @param format The format of the export: "json" for a single JSON array, or "ndjson"
+     * for one JSON object per line
+     * @return The streamed export, or HTTP 422 UNPROCESSABLE ENTITY if the format is not supported
+     */
+    @GetMapping("export")
+    public ResponseEntity<StreamingResponseBody> exportGames(@RequestParam(defaultValue = "json") String format) {
+        boolean ndjson = format.equals("ndjson");
+        if(!ndjson && !format.equals("json")) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        StreamingResponseBody body = (OutputStream out) -> {
+            try(JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                if(!ndjson) {
+                    generator.writeStartArray();
+                }
+                try {
+                    service.exportGames((game, rounds) -> {
+                        try {
+                            generator.writeObject(new NumberGameRecord(
+                                    NumberGameInstanceViewFactory.createFromInstance(game), rounds));
+                            if(ndjson) {
+                                generator.writeRaw('\n');
+                            }
+                        }
+                        catch(IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+                catch(UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                if(!ndjson) {
+                    generator.writeEndArray();
+                }
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(ndjson ? NDJSON : MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
     /**
      * Gets game information for a specified game
      * @param gameId The ID of the game to get information for
-     * @return The information about the given game if it was found, or HTTP 404 NOT FOUND if it was not
+     * @return The information about the given game if it was found, or HTTP 404 NOT FOUND if it was not.
+     * In progress games include the number of answers still consistent with the rounds played
      */
     @GetMapping("game/{gameId}")
     public ResponseEntity<NumberGameInstanceView> getGameById(@PathVariable int gameId) {
@@ -88,7 +325,67 @@ public class NumberGuessController {
         if(instance == null) {
             return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
         }
-        return ResponseEntity.ok(NumberGameInstanceViewFactory.createFromInstance(instance));
+        return ResponseEntity.ok(NumberGameInstanceViewFactory.createFromInstance(instance,
+                service.getRemainingCandidates(instance)));
+    }
+
+    /**
+     * Streams the events of a given game as server-sent events
+     *
+     * A "round" event carries each round played, with its round number as the event ID, and a
+     * "status" event carries the FINISHED status once the game is finished, after which the
+     * stream ends. Reconnecting with the Last-Event-ID header resumes after that round, while
+     * a new stream is first sent every round already played.
+     *
+     * @param gameId The ID of the game to stream the events of
+     * @param lastEventId The number of the latest round already received, or 0 to receive every round
+     * @return The event stream
+     *
+     * - If the Last-Event-ID is negative, HTTP 422 UNPROCESSABLE ENTITY is returned
+     * - If the game could not be found, HTTP 404 NOT FOUND is returned
+     * - Otherwise, HTTP 200 OK is returned along with the stream
+     */
+    @GetMapping(value = "game/{gameId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamEvents(@PathVariable int gameId,
+                                                   @RequestHeader(value = "Last-Event-ID", defaultValue = "0") int lastEventId) {
+        if(lastEventId < 0) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        if(service.getGameById(gameId) == null) {
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        }
+        return ResponseEntity.ok(events.subscribe(gameId, lastEventId));
+    }
+
+    /**
+     * Suggests the best next guess for a given game
+     * @param gameId The ID of the game to suggest a guess for
+     * @return The suggested guess, along with the number of answers still possible
+     *
+     * - If the game could not be found, HTTP 404 NOT FOUND is returned
+     * - If the game is already finished, HTTP 423 LOCKED is returned
+     * - If the game's rules have too many possible answers to search, HTTP 422 UNPROCESSABLE ENTITY is returned
+     * - Otherwise, HTTP 200 OK is returned
+     */
+    @GetMapping("game/{gameId}/hint")
+    public ResponseEntity<NumberGameHint> getHint(@PathVariable int gameId) {
+        NumberGameInstance instance = service.getGameById(gameId);
+        if(instance == null) {
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        }
+        if(instance.getStatus() == ENumberGameStatus.FINISHED) {
+            return new ResponseEntity<>(null, HttpStatus.LOCKED);
+        }
+        try {
+            NumberGameHint hint = service.getHint(gameId);
+            if(hint == null) {
+                return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+            }
+            return ResponseEntity.ok(hint);
+        }
+        catch(InvalidVariantException e) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
     }
 
     /**
@@ -101,4 +398,34 @@ public class NumberGuessController {
         return service.getRoundsForGame(gameId);
     }
 
+    /**
+     * Gets the rounds played for a given game after a cursor, so clients polling a game only receive new rounds
+     * @param gameId The ID of the game to get rounds for
+     * @param after The number of the latest round already seen, or 0 to get every round
+     * @return The rounds played after the cursor, along with the cursor to pass next time
+     *
+     * - If the cursor is negative, HTTP 422 UNPROCESSABLE ENTITY is returned
+     * - If the game could not be found, HTTP 404 NOT FOUND is returned
+     * - If the cursor is past the game's latest round, HTTP 422 UNPROCESSABLE ENTITY is returned
+     * - Otherwise, HTTP 200 OK is returned
+     */
+    @GetMapping(value = "rounds/{gameId}", params = "after")
+    public ResponseEntity<NumberGameRoundPage> getRoundsAfter(@PathVariable int gameId, @RequestParam int after) {
+        if(after < 0) {
+            return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        // Fetches the round at the cursor too, to check it was played without another read
+        List<NumberGameRound> rounds = service.getRoundsForGameAfter(gameId, Math.max(0, after - 1));
+        if(rounds == null) {
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        }
+        if(after > 0) {
+            if(rounds.isEmpty()) {
+                return new ResponseEntity<>(null, HttpStatus.UNPROCESSABLE_ENTITY);
+            }
+            rounds = rounds.subList(1, rounds.size());
+        }
+        return ResponseEntity.ok(new NumberGameRoundPage(rounds, after + rounds.size()));
+    }
+
 }
@@ -0,0 +1,149 @@
+package com.sg.guess_the_number.data;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A NumberGameIdAllocator leasing blocks of IDs from a row of the id_sequence table
+ *
+ * Each lease raises the row's nextValue by the block size in a single auto-committed
+ * statement, so any number of allocators, in any number of processes, can share the
+ * row without handing out the same ID twice. IDs are then handed out from the leased
+ * block in memory without locking, and only the thread that finds the block used up
+ * waits for the next lease. IDs left in a block when its allocator is discarded are
+ * never handed out, so IDs have gaps after restarts.
+ */
+public class NumberGameBlockIdAllocator implements NumberGameIdAllocator {
+    /**
+     * The default number of IDs leased at a time
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+
+    private static final String LEASE = "UPDATE id_sequence SET nextValue = LAST_INSERT_ID(nextValue + ?) WHERE name = ?;";
+    private static final String ADVANCE = "UPDATE id_sequence SET nextValue = GREATEST(nextValue, ?) WHERE name = ?;";
+
+    private final JdbcTemplate template;
+    /**
+     * The name of the id_sequence row the IDs are leased from
+     */
+    private final String sequence;
+    private final int blockSize;
+    /**
+     * The block IDs are being handed out from
+     */
+    private final AtomicReference<Block> block = new AtomicReference<>(new Block(0, 0));
+    /**
+     * Held while leasing a block
+     */
+    private final Object leaseLock = new Object();
+
+    /**
+     * Constructs a NumberGameBlockIdAllocator, which leases its first block when its first ID is handed out
+     * @param template The template used to lease blocks
+     * @param sequence The name of the id_sequence row the IDs are leased from
+     * @param blockSize The number of IDs leased at a time
+     */
+    public NumberGameBlockIdAllocator(JdbcTemplate template, String sequence, int blockSize) {
+        if(blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be at least 1");
+        }
+        this.template = template;
+        this.sequence = sequence;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Hands out an ID no game has been given yet, leasing a block first if the current one is used up
+     * @return The ID
+     */
+    @Override
+    public int nextId() {
+        while(true) {
+            Block current = block.get();
+            int id = current.next.getAndIncrement();
+            if(id < current.end) {
+                return id;
+            }
+            synchronized(leaseLock) {
+                if(block.get() == current) {
+                    block.set(lease());
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the next ID of the current block, or the start of the next block if the current one is used up
+     * @return The least ID that could be handed out next
+     */
+    @Override
+    public int peekNextId() {
+        Block current = block.get();
+        return Math.min(current.next.get(), current.end);
+    }
+
+    /**
+     * Makes sure IDs handed out afterwards are at least a given ID, dropping the current block if it is below it
+     * @param id The least ID to hand out afterwards
+     */
+    @Override
+    public void advance(int id) {
+        synchronized(leaseLock) {
+            template.update(ADVANCE, id, sequence);
+            Block current = block.get();
+            if(current.next.get() < id) {
+                block.set(new Block(current.end, current.end));
+            }
+        }
+    }
+
+    /**
+     * Leases the next block of IDs. Called with leaseLock held
+     */
+    private Block lease() {
+        long end = template.execute((ConnectionCallback<Long>) conn -> {
+            // LAST_INSERT_ID is per connection, so it is read back on the connection that set it
+            try(PreparedStatement update = conn.prepareStatement(LEASE)) {
+                update.setInt(1, blockSize);
+                update.setString(2, sequence);
+                if(update.executeUpdate() == 0) {
+                    throw new IllegalStateException("There is no id_sequence row named " + sequence);
+                }
+            }
+            try(Statement select = conn.createStatement();
+                ResultSet resultSet = select.executeQuery("SELECT LAST_INSERT_ID();")) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        });
+        if(end > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The " + sequence + " sequence has run out of IDs");
+        }
+        return new Block((int)end - blockSize, (int)end);
+    }
+
+    /**
+     * A leased range of IDs
+     */
+    private static final class Block {
+        /**
+         * The ID handed out next, which is past the end once the block is used up
+         */
+        private final AtomicInteger next;
+        /**
+         * The ID after the last one in the block
+         */
+        private final int end;
+
+        private Block(int start, int end) {
+            this.next = new AtomicInteger(start);
+            this.end = end;
+        }
+    }
+}
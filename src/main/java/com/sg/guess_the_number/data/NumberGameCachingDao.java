@@ -0,0 +1,439 @@
+package com.sg.guess_the_number.data;
+
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.models.game.NumberGameInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Repository;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * A read-through cache in front of another NumberGameDao
+ *
+ * Games are cached by ID, along with the rounds of finished games, whose rounds can no
+ * longer change through guesses. Rounds of games in progress are always read from the
+ * underlying DAO. Writes go to the underlying DAO first, then update or invalidate the
+ * entries of their game. Both caches evict their least recently used entries once they
+ * hold guess_the_number.cache.max-games games. The cache assumes every write goes
+ * through it, so it shouldn't be used when other nodes share the database.
+ *
+ * In the database profile, setting guess_the_number.cache.enabled to true puts the cache
+ * in front of NumberGameDbDao. It is off by default, since a node can't tell whether
+ * others share its database. Its hit and miss counts are exported over JMX.
+ */
+@Repository
+@Primary
+@Profile("database")
+@ConditionalOnProperty(name = "guess_the_number.cache.enabled", havingValue = "true")
+@ManagedResource(objectName = "guess_the_number:type=NumberGameCache")
+public class NumberGameCachingDao implements NumberGameDao {
+    /**
+     * The default number of games each cache holds at most
+     */
+    public static final int DEFAULT_MAX_GAMES = 10000;
+
+    /**
+     * The DAO the cache reads through to
+     */
+    private final NumberGameDao delegate;
+    /**
+     * The cached games, which are never handed out, only copies of them
+     */
+    private final NumberGameLruCache<NumberGameInstance> games;
+    /**
+     * The cached, read-only rounds of finished games
+     */
+    private final NumberGameLruCache<List<NumberGameRound>> rounds;
+
+    /**
+     * Constructs a NumberGameCachingDao
+     * @param delegate The DAO the cache reads through to
+     * @param maxGames The number of games each cache holds at most
+     */
+    @Autowired
+    public NumberGameCachingDao(@Qualifier("numberGameDbDao") NumberGameDao delegate,
+                                @Value("${guess_the_number.cache.max-games:" + DEFAULT_MAX_GAMES + "}") int maxGames) {
+        this.delegate = delegate;
+        this.games = new NumberGameLruCache<>(maxGames);
+        this.rounds = new NumberGameLruCache<>(maxGames);
+    }
+
+    /**
+     * Retrieves all games stored by the DAO, always from the underlying DAO
+     *
+     * @return ALl games stored by the DAO
+     */
+    @Override
+    public List<NumberGameInstance> getAllGames() {
+        return delegate.getAllGames();
+    }
+
+    /**
+     * Retrieves a page of games in ascending order of their ID, always from the underlying DAO
+     *
+     * @param afterId Only games with a greater ID than this are retrieved
+     * @param limit The most games to retrieve
+     * @param status Only games with this status are retrieved, or games of any status if it is null
+     * @return The retrieved games
+     */
+    @Override
+    public List<NumberGameInstance> getGames(int afterId, int limit, ENumberGameStatus status) {
+        return delegate.getGames(afterId, limit, status);
+    }
+
+    /**
+     * Streams every game along with its rounds, always from the underlying DAO
+     *
+     * @param handler Receives every game along with its rounds in the order they were played.
+     * The list of rounds is only valid until the handler returns
+     */
+    @Override
+    public void exportGames(BiConsumer<NumberGameInstance, List<NumberGameRound>> handler) {
+        delegate.exportGames(handler);
+    }
+
+    /**
+     * Retrieves a game associated with a given id
+     *
+     * @param id The ID of the game to retrieve
+     * @return The retrieved game
+     * @throws GameNotFoundException thrown when the gameId could not be associated with a stored game
+     */
+    @Override
+    public NumberGameInstance getGameById(int id) throws GameNotFoundException {
+        NumberGameInstance game = games.get(id);
+        if(game == null) {
+            long stamp = games.stamp(id);
+            game = delegate.getGameById(id);
+            games.putIfCurrent(id, copyOf(game), stamp);
+            return game;
+        }
+        return copyOf(game);
+    }
+
+    /**
+     * Gets the rounds played for a given game
+     *
+     * The rounds are cached if the game was cached as finished before they were read.
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @return A read-only list of rounds played for the given game
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRounds(int gameId) throws GameNotFoundException {
+        List<NumberGameRound> found = rounds.get(gameId);
+        if(found == null) {
+            long stamp = rounds.stamp(gameId);
+            NumberGameInstance game = games.peek(gameId);
+            found = Collections.unmodifiableList(new ArrayList<>(delegate.getGameRounds(gameId)));
+            if(game != null && game.getStatus() == ENumberGameStatus.FINISHED) {
+                rounds.putIfCurrent(gameId, found, stamp);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the rounds played for a given game after a given round
+     *
+     * Rounds cached for the game are sliced, while other games only read the new rounds through.
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @param afterRound The number of the latest round already seen, or 0 to retrieve every round
+     * @return A read-only list of the rounds played after the given round, in the order they were played
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRoundsAfter(int gameId, int afterRound) throws GameNotFoundException {
+        List<NumberGameRound> found = rounds.get(gameId);
+        if(found == null) {
+            return Collections.unmodifiableList(new ArrayList<>(delegate.getGameRoundsAfter(gameId, afterRound)));
+        }
+        return found.subList(Math.max(0, Math.min(afterRound, found.size())), found.size());
+    }
+
+    /**
+     * Retrieves several games by their IDs, reading the ones that aren't cached through in one bulk read
+     *
+     * @param ids The IDs of the games to retrieve
+     * @return The games that were found, by their ID. Games that could not be found are left out
+     */
+    @Override
+    public Map<Integer, NumberGameInstance> getGamesByIds(Collection<Integer> ids) {
+        Map<Integer, NumberGameInstance> found = new HashMap<>();
+        Map<Integer, Long> stamps = new HashMap<>();
+        for(int id : ids) {
+            NumberGameInstance game = games.get(id);
+            if(game == null) {
+                stamps.put(id, games.stamp(id));
+            }
+            else {
+                found.put(id, copyOf(game));
+            }
+        }
+        if(!stamps.isEmpty()) {
+            delegate.getGamesByIds(stamps.keySet()).forEach((id, game) -> {
+                games.putIfCurrent(id, copyOf(game), stamps.get(id));
+                found.put(id, game);
+            });
+        }
+        return found;
+    }
+
+    /**
+     * Gets the rounds played for several games, reading the ones that aren't cached through in one bulk read
+     *
+     * Like getGameRounds, the rounds are cached for games that were cached as finished before they were read.
+     *
+     * @param gameIds The IDs of the games to retrieve rounds for
+     * @return The read-only rounds of every game that was found, by the game's ID. Games that
+     * could not be found are left out
+     */
+    @Override
+    public Map<Integer, List<NumberGameRound>> getRoundsByGameIds(Collection<Integer> gameIds) {
+        Map<Integer, List<NumberGameRound>> found = new HashMap<>();
+        Map<Integer, Long> stamps = new HashMap<>();
+        Map<Integer, NumberGameInstance> cachedGames = new HashMap<>();
+        for(int gameId : gameIds) {
+            List<NumberGameRound> cached = rounds.get(gameId);
+            if(cached == null) {
+                stamps.put(gameId, rounds.stamp(gameId));
+                cachedGames.put(gameId, games.peek(gameId));
+            }
+            else {
+                found.put(gameId, cached);
+            }
+        }
+        if(!stamps.isEmpty()) {
+            delegate.getRoundsByGameIds(stamps.keySet()).forEach((gameId, gameRounds) -> {
+                List<NumberGameRound> readOnly = Collections.unmodifiableList(new ArrayList<>(gameRounds));
+                NumberGameInstance game = cachedGames.get(gameId);
+                if(game != null && game.getStatus() == ENumberGameStatus.FINISHED) {
+                    rounds.putIfCurrent(gameId, readOnly, stamps.get(gameId));
+                }
+                found.put(gameId, readOnly);
+            });
+        }
+        return found;
+    }
+
+    /**
+     * Creates a new game, caching it right away
+     *
+     * @param answer The answer to the game
+     * @param variant The rules of the game
+     * @param status The status to create the game with
+     * @return The ID of the created game
+     */
+    @Override
+    public int createGame(String answer, NumberGameVariant variant, ENumberGameStatus status) {
+        int gameId = delegate.createGame(answer, variant, status);
+        NumberGameInstance game = new NumberGameInstance();
+        game.setGameId(gameId);
+        game.setAnswer(answer);
+        game.setVariant(variant);
+        game.setStatus(status);
+        games.put(gameId, game);
+        return gameId;
+    }
+
+    /**
+     * Creates several games with the same rules in one bulk write, without caching them
+     *
+     * A large batch would evict every game that is actually being read, so the created
+     * games are only cached once they are read.
+     *
+     * @param answers The answers to the games
+     * @param variant The rules of every game
+     * @param status The status to create every game with
+     * @return The IDs of the created games, in the order of their answers
+     */
+    @Override
+    public int[] createGames(List<String> answers, NumberGameVariant variant, ENumberGameStatus status) {
+        return delegate.createGames(answers, variant, status);
+    }
+
+    /**
+     * Adds a round to the specified game
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public void addRound(int gameId, NumberGameRound round) throws GameNotFoundException {
+        try {
+            delegate.addRound(gameId, round);
+        }
+        finally {
+            rounds.invalidate(gameId);
+        }
+    }
+
+    /**
+     * Records a guess for a game as a single atomic step
+     *
+     * A guess that didn't change the game's status leaves its cached game alone, since only
+     * rounds of games in progress are added, and those rounds are never cached.
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @param solved Whether the guess of the round solved the game
+     * @return Whether the round was added, or false if the game was no longer in progress
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public boolean applyGuess(int gameId, NumberGameRound round, boolean solved) throws GameNotFoundException {
+        boolean applied = false;
+        try {
+            applied = delegate.applyGuess(gameId, round, solved);
+            return applied;
+        }
+        finally {
+            // A rejected guess means the cached game is stale, and a solving one finished it
+            if(!applied || solved) {
+                invalidate(gameId);
+            }
+        }
+    }
+
+    /**
+     * Records the guesses of several games in the underlying DAO's single write
+     *
+     * Like applyGuess, games whose rounds weren't all added or that were solved are invalidated.
+     *
+     * @param rounds The rounds to add, by the ID of their game
+     * @param solved The IDs of the games whose last round solves them
+     * @return The number of leading rounds added for every game
+     */
+    @Override
+    public Map<Integer, Integer> applyGuesses(Map<Integer, List<NumberGameRound>> rounds, Set<Integer> solved) {
+        Map<Integer, Integer> added = null;
+        try {
+            added = delegate.applyGuesses(rounds, solved);
+            return added;
+        }
+        finally {
+            for(Map.Entry<Integer, List<NumberGameRound>> entry : rounds.entrySet()) {
+                Integer count = added == null ? null : added.get(entry.getKey());
+                if(count == null || count < entry.getValue().size() || solved.contains(entry.getKey())) {
+                    invalidate(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Updates the status for a given game
+     *
+     * @param gameId The ID of the game to update
+     * @param status The new status of the game
+     * @throws GameNotFoundException thrown when the given game id could not be associated with a stored game
+     */
+    @Override
+    public void updateStatus(int gameId, ENumberGameStatus status) throws GameNotFoundException {
+        try {
+            delegate.updateStatus(gameId, status);
+        }
+        finally {
+            invalidate(gameId);
+        }
+    }
+
+    /**
+     * Removes a game from the dao's underlying storage
+     *
+     * @param gameId The ID of the game to remove
+     */
+    @Override
+    public void removeGame(int gameId) throws GameNotFoundException {
+        try {
+            delegate.removeGame(gameId);
+        }
+        finally {
+            invalidate(gameId);
+        }
+    }
+
+    /**
+     * Retrieves the number of game lookups served from the cache
+     * @return The number of game cache hits
+     */
+    @ManagedAttribute(description = "Game lookups served from the cache")
+    public long getGameHits() {
+        return games.getHits();
+    }
+
+    /**
+     * Retrieves the number of game lookups read through to the underlying DAO
+     * @return The number of game cache misses
+     */
+    @ManagedAttribute(description = "Game lookups read through to the underlying DAO")
+    public long getGameMisses() {
+        return games.getMisses();
+    }
+
+    /**
+     * Retrieves the number of round lookups served from the cache
+     * @return The number of round cache hits
+     */
+    @ManagedAttribute(description = "Round lookups served from the cache")
+    public long getRoundHits() {
+        return rounds.getHits();
+    }
+
+    /**
+     * Retrieves the number of round lookups read through to the underlying DAO
+     * @return The number of round cache misses
+     */
+    @ManagedAttribute(description = "Round lookups read through to the underlying DAO")
+    public long getRoundMisses() {
+        return rounds.getMisses();
+    }
+
+    /**
+     * Retrieves the number of cached games
+     * @return The number of cached games
+     */
+    @ManagedAttribute(description = "Cached games")
+    public int getCachedGames() {
+        return games.size();
+    }
+
+    /**
+     * Retrieves the number of finished games with cached rounds
+     * @return The number of cached round lists
+     */
+    @ManagedAttribute(description = "Finished games with cached rounds")
+    public int getCachedRounds() {
+        return rounds.size();
+    }
+
+    private void invalidate(int gameId) {
+        games.invalidate(gameId);
+        rounds.invalidate(gameId);
+    }
+
+    /**
+     * Copies a game, so cached games are never changed by callers
+     */
+    private static NumberGameInstance copyOf(NumberGameInstance game) {
+        NumberGameInstance copy = new NumberGameInstance();
+        copy.setGameId(game.getGameId());
+        copy.setAnswer(game.getAnswer());
+        copy.setStatus(game.getStatus());
+        copy.setVariant(game.getVariant());
+        return copy;
+    }
+}
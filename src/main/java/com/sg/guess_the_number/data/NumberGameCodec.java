@@ -0,0 +1,59 @@
+package com.sg.guess_the_number.data;
+
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.service.NumberGameScorer;
+
+/**
+ * A utility class for the compact storage encoding of answers, guesses and round results
+ *
+ * Answers and guesses are stored as a single BIGINT, reading their symbols as the digits
+ * of a number in base alphabetSize. This is the same value MySQL's CONV(symbols,
+ * alphabetSize, 10) computes, so rows can be encoded by SQL or by this class alike.
+ * Leading zero symbols are restored when decoding from the length of the variant.
+ * Round results are stored as their exact and partial match counts.
+ */
+public final class NumberGameCodec {
+    private NumberGameCodec() {
+
+    }
+
+    /**
+     * Encodes a string of symbols
+     * @param symbols The symbols to encode, which must all be below alphabetSize
+     * @param alphabetSize The alphabet size of the game the symbols are for
+     * @return The code of the symbols
+     */
+    public static long encode(CharSequence symbols, int alphabetSize) {
+        long code = 0;
+        for(int i = 0; i < symbols.length(); i ++) {
+            code = code * alphabetSize + NumberGameVariant.symbolOf(symbols.charAt(i));
+        }
+        return code;
+    }
+
+    /**
+     * Decodes a string of symbols
+     * @param code The code of the symbols
+     * @param alphabetSize The alphabet size of the game the symbols are for
+     * @param length The number of symbols that were encoded
+     * @return The lower case symbols
+     */
+    public static String decode(long code, int alphabetSize, int length) {
+        char[] symbols = new char[length];
+        for(int i = length - 1; i >= 0; i --) {
+            symbols[i] = NumberGameVariant.symbolFor((int)(code % alphabetSize));
+            code /= alphabetSize;
+        }
+        return new String(symbols);
+    }
+
+    /**
+     * Retrieves the result string stored as a pair of match counts
+     * @param exact The number of full matches
+     * @param partial The number of partial matches
+     * @return The result string of the counts, in the format "e:EXACT:p:PARTIAL"
+     */
+    public static String decodeResult(int exact, int partial) {
+        return NumberGameScorer.resultString(NumberGameScorer.resultCode(exact, partial));
+    }
+}
@@ -0,0 +1,55 @@
+package com.sg.guess_the_number.data;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A NumberGameIdAllocator counting up from 1 in memory, which never skips an ID
+ */
+public class NumberGameCountingIdAllocator implements NumberGameIdAllocator {
+    /**
+     * The ID handed out next
+     */
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    /**
+     * Hands out an ID no game has been given yet
+     * @return The ID
+     */
+    @Override
+    public int nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * Hands out several consecutive IDs no game has been given yet
+     * @param count The number of IDs to hand out
+     * @return The IDs, in increasing order
+     */
+    @Override
+    public int[] nextIds(int count) {
+        int first = nextId.getAndAdd(count);
+        int[] ids = new int[count];
+        for(int i = 0; i < count; i ++) {
+            ids[i] = first + i;
+        }
+        return ids;
+    }
+
+    /**
+     * Retrieves the ID the allocator hands out next, unless another thread takes it first
+     * @return The ID handed out next
+     */
+    @Override
+    public int peekNextId() {
+        return nextId.get();
+    }
+
+    /**
+     * Makes sure IDs handed out afterwards are at least a given ID
+     * @param id The least ID to hand out afterwards
+     */
+    @Override
+    public void advance(int id) {
+        nextId.accumulateAndGet(id, Math::max);
+    }
+}
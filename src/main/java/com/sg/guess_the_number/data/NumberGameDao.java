@@ -1,10 +1,16 @@
 package com.sg.guess_the_number.data;
 
 import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameVariant;
 import com.sg.guess_the_number.models.game.NumberGameInstance;
 import com.sg.guess_the_number.models.NumberGameRound;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 /**
  * An abstraction for game and round storage for guess the number games
@@ -16,6 +22,23 @@ public interface NumberGameDao {
      */
     List<NumberGameInstance> getAllGames();
 
+    /**
+     * Retrieves a page of games in ascending order of their ID
+     * @param afterId Only games with a greater ID than this are retrieved
+     * @param limit The most games to retrieve
+     * @param status Only games with this status are retrieved, or games of any status if it is null
+     * @return The retrieved games
+     */
+    List<NumberGameInstance> getGames(int afterId, int limit, ENumberGameStatus status);
+
+    /**
+     * Streams every game along with its rounds, in ascending order of the game IDs,
+     * without loading every game into memory at once
+     * @param handler Receives every game along with its rounds in the order they were played.
+     * The list of rounds is only valid until the handler returns
+     */
+    void exportGames(BiConsumer<NumberGameInstance, List<NumberGameRound>> handler);
+
     /**
      * Retrieves a game associated with a given id
      * @param id The ID of the game to retrieve
@@ -32,13 +55,89 @@ public interface NumberGameDao {
      */
     List<NumberGameRound> getGameRounds(int gameId) throws GameNotFoundException;
 
+    /**
+     * Gets the rounds played for a given game after a given round. Rounds are numbered
+     * from 1 in the order they were played
+     * @param gameId The ID of the game to retrieve rounds for
+     * @param afterRound The number of the latest round already seen, or 0 to retrieve every round
+     * @return A list of the rounds played after the given round, in the order they were played
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    default List<NumberGameRound> getGameRoundsAfter(int gameId, int afterRound) throws GameNotFoundException {
+        List<NumberGameRound> rounds = getGameRounds(gameId);
+        return rounds.subList(Math.max(0, Math.min(afterRound, rounds.size())), rounds.size());
+    }
+
+    /**
+     * Retrieves several games by their IDs
+     * @param ids The IDs of the games to retrieve
+     * @return The games that were found, by their ID. Games that could not be found are left out
+     */
+    default Map<Integer, NumberGameInstance> getGamesByIds(Collection<Integer> ids) {
+        Map<Integer, NumberGameInstance> games = new HashMap<>();
+        for(int id : ids) {
+            try {
+                games.put(id, getGameById(id));
+            }
+            catch(GameNotFoundException e) {
+                // Left out of the result
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Gets the rounds played for several games
+     * @param gameIds The IDs of the games to retrieve rounds for
+     * @return The rounds of every game that was found, by the game's ID, in the order they were
+     * played. Games that could not be found are left out
+     */
+    default Map<Integer, List<NumberGameRound>> getRoundsByGameIds(Collection<Integer> gameIds) {
+        Map<Integer, List<NumberGameRound>> rounds = new HashMap<>();
+        for(int gameId : gameIds) {
+            try {
+                rounds.put(gameId, getGameRounds(gameId));
+            }
+            catch(GameNotFoundException e) {
+                // Left out of the result
+            }
+        }
+        return rounds;
+    }
+
+    /**
+     * Creates a new game, with the variant that best describes its answer
+     * @param answer The answer to the game
+     * @param status The status to create the game with
+     * @return The ID of the created game
+     */
+    default int createGame(String answer, ENumberGameStatus status) {
+        return createGame(answer, NumberGameVariant.forAnswer(answer), status);
+    }
+
     /**
      * Creates a new game
      * @param answer The answer to the game
+     * @param variant The rules of the game
      * @param status The status to create the game with
      * @return The ID of the created game
      */
-    int createGame(String answer, ENumberGameStatus status);
+    int createGame(String answer, NumberGameVariant variant, ENumberGameStatus status);
+
+    /**
+     * Creates several games with the same rules
+     * @param answers The answers to the games
+     * @param variant The rules of every game
+     * @param status The status to create every game with
+     * @return The IDs of the created games, in the order of their answers
+     */
+    default int[] createGames(List<String> answers, NumberGameVariant variant, ENumberGameStatus status) {
+        int[] gameIds = new int[answers.size()];
+        for(int i = 0; i < gameIds.length; i ++) {
+            gameIds[i] = createGame(answers.get(i), variant, status);
+        }
+        return gameIds;
+    }
 
     /**
      * Adds a round to the specified game
@@ -48,6 +147,48 @@ public interface NumberGameDao {
      */
     void addRound(int gameId, NumberGameRound round) throws GameNotFoundException;
 
+    /**
+     * Records a guess for a game as a single atomic step. The round is only added while the
+     * game is still in progress, and the game is finished along with it if the guess solved it.
+     * Implementations that write rounds behind may acknowledge a round that isn't written yet,
+     * which is dropped if the game is finished elsewhere before it is written
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @param solved Whether the guess of the round solved the game
+     * @return Whether the round was added, or false if the game was no longer in progress
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    boolean applyGuess(int gameId, NumberGameRound round, boolean solved) throws GameNotFoundException;
+
+    /**
+     * Records the guesses of several games. Each game's rounds are added in order while the
+     * game is still in progress, and a game whose guesses solved it is finished by its last round
+     * @param rounds The rounds to add, by the ID of their game
+     * @param solved The IDs of the games whose last round solves them
+     * @return The number of leading rounds added for every game. Games that could not be found,
+     * or were no longer in progress, have no rounds added
+     */
+    default Map<Integer, Integer> applyGuesses(Map<Integer, List<NumberGameRound>> rounds, Set<Integer> solved) {
+        Map<Integer, Integer> added = new HashMap<>();
+        rounds.forEach((gameId, gameRounds) -> {
+            int count = 0;
+            try {
+                for(int i = 0; i < gameRounds.size(); i ++) {
+                    boolean solving = i == gameRounds.size() - 1 && solved.contains(gameId);
+                    if(!applyGuess(gameId, gameRounds.get(i), solving)) {
+                        break;
+                    }
+                    count ++;
+                }
+            }
+            catch(GameNotFoundException e) {
+                // Counted as no rounds added
+            }
+            added.put(gameId, count);
+        });
+        return added;
+    }
+
     /**
      * Updates the status for a given game
      * @param gameId The ID of the game to update
@@ -2,36 +2,183 @@ package com.sg.guess_the_number.data;
 
 import com.sg.guess_the_number.models.ENumberGameStatus;
 import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
 import com.sg.guess_the_number.models.game.NumberGameInstance;
+import com.sg.guess_the_number.service.NumberGameScorer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.context.annotation.Profile;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 import org.springframework.jdbc.core.RowMapper;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PreDestroy;
 import java.sql.*;
-import java.util.List;
+import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * The database backed implementation of NumberGameDao
+ *
+ * The schema is kept up to date by NumberGameSchemaMigrator. Statuses are stored as their
+ * ordinal plus one, which is also their progressId, and mapped back in memory, so game
+ * queries never join the progress table. Game IDs are leased from the id_sequence table
+ * in blocks of guess_the_number.ids.block-size by a NumberGameBlockIdAllocator, and
+ * handed out from memory.
+ *
+ * Every operation takes as few statements as it can, since each one is a round trip
+ * to the database: guesses are recorded by applyGuess in one transaction of at most
+ * two statements, and reading the rounds of a game checks that it exists in the same
+ * query that fetches them.
+ *
+ * Setting guess_the_number.rounds.batch-size above 1 turns on write-behind for guesses
+ * that don't solve their game: their rounds are queued and inserted in JDBC batches of
+ * that size, or after guess_the_number.rounds.flush-millis at the latest. Any other
+ * operation on a game with queued rounds flushes them first, so a game's own reads
+ * always see its rounds, and the queue is drained on shutdown. A batch that fails to
+ * insert stays queued and is retried later, without failing the guess that triggered
+ * it, since its round is still written. Queued rounds are only
+ * inserted if their game is still in progress when they are written. A DAO flushes a
+ * game's queued rounds before finishing it, so this only drops rounds when the game is
+ * finished by another DAO sharing the database, such as another node. Those guesses were
+ * already acknowledged by applyGuess, so write-behind should only be turned on where
+ * games are finished by a single node.
+ *
+ * Exports stream the game and rounds tables through a single forward-only result set,
+ * fetching guess_the_number.export.fetch-size rows at a time. The default of
+ * Integer.MIN_VALUE makes MySQL's driver stream rows one by one instead of reading the
+ * whole result into memory.
  */
 @Repository
-@Profile("database")
+@Profile({"database", "tiered"})
+@DependsOn("numberGameSchemaMigrator")
 public class NumberGameDbDao implements NumberGameDao {
     /**
      * The JDBC template used by the DAO
      */
     private final JdbcTemplate template;
+    /**
+     * Runs the statements that have to be applied together in a single transaction
+     */
+    private final TransactionTemplate transactions;
+    /**
+     * Queues the rounds of non-solving guesses in write-behind mode, or null if rounds are written directly
+     */
+    private final NumberGameRoundWriter roundWriter;
+    /**
+     * The fetch size of the result set exports are read from
+     */
+    private final int exportFetchSize;
+    /**
+     * Hands out the IDs new games are inserted with
+     */
+    private final NumberGameIdAllocator ids;
 
     /**
-     * Constructs the NumberGameDbDao with a specified template
+     * The default export fetch size, which makes MySQL's driver stream rows one by one
+     */
+    public static final int DEFAULT_EXPORT_FETCH_SIZE = Integer.MIN_VALUE;
+
+    /**
+     * The number of games inserted per JDBC batch by createGames
+     */
+    private static final int CREATE_BATCH_SIZE = 1000;
+
+    /**
+     * Inserts a round after the latest round of its game, encoding the guess with the game's
+     * alphabet. Takes the parameters bound by bindRound. The game's row must be locked by the
+     * surrounding transaction, or two concurrent inserts could number their rounds the same
+     */
+    private static final String ROUND_INSERT = "INSERT INTO rounds (gameId, roundNumber, guessCode, exact, partial, roundTime) " +
+            "SELECT game.gameId, " +
+            "(SELECT COALESCE(MAX(previous.roundNumber), 0) + 1 FROM rounds previous WHERE previous.gameId = game.gameId), " +
+            "CONV(?, game.alphabetSize, 10), ?, ?, ? FROM game " +
+            "WHERE game.gameId = ?";
+    /**
+     * Inserts a round like ROUND_INSERT, but only if its game is still in progress
+     */
+    private static final String GUARDED_ROUND_INSERT = ROUND_INSERT +
+            " AND game.progressId = " + (ENumberGameStatus.IN_PROGRESS.ordinal() + 1) + ";";
+    /**
+     * Locks a game's row until the end of the transaction, reading its status
+     */
+    private static final String GAME_LOCK = "SELECT game.progressId FROM game WHERE game.gameId = ? FOR UPDATE;";
+    /**
+     * The columns every game is read with
+     */
+    private static final String GAME_COLUMNS = "game.gameId, game.answerCode, game.answerLength, game.alphabetSize, " +
+            "game.allowDuplicates, game.progressId";
+    /**
+     * The columns every round is read with, along with the game's answerLength and alphabetSize
+     */
+    private static final String ROUND_COLUMNS = "rounds.roundNumber, rounds.guessCode, rounds.exact, rounds.partial, " +
+            "rounds.roundTime";
+
+    /**
+     * Constructs the NumberGameDbDao with a specified template, writing rounds directly
      * @param template The template used byt he NumberGameDbDao
      */
-    @Autowired
     public NumberGameDbDao(JdbcTemplate template) {
+        this(template, 1, 0, DEFAULT_EXPORT_FETCH_SIZE);
+    }
+
+    /**
+     * Constructs the NumberGameDbDao with a specified template, leasing game IDs in blocks of the default size
+     * @param template The template used by the NumberGameDbDao
+     * @param batchSize The number of rounds written per batch, or 1 to write every round directly
+     * @param flushMillis The longest time a round is queued before its batch is written
+     * @param exportFetchSize The fetch size of the result set exports are read from
+     */
+    public NumberGameDbDao(JdbcTemplate template, int batchSize, long flushMillis, int exportFetchSize) {
+        this(template, batchSize, flushMillis, exportFetchSize, NumberGameBlockIdAllocator.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructs the NumberGameDbDao with a specified template
+     * @param template The template used by the NumberGameDbDao
+     * @param batchSize The number of rounds written per batch, or 1 to write every round directly
+     * @param flushMillis The longest time a round is queued before its batch is written
+     * @param exportFetchSize The fetch size of the result set exports are read from
+     * @param idBlockSize The number of game IDs leased from the id_sequence table at a time
+     */
+    @Autowired
+    public NumberGameDbDao(JdbcTemplate template,
+                           @Value("${guess_the_number.rounds.batch-size:1}") int batchSize,
+                           @Value("${guess_the_number.rounds.flush-millis:20}") long flushMillis,
+                           @Value("${guess_the_number.export.fetch-size:" + DEFAULT_EXPORT_FETCH_SIZE + "}") int exportFetchSize,
+                           @Value("${guess_the_number.ids.block-size:" + NumberGameBlockIdAllocator.DEFAULT_BLOCK_SIZE + "}") int idBlockSize) {
         this.template = template;
+        this.exportFetchSize = exportFetchSize;
+        this.ids = new NumberGameBlockIdAllocator(template, "game", idBlockSize);
+        this.transactions = new TransactionTemplate(new DataSourceTransactionManager(template.getDataSource()));
+        this.roundWriter = batchSize > 1 ?
+                new NumberGameRoundWriter(template, transactions, this::lockGames, GUARDED_ROUND_INSERT,
+                        NumberGameDbDao::bindRound, batchSize, flushMillis) : null;
+    }
+
+    /**
+     * Writes every queued round before the DAO is discarded
+     */
+    @PreDestroy
+    public void close() {
+        if(roundWriter != null) {
+            roundWriter.close();
+        }
+    }
+
+    /**
+     * Writes a game's queued rounds, if it has any
+     * @param gameId The ID of the game
+     */
+    private void flushRounds(int gameId) {
+        if(roundWriter != null && roundWriter.hasPending(gameId)) {
+            roundWriter.flush();
+        }
     }
 
     /**
@@ -41,12 +188,79 @@ public class NumberGameDbDao implements NumberGameDao {
      */
     @Override
     public List<NumberGameInstance> getAllGames() {
-        final String sql = "SELECT game.gameId, game.answer, progress.progressDesc FROM game " +
-                "INNER JOIN progress ON progress.progressId = game.progressId " +
-                "GROUP BY game.gameId;";
+        final String sql = "SELECT " + GAME_COLUMNS + " FROM game;";
         return template.query(sql, new GameInstanceMapper());
     }
 
+    /**
+     * Retrieves a page of games in ascending order of their ID
+     *
+     * Pages are found by seeking the primary key past afterId rather than with an offset,
+     * so every page costs the same however deep into the listing it is.
+     *
+     * @param afterId Only games with a greater ID than this are retrieved
+     * @param limit The most games to retrieve
+     * @param status Only games with this status are retrieved, or games of any status if it is null
+     * @return The retrieved games
+     */
+    @Override
+    public List<NumberGameInstance> getGames(int afterId, int limit, ENumberGameStatus status) {
+        if(limit <= 0) {
+            return new ArrayList<>();
+        }
+        final String select = "SELECT " + GAME_COLUMNS + " FROM game " +
+                "WHERE game.gameId > ? ";
+        final String order = "ORDER BY game.gameId ASC LIMIT ?;";
+        if(status == null) {
+            return template.query(select + order, new GameInstanceMapper(), afterId, limit);
+        }
+        return template.query(select + "AND game.progressId = ? " + order, new GameInstanceMapper(),
+                afterId, status.ordinal() + 1, limit);
+    }
+
+    /**
+     * Streams every game along with its rounds, in ascending order of the game IDs
+     *
+     * Games and rounds are read through one forward-only, read-only result set ordered by
+     * game, so only the rounds of the current game are held in memory at a time.
+     *
+     * @param handler Receives every game along with its rounds in the order they were played
+     */
+    @Override
+    public void exportGames(BiConsumer<NumberGameInstance, List<NumberGameRound>> handler) {
+        if(roundWriter != null) {
+            roundWriter.flush();
+        }
+        final String sql = "SELECT " + GAME_COLUMNS + ", " + ROUND_COLUMNS + " FROM game " +
+                "LEFT JOIN rounds ON rounds.gameId = game.gameId " +
+                "ORDER BY game.gameId ASC, rounds.roundNumber ASC;";
+        GameInstanceMapper gameMapper = new GameInstanceMapper();
+        GameRoundMapper roundMapper = new GameRoundMapper();
+        // The game being read, and the rounds read for it so far
+        NumberGameInstance[] current = new NumberGameInstance[1];
+        List<NumberGameRound> rounds = new ArrayList<>();
+        template.query((Connection conn) -> {
+            PreparedStatement statement = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(exportFetchSize);
+            return statement;
+        }, (ResultSet resultSet) -> {
+            int gameId = resultSet.getInt("game.gameId");
+            if(current[0] == null || current[0].getGameId() != gameId) {
+                if(current[0] != null) {
+                    handler.accept(current[0], rounds);
+                    rounds.clear();
+                }
+                current[0] = gameMapper.mapRow(resultSet, 0);
+            }
+            if(GameRoundMapper.hasRound(resultSet)) {
+                rounds.add(roundMapper.mapRow(resultSet, rounds.size()));
+            }
+        });
+        if(current[0] != null) {
+            handler.accept(current[0], rounds);
+        }
+    }
+
     /**
      * Retrieves a game associated with a given id
      *
@@ -56,10 +270,8 @@ public class NumberGameDbDao implements NumberGameDao {
      */
     @Override
     public NumberGameInstance getGameById(int id) throws GameNotFoundException {
-        final String sql = "SELECT game.gameId, game.answer, progress.progressDesc FROM game " +
-                "INNER JOIN progress ON progress.progressId = game.progressId " +
-                "WHERE game.gameId = ? " +
-                "GROUP BY game.gameId;";
+        final String sql = "SELECT " + GAME_COLUMNS + " FROM game " +
+                "WHERE game.gameId = ?;";
         try {
             return template.queryForObject(sql, new GameInstanceMapper(), id);
         }
@@ -77,33 +289,153 @@ public class NumberGameDbDao implements NumberGameDao {
      */
     @Override
     public List<NumberGameRound> getGameRounds(int gameId) throws GameNotFoundException {
-        getGameById(gameId);
-        final String sql = "SELECT rounds.guess, rounds.result, rounds.roundTime FROM rounds " +
-                "WHERE rounds.gameId = ? " +
-                "ORDER BY rounds.roundTime ASC;";
-        return template.query(sql, new GameRoundMapper(), gameId);
+        return getGameRoundsAfter(gameId, 0);
+    }
+
+    /**
+     * Gets the rounds played for a given game after a given round
+     *
+     * Only the rounds after the given one are read, with a range scan of the rounds primary key.
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @param afterRound The number of the latest round already seen, or 0 to retrieve every round
+     * @return A list of the rounds played after the given round, in the order they were played
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRoundsAfter(int gameId, int afterRound) throws GameNotFoundException {
+        flushRounds(gameId);
+        // The range is part of the join, so the game row is still returned when no round is in it
+        final String sql = "SELECT game.gameId, game.answerLength, game.alphabetSize, " + ROUND_COLUMNS + " FROM game " +
+                "LEFT JOIN rounds ON rounds.gameId = game.gameId AND rounds.roundNumber > ? " +
+                "WHERE game.gameId = ? " +
+                "ORDER BY rounds.roundNumber ASC;";
+        List<NumberGameRound> rounds = template.query(sql, (ResultSet resultSet) -> {
+            if(!resultSet.next()) {
+                return null;
+            }
+            List<NumberGameRound> found = new ArrayList<>();
+            GameRoundMapper mapper = new GameRoundMapper();
+            do {
+                if(GameRoundMapper.hasRound(resultSet)) {
+                    found.add(mapper.mapRow(resultSet, found.size()));
+                }
+            } while(resultSet.next());
+            return found;
+        }, afterRound, gameId);
+        if(rounds == null) {
+            throw new GameNotFoundException(gameId);
+        }
+        return rounds;
+    }
+
+    /**
+     * Retrieves several games by their IDs with a single IN query on the primary key
+     *
+     * @param ids The IDs of the games to retrieve
+     * @return The games that were found, by their ID. Games that could not be found are left out
+     */
+    @Override
+    public Map<Integer, NumberGameInstance> getGamesByIds(Collection<Integer> ids) {
+        Map<Integer, NumberGameInstance> games = new HashMap<>();
+        if(ids.isEmpty()) {
+            return games;
+        }
+        final String sql = "SELECT " + GAME_COLUMNS + " FROM game " +
+                "WHERE game.gameId IN (" + placeholders(ids.size()) + ");";
+        for(NumberGameInstance game : template.query(sql, new GameInstanceMapper(), ids.toArray())) {
+            games.put(game.getGameId(), game);
+        }
+        return games;
+    }
+
+    /**
+     * Gets the rounds played for several games with a single IN query, reading every game's
+     * rounds in order from the rounds primary key
+     *
+     * @param gameIds The IDs of the games to retrieve rounds for
+     * @return The rounds of every game that was found, by the game's ID, in the order they were
+     * played. Games that could not be found are left out
+     */
+    @Override
+    public Map<Integer, List<NumberGameRound>> getRoundsByGameIds(Collection<Integer> gameIds) {
+        Map<Integer, List<NumberGameRound>> rounds = new HashMap<>();
+        if(gameIds.isEmpty()) {
+            return rounds;
+        }
+        if(roundWriter != null && gameIds.stream().anyMatch(roundWriter::hasPending)) {
+            roundWriter.flush();
+        }
+        // Every game row is returned, with null round columns when it has no rounds
+        final String sql = "SELECT game.gameId, game.answerLength, game.alphabetSize, " + ROUND_COLUMNS + " FROM game " +
+                "LEFT JOIN rounds ON rounds.gameId = game.gameId " +
+                "WHERE game.gameId IN (" + placeholders(gameIds.size()) + ") " +
+                "ORDER BY game.gameId ASC, rounds.roundNumber ASC;";
+        GameRoundMapper mapper = new GameRoundMapper();
+        template.query(sql, (ResultSet resultSet) -> {
+            List<NumberGameRound> found = rounds.computeIfAbsent(resultSet.getInt("game.gameId"), id -> new ArrayList<>());
+            if(GameRoundMapper.hasRound(resultSet)) {
+                found.add(mapper.mapRow(resultSet, found.size()));
+            }
+        }, gameIds.toArray());
+        return rounds;
     }
 
     /**
      * Creates a new game
      *
+     * The game's ID is handed out by the DAO's NumberGameIdAllocator before it is inserted,
+     * so the insert doesn't wait for a generated key.
+     *
      * @param answer The answer to the game
+     * @param variant The rules of the game
      * @param status The status to create the game with
      * @return The ID of the created game
      */
     @Override
-    public int createGame(String answer, ENumberGameStatus status) {
-        final String sql = "INSERT INTO game(answer, progressId) " +
-                "VALUES(?, ?);";
-        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
-        template.update((Connection conn) -> {
-            PreparedStatement statement = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            statement.setString(1, answer);
-            statement.setInt(2, status.ordinal() + 1);
-            return statement;
-        }, keyHolder);
-        assert keyHolder.getKey() != null;
-        return keyHolder.getKey().intValue();
+    public int createGame(String answer, NumberGameVariant variant, ENumberGameStatus status) {
+        final String sql = "INSERT INTO game(gameId, answerCode, answerLength, alphabetSize, allowDuplicates, progressId) " +
+                "VALUES(?, ?, ?, ?, ?, ?);";
+        int gameId = ids.nextId();
+        template.update(sql, gameId, NumberGameCodec.encode(answer, variant.getAlphabetSize()), variant.getAnswerLength(),
+                variant.getAlphabetSize(), variant.isAllowDuplicates(), status.ordinal() + 1);
+        return gameId;
+    }
+
+    /**
+     * Creates several games with the same rules in one transaction
+     *
+     * Every ID is handed out up front, and the games are inserted as a JDBC batch, which
+     * MySQL's driver sends as multi-row inserts when rewriteBatchedStatements is set.
+     *
+     * @param answers The answers to the games
+     * @param variant The rules of every game
+     * @param status The status to create every game with
+     * @return The IDs of the created games, in the order of their answers
+     */
+    @Override
+    public int[] createGames(List<String> answers, NumberGameVariant variant, ENumberGameStatus status) {
+        final String sql = "INSERT INTO game(gameId, answerCode, answerLength, alphabetSize, allowDuplicates, progressId) " +
+                "VALUES(?, ?, ?, ?, ?, ?);";
+        int[] gameIds = ids.nextIds(answers.size());
+        if(gameIds.length == 0) {
+            return gameIds;
+        }
+        transactions.execute(transaction -> template.batchUpdate(sql, answers, CREATE_BATCH_SIZE,
+                new ParameterizedPreparedStatementSetter<String>() {
+                    private int next;
+
+                    @Override
+                    public void setValues(PreparedStatement statement, String answer) throws SQLException {
+                        statement.setInt(1, gameIds[next ++]);
+                        statement.setLong(2, NumberGameCodec.encode(answer, variant.getAlphabetSize()));
+                        statement.setInt(3, variant.getAnswerLength());
+                        statement.setInt(4, variant.getAlphabetSize());
+                        statement.setBoolean(5, variant.isAllowDuplicates());
+                        statement.setInt(6, status.ordinal() + 1);
+                    }
+                }));
+        return gameIds;
     }
 
     /**
@@ -113,20 +445,243 @@ public class NumberGameDbDao implements NumberGameDao {
      * @param round  The round to add to the game
      */
     @Override
-    public void addRound(int gameId, NumberGameRound round) {
-        final String sql = "INSERT INTO rounds (gameId, guess, result, roundTime) " +
-                "VALUES (?, ?, ?, ?);";
+    public void addRound(int gameId, NumberGameRound round) throws GameNotFoundException {
+        flushRounds(gameId);
+        if(!insertRound(gameId, round, false)) {
+            throw new GameNotFoundException(gameId);
+        }
+    }
+
+    /**
+     * Inserts a round directly in its own transaction, or the surrounding one, without flushing
+     * queued rounds first. The game's row is locked first, so concurrent inserts for the game
+     * take turns numbering their rounds
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to insert
+     * @param guarded Whether the round is only inserted while the game is still in progress
+     * @return Whether the round was inserted, or false if the game does not exist, or is finished when guarded
+     */
+    private boolean insertRound(int gameId, NumberGameRound round, boolean guarded) {
+        return transactions.execute(status -> {
+            List<Integer> progress = template.queryForList(GAME_LOCK, Integer.class, gameId);
+            if(progress.isEmpty() || (guarded && progress.get(0) != ENumberGameStatus.IN_PROGRESS.ordinal() + 1)) {
+                return false;
+            }
+            insertLockedRound(gameId, round);
+            return true;
+        });
+    }
+
+    /**
+     * Inserts a round for a game whose row is already locked by the surrounding transaction
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to insert
+     */
+    private void insertLockedRound(int gameId, NumberGameRound round) {
+        final String sql = ROUND_INSERT + ";";
         template.update((Connection conn) -> {
             PreparedStatement statement = conn.prepareStatement(sql);
-            statement.setInt(1, gameId);
-            statement.setString(2, round.getGuess());
-            statement.setString(3, round.getGuessResult());
-            Timestamp timestamp = Timestamp.valueOf(round.getTimestamp());
-            statement.setTimestamp(4, timestamp);
+            bindRound(statement, gameId, round);
             return statement;
         });
     }
 
+    /**
+     * Locks the rows of several games until the end of the surrounding transaction, in
+     * ascending order of their ID, so transactions locking the same games can't deadlock
+     * @param gameIds The IDs of the games to lock
+     */
+    private void lockGames(Collection<Integer> gameIds) {
+        final String sql = "SELECT game.gameId FROM game WHERE game.gameId IN (" + placeholders(gameIds.size()) + ") " +
+                "ORDER BY game.gameId FOR UPDATE;";
+        template.queryForList(sql, Integer.class, gameIds.toArray());
+    }
+
+    /**
+     * Binds the parameters of ROUND_INSERT and GUARDED_ROUND_INSERT for a round
+     * @param statement The statement to bind the parameters of
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to insert, which must have a valid result string
+     * @throws SQLException thrown when a parameter could not be bound
+     */
+    private static void bindRound(PreparedStatement statement, int gameId, NumberGameRound round) throws SQLException {
+        int result = NumberGameScorer.parseResult(round.getGuessResult());
+        statement.setString(1, round.getGuess());
+        statement.setInt(2, NumberGameScorer.exactMatches(result));
+        statement.setInt(3, NumberGameScorer.partialMatches(result));
+        statement.setTimestamp(4, Timestamp.valueOf(round.getTimestamp()));
+        statement.setInt(5, gameId);
+    }
+
+    /**
+     * Records a guess for a game as a single atomic step
+     *
+     * A guess that doesn't solve the game runs in a transaction, which first locks the game's row,
+     * reading its status, then inserts the round only if the game is still in progress. In
+     * write-behind mode, the round is queued instead. A queued round
+     * is acknowledged right away, and is dropped if another DAO sharing the database finishes
+     * the game before the round is written. A solving guess
+     * runs in a transaction, which first finishes the game if it is still in progress, locking
+     * its row, then inserts the round.
+     * Telling a missing game from a finished one takes an extra query, but only when the
+     * round could not be added.
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @param solved Whether the guess of the round solved the game
+     * @return Whether the round was added, or false if the game was no longer in progress
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public boolean applyGuess(int gameId, NumberGameRound round, boolean solved) throws GameNotFoundException {
+        boolean applied;
+        if(solved) {
+            // Queued rounds are inserted first, while the game is still in progress
+            flushRounds(gameId);
+            final String finish = "UPDATE game SET progressId = ? WHERE gameId = ? AND progressId = ?;";
+            applied = transactions.execute(status -> {
+                if(template.update(finish, ENumberGameStatus.FINISHED.ordinal() + 1, gameId,
+                        ENumberGameStatus.IN_PROGRESS.ordinal() + 1) == 0) {
+                    return false;
+                }
+                // Not addRound, which could wait on a flush blocked by this transaction's lock.
+                // The update locked the game's row
+                insertLockedRound(gameId, round);
+                return true;
+            });
+        }
+        else if(roundWriter != null) {
+            // The caller read the game as in progress, and the insert is guarded when written
+            roundWriter.enqueue(gameId, round);
+            return true;
+        }
+        else {
+            applied = insertRound(gameId, round, true);
+        }
+        if(!applied) {
+            final String exists = "SELECT COUNT(*) FROM game WHERE gameId = ?;";
+            Integer count = template.queryForObject(exists, Integer.class, gameId);
+            if(count == null || count == 0) {
+                throw new GameNotFoundException(gameId);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Records the guesses of several games in one transaction of at most four statements
+     *
+     * The games still in progress are locked in ascending order of their ID, so batches
+     * sharing games can't deadlock. Their latest round numbers are only read once the locks
+     * are held, since a subquery of a locking read would read the snapshot taken before
+     * waiting for them. Then every round of those games is inserted in one JDBC batch, and
+     * the solved games are finished in another.
+     *
+     * @param rounds The rounds to add, by the ID of their game
+     * @param solved The IDs of the games whose last round solves them
+     * @return The number of leading rounds added for every game, which is all of them for games
+     * that were in progress, and none for the rest
+     */
+    @Override
+    public Map<Integer, Integer> applyGuesses(Map<Integer, List<NumberGameRound>> rounds, Set<Integer> solved) {
+        Map<Integer, Integer> added = new HashMap<>();
+        if(rounds.isEmpty()) {
+            return added;
+        }
+        if(roundWriter != null && rounds.keySet().stream().anyMatch(roundWriter::hasPending)) {
+            roundWriter.flush();
+        }
+        final String lock = "SELECT game.gameId, game.alphabetSize FROM game " +
+                "WHERE game.gameId IN (" + placeholders(rounds.size()) + ") AND game.progressId = ? " +
+                "ORDER BY game.gameId FOR UPDATE;";
+        final String insert = "INSERT INTO rounds (gameId, roundNumber, guessCode, exact, partial, roundTime) " +
+                "VALUES(?, ?, ?, ?, ?, ?);";
+        final String finish = "UPDATE game SET progressId = ? WHERE gameId = ?;";
+        List<Object> parameters = new ArrayList<>(rounds.keySet());
+        parameters.add(ENumberGameStatus.IN_PROGRESS.ordinal() + 1);
+        transactions.execute(transaction -> {
+            Map<Integer, Integer> alphabetSizes = new LinkedHashMap<>();
+            template.query(lock, (ResultSet resultSet) -> {
+                alphabetSizes.put(resultSet.getInt(1), resultSet.getInt(2));
+            }, parameters.toArray());
+            if(alphabetSizes.isEmpty()) {
+                return null;
+            }
+            // A locking read, so it sees the rounds committed while waiting for the game locks
+            final String latest = "SELECT gameId, MAX(roundNumber) FROM rounds " +
+                    "WHERE gameId IN (" + placeholders(alphabetSizes.size()) + ") GROUP BY gameId FOR UPDATE;";
+            Map<Integer, Integer> roundNumbers = new HashMap<>();
+            template.query(latest, (ResultSet resultSet) -> {
+                roundNumbers.put(resultSet.getInt(1), resultSet.getInt(2));
+            }, alphabetSizes.keySet().toArray());
+            List<Object[]> roundRows = new ArrayList<>();
+            List<Object[]> finishRows = new ArrayList<>();
+            for(Map.Entry<Integer, Integer> game : alphabetSizes.entrySet()) {
+                int gameId = game.getKey();
+                int alphabetSize = game.getValue();
+                int roundNumber = roundNumbers.getOrDefault(gameId, 0);
+                List<NumberGameRound> gameRounds = rounds.get(gameId);
+                for(NumberGameRound round : gameRounds) {
+                    int result = NumberGameScorer.parseResult(round.getGuessResult());
+                    roundRows.add(new Object[] {gameId, ++ roundNumber, NumberGameCodec.encode(round.getGuess(), alphabetSize),
+                            NumberGameScorer.exactMatches(result), NumberGameScorer.partialMatches(result),
+                            Timestamp.valueOf(round.getTimestamp())});
+                }
+                if(solved.contains(gameId)) {
+                    finishRows.add(new Object[] {ENumberGameStatus.FINISHED.ordinal() + 1, gameId});
+                }
+                added.put(gameId, gameRounds.size());
+            }
+            if(!roundRows.isEmpty()) {
+                template.batchUpdate(insert, roundRows);
+            }
+            if(!finishRows.isEmpty()) {
+                template.batchUpdate(finish, finishRows);
+            }
+            return null;
+        });
+        for(Integer gameId : rounds.keySet()) {
+            added.putIfAbsent(gameId, 0);
+        }
+        return added;
+    }
+
+    /**
+     * Stores the rounds of a game played elsewhere, along with its status, in one transaction
+     *
+     * Rounds are stored under their position in the list, starting at 1, and rounds already
+     * stored under a position are kept, so storing the same rounds again changes nothing.
+     *
+     * @param gameId The ID of the game, which must already be stored
+     * @param rounds Every round played for the game, in order
+     * @param status The status of the game
+     */
+    public void archiveGame(int gameId, List<NumberGameRound> rounds, ENumberGameStatus status) {
+        flushRounds(gameId);
+        final String insert = "INSERT IGNORE INTO rounds (gameId, roundNumber, guessCode, exact, partial, roundTime) " +
+                "SELECT game.gameId, ?, CONV(?, game.alphabetSize, 10), ?, ?, ? FROM game " +
+                "WHERE game.gameId = ?;";
+        final String update = "UPDATE game SET progressId = ? WHERE gameId = ?;";
+        transactions.execute(transaction -> {
+            template.batchUpdate(insert, rounds, rounds.size(), new ParameterizedPreparedStatementSetter<NumberGameRound>() {
+                private int roundNumber;
+
+                @Override
+                public void setValues(PreparedStatement statement, NumberGameRound round) throws SQLException {
+                    int result = NumberGameScorer.parseResult(round.getGuessResult());
+                    statement.setInt(1, ++ roundNumber);
+                    statement.setString(2, round.getGuess());
+                    statement.setInt(3, NumberGameScorer.exactMatches(result));
+                    statement.setInt(4, NumberGameScorer.partialMatches(result));
+                    statement.setTimestamp(5, Timestamp.valueOf(round.getTimestamp()));
+                    statement.setInt(6, gameId);
+                }
+            });
+            template.update(update, status.ordinal() + 1, gameId);
+            return null;
+        });
+    }
+
     /**
      * Updates the status for a given game
      *
@@ -135,6 +690,7 @@ public class NumberGameDbDao implements NumberGameDao {
      */
     @Override
     public void updateStatus(int gameId, ENumberGameStatus status) {
+        flushRounds(gameId);
         final String sql = "UPDATE game SET progressId = ? WHERE gameId = ?;";
         template.update((Connection conn) -> {
             PreparedStatement statement = conn.prepareStatement(sql);
@@ -151,22 +707,40 @@ public class NumberGameDbDao implements NumberGameDao {
      */
     @Override
     public void removeGame(int gameId) {
+        flushRounds(gameId);
         final String delRounds = "DELETE FROM rounds WHERE rounds.gameId = ?";
         final String delGame = "DELETE FROM game WHERE game.gameId = ?";
         template.update(delRounds, gameId);
         template.update(delGame, gameId);
     }
 
+    /**
+     * Builds the placeholders of an IN list
+     * @param count The number of values in the list
+     * @return The placeholders, separated by commas
+     */
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
     /**
      * A utility class used to map NumberGameInstance objects to database entries
      */
     private static final class GameInstanceMapper implements RowMapper<NumberGameInstance> {
+        /**
+         * The statuses by their ordinal, which is one less than their progressId
+         */
+        private static final ENumberGameStatus[] STATUSES = ENumberGameStatus.values();
+
         @Override
         public NumberGameInstance mapRow(ResultSet resultSet, int i) throws SQLException {
             NumberGameInstance instance = new NumberGameInstance();
             instance.setGameId(resultSet.getInt("game.gameId"));
-            instance.setAnswer(resultSet.getString("game.answer"));
-            instance.setStatus(ENumberGameStatus.valueOf(resultSet.getString("progress.progressDesc")));
+            int answerLength = resultSet.getInt("game.answerLength");
+            int alphabetSize = resultSet.getInt("game.alphabetSize");
+            instance.setAnswer(NumberGameCodec.decode(resultSet.getLong("game.answerCode"), alphabetSize, answerLength));
+            instance.setStatus(STATUSES[resultSet.getInt("game.progressId") - 1]);
+            instance.setVariant(new NumberGameVariant(answerLength, alphabetSize, resultSet.getBoolean("game.allowDuplicates")));
             return instance;
         }
     }
@@ -178,11 +752,24 @@ public class NumberGameDbDao implements NumberGameDao {
         @Override
         public NumberGameRound mapRow(ResultSet resultSet, int i) throws SQLException {
             NumberGameRound round = new NumberGameRound();
-            round.setGuess(resultSet.getString("rounds.guess"));
-            round.setGuessResult(resultSet.getString("rounds.result"));
+            round.setGuess(NumberGameCodec.decode(resultSet.getLong("rounds.guessCode"),
+                    resultSet.getInt("game.alphabetSize"), resultSet.getInt("game.answerLength")));
+            round.setGuessResult(NumberGameCodec.decodeResult(resultSet.getInt("rounds.exact"),
+                    resultSet.getInt("rounds.partial")));
             Timestamp timestamp = resultSet.getTimestamp("rounds.roundTime");
             round.setTimestamp(timestamp.toLocalDateTime());
             return round;
         }
+
+        /**
+         * Checks whether the current row of a game LEFT JOIN rounds query holds a round
+         * @param resultSet The result set positioned on the row
+         * @return Whether the row holds a round
+         * @throws SQLException thrown when the row could not be read
+         */
+        static boolean hasRound(ResultSet resultSet) throws SQLException {
+            resultSet.getInt("rounds.roundNumber");
+            return !resultSet.wasNull();
+        }
     }
 }
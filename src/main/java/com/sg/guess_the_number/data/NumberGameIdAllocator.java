@@ -0,0 +1,40 @@
+package com.sg.guess_the_number.data;
+
+/**
+ * Hands out the IDs of new games
+ *
+ * IDs are handed out in increasing order from a single allocator, but an allocator may
+ * skip IDs, so IDs only tell the order games were created in, not how many there are.
+ */
+public interface NumberGameIdAllocator {
+    /**
+     * Hands out an ID no game has been given yet
+     * @return The ID
+     */
+    int nextId();
+
+    /**
+     * Hands out several IDs no game has been given yet
+     * @param count The number of IDs to hand out
+     * @return The IDs, in increasing order
+     */
+    default int[] nextIds(int count) {
+        int[] ids = new int[count];
+        for(int i = 0; i < count; i ++) {
+            ids[i] = nextId();
+        }
+        return ids;
+    }
+
+    /**
+     * Retrieves the least ID the allocator could hand out next
+     * @return The least ID that could be handed out next
+     */
+    int peekNextId();
+
+    /**
+     * Makes sure IDs handed out afterwards are at least a given ID
+     * @param id The least ID to hand out afterwards
+     */
+    void advance(int id);
+}
@@ -0,0 +1,598 @@
+package com.sg.guess_the_number.data;
+
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.models.game.NumberGameInstance;
+import com.sg.guess_the_number.service.NumberGameScorer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An append-only file journal of the writes made to a set of games, with snapshots
+ *
+ * The journal is written as numbered segment files named after its path, followed by
+ * the segment's generation. Every write is a record framed by its length and a CRC32 of
+ * its contents, so a record torn by a crash is detected and cut off on recovery.
+ *
+ * Appends are group committed: records appended concurrently are queued, and whichever
+ * appender writes next writes every queued record in one gathering write, forced to the
+ * disk once if sync is set. Without sync, records survive the process crashing, but not
+ * the machine. An append that fails leaves the journal failed, so it never has gaps.
+ *
+ * A snapshot holds the state of every game in a compact binary file, alongside the
+ * generation of the segment started when it was taken. Recovery loads the snapshot, then
+ * replays the segments from that generation on, so taking snapshots bounds how much of
+ * the journal is replayed. Older segments are deleted once a snapshot covering them is
+ * written. Snapshots are taken in two steps: checkpoint captures the state and starts a
+ * new segment, which is quick but needs writes to be stopped, then the captured state is
+ * written while writes go on.
+ */
+final class NumberGameJournal implements Closeable {
+    private static final byte CREATE = 1;
+    private static final byte ROUND = 2;
+    private static final byte STATUS = 3;
+    private static final byte REMOVE = 4;
+    private static final byte SOLVING_ROUND = 5;
+    /**
+     * The timestamp written for rounds without one
+     */
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final int SNAPSHOT_MAGIC = 0x4E47534E;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final ENumberGameStatus[] STATUSES = ENumberGameStatus.values();
+
+    private final Path directory;
+    /**
+     * The file name every segment and the snapshot are named after
+     */
+    private final String name;
+    private final boolean sync;
+    /**
+     * Held while a snapshot is written
+     */
+    private final Object snapshotLock = new Object();
+    /**
+     * The generation of the latest snapshot written, guarded by snapshotLock
+     */
+    private long snapshotGeneration;
+
+    /**
+     * The records waiting to be written, guarded by the list itself
+     */
+    private final List<ByteBuffer> queue = new ArrayList<>();
+    /**
+     * The number of records ever queued, guarded by the queue
+     */
+    private long queued;
+    /**
+     * The number of records ever written, guarded by the journal
+     */
+    private long written;
+    /**
+     * The failure that stopped the journal, guarded by the journal
+     */
+    private IOException failure;
+    /**
+     * The segment being appended to, guarded by the journal
+     */
+    private FileChannel channel;
+    private long generation;
+    /**
+     * The bytes journaled since the latest checkpoint, guarded by the journal
+     */
+    private long appendedBytes;
+
+    /**
+     * Opens a journal. Nothing may be appended until it is recovered
+     * @param file The path every segment and the snapshot are named after
+     * @param sync Whether records are forced to the disk before their append returns
+     * @throws IOException thrown when the journal's directory could not be created
+     */
+    NumberGameJournal(Path file, boolean sync) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        this.directory = absolute.getParent();
+        this.name = absolute.getFileName().toString();
+        this.sync = sync;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Records the creation of a game
+     * @param gameId The ID of the game
+     * @param answer The answer to the game
+     * @param variant The rules of the game
+     * @param status The status the game was created with
+     * @throws IOException thrown when the record could not be written
+     */
+    void create(int gameId, String answer, NumberGameVariant variant, ENumberGameStatus status) throws IOException {
+        append(record(CREATE, gameId, out -> writeCreate(out, answer, variant, status)));
+    }
+
+    /**
+     * Records a round added to a game
+     * @param gameId The ID of the game
+     * @param round The round added to the game
+     * @throws IOException thrown when the record could not be written
+     */
+    void round(int gameId, NumberGameRound round) throws IOException {
+        append(record(ROUND, gameId, out -> writeRound(out, round)));
+    }
+
+    /**
+     * Records a round that solved a game, finishing it, as a single record, so recovery
+     * never finds the round without the game being finished
+     * @param gameId The ID of the game
+     * @param round The round added to the game
+     * @throws IOException thrown when the record could not be written
+     */
+    void solvingRound(int gameId, NumberGameRound round) throws IOException {
+        append(record(SOLVING_ROUND, gameId, out -> writeRound(out, round)));
+    }
+
+    /**
+     * Records a change to a game's status
+     * @param gameId The ID of the game
+     * @param status The new status of the game
+     * @throws IOException thrown when the record could not be written
+     */
+    void status(int gameId, ENumberGameStatus status) throws IOException {
+        append(record(STATUS, gameId, out -> out.writeByte(status.ordinal())));
+    }
+
+    /**
+     * Records the removal of a game
+     * @param gameId The ID of the game
+     * @throws IOException thrown when the record could not be written
+     */
+    void remove(int gameId) throws IOException {
+        append(record(REMOVE, gameId, out -> { }));
+    }
+
+    /**
+     * Retrieves the number of bytes journaled since the latest checkpoint, including the segments replayed on recovery
+     * @return The number of bytes journaled
+     */
+    synchronized long appendedBytes() {
+        return appendedBytes;
+    }
+
+    /**
+     * Rebuilds the journal's games in a DAO from the latest snapshot and the segments after
+     * it, then starts a new segment for appends. Any torn record at the end of the latest
+     * segment is cut off
+     * @param target The empty DAO to rebuild the games in
+     * @return The number of records replayed after the snapshot
+     * @throws IOException thrown when the journal or its snapshot could not be read
+     */
+    synchronized int recover(NumberGameMemoryDao target) throws IOException {
+        long first = 0;
+        Path snapshot = directory.resolve(name + ".snapshot");
+        if(Files.exists(snapshot)) {
+            first = loadSnapshot(snapshot, target);
+        }
+        synchronized(snapshotLock) {
+            snapshotGeneration = first;
+        }
+        TreeMap<Long, Path> segments = segments();
+        int records = 0;
+        appendedBytes = 0;
+        for(Path segment : segments.tailMap(first, true).values()) {
+            records += replay(segment, target);
+            appendedBytes += Files.size(segment);
+        }
+        generation = Math.max(first, segments.isEmpty() ? 0 : segments.lastKey() + 1);
+        channel = openSegment(generation);
+        return records;
+    }
+
+    /**
+     * Captures the state of a DAO's games for a snapshot and starts a new segment. No writes
+     * may be made to the DAO or the journal until this returns, but the rounds of the captured
+     * games are views, so capturing takes no copies of them
+     * @param source The DAO holding the current state of the journal's games
+     * @return The captured state, to be written with writeSnapshot
+     * @throws IOException thrown when the new segment could not be started
+     */
+    synchronized Checkpoint checkpoint(NumberGameMemoryDao source) throws IOException {
+        flushQueue();
+        int nextGameId = source.getNextGameId();
+        List<NumberGameInstance> games = new ArrayList<>();
+        List<List<NumberGameRound>> rounds = new ArrayList<>();
+        source.exportGames((game, gameRounds) -> {
+            games.add(game);
+            rounds.add(gameRounds);
+        });
+        channel.close();
+        generation ++;
+        channel = openSegment(generation);
+        appendedBytes = 0;
+        return new Checkpoint(generation, nextGameId, games, rounds);
+    }
+
+    /**
+     * Writes a captured state as the snapshot, then deletes the segments it covers. Nothing
+     * is written if a snapshot of a later checkpoint already was
+     * @param checkpoint The state captured by checkpoint
+     * @throws IOException thrown when the snapshot could not be written
+     */
+    void writeSnapshot(Checkpoint checkpoint) throws IOException {
+        synchronized(snapshotLock) {
+            // A later checkpoint written first already deleted segments this one needs
+            if(checkpoint.generation > snapshotGeneration) {
+                writeSnapshotFile(checkpoint);
+                snapshotGeneration = checkpoint.generation;
+            }
+        }
+    }
+
+    private void writeSnapshotFile(Checkpoint checkpoint) throws IOException {
+        Path snapshot = directory.resolve(name + ".snapshot");
+        Path partial = directory.resolve(name + ".snapshot.partial");
+        try(FileOutputStream file = new FileOutputStream(partial.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(checkpoint.generation);
+            out.writeInt(checkpoint.nextGameId);
+            out.writeInt(checkpoint.games.size());
+            for(int i = 0; i < checkpoint.games.size(); i ++) {
+                NumberGameInstance game = checkpoint.games.get(i);
+                List<NumberGameRound> rounds = checkpoint.rounds.get(i);
+                out.writeInt(game.getGameId());
+                writeCreate(out, game.getAnswer(), game.getVariant(), game.getStatus());
+                out.writeInt(rounds.size());
+                for(NumberGameRound round : rounds) {
+                    writeSnapshotRound(out, game.getVariant(), round);
+                }
+            }
+            out.flush();
+            out.writeInt((int)checked.getChecksum().getValue());
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(partial, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for(Path segment : segments().headMap(checkpoint.generation, false).values()) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    /**
+     * Closes the segment being appended to
+     * @throws IOException thrown when the segment could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flushQueue();
+        if(channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Queues a record, then waits for it to be written, writing every queued record if no one else is
+     */
+    private void append(ByteBuffer record) throws IOException {
+        long ticket;
+        synchronized(queue) {
+            queue.add(record);
+            ticket = ++ queued;
+        }
+        synchronized(this) {
+            if(written < ticket) {
+                flushQueue();
+            }
+            if(written < ticket) {
+                throw new IOException("The journal failed", failure);
+            }
+        }
+    }
+
+    /**
+     * Writes every queued record in one write, called with the journal's lock held
+     */
+    private void flushQueue() throws IOException {
+        if(failure != null) {
+            throw new IOException("The journal failed", failure);
+        }
+        ByteBuffer[] batch;
+        long last;
+        synchronized(queue) {
+            if(queue.isEmpty()) {
+                return;
+            }
+            batch = queue.toArray(new ByteBuffer[0]);
+            queue.clear();
+            last = queued;
+        }
+        try {
+            long remaining = 0;
+            for(ByteBuffer record : batch) {
+                remaining += record.remaining();
+            }
+            appendedBytes += remaining;
+            while(remaining > 0) {
+                remaining -= channel.write(batch);
+            }
+            if(sync) {
+                channel.force(false);
+            }
+        }
+        catch(IOException e) {
+            failure = e;
+            throw e;
+        }
+        written = last;
+    }
+
+    private FileChannel openSegment(long generation) throws IOException {
+        FileChannel segment = FileChannel.open(directory.resolve(name + "." + generation), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        segment.position(segment.size());
+        return segment;
+    }
+
+    /**
+     * Finds the journal's segments
+     * @return The segments, keyed and ordered by their generation
+     */
+    private TreeMap<Long, Path> segments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, name + ".*")) {
+            for(Path file : files) {
+                String suffix = file.getFileName().toString().substring(name.length() + 1);
+                if(!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+                    segments.put(Long.parseLong(suffix), file);
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Applies every whole record of a segment to a DAO, cutting off a torn record at its end
+     * @return The number of records applied
+     */
+    private static int replay(Path segment, NumberGameMemoryDao target) throws IOException {
+        int records = 0;
+        long valid = 0;
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 1 << 16))) {
+            while(true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    if(length <= 0 || length > 1 << 20) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload, 0, length);
+                    if(in.readInt() != (int)crc.getValue()) {
+                        break;
+                    }
+                }
+                catch(EOFException e) {
+                    break;
+                }
+                apply(target, new DataInputStream(new ByteArrayInputStream(payload)));
+                valid += payload.length + 8;
+                records ++;
+            }
+        }
+        if(valid < Files.size(segment)) {
+            try(FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Loads a snapshot into a DAO
+     * @return The generation of the first segment after the snapshot
+     */
+    private static long loadSnapshot(Path snapshot, NumberGameMemoryDao target) throws IOException {
+        try(CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if(in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unknown snapshot format in " + snapshot);
+            }
+            long generation = in.readLong();
+            target.advanceGameIds(in.readInt());
+            int games = in.readInt();
+            for(int i = 0; i < games; i ++) {
+                int gameId = in.readInt();
+                String answer = in.readUTF();
+                NumberGameVariant variant = new NumberGameVariant(in.readByte(), in.readByte(), in.readBoolean());
+                target.restoreGame(gameId, answer, variant, STATUSES[in.readByte()]);
+                int rounds = in.readInt();
+                try {
+                    for(int r = 0; r < rounds; r ++) {
+                        target.addRound(gameId, readSnapshotRound(in, variant));
+                    }
+                }
+                catch(GameNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            int expected = (int)checked.getChecksum().getValue();
+            if(in.readInt() != expected) {
+                throw new IOException("Corrupt snapshot " + snapshot);
+            }
+            return generation;
+        }
+    }
+
+    /**
+     * Frames a record with its length and checksum
+     */
+    private static ByteBuffer record(byte type, int gameId, RecordWriter body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeByte(type);
+        out.writeInt(gameId);
+        body.write(out);
+        out.writeInt(0);
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int length = record.capacity() - 8;
+        record.putInt(0, length);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, length);
+        record.putInt(record.capacity() - 4, (int)crc.getValue());
+        return record;
+    }
+
+    private static void writeCreate(DataOutputStream out, String answer, NumberGameVariant variant,
+                                    ENumberGameStatus status) throws IOException {
+        out.writeUTF(answer);
+        out.writeByte(variant.getAnswerLength());
+        out.writeByte(variant.getAlphabetSize());
+        out.writeBoolean(variant.isAllowDuplicates());
+        out.writeByte(status.ordinal());
+    }
+
+    private static void writeRound(DataOutputStream out, NumberGameRound round) throws IOException {
+        out.writeUTF(round.getGuess());
+        out.writeUTF(round.getGuessResult());
+        writeTimestamp(out, round.getTimestamp());
+    }
+
+    private static NumberGameRound readRound(DataInputStream in) throws IOException {
+        NumberGameRound round = new NumberGameRound(in.readUTF(), in.readUTF());
+        round.setTimestamp(readTimestamp(in));
+        return round;
+    }
+
+    private static void writeTimestamp(DataOutputStream out, LocalDateTime timestamp) throws IOException {
+        out.writeLong(timestamp == null ? NO_TIMESTAMP : timestamp.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(timestamp == null ? 0 : timestamp.getNano());
+    }
+
+    private static LocalDateTime readTimestamp(DataInputStream in) throws IOException {
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return seconds == NO_TIMESTAMP ? null : LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    /**
+     * Writes a round to a snapshot, packing its guess, result and timestamp into 18 bytes when
+     * they can be rebuilt exactly, the timestamp as nanoseconds since the epoch
+     */
+    private static void writeSnapshotRound(DataOutputStream out, NumberGameVariant variant, NumberGameRound round)
+            throws IOException {
+        String guess = round.getGuess();
+        int result = NumberGameScorer.parseResult(round.getGuessResult());
+        long code = variant.isValid() && guess != null && guess.length() == variant.getAnswerLength() ?
+                NumberGameCodec.encode(guess, variant.getAlphabetSize()) : -1;
+        if(code >= 0 && result >= 0 && result <= 0xFF && round.getTimestamp() != null &&
+                guess.equals(NumberGameCodec.decode(code, variant.getAlphabetSize(), variant.getAnswerLength()))) {
+            LocalDateTime timestamp = round.getTimestamp();
+            out.writeBoolean(true);
+            out.writeByte(result);
+            out.writeLong(code);
+            out.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + timestamp.getNano());
+        }
+        else {
+            out.writeBoolean(false);
+            writeRound(out, round);
+        }
+    }
+
+    private static NumberGameRound readSnapshotRound(DataInputStream in, NumberGameVariant variant) throws IOException {
+        if(!in.readBoolean()) {
+            return readRound(in);
+        }
+        int result = in.readUnsignedByte();
+        NumberGameRound round = new NumberGameRound(
+                NumberGameCodec.decode(in.readLong(), variant.getAlphabetSize(), variant.getAnswerLength()),
+                NumberGameScorer.resultString(result));
+        long time = in.readLong();
+        round.setTimestamp(LocalDateTime.ofEpochSecond(Math.floorDiv(time, 1_000_000_000L),
+                (int)Math.floorMod(time, 1_000_000_000L), ZoneOffset.UTC));
+        return round;
+    }
+
+    /**
+     * Applies a single record to a DAO, ignoring records for games it doesn't hold
+     */
+    private static void apply(NumberGameMemoryDao target, DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        int gameId = in.readInt();
+        try {
+            switch(type) {
+                case CREATE:
+                    String answer = in.readUTF();
+                    NumberGameVariant variant = new NumberGameVariant(in.readByte(), in.readByte(), in.readBoolean());
+                    target.restoreGame(gameId, answer, variant, STATUSES[in.readByte()]);
+                    break;
+                case ROUND:
+                    target.addRound(gameId, readRound(in));
+                    break;
+                case SOLVING_ROUND:
+                    target.applyGuess(gameId, readRound(in), true);
+                    break;
+                case STATUS:
+                    target.updateStatus(gameId, STATUSES[in.readByte()]);
+                    break;
+                case REMOVE:
+                    target.removeGame(gameId);
+                    break;
+                default:
+                    throw new IOException("Unknown journal record type " + type);
+            }
+        }
+        catch(GameNotFoundException e) {
+            // The game was removed earlier in the journal
+        }
+    }
+
+    /**
+     * Writes the body of a record
+     */
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * The state of a journal's games captured for a snapshot
+     */
+    static final class Checkpoint {
+        /**
+         * The generation of the first segment not covered by the snapshot
+         */
+        private final long generation;
+        /**
+         * The ID the next game created will be given, kept so IDs of removed games aren't given again
+         */
+        private final int nextGameId;
+        private final List<NumberGameInstance> games;
+        /**
+         * Views of the rounds of every game, in the same order as the games
+         */
+        private final List<List<NumberGameRound>> rounds;
+
+        private Checkpoint(long generation, int nextGameId, List<NumberGameInstance> games,
+                           List<List<NumberGameRound>> rounds) {
+            this.generation = generation;
+            this.nextGameId = nextGameId;
+            this.games = games;
+            this.rounds = rounds;
+        }
+    }
+}
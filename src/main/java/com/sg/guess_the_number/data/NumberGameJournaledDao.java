@@ -0,0 +1,368 @@
+package com.sg.guess_the_number.data;
+
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.models.game.NumberGameInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A NumberGameMemoryDao made durable by a write-ahead journal
+ *
+ * Every write is recorded in a NumberGameJournal before it is applied to the memory DAO,
+ * and the memory DAO is rebuilt from the journal when this DAO is constructed. Writes to
+ * the same game are serialized through a striped lock, so they are journaled in the order
+ * they are applied, while writes to different games are group committed together. Reads
+ * go straight to the memory DAO.
+ *
+ * A snapshot is taken every guess_the_number.memory.snapshot-millis if anything was
+ * journaled since the latest one, and when the DAO is closed, so recovery only replays
+ * the writes made since the latest snapshot.
+ *
+ * In the memory profile, setting guess_the_number.memory.journal to a path turns on the
+ * journal, which forces its records to the disk if guess_the_number.memory.sync is set.
+ */
+@Repository
+@Primary
+@Profile("memory")
+@ConditionalOnProperty(name = "guess_the_number.memory.journal")
+public class NumberGameJournaledDao implements NumberGameDao {
+    /**
+     * The number of lock stripes used to guard per game writes. Must be a power of two
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * The DAO holding the games
+     */
+    private final NumberGameMemoryDao games;
+    private final NumberGameJournal journal;
+    /**
+     * The locks guarding writes to games, indexed by game ID
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    /**
+     * Shared by writes, and held exclusively while a snapshot is checkpointed
+     */
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * The number of records replayed from the journal after the latest snapshot on construction
+     */
+    private final int recoveredRecords;
+
+    /**
+     * Constructs a NumberGameJournaledDao, rebuilding its games from the journal
+     * @param games The empty DAO to hold the games
+     * @param journalFile The path the journal's files are named after
+     * @param sync Whether records are forced to the disk before each write returns
+     * @param snapshotMillis The time between snapshots, or 0 to only snapshot on close
+     * @throws IOException thrown when the journal could not be read
+     */
+    @Autowired
+    public NumberGameJournaledDao(NumberGameMemoryDao games,
+                                  @Value("${guess_the_number.memory.journal}") String journalFile,
+                                  @Value("${guess_the_number.memory.sync:false}") boolean sync,
+                                  @Value("${guess_the_number.memory.snapshot-millis:60000}") long snapshotMillis) throws IOException {
+        this(games, Paths.get(journalFile), sync, snapshotMillis);
+    }
+
+    /**
+     * Constructs a NumberGameJournaledDao, rebuilding its games from the journal
+     * @param games The empty DAO to hold the games
+     * @param journalFile The path the journal's files are named after
+     * @param sync Whether records are forced to the disk before each write returns
+     * @param snapshotMillis The time between snapshots, or 0 to only snapshot on close
+     * @throws IOException thrown when the journal could not be read
+     */
+    public NumberGameJournaledDao(NumberGameMemoryDao games, Path journalFile, boolean sync,
+                                  long snapshotMillis) throws IOException {
+        this.games = games;
+        for(int i = 0; i < locks.length; i ++) {
+            locks[i] = new Object();
+        }
+        journal = new NumberGameJournal(journalFile, sync);
+        recoveredRecords = journal.recover(games);
+        if(snapshotMillis > 0) {
+            snapshotter.scheduleWithFixedDelay(() -> {
+                try {
+                    if(journal.appendedBytes() > 0) {
+                        snapshot();
+                    }
+                }
+                catch(IOException | RuntimeException e) {
+                    // Retried on the next run, the journal still holds every write
+                }
+            }, snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Takes a snapshot of every game, so recovery starts from it. Writes are only held
+     * back while the games are captured, not while the snapshot is written
+     * @throws IOException thrown when the snapshot could not be written
+     */
+    public void snapshot() throws IOException {
+        NumberGameJournal.Checkpoint checkpoint;
+        checkpointLock.writeLock().lock();
+        try {
+            checkpoint = journal.checkpoint(games);
+        }
+        finally {
+            checkpointLock.writeLock().unlock();
+        }
+        journal.writeSnapshot(checkpoint);
+    }
+
+    /**
+     * Retrieves the number of journal records replayed after the latest snapshot when the DAO was constructed
+     * @return The number of replayed records
+     */
+    public int getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    /**
+     * Takes a final snapshot and closes the journal
+     * @throws IOException thrown when the snapshot could not be written
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            snapshot();
+        }
+        finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Retrieves all games stored by the DAO
+     *
+     * @return ALl games stored by the DAO
+     */
+    @Override
+    public List<NumberGameInstance> getAllGames() {
+        return games.getAllGames();
+    }
+
+    /**
+     * Retrieves a page of games in ascending order of their ID
+     *
+     * @param afterId Only games with a greater ID than this are retrieved
+     * @param limit The most games to retrieve
+     * @param status Only games with this status are retrieved, or games of any status if it is null
+     * @return The retrieved games
+     */
+    @Override
+    public List<NumberGameInstance> getGames(int afterId, int limit, ENumberGameStatus status) {
+        return games.getGames(afterId, limit, status);
+    }
+
+    /**
+     * Streams every game along with its rounds, in ascending order of the game IDs
+     *
+     * @param handler Receives every game along with its rounds in the order they were played.
+     * The list of rounds is only valid until the handler returns
+     */
+    @Override
+    public void exportGames(BiConsumer<NumberGameInstance, List<NumberGameRound>> handler) {
+        games.exportGames(handler);
+    }
+
+    /**
+     * Retrieves a game associated with a given id
+     *
+     * @param id The ID of the game to retrieve
+     * @return The retrieved game
+     * @throws GameNotFoundException thrown when the gameId could not be associated with a stored game
+     */
+    @Override
+    public NumberGameInstance getGameById(int id) throws GameNotFoundException {
+        return games.getGameById(id);
+    }
+
+    /**
+     * Gets the rounds played for a given game
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @return A list of rounds played for the given game
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRounds(int gameId) throws GameNotFoundException {
+        return games.getGameRounds(gameId);
+    }
+
+    /**
+     * Gets the rounds played for a given game after a given round
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @param afterRound The number of the latest round already seen, or 0 to retrieve every round
+     * @return A list of the rounds played after the given round, in the order they were played
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRoundsAfter(int gameId, int afterRound) throws GameNotFoundException {
+        return games.getGameRoundsAfter(gameId, afterRound);
+    }
+
+    /**
+     * Creates a new game
+     *
+     * @param answer The answer to the game
+     * @param variant The rules of the game
+     * @param status The status to create the game with
+     * @return The ID of the created game
+     */
+    @Override
+    public int createGame(String answer, NumberGameVariant variant, ENumberGameStatus status) {
+        // Reserved first, so the game is journaled before it is stored
+        int gameId = games.reserveGameId();
+        try {
+            journaled(gameId, () -> {
+                journal.create(gameId, answer, variant, status);
+                games.restoreGame(gameId, answer, variant, status);
+                return null;
+            });
+        }
+        catch(GameNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+        return gameId;
+    }
+
+    /**
+     * Adds a round to the specified game
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public void addRound(int gameId, NumberGameRound round) throws GameNotFoundException {
+        journaled(gameId, () -> {
+            games.getGameById(gameId);
+            journal.round(gameId, round);
+            games.addRound(gameId, round);
+            return null;
+        });
+    }
+
+    /**
+     * Records a guess for a game as a single atomic step
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @param solved Whether the guess of the round solved the game
+     * @return Whether the round was added, or false if the game was no longer in progress
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public boolean applyGuess(int gameId, NumberGameRound round, boolean solved) throws GameNotFoundException {
+        return journaled(gameId, () -> {
+            if(games.getGameById(gameId).getStatus() != ENumberGameStatus.IN_PROGRESS) {
+                return false;
+            }
+            // One record either way, so a crash can't keep the solving round but lose the finish
+            if(solved) {
+                journal.solvingRound(gameId, round);
+            }
+            else {
+                journal.round(gameId, round);
+            }
+            return games.applyGuess(gameId, round, solved);
+        });
+    }
+
+    /**
+     * Updates the status for a given game
+     *
+     * @param gameId The ID of the game to update
+     * @param status The new status of the game
+     * @throws GameNotFoundException thrown when the given game id could not be associated with a stored game
+     */
+    @Override
+    public void updateStatus(int gameId, ENumberGameStatus status) throws GameNotFoundException {
+        journaled(gameId, () -> {
+            games.getGameById(gameId);
+            journal.status(gameId, status);
+            games.updateStatus(gameId, status);
+            return null;
+        });
+    }
+
+    /**
+     * Removes a game from the dao's underlying storage
+     *
+     * @param gameId The ID of the game to remove
+     */
+    @Override
+    public void removeGame(int gameId) throws GameNotFoundException {
+        journaled(gameId, () -> {
+            games.getGameById(gameId);
+            journal.remove(gameId);
+            games.removeGame(gameId);
+            return null;
+        });
+    }
+
+    /**
+     * Runs a journaled write to a game, under the game's lock
+     * @param gameId The ID of the game to write
+     * @param write The write, which checks that the game exists before journaling anything
+     * @return The result of the write
+     * @throws GameNotFoundException thrown when the game could not be found
+     */
+    private <T> T journaled(int gameId, JournaledWrite<T> write) throws GameNotFoundException {
+        checkpointLock.readLock().lock();
+        try {
+            synchronized(locks[gameId & (LOCK_STRIPES - 1)]) {
+                return write.run();
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * A write to a game and the journal
+     */
+    @FunctionalInterface
+    private interface JournaledWrite<T> {
+        T run() throws GameNotFoundException, IOException;
+    }
+}
@@ -0,0 +1,174 @@
+package com.sg.guess_the_number.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded cache keyed by game ID, evicting the least recently used entries
+ *
+ * Entries are spread over independently locked segments, each holding its share of the
+ * capacity in access order, so concurrent lookups of different games rarely contend.
+ * Every segment counts its invalidations, so a value loaded from storage can be put
+ * only if its game wasn't invalidated while it was being loaded, and a stale value
+ * never replaces a newer write.
+ *
+ * @param <V> The type of the cached values
+ */
+final class NumberGameLruCache<V> {
+    /**
+     * The number of segments, which must be a power of two
+     */
+    private static final int SEGMENTS = 16;
+
+    private final Segment<V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructs an empty NumberGameLruCache
+     * @param capacity The number of entries the cache holds at most
+     */
+    @SuppressWarnings("unchecked")
+    NumberGameLruCache(int capacity) {
+        segments = new Segment[SEGMENTS];
+        int perSegment = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for(int i = 0; i < SEGMENTS; i ++) {
+            segments[i] = new Segment<>(perSegment);
+        }
+    }
+
+    private Segment<V> segmentFor(int gameId) {
+        // Spread sequential IDs over every segment
+        int hash = gameId * 0x9E3779B9;
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Retrieves a cached value, counting the lookup as a hit or a miss
+     * @param gameId The ID of the game
+     * @return The cached value, or null if there is none
+     */
+    V get(int gameId) {
+        Segment<V> segment = segmentFor(gameId);
+        V value;
+        synchronized(segment) {
+            value = segment.entries.get(gameId);
+        }
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    /**
+     * Retrieves a cached value without counting the lookup
+     * @param gameId The ID of the game
+     * @return The cached value, or null if there is none
+     */
+    V peek(int gameId) {
+        Segment<V> segment = segmentFor(gameId);
+        synchronized(segment) {
+            return segment.entries.get(gameId);
+        }
+    }
+
+    /**
+     * Retrieves the invalidation stamp to pass to putIfCurrent, which must be taken before loading the value
+     * @param gameId The ID of the game
+     * @return The stamp of the game
+     */
+    long stamp(int gameId) {
+        Segment<V> segment = segmentFor(gameId);
+        synchronized(segment) {
+            return segment.invalidations;
+        }
+    }
+
+    /**
+     * Caches a loaded value, unless its game was invalidated since the stamp was taken
+     * @param gameId The ID of the game
+     * @param value The loaded value
+     * @param stamp The stamp taken before the value was loaded
+     */
+    void putIfCurrent(int gameId, V value, long stamp) {
+        Segment<V> segment = segmentFor(gameId);
+        synchronized(segment) {
+            if(segment.invalidations == stamp) {
+                segment.entries.putIfAbsent(gameId, value);
+            }
+        }
+    }
+
+    /**
+     * Caches a value written by the caller, replacing any cached value
+     * @param gameId The ID of the game
+     * @param value The written value
+     */
+    void put(int gameId, V value) {
+        Segment<V> segment = segmentFor(gameId);
+        synchronized(segment) {
+            segment.entries.put(gameId, value);
+        }
+    }
+
+    /**
+     * Removes a cached value, failing any load of it that is still in flight
+     * @param gameId The ID of the game
+     */
+    void invalidate(int gameId) {
+        Segment<V> segment = segmentFor(gameId);
+        synchronized(segment) {
+            segment.invalidations ++;
+            segment.entries.remove(gameId);
+        }
+    }
+
+    /**
+     * Retrieves the number of lookups that found a cached value
+     * @return The number of hits
+     */
+    long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Retrieves the number of lookups that found no cached value
+     * @return The number of misses
+     */
+    long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Retrieves the number of cached values
+     * @return The number of cached values
+     */
+    int size() {
+        int size = 0;
+        for(Segment<V> segment : segments) {
+            synchronized(segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * A share of the cache, guarded by its own monitor
+     */
+    private static final class Segment<V> {
+        private final Map<Integer, V> entries;
+        /**
+         * The number of invalidations in the segment so far
+         */
+        private long invalidations;
+
+        Segment(int capacity) {
+            entries = new LinkedHashMap<Integer, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, V> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,637 @@
+package com.sg.guess_the_number.data;
+
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.models.game.NumberGameInstance;
+import com.sg.guess_the_number.service.NumberGameScorer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiConsumer;
+
+/**
+ * A NumberGameDao storing games in memory-mapped files
+ *
+ * Games are fixed-width records in game segment files, found directly from their ID.
+ * Rounds are appended to round segment files, and each round points back at the round
+ * played before it in its game, so a game only records its latest round. Answers and
+ * guesses are packed with NumberGameCodec, and the few that can't be packed exactly are
+ * stored as text after their record. Storage grows by mapping another segment, without
+ * copying the existing ones, and the operating system pages segments in and out, so the
+ * games don't have to fit in the heap. The files are the storage: writes are persisted
+ * by the operating system even if the process crashes, and forced to the disk on close.
+ *
+ * Writes to a single game are serialized through a striped lock, while reads never lock.
+ * A game's status and latest round are mirrored in one word per game, held in an
+ * AtomicLongArray for each game segment and rebuilt from the records when the segment is
+ * mapped. Writers fill in the records first and then set the game's word, and readers
+ * get the word before reading the records it points at, so the word is the volatile
+ * access that publishes the records, and readers never see a half written game.
+ *
+ * Used by the mmap profile, storing its files in guess_the_number.mmap.directory.
+ */
+@Repository
+@Profile("mmap")
+public class NumberGameMappedDao implements NumberGameDao, Closeable {
+    /**
+     * The number of lock stripes used to guard per game writes. Must be a power of two
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    private static final int GAME_BYTES = 32;
+    private static final int GAMES_PER_SEGMENT = 1 << 16;
+    private static final int ROUND_SEGMENT_SHIFT = 26;
+    private static final int ROUND_SEGMENT_BYTES = 1 << ROUND_SEGMENT_SHIFT;
+    private static final int ROUND_BYTES = 32;
+    private static final int META_BYTES = 4096;
+    private static final int META_MAGIC = 0x4E474D44;
+
+    // Offsets within a game record
+    private static final int GAME_STATUS = 0;
+    private static final int GAME_ANSWER_LENGTH = 1;
+    private static final int GAME_ALPHABET_SIZE = 2;
+    private static final int GAME_ALLOW_DUPLICATES = 3;
+    private static final int GAME_IRREGULAR = 4;
+    private static final int GAME_ANSWER = 8;
+    private static final int GAME_LATEST_ROUND = 16;
+
+    // Offsets within a round record
+    private static final int ROUND_NUMBER = 0;
+    private static final int ROUND_RESULT = 4;
+    private static final int ROUND_IRREGULAR = 5;
+    private static final int ROUND_TEXT_LENGTH = 6;
+    private static final int ROUND_PREVIOUS = 8;
+    private static final int ROUND_GUESS = 16;
+    private static final int ROUND_TIME = 24;
+
+    // Offsets within the meta file
+    private static final int META_MAGIC_OFFSET = 0;
+    private static final int META_NEXT_GAME_ID = 4;
+    private static final int META_ROUND_POSITION = 8;
+
+    /**
+     * The status byte of a game record that was never written
+     */
+    private static final byte EMPTY = 0;
+    /**
+     * The status byte of a removed game
+     */
+    private static final byte REMOVED = -1;
+    /**
+     * The timestamp stored for rounds without one
+     */
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final ENumberGameStatus[] STATUSES = ENumberGameStatus.values();
+    /**
+     * The status byte is stored in the top byte of a game's published word, and the
+     * address of its latest round plus one in the rest
+     */
+    private static final int PUBLISHED_STATUS_SHIFT = 56;
+    private static final long PUBLISHED_ROUND_MASK = (1L << PUBLISHED_STATUS_SHIFT) - 1;
+
+    private final Path directory;
+    private final MappedByteBuffer meta;
+    /**
+     * The mapped game and round segments. Growing copies the arrays, never the segments
+     */
+    private volatile GameSegment[] gameSegments = new GameSegment[0];
+    private volatile MappedByteBuffer[] roundSegments = new MappedByteBuffer[0];
+    /**
+     * Guards assigning game IDs, reserving round space and mapping segments
+     */
+    private final Object allocationLock = new Object();
+    /**
+     * The ID the next game is created with. Its segment is mapped before it is raised, so readers don't lock
+     */
+    private volatile int nextGameId;
+    private long roundPosition;
+    /**
+     * The locks guarding writes to games, indexed by game ID
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Constructs a NumberGameMappedDao, opening the games already stored in a directory
+     * @param directory The directory to store the files in
+     * @throws IOException thrown when the files could not be opened
+     */
+    @Autowired
+    public NumberGameMappedDao(@Value("${guess_the_number.mmap.directory:data/mmap}") String directory) throws IOException {
+        this(Paths.get(directory));
+    }
+
+    /**
+     * Constructs a NumberGameMappedDao, opening the games already stored in a directory
+     * @param directory The directory to store the files in
+     * @throws IOException thrown when the files could not be opened
+     */
+    public NumberGameMappedDao(Path directory) throws IOException {
+        this.directory = directory;
+        for(int i = 0; i < locks.length; i ++) {
+            locks[i] = new Object();
+        }
+        Files.createDirectories(directory);
+        meta = map(directory.resolve("meta"), META_BYTES);
+        if(meta.getInt(META_MAGIC_OFFSET) != META_MAGIC) {
+            meta.putInt(META_NEXT_GAME_ID, 1);
+            meta.putLong(META_ROUND_POSITION, 0);
+            meta.putInt(META_MAGIC_OFFSET, META_MAGIC);
+        }
+        nextGameId = meta.getInt(META_NEXT_GAME_ID);
+        roundPosition = meta.getLong(META_ROUND_POSITION);
+        synchronized(allocationLock) {
+            if(nextGameId > 1) {
+                gameSegment(nextGameId - 1);
+            }
+            if(roundPosition > 0) {
+                roundSegment(roundPosition - 1);
+            }
+        }
+    }
+
+    /**
+     * Forces every segment to the disk
+     */
+    @Override
+    @PreDestroy
+    public void close() {
+        meta.force();
+        for(GameSegment segment : gameSegments) {
+            segment.records.force();
+        }
+        for(MappedByteBuffer segment : roundSegments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Retrieves all games stored by the DAO
+     *
+     * @return ALl games stored by the DAO
+     */
+    @Override
+    public List<NumberGameInstance> getAllGames() {
+        return getGames(0, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Retrieves a page of games in ascending order of their ID, scanning the game records from afterId
+     *
+     * @param afterId Only games with a greater ID than this are retrieved
+     * @param limit The most games to retrieve
+     * @param status Only games with this status are retrieved, or games of any status if it is null
+     * @return The retrieved games
+     */
+    @Override
+    public List<NumberGameInstance> getGames(int afterId, int limit, ENumberGameStatus status) {
+        List<NumberGameInstance> result = new ArrayList<>();
+        int last = lastGameId();
+        for(int gameId = Math.max(afterId, 0) + 1; gameId <= last && result.size() < limit; gameId ++) {
+            NumberGameInstance game = readGame(gameId);
+            if(game != null && (status == null || game.getStatus() == status)) {
+                result.add(game);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Streams every game along with its rounds, in ascending order of the game IDs
+     *
+     * @param handler Receives every game along with its rounds in the order they were played
+     */
+    @Override
+    public void exportGames(BiConsumer<NumberGameInstance, List<NumberGameRound>> handler) {
+        int last = lastGameId();
+        for(int gameId = 1; gameId <= last; gameId ++) {
+            NumberGameInstance game = readGame(gameId);
+            if(game != null) {
+                handler.accept(game, readRounds(gameId, game.getVariant(), 0));
+            }
+        }
+    }
+
+    /**
+     * Retrieves a game associated with a given id
+     *
+     * @param id The ID of the game to retrieve
+     * @return The retrieved game
+     * @throws GameNotFoundException thrown when the gameId could not be associated with a stored game
+     */
+    @Override
+    public NumberGameInstance getGameById(int id) throws GameNotFoundException {
+        NumberGameInstance game = id > 0 && id <= lastGameId() ? readGame(id) : null;
+        if(game == null) {
+            throw new GameNotFoundException(id);
+        }
+        return game;
+    }
+
+    /**
+     * Gets the rounds played for a given game
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @return A read-only list of rounds played for the given game
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRounds(int gameId) throws GameNotFoundException {
+        return readRounds(gameId, getGameById(gameId).getVariant(), 0);
+    }
+
+    /**
+     * Gets the rounds played for a given game after a given round
+     *
+     * Rounds are linked from the latest one back, so only the rounds after the given one are read.
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @param afterRound The number of the latest round already seen, or 0 to retrieve every round
+     * @return A read-only list of the rounds played after the given round, in the order they were played
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRoundsAfter(int gameId, int afterRound) throws GameNotFoundException {
+        return readRounds(gameId, getGameById(gameId).getVariant(), Math.max(0, afterRound));
+    }
+
+    /**
+     * Creates a new game
+     *
+     * @param answer The answer to the game
+     * @param variant The rules of the game
+     * @param status The status to create the game with
+     * @return The ID of the created game
+     */
+    @Override
+    public int createGame(String answer, NumberGameVariant variant, ENumberGameStatus status) {
+        long code = variant.isValid() ? NumberGameCodec.encode(answer, variant.getAlphabetSize()) : -1;
+        boolean packed = code >= 0 && answer.equals(NumberGameCodec.decode(code,
+                variant.getAlphabetSize(), variant.getAnswerLength()));
+        int gameId;
+        synchronized(allocationLock) {
+            gameId = nextGameId;
+            gameSegment(gameId);
+            nextGameId = gameId + 1;
+            meta.putInt(META_NEXT_GAME_ID, nextGameId);
+        }
+        if(!packed) {
+            code = appendRecord(0, (byte)0, null, 0, NO_TIMESTAMP, -1, answer, null);
+        }
+        ByteBuffer segment = gameSegment(gameId).records;
+        int offset = gameOffset(gameId);
+        segment.put(offset + GAME_ANSWER_LENGTH, (byte)variant.getAnswerLength());
+        segment.put(offset + GAME_ALPHABET_SIZE, (byte)variant.getAlphabetSize());
+        segment.put(offset + GAME_ALLOW_DUPLICATES, (byte)(variant.isAllowDuplicates() ? 1 : 0));
+        segment.put(offset + GAME_IRREGULAR, (byte)(packed ? 0 : 1));
+        segment.putLong(offset + GAME_ANSWER, code);
+        publish(gameId, (byte)(status.ordinal() + 1), 0);
+        return gameId;
+    }
+
+    /**
+     * Adds a round to the specified game
+     *
+     * @param gameId The ID of the game to add a round to
+     * @param round  The round to add to the game
+     * @throws GameNotFoundException thrown when the game ID could not be associated with a stored game
+     */
+    @Override
+    public void addRound(int gameId, NumberGameRound round) throws GameNotFoundException {
+        synchronized(lockFor(gameId)) {
+            appendRound(gameId, getGameById(gameId).getVariant(), round);
+        }
+    }
+
+    /**
+     * Records a guess for a game as a single atomic step
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @param solved Whether the guess of the round solved the game
+     * @return Whether the round was added, or false if the game was no longer in progress
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public boolean applyGuess(int gameId, NumberGameRound round, boolean solved) throws GameNotFoundException {
+        synchronized(lockFor(gameId)) {
+            NumberGameInstance game = getGameById(gameId);
+            if(game.getStatus() != ENumberGameStatus.IN_PROGRESS) {
+                return false;
+            }
+            appendRound(gameId, game.getVariant(), round);
+            if(solved) {
+                publishStatus(gameId, (byte)(ENumberGameStatus.FINISHED.ordinal() + 1));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Updates the status for a given game
+     *
+     * @param gameId The ID of the game to update
+     * @param status The new status of the game
+     * @throws GameNotFoundException thrown when the given game id could not be associated with a stored game
+     */
+    @Override
+    public void updateStatus(int gameId, ENumberGameStatus status) throws GameNotFoundException {
+        synchronized(lockFor(gameId)) {
+            getGameById(gameId);
+            publishStatus(gameId, (byte)(status.ordinal() + 1));
+        }
+    }
+
+    /**
+     * Removes a game from the dao's underlying storage. Its records stay in their segments, marked as removed
+     *
+     * @param gameId The ID of the game to remove
+     */
+    @Override
+    public void removeGame(int gameId) throws GameNotFoundException {
+        synchronized(lockFor(gameId)) {
+            getGameById(gameId);
+            publishStatus(gameId, REMOVED);
+        }
+    }
+
+    /**
+     * Appends a round to a game, publishing it as the game's latest round. Called with the game's lock held
+     */
+    private void appendRound(int gameId, NumberGameVariant variant, NumberGameRound round) {
+        long word = gameSegment(gameId).published.get(gameIndex(gameId));
+        long previous = (word & PUBLISHED_ROUND_MASK) - 1;
+        int roundNumber = previous < 0 ? 1 : roundAt(previous).getInt(roundOffset(previous) + ROUND_NUMBER) + 1;
+
+        String guess = round.getGuess();
+        int result = NumberGameScorer.parseResult(round.getGuessResult());
+        long code = variant.isValid() && guess != null && guess.length() == variant.getAnswerLength() ?
+                NumberGameCodec.encode(guess, variant.getAlphabetSize()) : -1;
+        boolean packed = code >= 0 && result >= 0 && result <= 0xFF &&
+                guess.equals(NumberGameCodec.decode(code, variant.getAlphabetSize(), variant.getAnswerLength()));
+        LocalDateTime timestamp = round.getTimestamp();
+        long time = timestamp == null ? NO_TIMESTAMP :
+                timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + timestamp.getNano();
+        long address = packed ?
+                appendRecord(roundNumber, (byte)result, null, code, time, previous, null, null) :
+                appendRecord(roundNumber, (byte)0, round, 0, time, previous, guess, round.getGuessResult());
+        publish(gameId, (byte)(word >>> PUBLISHED_STATUS_SHIFT), address + 1);
+    }
+
+    /**
+     * Changes the status of a game, keeping its latest round. Called with the game's lock held
+     */
+    private void publishStatus(int gameId, byte status) {
+        long word = gameSegment(gameId).published.get(gameIndex(gameId));
+        publish(gameId, status, word & PUBLISHED_ROUND_MASK);
+    }
+
+    /**
+     * Writes a game's status and latest round to its record, then publishes them in the game's
+     * word, making every record written before visible to readers that see the word
+     * @param latestRound The address of the game's latest round plus one, or 0 if it has none
+     */
+    private void publish(int gameId, byte status, long latestRound) {
+        GameSegment segment = gameSegment(gameId);
+        int offset = gameOffset(gameId);
+        segment.records.putLong(offset + GAME_LATEST_ROUND, latestRound);
+        segment.records.put(offset + GAME_STATUS, status);
+        segment.published.set(gameIndex(gameId), ((long)(status & 0xFF) << PUBLISHED_STATUS_SHIFT) | latestRound);
+    }
+
+    /**
+     * Appends a record to the round segments, followed by its text if it has any
+     * @return The address of the record
+     */
+    private long appendRecord(int roundNumber, byte result, NumberGameRound irregular, long guessCode, long time,
+                              long previous, String first, String second) {
+        byte[] firstBytes = first == null ? new byte[0] : first.getBytes(StandardCharsets.UTF_8);
+        byte[] secondBytes = second == null ? new byte[0] : second.getBytes(StandardCharsets.UTF_8);
+        int textLength = first == null && second == null ? 0 : 4 + firstBytes.length + secondBytes.length;
+        int length = (ROUND_BYTES + textLength + 7) & ~7;
+        if(length > ROUND_SEGMENT_BYTES || firstBytes.length > Short.MAX_VALUE || secondBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Round is too large to store");
+        }
+        long address;
+        synchronized(allocationLock) {
+            // Records never span two segments
+            if((roundPosition & (ROUND_SEGMENT_BYTES - 1)) + length > ROUND_SEGMENT_BYTES) {
+                roundPosition = (roundPosition | (ROUND_SEGMENT_BYTES - 1)) + 1;
+            }
+            address = roundPosition;
+            roundPosition += length;
+            meta.putLong(META_ROUND_POSITION, roundPosition);
+            roundSegment(address);
+        }
+        ByteBuffer segment = roundAt(address);
+        int offset = roundOffset(address);
+        segment.putInt(offset + ROUND_NUMBER, roundNumber);
+        segment.put(offset + ROUND_RESULT, result);
+        segment.put(offset + ROUND_IRREGULAR, (byte)(irregular != null || first != null ? 1 : 0));
+        segment.putShort(offset + ROUND_TEXT_LENGTH, (short)textLength);
+        segment.putLong(offset + ROUND_PREVIOUS, previous);
+        segment.putLong(offset + ROUND_GUESS, guessCode);
+        segment.putLong(offset + ROUND_TIME, time);
+        if(textLength > 0) {
+            int text = offset + ROUND_BYTES;
+            segment.putShort(text, (short)firstBytes.length);
+            segment.putShort(text + 2, (short)(second == null ? -1 : secondBytes.length));
+            for(int i = 0; i < firstBytes.length; i ++) {
+                segment.put(text + 4 + i, firstBytes[i]);
+            }
+            for(int i = 0; i < secondBytes.length; i ++) {
+                segment.put(text + 4 + firstBytes.length + i, secondBytes[i]);
+            }
+        }
+        return address;
+    }
+
+    /**
+     * Reads a game from its record
+     * @return The game, or null if there is no game with the ID
+     */
+    private NumberGameInstance readGame(int gameId) {
+        GameSegment mapped = gameSegment(gameId);
+        byte status = (byte)(mapped.published.get(gameIndex(gameId)) >>> PUBLISHED_STATUS_SHIFT);
+        if(status == EMPTY || status == REMOVED) {
+            return null;
+        }
+        ByteBuffer segment = mapped.records;
+        int offset = gameOffset(gameId);
+        int answerLength = segment.get(offset + GAME_ANSWER_LENGTH);
+        int alphabetSize = segment.get(offset + GAME_ALPHABET_SIZE);
+        long answer = segment.getLong(offset + GAME_ANSWER);
+        NumberGameInstance game = new NumberGameInstance();
+        game.setGameId(gameId);
+        game.setAnswer(segment.get(offset + GAME_IRREGULAR) != 0 ? readText(answer, 0) :
+                NumberGameCodec.decode(answer, alphabetSize, answerLength));
+        game.setStatus(STATUSES[status - 1]);
+        game.setVariant(new NumberGameVariant(answerLength, alphabetSize, segment.get(offset + GAME_ALLOW_DUPLICATES) != 0));
+        return game;
+    }
+
+    /**
+     * Reads the rounds of a game after a given round by walking back from its latest round
+     * @return A read-only list of the rounds in the order they were played
+     */
+    private List<NumberGameRound> readRounds(int gameId, NumberGameVariant variant, int afterRound) {
+        long address = (gameSegment(gameId).published.get(gameIndex(gameId)) & PUBLISHED_ROUND_MASK) - 1;
+        if(address < 0) {
+            return Collections.emptyList();
+        }
+        NumberGameRound[] rounds = new NumberGameRound[Math.max(0,
+                roundAt(address).getInt(roundOffset(address) + ROUND_NUMBER) - afterRound)];
+        for(int i = rounds.length - 1; i >= 0; i --) {
+            ByteBuffer segment = roundAt(address);
+            int offset = roundOffset(address);
+            NumberGameRound round;
+            if(segment.get(offset + ROUND_IRREGULAR) != 0) {
+                round = new NumberGameRound(readText(address, 0), readText(address, 1));
+            }
+            else {
+                round = new NumberGameRound(NumberGameCodec.decode(segment.getLong(offset + ROUND_GUESS),
+                        variant.getAlphabetSize(), variant.getAnswerLength()),
+                        NumberGameScorer.resultString(segment.get(offset + ROUND_RESULT) & 0xFF));
+            }
+            long time = segment.getLong(offset + ROUND_TIME);
+            round.setTimestamp(time == NO_TIMESTAMP ? null : LocalDateTime.ofEpochSecond(
+                    Math.floorDiv(time, 1_000_000_000L), (int)Math.floorMod(time, 1_000_000_000L), ZoneOffset.UTC));
+            rounds[i] = round;
+            address = segment.getLong(offset + ROUND_PREVIOUS);
+        }
+        return Collections.unmodifiableList(Arrays.asList(rounds));
+    }
+
+    /**
+     * Reads one of the two texts stored after a record
+     * @return The text, or null if it was null when stored
+     */
+    private String readText(long address, int index) {
+        ByteBuffer segment = roundAt(address);
+        int text = roundOffset(address) + ROUND_BYTES;
+        int firstLength = segment.getShort(text);
+        int length = index == 0 ? firstLength : segment.getShort(text + 2);
+        if(length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        int start = text + 4 + (index == 0 ? 0 : firstLength);
+        for(int i = 0; i < length; i ++) {
+            bytes[i] = segment.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int lastGameId() {
+        return nextGameId - 1;
+    }
+
+    private Object lockFor(int gameId) {
+        return locks[gameId & (LOCK_STRIPES - 1)];
+    }
+
+    private static int gameIndex(int gameId) {
+        return (gameId - 1) % GAMES_PER_SEGMENT;
+    }
+
+    private static int gameOffset(int gameId) {
+        return gameIndex(gameId) * GAME_BYTES;
+    }
+
+    private static int roundOffset(long address) {
+        return (int)(address & (ROUND_SEGMENT_BYTES - 1));
+    }
+
+    private ByteBuffer roundAt(long address) {
+        return roundSegments[(int)(address >>> ROUND_SEGMENT_SHIFT)];
+    }
+
+    /**
+     * Retrieves the segment holding a game's record, mapping it and any before it if they aren't yet.
+     * Only games with an assigned ID may be mapped
+     */
+    private GameSegment gameSegment(int gameId) {
+        int index = (gameId - 1) / GAMES_PER_SEGMENT;
+        GameSegment[] segments = gameSegments;
+        if(index < segments.length) {
+            return segments[index];
+        }
+        synchronized(allocationLock) {
+            segments = gameSegments;
+            if(index >= segments.length) {
+                GameSegment[] grown = Arrays.copyOf(segments, index + 1);
+                for(int i = segments.length; i <= index; i ++) {
+                    grown[i] = new GameSegment(map(directory.resolve("games." + i), GAMES_PER_SEGMENT * GAME_BYTES));
+                }
+                gameSegments = segments = grown;
+            }
+            return segments[index];
+        }
+    }
+
+    /**
+     * Maps the round segments up to the one holding an address, if they aren't yet. Called with allocationLock held
+     */
+    private void roundSegment(long address) {
+        int index = (int)(address >>> ROUND_SEGMENT_SHIFT);
+        MappedByteBuffer[] segments = roundSegments;
+        if(index >= segments.length) {
+            MappedByteBuffer[] grown = Arrays.copyOf(segments, index + 1);
+            for(int i = segments.length; i <= index; i ++) {
+                grown[i] = map(directory.resolve("rounds." + i), ROUND_SEGMENT_BYTES);
+            }
+            roundSegments = grown;
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, int size) {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A mapped game segment, along with the published word of every game in it
+     */
+    private static final class GameSegment {
+        private final MappedByteBuffer records;
+        private final AtomicLongArray published = new AtomicLongArray(GAMES_PER_SEGMENT);
+
+        /**
+         * Rebuilds the published words from the status and latest round stored in each record
+         */
+        GameSegment(MappedByteBuffer records) {
+            this.records = records;
+            for(int i = 0; i < GAMES_PER_SEGMENT; i ++) {
+                int offset = i * GAME_BYTES;
+                byte status = records.get(offset + GAME_STATUS);
+                if(status != EMPTY) {
+                    published.lazySet(i, ((long)(status & 0xFF) << PUBLISHED_STATUS_SHIFT) |
+                            records.getLong(offset + GAME_LATEST_ROUND));
+                }
+            }
+        }
+    }
+}
@@ -1,30 +1,65 @@
 package com.sg.guess_the_number.data;
 
 import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameVariant;
 import com.sg.guess_the_number.models.game.NumberGameInstance;
 import com.sg.guess_the_number.models.NumberGameRound;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
 
 /**
  * The in memory implementation of NumberGameDao
+ *
+ * Games are kept in a concurrent map keyed by their ID, so IDs stay stable after
+ * other games are removed. Writes to a single game are serialized through a
+ * striped lock, while reads never block. Rounds are kept in an append-only log
+ * per game, so reading them returns an ordered view rather than a copy.
  */
 @Repository
 @Profile("memory")
 public class NumberGameMemoryDao implements NumberGameDao {
     /**
-     * The games stored by the DAO
+     * The number of lock stripes used to guard per game writes. Must be a power of two
      */
-    private List<NumberGameInstance> games = new ArrayList<>();
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * The games stored by the DAO, ordered by their ID
+     */
+    private final ConcurrentNavigableMap<Integer, GameEntry> games = new ConcurrentSkipListMap<>();
+    /**
+     * The source of new game IDs
+     */
+    private final NumberGameIdAllocator ids;
+    /**
+     * The locks guarding writes to games, indexed by game ID
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
     /**
-     * The rounds stored for each game in the DAO
+     * Constructs an empty NumberGameMemoryDao, giving games consecutive IDs from 1
      */
-    private HashMap<Integer, List<NumberGameRound>> gameRounds = new HashMap<>();
+    public NumberGameMemoryDao() {
+        this(new NumberGameCountingIdAllocator());
+    }
+
+    /**
+     * Constructs an empty NumberGameMemoryDao
+     * @param ids The source of new game IDs
+     */
+    public NumberGameMemoryDao(NumberGameIdAllocator ids) {
+        this.ids = ids;
+        for(int i = 0; i < locks.length; i ++) {
+            locks[i] = new Object();
+        }
+    }
+
     /**
      * Retrieves all games stored by the DAO
      *
@@ -32,7 +67,51 @@ public class NumberGameMemoryDao implements NumberGameDao {
      */
     @Override
     public List<NumberGameInstance> getAllGames() {
-        return games;
+        List<NumberGameInstance> result = new ArrayList<>();
+        for(GameEntry entry : games.values()) {
+            result.add(entry.snapshot());
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves a page of games in ascending order of their ID
+     *
+     * @param afterId Only games with a greater ID than this are retrieved
+     * @param limit The most games to retrieve
+     * @param status Only games with this status are retrieved, or games of any status if it is null
+     * @return The retrieved games
+     */
+    @Override
+    public List<NumberGameInstance> getGames(int afterId, int limit, ENumberGameStatus status) {
+        List<NumberGameInstance> result = new ArrayList<>();
+        if(limit <= 0) {
+            return result;
+        }
+        for(GameEntry entry : games.tailMap(afterId, false).values()) {
+            if(status == null || entry.status == status) {
+                result.add(entry.snapshot());
+                if(result.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Streams every game along with its rounds, in ascending order of the game IDs
+     *
+     * Games are walked with the map's weakly consistent iterator, so games created or
+     * removed during the export may or may not be included, and no copy of the map is made.
+     *
+     * @param handler Receives every game along with its rounds in the order they were played
+     */
+    @Override
+    public void exportGames(BiConsumer<NumberGameInstance, List<NumberGameRound>> handler) {
+        for(GameEntry entry : games.values()) {
+            handler.accept(entry.snapshot(), entry.rounds.view());
+        }
     }
 
     /**
@@ -44,8 +123,7 @@ public class NumberGameMemoryDao implements NumberGameDao {
      */
     @Override
     public NumberGameInstance getGameById(int id) throws GameNotFoundException {
-        checkGameIdBounds(id);
-        return games.get(id - 1);
+        return getEntry(id).snapshot();
     }
 
     /**
@@ -57,26 +135,92 @@ public class NumberGameMemoryDao implements NumberGameDao {
      */
     @Override
     public List<NumberGameRound> getGameRounds(int gameId) throws GameNotFoundException {
-        checkGameIdBounds(gameId);
-        return gameRounds.get(gameId);
+        return getEntry(gameId).rounds.view();
+    }
+
+    /**
+     * Gets the rounds played for a given game after a given round
+     *
+     * The rounds are a view of the game's round log from the given round on, so nothing is copied.
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @param afterRound The number of the latest round already seen, or 0 to retrieve every round
+     * @return A list of the rounds played after the given round, in the order they were played
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRoundsAfter(int gameId, int afterRound) throws GameNotFoundException {
+        return getEntry(gameId).rounds.viewAfter(afterRound);
     }
 
     /**
      * Creates a new game
      *
      * @param answer The answer to the game
+     * @param variant The rules of the game
      * @param status The status to create the game with
      * @return The ID of the created game
      */
     @Override
-    public int createGame(String answer, ENumberGameStatus status) {
-        NumberGameInstance game = new NumberGameInstance();
-        game.setGameId(games.size() + 1);
-        game.setStatus(ENumberGameStatus.IN_PROGRESS);
-        game.setAnswer(answer);
-        games.add(game);
-        gameRounds.put(game.getGameId(), new ArrayList<>());
-        return game.getGameId();
+    public int createGame(String answer, NumberGameVariant variant, ENumberGameStatus status) {
+        int gameId = ids.nextId();
+        games.put(gameId, new GameEntry(gameId, answer, variant, status));
+        return gameId;
+    }
+
+    /**
+     * Creates several games with the same rules, taking all of their IDs at once
+     *
+     * @param answers The answers to the games
+     * @param variant The rules of every game
+     * @param status The status to create every game with
+     * @return The IDs of the created games, in the order of their answers
+     */
+    @Override
+    public int[] createGames(List<String> answers, NumberGameVariant variant, ENumberGameStatus status) {
+        int[] gameIds = ids.nextIds(answers.size());
+        for(int i = 0; i < gameIds.length; i ++) {
+            games.put(gameIds[i], new GameEntry(gameIds[i], answers.get(i), variant, status));
+        }
+        return gameIds;
+    }
+
+    /**
+     * Stores a game under an ID assigned elsewhere, such as when restoring games from a journal.
+     * Games created afterwards are given greater IDs
+     *
+     * @param gameId The ID of the game
+     * @param answer The answer to the game
+     * @param variant The rules of the game
+     * @param status The status of the game
+     */
+    public void restoreGame(int gameId, String answer, NumberGameVariant variant, ENumberGameStatus status) {
+        games.put(gameId, new GameEntry(gameId, answer, variant, status));
+        advanceGameIds(gameId + 1);
+    }
+
+    /**
+     * Reserves the ID of a game to be stored with restoreGame, which no game created afterwards is given
+     * @return The reserved ID
+     */
+    public int reserveGameId() {
+        return ids.nextId();
+    }
+
+    /**
+     * Retrieves the ID the next game created will be given, unless more IDs are reserved first
+     * @return The next game ID
+     */
+    public int getNextGameId() {
+        return ids.peekNextId();
+    }
+
+    /**
+     * Makes sure games created afterwards are given IDs of at least a given ID
+     * @param gameId The least ID to give games created afterwards
+     */
+    public void advanceGameIds(int gameId) {
+        ids.advance(gameId);
     }
 
     /**
@@ -88,9 +232,34 @@ public class NumberGameMemoryDao implements NumberGameDao {
      */
     @Override
     public void addRound(int gameId, NumberGameRound round) throws GameNotFoundException {
-        checkGameIdBounds(gameId);
-        gameRounds.get(gameId).add(round);
-        gameRounds.get(gameId).sort(Comparator.comparing(NumberGameRound::getTimestamp));
+        GameEntry entry = getEntry(gameId);
+        synchronized(lockFor(gameId)) {
+            entry.rounds.append(round);
+        }
+    }
+
+    /**
+     * Records a guess for a game as a single atomic step
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @param solved Whether the guess of the round solved the game
+     * @return Whether the round was added, or false if the game was no longer in progress
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public boolean applyGuess(int gameId, NumberGameRound round, boolean solved) throws GameNotFoundException {
+        GameEntry entry = getEntry(gameId);
+        synchronized(lockFor(gameId)) {
+            if(entry.status != ENumberGameStatus.IN_PROGRESS) {
+                return false;
+            }
+            entry.rounds.append(round);
+            if(solved) {
+                entry.status = ENumberGameStatus.FINISHED;
+            }
+        }
+        return true;
     }
 
     /**
@@ -102,8 +271,10 @@ public class NumberGameMemoryDao implements NumberGameDao {
      */
     @Override
     public void updateStatus(int gameId, ENumberGameStatus status) throws GameNotFoundException {
-        checkGameIdBounds(gameId);
-        games.get(gameId - 1).setStatus(status);
+        GameEntry entry = getEntry(gameId);
+        synchronized(lockFor(gameId)) {
+            entry.status = status;
+        }
     }
 
     /**
@@ -113,20 +284,78 @@ public class NumberGameMemoryDao implements NumberGameDao {
      */
     @Override
     public void removeGame(int gameId) throws GameNotFoundException {
-        checkGameIdBounds(gameId);
-        games.remove(gameId - 1);
-        gameRounds.remove(gameId);
+        if(games.remove(gameId) == null) {
+            throw new GameNotFoundException(gameId);
+        }
     }
 
     /**
-     * Validates a given ID and ensures that it is within the bounds of the DAO's storage
-     * @param id The ID to validate
+     * Retrieves the stored entry for a given game ID
+     * @param id The ID of the game to retrieve
+     * @return The stored entry of the game
      * @throws GameNotFoundException thrown when the ID was invalid
      */
-    private void checkGameIdBounds(int id) throws GameNotFoundException {
-        assert games.size() == gameRounds.size();
-        if((id - 1) < 0 || (id) > games.size()) {
+    private GameEntry getEntry(int id) throws GameNotFoundException {
+        GameEntry entry = games.get(id);
+        if(entry == null) {
             throw new GameNotFoundException(id);
         }
+        return entry;
+    }
+
+    /**
+     * Retrieves the lock stripe guarding writes to a given game
+     * @param gameId The ID of the game to lock
+     * @return The lock guarding the game
+     */
+    private Object lockFor(int gameId) {
+        return locks[gameId & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * The mutable state stored for a single game
+     *
+     * The answer is packed with NumberGameCodec and the variant is kept as primitive fields,
+     * so an entry holds no strings or variant objects of its own.
+     */
+    private static final class GameEntry {
+        private final int gameId;
+        private final long answerCode;
+        /**
+         * The answer, only kept when it couldn't be packed with the game's variant
+         */
+        private final String irregularAnswer;
+        private final byte answerLength;
+        private final byte alphabetSize;
+        private final boolean allowDuplicates;
+        private volatile ENumberGameStatus status;
+        private final NumberGameRoundLog rounds;
+
+        GameEntry(int gameId, String answer, NumberGameVariant variant, ENumberGameStatus status) {
+            this.gameId = gameId;
+            this.answerLength = (byte)variant.getAnswerLength();
+            this.alphabetSize = (byte)variant.getAlphabetSize();
+            this.allowDuplicates = variant.isAllowDuplicates();
+            this.status = status;
+            this.rounds = new NumberGameRoundLog(variant);
+            long code = variant.isValid() ? NumberGameCodec.encode(answer, alphabetSize) : -1;
+            boolean packed = code >= 0 && answer.equals(NumberGameCodec.decode(code, alphabetSize, answerLength));
+            this.answerCode = packed ? code : -1;
+            this.irregularAnswer = packed ? null : answer;
+        }
+
+        /**
+         * Creates a detached copy of the game, so callers can't modify the stored state
+         * @return A copy of the game
+         */
+        NumberGameInstance snapshot() {
+            NumberGameInstance instance = new NumberGameInstance();
+            instance.setGameId(gameId);
+            instance.setAnswer(irregularAnswer != null ? irregularAnswer :
+                    NumberGameCodec.decode(answerCode, alphabetSize, answerLength));
+            instance.setStatus(status);
+            instance.setVariant(new NumberGameVariant(answerLength, alphabetSize, allowDuplicates));
+            return instance;
+        }
     }
 }
@@ -0,0 +1,210 @@
+package com.sg.guess_the_number.data;
+
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.service.NumberGameScorer;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An append-only log of the rounds played for a single game
+ *
+ * Every appended round is assigned the next sequence number of the log, starting at 1,
+ * which defines the order of the rounds. Appends must be serialized by the caller, while
+ * reads may happen concurrently with appends and never copy the stored rounds.
+ *
+ * Rounds are stored in primitive columns rather than as objects: the timestamp as
+ * nanoseconds since the epoch, the guess packed with NumberGameCodec using the game's
+ * alphabet, and the result as its result code in a byte, about 17 bytes per round.
+ * Rounds are only rebuilt as objects when they are read. Rounds that can't be packed,
+ * such as guesses that are not valid for the game, are kept as objects on the side.
+ */
+public final class NumberGameRoundLog {
+    /**
+     * The initial capacity of the log
+     */
+    private static final int INITIAL_CAPACITY = 8;
+    /**
+     * The guess code marking a round kept as an object in the irregular column
+     */
+    private static final long IRREGULAR = -1;
+
+    /**
+     * The variant guesses are packed with
+     */
+    private final int alphabetSize;
+    private final int answerLength;
+
+    /**
+     * The stored rounds. Slots are never overwritten once written, and the
+     * columns are only ever replaced together by larger copies
+     */
+    private volatile Columns columns = new Columns(INITIAL_CAPACITY);
+    /**
+     * The number of rounds in the log, published after the round itself is written
+     */
+    private volatile int size;
+
+    /**
+     * Constructs an empty NumberGameRoundLog for the rounds of a game
+     * @param variant The rules of the game
+     */
+    public NumberGameRoundLog(NumberGameVariant variant) {
+        this.alphabetSize = variant.getAlphabetSize();
+        this.answerLength = variant.getAnswerLength();
+    }
+
+    /**
+     * Appends a round to the end of the log
+     * @param round The round to append
+     * @return The sequence number assigned to the round
+     */
+    public int append(NumberGameRound round) {
+        Columns current = columns;
+        int count = size;
+        if(count == current.times.length) {
+            current = current.grow(count * 2);
+            columns = current;
+        }
+        int result = NumberGameScorer.parseResult(round.getGuessResult());
+        if(result >= 0 && round.getTimestamp() != null && isPackable(round.getGuess())) {
+            LocalDateTime timestamp = round.getTimestamp();
+            current.times[count] = timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + timestamp.getNano();
+            current.guesses[count] = NumberGameCodec.encode(round.getGuess(), alphabetSize);
+            current.results[count] = (byte)result;
+        }
+        else {
+            if(current.irregular == null) {
+                current.irregular = new NumberGameRound[current.times.length];
+            }
+            current.irregular[count] = round;
+            current.guesses[count] = IRREGULAR;
+        }
+        size = count + 1;
+        return count + 1;
+    }
+
+    /**
+     * Retrieves the number of rounds in the log, which is also the sequence number of the latest round
+     * @return The number of rounds in the log
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves a read-only, ordered view of the rounds currently in the log.
+     * Rounds appended after the view is created are not visible through it
+     * @return A view of the rounds in the log
+     */
+    public List<NumberGameRound> view() {
+        // Size must be read before the columns so they hold at least that many rounds
+        int count = size;
+        return new RoundView(columns, 0, count);
+    }
+
+    /**
+     * Retrieves a read-only, ordered view of the rounds currently in the log after a given
+     * sequence number, without copying them
+     * @param sequence The sequence number of the latest round already seen, or 0 to view every round
+     * @return A view of the rounds in the log with a greater sequence number
+     */
+    public List<NumberGameRound> viewAfter(int sequence) {
+        int count = size;
+        int from = Math.max(0, Math.min(sequence, count));
+        return new RoundView(columns, from, count - from);
+    }
+
+    /**
+     * Checks whether a guess can be packed and rebuilt exactly with the game's alphabet
+     * @param guess The guess to check
+     * @return Whether the guess has the game's length and only lower case symbols of its alphabet
+     */
+    private boolean isPackable(String guess) {
+        if(guess == null || guess.length() != answerLength) {
+            return false;
+        }
+        for(int i = 0; i < answerLength; i ++) {
+            int symbol = NumberGameVariant.symbolOf(guess.charAt(i));
+            if(symbol < 0 || symbol >= alphabetSize || NumberGameVariant.symbolFor(symbol) != guess.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The columns rounds are stored in
+     */
+    private static final class Columns {
+        private final long[] times;
+        private final long[] guesses;
+        private final byte[] results;
+        /**
+         * The rounds that couldn't be packed, or null if there are none
+         */
+        private NumberGameRound[] irregular;
+
+        Columns(int capacity) {
+            this(new long[capacity], new long[capacity], new byte[capacity], null);
+        }
+
+        private Columns(long[] times, long[] guesses, byte[] results, NumberGameRound[] irregular) {
+            this.times = times;
+            this.guesses = guesses;
+            this.results = results;
+            this.irregular = irregular;
+        }
+
+        Columns grow(int capacity) {
+            return new Columns(Arrays.copyOf(times, capacity), Arrays.copyOf(guesses, capacity),
+                    Arrays.copyOf(results, capacity), irregular == null ? null : Arrays.copyOf(irregular, capacity));
+        }
+    }
+
+    /**
+     * A read-only view over a range of a log's columns, rebuilding rounds as they are read
+     */
+    private final class RoundView extends AbstractList<NumberGameRound> implements RandomAccess {
+        private final Columns columns;
+        /**
+         * The index of the first round of the view in the columns
+         */
+        private final int from;
+        private final int size;
+
+        RoundView(Columns columns, int from, int size) {
+            this.columns = columns;
+            this.from = from;
+            this.size = size;
+        }
+
+        @Override
+        public NumberGameRound get(int index) {
+            if(index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            index += from;
+            long guess = columns.guesses[index];
+            if(guess == IRREGULAR) {
+                return columns.irregular[index];
+            }
+            NumberGameRound round = new NumberGameRound(NumberGameCodec.decode(guess, alphabetSize, answerLength),
+                    NumberGameScorer.resultString(columns.results[index] & 0xFF));
+            long time = columns.times[index];
+            round.setTimestamp(LocalDateTime.ofEpochSecond(Math.floorDiv(time, 1_000_000_000L),
+                    (int)Math.floorMod(time, 1_000_000_000L), ZoneOffset.UTC));
+            return round;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.sg.guess_the_number.data;
+
+import com.sg.guess_the_number.models.NumberGameRound;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Queues round inserts and writes them to the database in JDBC batches
+ *
+ * A batch is written once batchSize rounds are queued, or flushDelayMillis after the
+ * first round of the batch was queued, whichever comes first. Batches are written one
+ * at a time and in the order the rounds were queued, each in a single transaction, so a
+ * batch that fails is rolled back as a whole before it is retried. The transaction locks
+ * the games of the batch before inserting their rounds, so rounds inserted concurrently
+ * for the same games are numbered one after the other. Rounds are counted as pending for
+ * their game until the batch holding them is written, so callers can flush before
+ * reading a game whose rounds are still queued.
+ *
+ * A batch that fails is put back in the queue and retried flushDelayMillis later. Once a
+ * round is queued it is never reported as failed to the request that queued it, since the
+ * round is still written later, and a client retrying the request would record it twice.
+ */
+final class NumberGameRoundWriter {
+    /**
+     * The queued rounds, guarded by the list itself
+     */
+    private final List<PendingRound> queue = new ArrayList<>();
+    /**
+     * The number of queued or in flight rounds of every game with any
+     */
+    private final ConcurrentMap<Integer, Integer> pendingCounts = new ConcurrentHashMap<>();
+    /**
+     * Held while a batch is written, so batches are written in order
+     */
+    private final Object flushLock = new Object();
+    /**
+     * Runs the flushes that are due to the latency deadline
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "round-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final JdbcTemplate template;
+    /**
+     * Runs every batch in a single transaction
+     */
+    private final TransactionTemplate transactions;
+    /**
+     * Locks the rows of the given games in the surrounding transaction
+     */
+    private final Consumer<Collection<Integer>> lockGames;
+    /**
+     * The statement a round is inserted with
+     */
+    private final String sql;
+    /**
+     * Binds the parameters of the statement for a round
+     */
+    private final RoundBinder binder;
+    private final int batchSize;
+    private final long flushDelayMillis;
+
+    /**
+     * Constructs a NumberGameRoundWriter
+     * @param template The template the batches are written with
+     * @param transactions Runs every batch in a single transaction, on the template's data source
+     * @param lockGames Locks the rows of the given games in the surrounding transaction
+     * @param sql The statement a round is inserted with
+     * @param binder Binds the parameters of the statement for a round
+     * @param batchSize The number of queued rounds that triggers a flush
+     * @param flushDelayMillis The longest time a round is queued before a flush is started
+     */
+    NumberGameRoundWriter(JdbcTemplate template, TransactionTemplate transactions, Consumer<Collection<Integer>> lockGames,
+                          String sql, RoundBinder binder, int batchSize, long flushDelayMillis) {
+        this.template = template;
+        this.transactions = transactions;
+        this.lockGames = lockGames;
+        this.sql = sql;
+        this.binder = binder;
+        this.batchSize = batchSize;
+        this.flushDelayMillis = flushDelayMillis;
+    }
+
+    /**
+     * Queues a round to be inserted
+     * @param gameId The ID of the game the round is for
+     * @param round The round to insert
+     */
+    void enqueue(int gameId, NumberGameRound round) {
+        // Counted before it is queued, so a flush never uncounts a round that wasn't counted
+        pendingCounts.merge(gameId, 1, Integer::sum);
+        int queued;
+        synchronized(queue) {
+            queue.add(new PendingRound(gameId, round));
+            queued = queue.size();
+        }
+        if(queued >= batchSize) {
+            try {
+                flush();
+            }
+            catch(RuntimeException e) {
+                // The round stays queued and a retry is scheduled, so the request still succeeds
+            }
+        }
+        else if(queued == 1) {
+            scheduler.schedule(this::flushOnDeadline, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Checks whether a game has rounds that are not written yet
+     * @param gameId The ID of the game to check
+     * @return Whether the game has queued or in flight rounds
+     */
+    boolean hasPending(int gameId) {
+        return pendingCounts.containsKey(gameId);
+    }
+
+    /**
+     * Writes every queued round, returning once every round queued before the call is written.
+     * If the write fails, the rounds are queued again and a retry is scheduled before the
+     * failure is thrown
+     */
+    void flush() {
+        synchronized(flushLock) {
+            List<PendingRound> batch;
+            synchronized(queue) {
+                if(queue.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(queue);
+                queue.clear();
+            }
+            try {
+                // Statements of a batch are sent separately, so without a transaction a failure
+                // would leave the rounds before it inserted, and retrying would insert them again
+                Set<Integer> gameIds = new TreeSet<>();
+                for(PendingRound pending : batch) {
+                    gameIds.add(pending.gameId);
+                }
+                transactions.execute(status -> {
+                    lockGames.accept(gameIds);
+                    return template.batchUpdate(sql, batch, batch.size(),
+                            (statement, pending) -> binder.bind(statement, pending.gameId, pending.round));
+                });
+            }
+            catch(RuntimeException e) {
+                // Nothing of the batch was kept, so put it back in front of anything queued since, to be retried
+                synchronized(queue) {
+                    queue.addAll(0, batch);
+                }
+                // The deadline flush may already have run, so nothing else would write the batch
+                retryLater();
+                throw e;
+            }
+            for(PendingRound pending : batch) {
+                pendingCounts.computeIfPresent(pending.gameId, (gameId, count) -> count == 1 ? null : count - 1);
+            }
+        }
+    }
+
+    /**
+     * Flushes once a batch's latency deadline passed. A failed write has already scheduled its retry
+     */
+    private void flushOnDeadline() {
+        try {
+            flush();
+        }
+        catch(RuntimeException e) {
+            // Retried by the flush scheduled when it failed
+        }
+    }
+
+    /**
+     * Schedules a flush after the latency deadline, unless the writer is closed
+     */
+    private void retryLater() {
+        if(!scheduler.isShutdown()) {
+            try {
+                scheduler.schedule(this::flushOnDeadline, flushDelayMillis, TimeUnit.MILLISECONDS);
+            }
+            catch(RejectedExecutionException e) {
+                // Closed since it was checked, and close flushes the queue itself
+            }
+        }
+    }
+
+    /**
+     * Stops the deadline flushes and writes every queued round
+     */
+    void close() {
+        scheduler.shutdown();
+        flush();
+    }
+
+    /**
+     * Binds the parameters of a round insert statement
+     */
+    @FunctionalInterface
+    interface RoundBinder {
+        /**
+         * Binds the parameters of the statement for a round
+         * @param statement The statement to bind the parameters of
+         * @param gameId The ID of the game the round is for
+         * @param round The round to insert
+         * @throws SQLException thrown when a parameter could not be bound
+         */
+        void bind(PreparedStatement statement, int gameId, NumberGameRound round) throws SQLException;
+    }
+
+    /**
+     * A round waiting to be written, along with the ID of its game
+     */
+    private static final class PendingRound {
+        private final int gameId;
+        private final NumberGameRound round;
+
+        PendingRound(int gameId, NumberGameRound round) {
+            this.gameId = gameId;
+            this.round = round;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.sg.guess_the_number.data;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Brings the database schema up to date on startup
+ *
+ * Schema scripts are named V<version>__<description>.sql and live in db/migration on the
+ * classpath. Every script that isn't recorded in the schema_version table yet is run in
+ * order of its version, and recorded once it succeeds. A database whose tables predate
+ * the schema_version table is assumed to be at the baseline, version 1. A MySQL named
+ * lock keeps instances starting at the same time from migrating concurrently.
+ */
+@Component
+@Profile({"database", "tiered"})
+public class NumberGameSchemaMigrator {
+    /**
+     * Where the schema scripts are found
+     */
+    public static final String SCRIPT_LOCATION = "classpath:db/migration/V*__*.sql";
+    /**
+     * The version of the schema the first script creates, which existing databases are already at
+     */
+    public static final int BASELINE_VERSION = 1;
+
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+    private static final String LOCK_NAME = "guess_the_number.schema";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private final JdbcTemplate template;
+    /**
+     * Whether scripts are run on startup
+     */
+    private final boolean enabled;
+
+    /**
+     * Constructs a NumberGameSchemaMigrator
+     * @param template The template the scripts are run with
+     * @param enabled Whether scripts are run on startup
+     */
+    @Autowired
+    public NumberGameSchemaMigrator(JdbcTemplate template,
+                                    @Value("${guess_the_number.schema.migrate:true}") boolean enabled) {
+        this.template = template;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Runs every schema script that hasn't been run yet, if migration is enabled
+     */
+    @PostConstruct
+    public void migrate() {
+        if(!enabled) {
+            return;
+        }
+        Map<Integer, Resource> scripts = findScripts();
+        template.execute((ConnectionCallback<Void>) conn -> {
+            lock(conn);
+            try {
+                Set<Integer> applied = prepareVersionTable(conn);
+                for(Map.Entry<Integer, Resource> script : scripts.entrySet()) {
+                    if(!applied.contains(script.getKey())) {
+                        ScriptUtils.executeSqlScript(conn, new EncodedResource(script.getValue(), StandardCharsets.UTF_8));
+                        record(conn, script.getKey(), script.getValue().getFilename());
+                    }
+                }
+            }
+            finally {
+                unlock(conn);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Finds the schema scripts on the classpath
+     * @return The scripts, keyed and ordered by their version
+     */
+    private Map<Integer, Resource> findScripts() {
+        Map<Integer, Resource> scripts = new TreeMap<>();
+        try {
+            for(Resource resource : new PathMatchingResourcePatternResolver().getResources(SCRIPT_LOCATION)) {
+                Matcher matcher = SCRIPT_NAME.matcher(resource.getFilename());
+                if(matcher.matches()) {
+                    scripts.put(Integer.parseInt(matcher.group(1)), resource);
+                }
+            }
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return scripts;
+    }
+
+    /**
+     * Creates the schema_version table if it doesn't exist yet, baselining databases created before it
+     * @param conn The connection to use
+     * @return The versions already applied
+     * @throws SQLException thrown when the table could not be read or created
+     */
+    private Set<Integer> prepareVersionTable(Connection conn) throws SQLException {
+        if(!tableExists(conn, "schema_version")) {
+            boolean existing = tableExists(conn, "game");
+            try(Statement statement = conn.createStatement()) {
+                statement.execute("CREATE TABLE schema_version (" +
+                        "version INT PRIMARY KEY, " +
+                        "script VARCHAR(100) NOT NULL, " +
+                        "appliedOn DATETIME NOT NULL);");
+            }
+            if(existing) {
+                record(conn, BASELINE_VERSION, "baseline");
+            }
+        }
+        Set<Integer> applied = new HashSet<>();
+        try(Statement statement = conn.createStatement();
+            ResultSet resultSet = statement.executeQuery("SELECT version FROM schema_version;")) {
+            while(resultSet.next()) {
+                applied.add(resultSet.getInt("version"));
+            }
+        }
+        return applied;
+    }
+
+    private boolean tableExists(Connection conn, String table) throws SQLException {
+        try(PreparedStatement statement = conn.prepareStatement("SELECT COUNT(*) FROM information_schema.tables " +
+                "WHERE table_schema = DATABASE() AND table_name = ?;")) {
+            statement.setString(1, table);
+            try(ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getInt(1) > 0;
+            }
+        }
+    }
+
+    private void record(Connection conn, int version, String script) throws SQLException {
+        try(PreparedStatement statement = conn.prepareStatement(
+                "INSERT INTO schema_version (version, script, appliedOn) VALUES (?, ?, NOW());")) {
+            statement.setInt(1, version);
+            statement.setString(2, script);
+            statement.executeUpdate();
+        }
+    }
+
+    private void lock(Connection conn) throws SQLException {
+        try(PreparedStatement statement = conn.prepareStatement("SELECT GET_LOCK(?, ?);")) {
+            statement.setString(1, LOCK_NAME);
+            statement.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try(ResultSet resultSet = statement.executeQuery()) {
+                if(!resultSet.next() || resultSet.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for the schema migration lock");
+                }
+            }
+        }
+    }
+
+    private void unlock(Connection conn) throws SQLException {
+        try(PreparedStatement statement = conn.prepareStatement("SELECT RELEASE_LOCK(?);")) {
+            statement.setString(1, LOCK_NAME);
+            statement.executeQuery().close();
+        }
+    }
+}
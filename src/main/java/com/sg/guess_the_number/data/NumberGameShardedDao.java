@@ -0,0 +1,618 @@
+package com.sg.guess_the_number.data;
+
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.models.game.NumberGameInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A NumberGameDao spreading games across several other DAOs, called shards
+ *
+ * Every shard assigns the IDs of its own games, and a game's global ID is its ID within
+ * its shard times the number of shards, plus the index of its shard. Games are routed to
+ * their shard from their global ID alone, so no shard's AUTO_INCREMENT has to be shared,
+ * and new games are spread over the shards in turn. The number of shards can't change
+ * once games are stored, and each shard can hold up to Integer.MAX_VALUE divided by the
+ * number of shards games.
+ *
+ * Listings are scattered to every shard in parallel and gathered in order of global ID.
+ * A page asks every shard for a full page after the same global ID, then keeps the
+ * lowest IDs. Exports stream every shard at once, merging their games in ID order.
+ *
+ * Used by the sharded profile, where guess_the_number.shards.urls lists the JDBC URLs of
+ * the shards, each a NumberGameDbDao with its schema kept up to date by a
+ * NumberGameSchemaMigrator. They connect with spring.datasource.username and password.
+ */
+@Repository
+@Profile("sharded")
+public class NumberGameShardedDao implements NumberGameDao {
+    /**
+     * The most exported games queued from a shard before it waits for the merge to catch up
+     */
+    private static final int EXPORT_QUEUE_SIZE = 256;
+
+    private final List<NumberGameDao> shards;
+    /**
+     * The data sources the DAO opened, which are closed with it
+     */
+    private final List<DataSource> dataSources = new ArrayList<>();
+    /**
+     * The shard the next game is created in, modulo the number of shards
+     */
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "shard-query");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructs a NumberGameShardedDao over a database for each of the given URLs,
+     * bringing their schemas up to date
+     * @param urls The JDBC URLs of the shards, in shard order
+     * @param username The user the shards are connected to as
+     * @param password The password of the user
+     * @param batchSize The number of rounds each shard writes per batch, or 1 to write every round directly
+     * @param flushMillis The longest time a round is queued before its batch is written
+     * @param exportFetchSize The fetch size of the result sets exports are read from
+     * @param idBlockSize The number of game IDs each shard leases at a time
+     */
+    @Autowired
+    public NumberGameShardedDao(@Value("${guess_the_number.shards.urls}") String[] urls,
+                                @Value("${spring.datasource.username}") String username,
+                                @Value("${spring.datasource.password}") String password,
+                                @Value("${guess_the_number.rounds.batch-size:1}") int batchSize,
+                                @Value("${guess_the_number.rounds.flush-millis:20}") long flushMillis,
+                                @Value("${guess_the_number.export.fetch-size:" + NumberGameDbDao.DEFAULT_EXPORT_FETCH_SIZE + "}") int exportFetchSize,
+                                @Value("${guess_the_number.ids.block-size:" + NumberGameBlockIdAllocator.DEFAULT_BLOCK_SIZE + "}") int idBlockSize) {
+        this.shards = new ArrayList<>();
+        try {
+            for(String url : urls) {
+                DataSource dataSource = DataSourceBuilder.create().url(url.trim())
+                        .username(username).password(password).build();
+                dataSources.add(dataSource);
+                JdbcTemplate template = new JdbcTemplate(dataSource);
+                new NumberGameSchemaMigrator(template, true).migrate();
+                shards.add(new NumberGameDbDao(template, batchSize, flushMillis, exportFetchSize, idBlockSize));
+            }
+        }
+        catch(RuntimeException e) {
+            close();
+            throw e;
+        }
+        if(shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+    }
+
+    /**
+     * Constructs a NumberGameShardedDao over the given DAOs
+     * @param shards The DAOs the games are spread across, in shard order
+     */
+    public NumberGameShardedDao(List<? extends NumberGameDao> shards) {
+        if(shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = new ArrayList<>(shards);
+    }
+
+    /**
+     * Closes the shards the DAO opened, writing their queued rounds
+     */
+    @PreDestroy
+    public void close() {
+        executor.shutdown();
+        for(NumberGameDao shard : shards) {
+            if(shard instanceof NumberGameDbDao) {
+                ((NumberGameDbDao)shard).close();
+            }
+        }
+        for(DataSource dataSource : dataSources) {
+            if(dataSource instanceof Closeable) {
+                try {
+                    ((Closeable)dataSource).close();
+                }
+                catch(IOException e) {
+                    // Nothing left to do with a data source that won't close
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the global ID of a game
+     * @param shard The index of the game's shard
+     * @param localId The ID of the game within its shard
+     * @return The global ID of the game
+     */
+    public int globalId(int shard, int localId) {
+        if(localId > (Integer.MAX_VALUE - shard) / shards.size()) {
+            throw new IllegalStateException("Shard " + shard + " has run out of game IDs");
+        }
+        return localId * shards.size() + shard;
+    }
+
+    /**
+     * Retrieves the index of the shard a game is stored in
+     * @param gameId The global ID of the game
+     * @return The index of the game's shard
+     */
+    public int shardOf(int gameId) {
+        return Math.floorMod(gameId, shards.size());
+    }
+
+    /**
+     * Retrieves all games stored by the DAO, gathered from every shard in parallel
+     *
+     * @return ALl games stored by the DAO, in ascending order of their ID
+     */
+    @Override
+    public List<NumberGameInstance> getAllGames() {
+        return gather(shard -> shards.get(shard).getAllGames(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves a page of games in ascending order of their ID, gathered from every shard in parallel
+     *
+     * @param afterId Only games with a greater ID than this are retrieved
+     * @param limit The most games to retrieve
+     * @param status Only games with this status are retrieved, or games of any status if it is null
+     * @return The retrieved games
+     */
+    @Override
+    public List<NumberGameInstance> getGames(int afterId, int limit, ENumberGameStatus status) {
+        if(limit <= 0) {
+            return new ArrayList<>();
+        }
+        // Shard k holds the global IDs localId * size + k, so its page starts after floor((afterId - k) / size)
+        return gather(shard -> shards.get(shard).getGames(
+                Math.floorDiv(afterId - shard, shards.size()), limit, status), limit);
+    }
+
+    /**
+     * Streams every game along with its rounds, in ascending order of the game IDs
+     *
+     * Every shard is exported at once on its own thread, queueing a bounded number of games
+     * for the caller's thread to merge.
+     *
+     * @param handler Receives every game along with its rounds in the order they were played
+     */
+    @Override
+    public void exportGames(BiConsumer<NumberGameInstance, List<NumberGameRound>> handler) {
+        List<BlockingQueue<Exported>> queues = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for(int i = 0; i < shards.size(); i ++) {
+                int shard = i;
+                BlockingQueue<Exported> queue = new ArrayBlockingQueue<>(EXPORT_QUEUE_SIZE);
+                queues.add(queue);
+                futures.add(executor.submit(() -> {
+                    Exported end = new Exported(null, null, null);
+                    try {
+                        shards.get(shard).exportGames((game, rounds) -> {
+                            game.setGameId(globalId(shard, game.getGameId()));
+                            put(queue, new Exported(game, new ArrayList<>(rounds), null));
+                        });
+                    }
+                    catch(RuntimeException e) {
+                        end = new Exported(null, null, e);
+                    }
+                    put(queue, end);
+                    return null;
+                }));
+            }
+            // The next game of every shard that has games left, lowest ID first
+            PriorityQueue<Map.Entry<Exported, Integer>> heads = new PriorityQueue<>(
+                    Comparator.comparingInt(head -> head.getKey().game.getGameId()));
+            for(int i = 0; i < queues.size(); i ++) {
+                Exported next = take(queues.get(i));
+                if(next.game != null) {
+                    heads.add(new AbstractMap.SimpleEntry<>(next, i));
+                }
+            }
+            while(!heads.isEmpty()) {
+                Map.Entry<Exported, Integer> head = heads.poll();
+                handler.accept(head.getKey().game, head.getKey().rounds);
+                Exported next = take(queues.get(head.getValue()));
+                if(next.game != null) {
+                    heads.add(new AbstractMap.SimpleEntry<>(next, head.getValue()));
+                }
+            }
+        }
+        finally {
+            for(Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Retrieves a game associated with a given id
+     *
+     * @param id The ID of the game to retrieve
+     * @return The retrieved game
+     * @throws GameNotFoundException thrown when the gameId could not be associated with a stored game
+     */
+    @Override
+    public NumberGameInstance getGameById(int id) throws GameNotFoundException {
+        int shard = shardOf(id);
+        try {
+            NumberGameInstance game = shards.get(shard).getGameById(localId(id));
+            game.setGameId(id);
+            return game;
+        }
+        catch(GameNotFoundException e) {
+            throw new GameNotFoundException(id);
+        }
+    }
+
+    /**
+     * Gets the rounds played for a given game
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @return A list of rounds played for the given game
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRounds(int gameId) throws GameNotFoundException {
+        try {
+            return shards.get(shardOf(gameId)).getGameRounds(localId(gameId));
+        }
+        catch(GameNotFoundException e) {
+            throw new GameNotFoundException(gameId);
+        }
+    }
+
+    /**
+     * Gets the rounds played for a given game after a given round, from the shard holding it
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @param afterRound The number of the latest round already seen, or 0 to retrieve every round
+     * @return A list of the rounds played after the given round, in the order they were played
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRoundsAfter(int gameId, int afterRound) throws GameNotFoundException {
+        try {
+            return shards.get(shardOf(gameId)).getGameRoundsAfter(localId(gameId), afterRound);
+        }
+        catch(GameNotFoundException e) {
+            throw new GameNotFoundException(gameId);
+        }
+    }
+
+    /**
+     * Retrieves several games by their IDs, with one bulk read per shard, run in parallel
+     *
+     * @param ids The IDs of the games to retrieve
+     * @return The games that were found, by their ID. Games that could not be found are left out
+     */
+    @Override
+    public Map<Integer, NumberGameInstance> getGamesByIds(Collection<Integer> ids) {
+        Map<Integer, NumberGameInstance> found = new HashMap<>();
+        scatter(ids, (shard, localIds) -> shards.get(shard).getGamesByIds(localIds)).forEach((id, game) -> {
+            game.setGameId(id);
+            found.put(id, game);
+        });
+        return found;
+    }
+
+    /**
+     * Gets the rounds played for several games, with one bulk read per shard, run in parallel
+     *
+     * @param gameIds The IDs of the games to retrieve rounds for
+     * @return The rounds of every game that was found, by the game's ID. Games that could not be found are left out
+     */
+    @Override
+    public Map<Integer, List<NumberGameRound>> getRoundsByGameIds(Collection<Integer> gameIds) {
+        return scatter(gameIds, (shard, localIds) -> shards.get(shard).getRoundsByGameIds(localIds));
+    }
+
+    /**
+     * Creates a new game in the next shard in turn
+     *
+     * @param answer The answer to the game
+     * @param variant The rules of the game
+     * @param status The status to create the game with
+     * @return The ID of the created game
+     */
+    @Override
+    public int createGame(String answer, NumberGameVariant variant, ENumberGameStatus status) {
+        int shard = Math.floorMod(nextShard.getAndIncrement(), shards.size());
+        return globalId(shard, shards.get(shard).createGame(answer, variant, status));
+    }
+
+    /**
+     * Creates several games with the same rules, spread over the shards in turn,
+     * with one bulk creation per shard, run in parallel
+     *
+     * @param answers The answers to the games
+     * @param variant The rules of every game
+     * @param status The status to create every game with
+     * @return The IDs of the created games, in the order of their answers
+     */
+    @Override
+    public int[] createGames(List<String> answers, NumberGameVariant variant, ENumberGameStatus status) {
+        int first = nextShard.getAndAdd(answers.size());
+        List<List<String>> shardAnswers = new ArrayList<>();
+        for(int i = 0; i < shards.size(); i ++) {
+            shardAnswers.add(new ArrayList<>());
+        }
+        for(int i = 0; i < answers.size(); i ++) {
+            shardAnswers.get(Math.floorMod(first + i, shards.size())).add(answers.get(i));
+        }
+        List<Future<int[]>> futures = new ArrayList<>();
+        for(int i = 0; i < shards.size(); i ++) {
+            int shard = i;
+            futures.add(executor.submit(() -> shards.get(shard).createGames(shardAnswers.get(shard), variant, status)));
+        }
+        List<int[]> localIds = await(futures);
+        int[] gameIds = new int[answers.size()];
+        int[] taken = new int[shards.size()];
+        for(int i = 0; i < gameIds.length; i ++) {
+            int shard = Math.floorMod(first + i, shards.size());
+            gameIds[i] = globalId(shard, localIds.get(shard)[taken[shard] ++]);
+        }
+        return gameIds;
+    }
+
+    /**
+     * Adds a round to the specified game
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public void addRound(int gameId, NumberGameRound round) throws GameNotFoundException {
+        try {
+            shards.get(shardOf(gameId)).addRound(localId(gameId), round);
+        }
+        catch(GameNotFoundException e) {
+            throw new GameNotFoundException(gameId);
+        }
+    }
+
+    /**
+     * Records a guess for a game as a single atomic step
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @param solved Whether the guess of the round solved the game
+     * @return Whether the round was added, or false if the game was no longer in progress
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public boolean applyGuess(int gameId, NumberGameRound round, boolean solved) throws GameNotFoundException {
+        try {
+            return shards.get(shardOf(gameId)).applyGuess(localId(gameId), round, solved);
+        }
+        catch(GameNotFoundException e) {
+            throw new GameNotFoundException(gameId);
+        }
+    }
+
+    /**
+     * Records the guesses of several games, with one write per shard, run in parallel
+     *
+     * @param rounds The rounds to add, by the ID of their game
+     * @param solved The IDs of the games whose last round solves them
+     * @return The number of leading rounds added for every game
+     */
+    @Override
+    public Map<Integer, Integer> applyGuesses(Map<Integer, List<NumberGameRound>> rounds, Set<Integer> solved) {
+        List<Map<Integer, List<NumberGameRound>>> shardRounds = new ArrayList<>();
+        List<Set<Integer>> shardSolved = new ArrayList<>();
+        for(int i = 0; i < shards.size(); i ++) {
+            shardRounds.add(new HashMap<>());
+            shardSolved.add(new HashSet<>());
+        }
+        Map<Integer, Integer> added = new HashMap<>();
+        rounds.forEach((gameId, gameRounds) -> {
+            added.put(gameId, 0);
+            // IDs below the number of shards aren't valid, and would collide with local IDs of 0
+            if(gameId >= shards.size()) {
+                shardRounds.get(shardOf(gameId)).put(localId(gameId), gameRounds);
+                if(solved.contains(gameId)) {
+                    shardSolved.get(shardOf(gameId)).add(localId(gameId));
+                }
+            }
+        });
+        List<Future<Map<Integer, Integer>>> futures = new ArrayList<>();
+        for(int i = 0; i < shards.size(); i ++) {
+            int shard = i;
+            futures.add(executor.submit(() -> shardRounds.get(shard).isEmpty() ? new HashMap<Integer, Integer>() :
+                    shards.get(shard).applyGuesses(shardRounds.get(shard), shardSolved.get(shard))));
+        }
+        List<Map<Integer, Integer>> shardAdded = await(futures);
+        for(int i = 0; i < shards.size(); i ++) {
+            int shard = i;
+            shardAdded.get(i).forEach((localId, count) -> added.put(globalId(shard, localId), count));
+        }
+        return added;
+    }
+
+    /**
+     * Updates the status for a given game
+     *
+     * @param gameId The ID of the game to update
+     * @param status The new status of the game
+     * @throws GameNotFoundException thrown when the given game id could not be associated with a stored game
+     */
+    @Override
+    public void updateStatus(int gameId, ENumberGameStatus status) throws GameNotFoundException {
+        try {
+            shards.get(shardOf(gameId)).updateStatus(localId(gameId), status);
+        }
+        catch(GameNotFoundException e) {
+            throw new GameNotFoundException(gameId);
+        }
+    }
+
+    /**
+     * Removes a game from the dao's underlying storage
+     *
+     * @param gameId The ID of the game to remove
+     */
+    @Override
+    public void removeGame(int gameId) throws GameNotFoundException {
+        try {
+            shards.get(shardOf(gameId)).removeGame(localId(gameId));
+        }
+        catch(GameNotFoundException e) {
+            throw new GameNotFoundException(gameId);
+        }
+    }
+
+    /**
+     * Retrieves the ID a game has within its shard, which is never valid for IDs below the number of shards
+     */
+    private int localId(int gameId) {
+        return Math.floorDiv(gameId, shards.size());
+    }
+
+    /**
+     * Runs a lookup by game ID against the shards holding the given games, in parallel
+     * @param ids The global IDs of the games to look up
+     * @param lookup Looks up games by their local IDs in the shard with the given index
+     * @return The results of the lookups, by the global ID of their game
+     */
+    private <T> Map<Integer, T> scatter(Collection<Integer> ids, BiFunction<Integer, List<Integer>, Map<Integer, T>> lookup) {
+        Map<Integer, List<Integer>> localIds = new TreeMap<>();
+        for(int id : ids) {
+            // IDs below the number of shards aren't valid, and would collide with local IDs of 0
+            if(id >= shards.size()) {
+                localIds.computeIfAbsent(shardOf(id), shard -> new ArrayList<>()).add(localId(id));
+            }
+        }
+        List<Integer> queried = new ArrayList<>(localIds.keySet());
+        List<Future<Map<Integer, T>>> futures = new ArrayList<>();
+        for(int shard : queried) {
+            futures.add(executor.submit(() -> lookup.apply(shard, localIds.get(shard))));
+        }
+        List<Map<Integer, T>> results = await(futures);
+        Map<Integer, T> found = new HashMap<>();
+        for(int i = 0; i < queried.size(); i ++) {
+            int shard = queried.get(i);
+            results.get(i).forEach((localId, value) -> found.put(globalId(shard, localId), value));
+        }
+        return found;
+    }
+
+    /**
+     * Runs a query against every shard in parallel, merging their games in order of global ID
+     * @param query Retrieves the games of the shard with the given index, in ascending order of their ID
+     * @param limit The most games to return
+     * @return The lowest limit IDs of the games found
+     */
+    private List<NumberGameInstance> gather(Function<Integer, List<NumberGameInstance>> query, int limit) {
+        List<Future<List<NumberGameInstance>>> futures = new ArrayList<>();
+        for(int i = 0; i < shards.size(); i ++) {
+            int shard = i;
+            futures.add(executor.submit(() -> {
+                List<NumberGameInstance> games = query.apply(shard);
+                for(NumberGameInstance game : games) {
+                    game.setGameId(globalId(shard, game.getGameId()));
+                }
+                return games;
+            }));
+        }
+        List<NumberGameInstance> games = new ArrayList<>();
+        for(List<NumberGameInstance> shardGames : await(futures)) {
+            games.addAll(shardGames);
+        }
+        games.sort(Comparator.comparingInt(NumberGameInstance::getGameId));
+        return games.size() > limit ? new ArrayList<>(games.subList(0, limit)) : games;
+    }
+
+    /**
+     * Waits for a task run against every shard, cancelling the rest if one fails
+     * @param futures The tasks, in shard order
+     * @return The results of the tasks, in shard order
+     */
+    private static <T> List<T> await(List<Future<T>> futures) {
+        List<T> results = new ArrayList<>();
+        try {
+            for(Future<T> future : futures) {
+                results.add(future.get());
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying the shards", e);
+        }
+        catch(ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            for(Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private static void put(BlockingQueue<Exported> queue, Exported exported) {
+        try {
+            queue.put(exported);
+        }
+        catch(InterruptedException e) {
+            // The export was abandoned, so the shard's export is abandoned too
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    private static Exported take(BlockingQueue<Exported> queue) {
+        Exported exported;
+        try {
+            exported = queue.take();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while exporting the shards", e);
+        }
+        if(exported.failure != null) {
+            throw exported.failure;
+        }
+        return exported;
+    }
+
+    /**
+     * A game exported from a shard, or the end of the shard's export if game is null
+     */
+    private static final class Exported {
+        private final NumberGameInstance game;
+        private final List<NumberGameRound> rounds;
+        /**
+         * What ended the shard's export early, if anything
+         */
+        private final RuntimeException failure;
+
+        private Exported(NumberGameInstance game, List<NumberGameRound> rounds, RuntimeException failure) {
+            this.game = game;
+            this.rounds = rounds;
+            this.failure = failure;
+        }
+    }
+}
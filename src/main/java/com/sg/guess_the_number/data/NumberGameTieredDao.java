@@ -0,0 +1,645 @@
+package com.sg.guess_the_number.data;
+
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.models.game.NumberGameInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A NumberGameDao keeping games in progress in memory, in front of NumberGameDbDao
+ *
+ * Every game is created in the database, which assigns its ID, and games created in
+ * progress are then kept in a hot tier in memory, where their guesses are played without
+ * touching the database. Once a hot game is finished, or hasn't been used for
+ * guess_the_number.tiered.idle-millis, its rounds and status are moved to the database in
+ * the background, and it is served from there afterwards. Reads go to the tier holding
+ * the game, and listings merge the two, the hot tier's status taking precedence.
+ *
+ * Every write to the hot tier is recorded in a journal at guess_the_number.tiered.journal
+ * before it is applied, and the hot tier is rebuilt from the journal on startup. The hot
+ * tier is snapshotted once guess_the_number.tiered.compact-bytes were journaled since the
+ * latest snapshot.
+ */
+@Repository
+@Primary
+@Profile("tiered")
+public class NumberGameTieredDao implements NumberGameDao {
+    /**
+     * The number of lock stripes used to guard hot game writes. Must be a power of two
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * The games in progress, and games not yet moved to the database
+     */
+    private final NumberGameMemoryDao hot = new NumberGameMemoryDao();
+    /**
+     * Every game, along with the rounds of games no longer in the hot tier
+     */
+    private final NumberGameDbDao cold;
+    /**
+     * The journal of writes to the hot tier
+     */
+    private final NumberGameJournal journal;
+    /**
+     * The time each hot game was last written to, in nanoseconds of System.nanoTime()
+     */
+    private final ConcurrentMap<Integer, Long> lastUsed = new ConcurrentHashMap<>();
+    /**
+     * The locks guarding writes to hot games, indexed by game ID
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    /**
+     * Shared by journaled writes, and held exclusively while the hot tier is checkpointed
+     */
+    private final ReadWriteLock journalLock = new ReentrantReadWriteLock();
+    /**
+     * Moves games to the database, and snapshots the hot tier
+     */
+    private final ScheduledExecutorService mover = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tier-mover");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long idleNanos;
+    private final long compactBytes;
+
+    /**
+     * Constructs a NumberGameTieredDao, rebuilding the hot tier from its journal
+     * @param cold The DAO of the database tier
+     * @param journalFile The file of the hot tier's journal
+     * @param sync Whether journal records are forced to the disk before each write returns
+     * @param idleMillis How long a game in progress stays in memory without being used
+     * @param compactBytes The bytes journaled since the latest snapshot past which a snapshot is taken
+     * @throws IOException thrown when the journal could not be read
+     */
+    @Autowired
+    public NumberGameTieredDao(NumberGameDbDao cold,
+                               @Value("${guess_the_number.tiered.journal:data/tiered.journal}") String journalFile,
+                               @Value("${guess_the_number.tiered.sync:false}") boolean sync,
+                               @Value("${guess_the_number.tiered.idle-millis:600000}") long idleMillis,
+                               @Value("${guess_the_number.tiered.compact-bytes:67108864}") long compactBytes) throws IOException {
+        this(cold, Paths.get(journalFile), sync, idleMillis, compactBytes);
+    }
+
+    /**
+     * Constructs a NumberGameTieredDao, rebuilding the hot tier from its journal
+     * @param cold The DAO of the database tier
+     * @param journalFile The file of the hot tier's journal
+     * @param sync Whether journal records are forced to the disk before each write returns
+     * @param idleMillis How long a game in progress stays in memory without being used
+     * @param compactBytes The bytes journaled since the latest snapshot past which a snapshot is taken
+     * @throws IOException thrown when the journal could not be read
+     */
+    public NumberGameTieredDao(NumberGameDbDao cold, Path journalFile, boolean sync, long idleMillis,
+                               long compactBytes) throws IOException {
+        this.cold = cold;
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        this.compactBytes = compactBytes;
+        for(int i = 0; i < locks.length; i ++) {
+            locks[i] = new Object();
+        }
+        journal = new NumberGameJournal(journalFile, sync);
+        journal.recover(hot);
+        long now = System.nanoTime();
+        for(NumberGameInstance game : hot.getAllGames()) {
+            lastUsed.put(game.getGameId(), now);
+            if(game.getStatus() != ENumberGameStatus.IN_PROGRESS) {
+                scheduleMove(game.getGameId());
+            }
+        }
+        long sweepMillis = Math.max(1, idleMillis / 2);
+        mover.scheduleWithFixedDelay(this::moveIdleGames, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops moving games and closes the journal. Hot games are restored from the journal on the next start
+     * @throws IOException thrown when the journal could not be closed
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        mover.shutdown();
+        try {
+            mover.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    /**
+     * Retrieves all games stored by the DAO
+     *
+     * @return ALl games stored by the DAO
+     */
+    @Override
+    public List<NumberGameInstance> getAllGames() {
+        Map<Integer, NumberGameInstance> merged = new TreeMap<>();
+        for(NumberGameInstance game : hot.getAllGames()) {
+            merged.put(game.getGameId(), game);
+        }
+        for(NumberGameInstance game : cold.getAllGames()) {
+            merged.putIfAbsent(game.getGameId(), game);
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * Retrieves a page of games in ascending order of their ID
+     *
+     * The database's rows for hot games may have an outdated status, so they are skipped,
+     * and the database is read until it has filled a page with games that aren't hot.
+     *
+     * @param afterId Only games with a greater ID than this are retrieved
+     * @param limit The most games to retrieve
+     * @param status Only games with this status are retrieved, or games of any status if it is null
+     * @return The retrieved games
+     */
+    @Override
+    public List<NumberGameInstance> getGames(int afterId, int limit, ENumberGameStatus status) {
+        if(limit <= 0) {
+            return new ArrayList<>();
+        }
+        TreeMap<Integer, NumberGameInstance> merged = new TreeMap<>();
+        for(NumberGameInstance game : hot.getGames(afterId, limit, status)) {
+            merged.put(game.getGameId(), game);
+        }
+        int cursor = afterId;
+        int found = 0;
+        while(found < limit) {
+            List<NumberGameInstance> page = cold.getGames(cursor, limit, status);
+            for(NumberGameInstance game : page) {
+                if(!lastUsed.containsKey(game.getGameId()) && merged.putIfAbsent(game.getGameId(), game) == null) {
+                    found ++;
+                }
+            }
+            if(page.size() < limit) {
+                break;
+            }
+            cursor = page.get(page.size() - 1).getGameId();
+        }
+        List<NumberGameInstance> result = new ArrayList<>(merged.values());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * Streams every game along with its rounds, in ascending order of the game IDs, from the tier holding it
+     *
+     * @param handler Receives every game along with its rounds in the order they were played.
+     * The list of rounds is only valid until the handler returns
+     */
+    @Override
+    public void exportGames(BiConsumer<NumberGameInstance, List<NumberGameRound>> handler) {
+        cold.exportGames((game, rounds) -> {
+            if(lastUsed.containsKey(game.getGameId())) {
+                try {
+                    handler.accept(hot.getGameById(game.getGameId()), hot.getGameRounds(game.getGameId()));
+                    return;
+                }
+                catch(GameNotFoundException e) {
+                    // Moved to the database since it was checked, which read it before the move
+                }
+            }
+            handler.accept(game, rounds);
+        });
+    }
+
+    /**
+     * Retrieves a game associated with a given id
+     *
+     * @param id The ID of the game to retrieve
+     * @return The retrieved game
+     * @throws GameNotFoundException thrown when the gameId could not be associated with a stored game
+     */
+    @Override
+    public NumberGameInstance getGameById(int id) throws GameNotFoundException {
+        if(lastUsed.containsKey(id)) {
+            try {
+                return hot.getGameById(id);
+            }
+            catch(GameNotFoundException e) {
+                // Moved to the database since it was checked
+            }
+        }
+        return cold.getGameById(id);
+    }
+
+    /**
+     * Gets the rounds played for a given game
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @return A list of rounds played for the given game
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRounds(int gameId) throws GameNotFoundException {
+        if(lastUsed.containsKey(gameId)) {
+            try {
+                return hot.getGameRounds(gameId);
+            }
+            catch(GameNotFoundException e) {
+                // Moved to the database since it was checked
+            }
+        }
+        return cold.getGameRounds(gameId);
+    }
+
+    /**
+     * Gets the rounds played for a given game after a given round, from the memory tier if the game is there
+     *
+     * @param gameId The ID of the game to retrieve rounds for
+     * @param afterRound The number of the latest round already seen, or 0 to retrieve every round
+     * @return A list of the rounds played after the given round, in the order they were played
+     * @throws GameNotFoundException thrown when the given gameId could not be associated with a stored game
+     */
+    @Override
+    public List<NumberGameRound> getGameRoundsAfter(int gameId, int afterRound) throws GameNotFoundException {
+        if(lastUsed.containsKey(gameId)) {
+            try {
+                return hot.getGameRoundsAfter(gameId, afterRound);
+            }
+            catch(GameNotFoundException e) {
+                // Moved to the database since it was checked
+            }
+        }
+        return cold.getGameRoundsAfter(gameId, afterRound);
+    }
+
+    /**
+     * Retrieves several games by their IDs, reading the ones that aren't hot from the database in one bulk read
+     *
+     * @param ids The IDs of the games to retrieve
+     * @return The games that were found, by their ID. Games that could not be found are left out
+     */
+    @Override
+    public Map<Integer, NumberGameInstance> getGamesByIds(Collection<Integer> ids) {
+        Map<Integer, NumberGameInstance> found = new HashMap<>();
+        List<Integer> coldIds = new ArrayList<>();
+        for(int id : ids) {
+            NumberGameInstance game = null;
+            if(lastUsed.containsKey(id)) {
+                try {
+                    game = hot.getGameById(id);
+                }
+                catch(GameNotFoundException e) {
+                    // Moved to the database since it was checked
+                }
+            }
+            if(game == null) {
+                coldIds.add(id);
+            }
+            else {
+                found.put(id, game);
+            }
+        }
+        if(!coldIds.isEmpty()) {
+            found.putAll(cold.getGamesByIds(coldIds));
+        }
+        return found;
+    }
+
+    /**
+     * Gets the rounds played for several games, reading the ones that aren't hot from the database in one bulk read
+     *
+     * @param gameIds The IDs of the games to retrieve rounds for
+     * @return The rounds of every game that was found, by the game's ID, in the order they were
+     * played. Games that could not be found are left out
+     */
+    @Override
+    public Map<Integer, List<NumberGameRound>> getRoundsByGameIds(Collection<Integer> gameIds) {
+        Map<Integer, List<NumberGameRound>> found = new HashMap<>();
+        List<Integer> coldIds = new ArrayList<>();
+        for(int gameId : gameIds) {
+            List<NumberGameRound> rounds = null;
+            if(lastUsed.containsKey(gameId)) {
+                try {
+                    rounds = hot.getGameRounds(gameId);
+                }
+                catch(GameNotFoundException e) {
+                    // Moved to the database since it was checked
+                }
+            }
+            if(rounds == null) {
+                coldIds.add(gameId);
+            }
+            else {
+                found.put(gameId, rounds);
+            }
+        }
+        if(!coldIds.isEmpty()) {
+            found.putAll(cold.getRoundsByGameIds(coldIds));
+        }
+        return found;
+    }
+
+    /**
+     * Creates a new game in the database, keeping it in memory if it is in progress
+     *
+     * @param answer The answer to the game
+     * @param variant The rules of the game
+     * @param status The status to create the game with
+     * @return The ID of the created game
+     */
+    @Override
+    public int createGame(String answer, NumberGameVariant variant, ENumberGameStatus status) {
+        int gameId = cold.createGame(answer, variant, status);
+        if(status == ENumberGameStatus.IN_PROGRESS) {
+            journaled(gameId, () -> {
+                journal.create(gameId, answer, variant, status);
+                hot.restoreGame(gameId, answer, variant, status);
+                lastUsed.put(gameId, System.nanoTime());
+                return null;
+            });
+        }
+        return gameId;
+    }
+
+    /**
+     * Creates several games with the same rules in the cold tier in one bulk insert,
+     * then keeps the ones in progress in the hot tier
+     *
+     * @param answers The answers to the games
+     * @param variant The rules of every game
+     * @param status The status to create every game with
+     * @return The IDs of the created games, in the order of their answers
+     */
+    @Override
+    public int[] createGames(List<String> answers, NumberGameVariant variant, ENumberGameStatus status) {
+        int[] gameIds = cold.createGames(answers, variant, status);
+        if(status == ENumberGameStatus.IN_PROGRESS) {
+            for(int i = 0; i < gameIds.length; i ++) {
+                int gameId = gameIds[i];
+                String answer = answers.get(i);
+                journaled(gameId, () -> {
+                    journal.create(gameId, answer, variant, status);
+                    hot.restoreGame(gameId, answer, variant, status);
+                    lastUsed.put(gameId, System.nanoTime());
+                    return null;
+                });
+            }
+        }
+        return gameIds;
+    }
+
+    /**
+     * Adds a round to the specified game
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public void addRound(int gameId, NumberGameRound round) throws GameNotFoundException {
+        Boolean added = journaledIfHot(gameId, () -> {
+            hot.getGameById(gameId);
+            journal.round(gameId, round);
+            hot.addRound(gameId, round);
+            return true;
+        });
+        if(added == null) {
+            cold.addRound(gameId, round);
+        }
+    }
+
+    /**
+     * Records a guess for a game as a single atomic step, in memory if the game is hot
+     *
+     * @param gameId The ID of the game to add the round for
+     * @param round The round to add to the game
+     * @param solved Whether the guess of the round solved the game
+     * @return Whether the round was added, or false if the game was no longer in progress
+     * @throws GameNotFoundException thrown when the given game ID could not be associated with a stored game
+     */
+    @Override
+    public boolean applyGuess(int gameId, NumberGameRound round, boolean solved) throws GameNotFoundException {
+        Boolean applied = journaledIfHot(gameId, () -> {
+            if(hot.getGameById(gameId).getStatus() != ENumberGameStatus.IN_PROGRESS) {
+                return false;
+            }
+            // One record either way, so a crash can't keep the solving round but lose the finish
+            if(solved) {
+                journal.solvingRound(gameId, round);
+            }
+            else {
+                journal.round(gameId, round);
+            }
+            hot.applyGuess(gameId, round, solved);
+            lastUsed.put(gameId, System.nanoTime());
+            return true;
+        });
+        if(applied == null) {
+            return cold.applyGuess(gameId, round, solved);
+        }
+        if(applied && solved) {
+            scheduleMove(gameId);
+        }
+        return applied;
+    }
+
+    /**
+     * Records the guesses of several games, playing the hot ones in memory and the rest in
+     * one transaction in the database
+     *
+     * Hot games are played through applyGuess, which plays a game in the database instead
+     * if it was moved there since it was checked.
+     *
+     * @param rounds The rounds to add, by the ID of their game
+     * @param solved The IDs of the games whose last round solves them
+     * @return The number of leading rounds added for every game. Games that could not be found,
+     * or were no longer in progress, have no rounds added
+     */
+    @Override
+    public Map<Integer, Integer> applyGuesses(Map<Integer, List<NumberGameRound>> rounds, Set<Integer> solved) {
+        Map<Integer, List<NumberGameRound>> hotRounds = new LinkedHashMap<>();
+        Map<Integer, List<NumberGameRound>> coldRounds = new LinkedHashMap<>();
+        rounds.forEach((gameId, gameRounds) ->
+                (lastUsed.containsKey(gameId) ? hotRounds : coldRounds).put(gameId, gameRounds));
+        Map<Integer, Integer> added = new HashMap<>();
+        if(!hotRounds.isEmpty()) {
+            added.putAll(NumberGameDao.super.applyGuesses(hotRounds, solved));
+        }
+        if(!coldRounds.isEmpty()) {
+            added.putAll(cold.applyGuesses(coldRounds, solved));
+        }
+        return added;
+    }
+
+    /**
+     * Updates the status for a given game
+     *
+     * @param gameId The ID of the game to update
+     * @param status The new status of the game
+     * @throws GameNotFoundException thrown when the given game id could not be associated with a stored game
+     */
+    @Override
+    public void updateStatus(int gameId, ENumberGameStatus status) throws GameNotFoundException {
+        Boolean updated = journaledIfHot(gameId, () -> {
+            hot.getGameById(gameId);
+            journal.status(gameId, status);
+            hot.updateStatus(gameId, status);
+            return true;
+        });
+        if(updated == null) {
+            cold.updateStatus(gameId, status);
+        }
+        else if(status != ENumberGameStatus.IN_PROGRESS) {
+            scheduleMove(gameId);
+        }
+    }
+
+    /**
+     * Removes a game from both tiers
+     *
+     * @param gameId The ID of the game to remove
+     */
+    @Override
+    public void removeGame(int gameId) throws GameNotFoundException {
+        journaledIfHot(gameId, () -> {
+            hot.getGameById(gameId);
+            journal.remove(gameId);
+            hot.removeGame(gameId);
+            lastUsed.remove(gameId);
+            return true;
+        });
+        cold.removeGame(gameId);
+    }
+
+    /**
+     * Moves a game from memory to the database, unless it already was
+     * @param gameId The ID of the game to move
+     */
+    private void moveToCold(int gameId) {
+        journaledIfHot(gameId, () -> {
+            NumberGameInstance game = hot.getGameById(gameId);
+            cold.archiveGame(gameId, hot.getGameRounds(gameId), game.getStatus());
+            // Recorded only once the database holds the game, so a crash in between moves it again
+            journal.remove(gameId);
+            hot.removeGame(gameId);
+            lastUsed.remove(gameId);
+            return true;
+        });
+        compactIfNeeded();
+    }
+
+    /**
+     * Moves a game to the database in the background. A game that fails to move stays
+     * in memory, and is moved again once it is idle
+     * @param gameId The ID of the game to move
+     */
+    private void scheduleMove(int gameId) {
+        if(!mover.isShutdown()) {
+            mover.execute(() -> {
+                try {
+                    moveToCold(gameId);
+                }
+                catch(RuntimeException e) {
+                    // Left for the idle sweep
+                }
+            });
+        }
+    }
+
+    /**
+     * Moves every game that hasn't been used for the idle time to the database, stopping
+     * at the first failure until the next sweep
+     */
+    private void moveIdleGames() {
+        long now = System.nanoTime();
+        try {
+            for(Map.Entry<Integer, Long> entry : lastUsed.entrySet()) {
+                if(now - entry.getValue() > idleNanos) {
+                    moveToCold(entry.getKey());
+                }
+            }
+        }
+        catch(RuntimeException e) {
+            // A failing sweep mustn't cancel the ones after it
+        }
+    }
+
+    /**
+     * Snapshots the hot tier once the journal has grown past its limit since the latest snapshot
+     */
+    private void compactIfNeeded() {
+        try {
+            if(journal.appendedBytes() <= compactBytes) {
+                return;
+            }
+            NumberGameJournal.Checkpoint checkpoint;
+            journalLock.writeLock().lock();
+            try {
+                checkpoint = journal.checkpoint(hot);
+            }
+            finally {
+                journalLock.writeLock().unlock();
+            }
+            journal.writeSnapshot(checkpoint);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs a journaled write to a hot game, under the game's lock
+     * @param gameId The ID of the game to write
+     * @param write The write, which throws GameNotFoundException if the game isn't hot
+     * @return The result of the write, or null if the game isn't hot
+     */
+    private <T> T journaled(int gameId, JournaledWrite<T> write) {
+        journalLock.readLock().lock();
+        try {
+            synchronized(locks[gameId & (LOCK_STRIPES - 1)]) {
+                return write.run();
+            }
+        }
+        catch(GameNotFoundException e) {
+            return null;
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            journalLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a journaled write to a game if it is hot. Games only become hot when they are created
+     * @param gameId The ID of the game to write
+     * @param write The write, which throws GameNotFoundException if the game isn't hot
+     * @return The result of the write, or null if the game isn't hot
+     */
+    private <T> T journaledIfHot(int gameId, JournaledWrite<T> write) {
+        return lastUsed.containsKey(gameId) ? journaled(gameId, write) : null;
+    }
+
+    /**
+     * A write to a hot game and its journal
+     */
+    @FunctionalInterface
+    private interface JournaledWrite<T> {
+        T run() throws GameNotFoundException, IOException;
+    }
+}
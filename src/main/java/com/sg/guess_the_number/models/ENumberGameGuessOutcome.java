@@ -0,0 +1,29 @@
+package com.sg.guess_the_number.models;
+
+/**
+ * An enumeration for the outcome of a guess submitted in a batch, along with the HTTP
+ * status POST /guess responds with for the same outcome
+ */
+public enum ENumberGameGuessOutcome {
+    APPLIED(200),
+    INVALID_GUESS(422),
+    GAME_NOT_FOUND(404),
+    GAME_FINISHED(423);
+
+    /**
+     * The HTTP status of the outcome
+     */
+    private final int status;
+
+    ENumberGameGuessOutcome(int status) {
+        this.status = status;
+    }
+
+    /**
+     * Retrieves the HTTP status POST /guess responds with for the outcome
+     * @return The HTTP status of the outcome
+     */
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,27 @@
+package com.sg.guess_the_number.models;
+
+/**
+ * An abstraction for the result of several NumberGameInstances created at once
+ */
+public class NumberGameBatchCreationResult {
+    /**
+     * The IDs of the game instances
+     */
+    private int[] gameIds;
+
+    /**
+     * Constructs a new NumberGameBatchCreationResult
+     * @param gameIds The IDs of the result's game instances
+     */
+    public NumberGameBatchCreationResult(int[] gameIds) {
+        this.gameIds = gameIds;
+    }
+
+    /**
+     * Retrieves the IDs of the result's game instances
+     * @return The IDs of the result's game instances
+     */
+    public int[] getGameIds() {
+        return gameIds;
+    }
+}
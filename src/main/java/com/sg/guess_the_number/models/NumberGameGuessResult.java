@@ -0,0 +1,49 @@
+package com.sg.guess_the_number.models;
+
+/**
+ * An abstraction for the result of a single guess submitted in a batch
+ */
+public class NumberGameGuessResult {
+    /**
+     * What happened to the guess
+     */
+    private final ENumberGameGuessOutcome outcome;
+    /**
+     * The round created from the guess, or null if it wasn't applied
+     */
+    private final NumberGameRound round;
+
+    /**
+     * Constructs a new NumberGameGuessResult
+     * @param outcome What happened to the guess
+     * @param round The round created from the guess, or null if it wasn't applied
+     */
+    public NumberGameGuessResult(ENumberGameGuessOutcome outcome, NumberGameRound round) {
+        this.outcome = outcome;
+        this.round = round;
+    }
+
+    /**
+     * Retrieves what happened to the guess
+     * @return The outcome of the guess
+     */
+    public ENumberGameGuessOutcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Retrieves the HTTP status POST /guess would have responded to the guess with
+     * @return The HTTP status of the outcome
+     */
+    public int getStatus() {
+        return outcome.getStatus();
+    }
+
+    /**
+     * Retrieves the round created from the guess
+     * @return The round of the guess, or null if it wasn't applied
+     */
+    public NumberGameRound getRound() {
+        return round;
+    }
+}
@@ -0,0 +1,55 @@
+package com.sg.guess_the_number.models;
+
+/**
+ * An abstraction for a suggested next guess for a game
+ */
+public class NumberGameHint {
+    /**
+     * The ID of the game the hint is for
+     */
+    private int gameId;
+    /**
+     * The suggested guess
+     */
+    private String guess;
+    /**
+     * The number of answers still consistent with every round played
+     */
+    private int remainingCandidates;
+
+    /**
+     * Constructs a new NumberGameHint
+     * @param gameId The ID of the game the hint is for
+     * @param guess The suggested guess
+     * @param remainingCandidates The number of answers still consistent with every round played
+     */
+    public NumberGameHint(int gameId, String guess, int remainingCandidates) {
+        this.gameId = gameId;
+        this.guess = guess;
+        this.remainingCandidates = remainingCandidates;
+    }
+
+    /**
+     * Retrieves the ID of the game the hint is for
+     * @return The ID of the game the hint is for
+     */
+    public int getGameId() {
+        return gameId;
+    }
+
+    /**
+     * Retrieves the suggested guess
+     * @return The suggested guess, or null if no answer is consistent with the rounds played
+     */
+    public String getGuess() {
+        return guess;
+    }
+
+    /**
+     * Retrieves the number of answers still consistent with every round played
+     * @return The number of remaining candidate answers
+     */
+    public int getRemainingCandidates() {
+        return remainingCandidates;
+    }
+}
@@ -0,0 +1,46 @@
+package com.sg.guess_the_number.models;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An abstraction for the result of looking up several games at once
+ *
+ * @param <T> The type of what was looked up for each game
+ */
+public class NumberGameLookupResult<T> {
+    /**
+     * What was found for each game that exists, by the game's ID, in the order the IDs were requested
+     */
+    private Map<Integer, T> found;
+    /**
+     * The requested IDs of games that could not be found
+     */
+    private List<Integer> missingIds;
+
+    /**
+     * Constructs a new NumberGameLookupResult
+     * @param found What was found for each game that exists, by the game's ID
+     * @param missingIds The requested IDs of games that could not be found
+     */
+    public NumberGameLookupResult(Map<Integer, T> found, List<Integer> missingIds) {
+        this.found = found;
+        this.missingIds = missingIds;
+    }
+
+    /**
+     * Retrieves what was found for each game that exists
+     * @return What was found for each game that exists, by the game's ID
+     */
+    public Map<Integer, T> getFound() {
+        return found;
+    }
+
+    /**
+     * Retrieves the requested IDs of games that could not be found
+     * @return The requested IDs of games that could not be found
+     */
+    public List<Integer> getMissingIds() {
+        return missingIds;
+    }
+}
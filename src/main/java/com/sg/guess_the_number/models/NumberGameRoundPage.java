@@ -0,0 +1,46 @@
+package com.sg.guess_the_number.models;
+
+import java.util.List;
+
+/**
+ * An abstraction for the rounds of a game played after a cursor
+ *
+ * Rounds are numbered from 1 in the order they were played. The next request for new
+ * rounds passes the cursor of this page as its after parameter.
+ */
+public class NumberGameRoundPage {
+    /**
+     * The rounds played after the requested round, in the order they were played
+     */
+    private List<NumberGameRound> rounds;
+    /**
+     * The number of the latest round on the page, or the requested round if the page is empty
+     */
+    private int cursor;
+
+    /**
+     * Constructs a new NumberGameRoundPage
+     * @param rounds The rounds played after the requested round
+     * @param cursor The number of the latest round on the page, or the requested round if the page is empty
+     */
+    public NumberGameRoundPage(List<NumberGameRound> rounds, int cursor) {
+        this.rounds = rounds;
+        this.cursor = cursor;
+    }
+
+    /**
+     * Retrieves the rounds played after the requested round
+     * @return The rounds played after the requested round, in the order they were played
+     */
+    public List<NumberGameRound> getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Retrieves the cursor to request newer rounds after
+     * @return The number of the latest round on the page, or the requested round if the page is empty
+     */
+    public int getCursor() {
+        return cursor;
+    }
+}
@@ -0,0 +1,251 @@
+package com.sg.guess_the_number.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * An abstraction for the rules of a guess the number game
+ *
+ * Answers and guesses are made of answerLength symbols, each taken from the first
+ * alphabetSize symbols of 0-9 followed by a-z.
+ */
+public class NumberGameVariant {
+    /**
+     * The shortest and longest supported answer lengths
+     */
+    public static final int MIN_ANSWER_LENGTH = 1;
+    public static final int MAX_ANSWER_LENGTH = 15;
+    /**
+     * The smallest and largest supported alphabet sizes
+     */
+    public static final int MIN_ALPHABET_SIZE = 2;
+    public static final int MAX_ALPHABET_SIZE = 36;
+
+    /**
+     * The answer length and alphabet size of the default variant, 4 distinct decimal digits
+     */
+    public static final int DEFAULT_ANSWER_LENGTH = 4;
+    public static final int DEFAULT_ALPHABET_SIZE = 10;
+
+    /**
+     * The number of symbols in an answer
+     */
+    private int answerLength = DEFAULT_ANSWER_LENGTH;
+    /**
+     * The number of distinct symbols an answer can be made of
+     */
+    private int alphabetSize = DEFAULT_ALPHABET_SIZE;
+    /**
+     * Whether an answer can contain the same symbol more than once
+     */
+    private boolean allowDuplicates;
+
+    /**
+     * Constructs a NumberGameVariant with the settings of the default variant
+     */
+    public NumberGameVariant() {
+
+    }
+
+    /**
+     * Constructs a new NumberGameVariant
+     * @param answerLength The number of symbols in an answer
+     * @param alphabetSize The number of distinct symbols an answer can be made of
+     * @param allowDuplicates Whether an answer can contain the same symbol more than once
+     */
+    public NumberGameVariant(int answerLength, int alphabetSize, boolean allowDuplicates) {
+        this.answerLength = answerLength;
+        this.alphabetSize = alphabetSize;
+        this.allowDuplicates = allowDuplicates;
+    }
+
+    /**
+     * Constructs a copy of a NumberGameVariant
+     * @param other The variant to copy
+     */
+    public NumberGameVariant(NumberGameVariant other) {
+        this(other.answerLength, other.alphabetSize, other.allowDuplicates);
+    }
+
+    /**
+     * Creates the variant that best describes a given answer
+     * @param answer The answer to describe
+     * @return A variant the answer is valid for
+     */
+    public static NumberGameVariant forAnswer(String answer) {
+        int alphabetSize = DEFAULT_ALPHABET_SIZE;
+        long usedSymbols = 0;
+        boolean duplicates = false;
+        for(int i = 0; i < answer.length(); i ++) {
+            int symbol = symbolOf(answer.charAt(i));
+            if(symbol < 0) {
+                continue;
+            }
+            alphabetSize = Math.max(alphabetSize, symbol + 1);
+            duplicates |= (usedSymbols & (1L << symbol)) != 0;
+            usedSymbols |= 1L << symbol;
+        }
+        return new NumberGameVariant(answer.length(), alphabetSize, duplicates);
+    }
+
+    /**
+     * Retrieves the value of a symbol, case insensitively
+     * @param symbol The symbol to retrieve the value of
+     * @return The value of the symbol, or -1 if it is not one of 0-9 or a-z
+     */
+    public static int symbolOf(char symbol) {
+        if(symbol >= '0' && symbol <= '9') {
+            return symbol - '0';
+        }
+        if(symbol >= 'a' && symbol <= 'z') {
+            return symbol - 'a' + 10;
+        }
+        if(symbol >= 'A' && symbol <= 'Z') {
+            return symbol - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the symbol with a given value
+     * @param value The value of the symbol
+     * @return The lower case symbol with the given value
+     */
+    public static char symbolFor(int value) {
+        return (char)(value < 10 ? '0' + value : 'a' + value - 10);
+    }
+
+    /**
+     * Retrieves the number of distinct answers valid for the variant
+     * @return The number of distinct answers, or Long.MAX_VALUE if there are more than that
+     */
+    @JsonIgnore
+    public long getAnswerCount() {
+        long count = 1;
+        for(int i = 0; i < answerLength; i ++) {
+            long choices = allowDuplicates ? alphabetSize : alphabetSize - i;
+            if(choices <= 0) {
+                return 0;
+            }
+            if(count > Long.MAX_VALUE / choices) {
+                return Long.MAX_VALUE;
+            }
+            count *= choices;
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether the variant's settings are supported. Besides the length and alphabet
+     * limits, every string of answerLength symbols must fit in a long when read as a number
+     * in base alphabetSize, which is how answers and guesses are stored
+     * @return Whether the variant is supported
+     */
+    @JsonIgnore
+    public boolean isValid() {
+        return answerLength >= MIN_ANSWER_LENGTH && answerLength <= MAX_ANSWER_LENGTH &&
+                alphabetSize >= MIN_ALPHABET_SIZE && alphabetSize <= MAX_ALPHABET_SIZE &&
+                (allowDuplicates || answerLength <= alphabetSize) &&
+                fitsInLong();
+    }
+
+    /**
+     * Checks whether alphabetSize to the power of answerLength is at most Long.MAX_VALUE
+     * @return Whether every string of the variant's symbols fits in a long
+     */
+    private boolean fitsInLong() {
+        long codes = 1;
+        for(int i = 0; i < answerLength; i ++) {
+            if(codes > Long.MAX_VALUE / alphabetSize) {
+                return false;
+            }
+            codes *= alphabetSize;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a guess is valid for the variant. Guesses may repeat symbols even
+     * when answers cannot
+     * @param guess The guess to check
+     * @return Whether the guess has the variant's length and only uses symbols of its alphabet
+     */
+    public boolean isValidGuess(String guess) {
+        if(guess == null || guess.length() != answerLength) {
+            return false;
+        }
+        for(int i = 0; i < answerLength; i ++) {
+            int symbol = symbolOf(guess.charAt(i));
+            if(symbol < 0 || symbol >= alphabetSize) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the number of symbols in an answer
+     * @return The number of symbols in an answer
+     */
+    public int getAnswerLength() {
+        return answerLength;
+    }
+
+    /**
+     * Sets the number of symbols in an answer
+     * @param answerLength The new number of symbols in an answer
+     */
+    public void setAnswerLength(int answerLength) {
+        this.answerLength = answerLength;
+    }
+
+    /**
+     * Retrieves the number of distinct symbols an answer can be made of
+     * @return The number of distinct symbols an answer can be made of
+     */
+    public int getAlphabetSize() {
+        return alphabetSize;
+    }
+
+    /**
+     * Sets the number of distinct symbols an answer can be made of
+     * @param alphabetSize The new number of distinct symbols an answer can be made of
+     */
+    public void setAlphabetSize(int alphabetSize) {
+        this.alphabetSize = alphabetSize;
+    }
+
+    /**
+     * Retrieves whether an answer can contain the same symbol more than once
+     * @return Whether an answer can contain the same symbol more than once
+     */
+    public boolean isAllowDuplicates() {
+        return allowDuplicates;
+    }
+
+    /**
+     * Sets whether an answer can contain the same symbol more than once
+     * @param allowDuplicates Whether an answer can contain the same symbol more than once
+     */
+    public void setAllowDuplicates(boolean allowDuplicates) {
+        this.allowDuplicates = allowDuplicates;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof NumberGameVariant)) {
+            return false;
+        }
+        NumberGameVariant other = (NumberGameVariant)o;
+        return answerLength == other.answerLength &&
+                alphabetSize == other.alphabetSize &&
+                allowDuplicates == other.allowDuplicates;
+    }
+
+    @Override
+    public int hashCode() {
+        return (answerLength * 31 + alphabetSize) * 31 + (allowDuplicates ? 1 : 0);
+    }
+}
@@ -1,6 +1,7 @@
 package com.sg.guess_the_number.models.game;
 
 import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameVariant;
 
 /**
  * An abstraction for a specific guess the number game instance
@@ -18,6 +19,10 @@ public class NumberGameInstance {
      * The current status of the game
      */
     private ENumberGameStatus status;
+    /**
+     * The rules of the game
+     */
+    private NumberGameVariant variant = new NumberGameVariant();
 
     /**
      * Retrieves the gameId of the game
@@ -66,4 +71,20 @@ public class NumberGameInstance {
         this.status = status;
     }
 
+    /**
+     * Gets the rules of the game
+     * @return The rules of the game
+     */
+    public NumberGameVariant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Sets the rules of the game
+     * @param variant The new rules of the game
+     */
+    public void setVariant(NumberGameVariant variant) {
+        this.variant = variant;
+    }
+
 }
@@ -1,6 +1,7 @@
 package com.sg.guess_the_number.models.game;
 
 import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameVariant;
 
 /**
  * An immutable view of a NumberGameInstance set to the FINISHED status
@@ -14,6 +15,10 @@ public class NumberGameInstanceFView implements NumberGameInstanceView {
      * The answer to the game instance
      */
     private String answer;
+    /**
+     * The rules of the game instance
+     */
+    private NumberGameVariant variant;
     /**
      * The status associated with the game instance
      */
@@ -26,6 +31,7 @@ public class NumberGameInstanceFView implements NumberGameInstanceView {
     public NumberGameInstanceFView(NumberGameInstance instance) {
         gameId = instance.getGameId();
         answer = instance.getAnswer();
+        variant = instance.getVariant();
     }
 
     /**
@@ -51,4 +57,12 @@ public class NumberGameInstanceFView implements NumberGameInstanceView {
     public ENumberGameStatus getStatus() {
         return status;
     }
+
+    /**
+     * Gets the rules of the view's game instance
+     * @return The rules of the view's game instance
+     */
+    public NumberGameVariant getVariant() {
+        return variant;
+    }
 }
@@ -1,6 +1,8 @@
 package com.sg.guess_the_number.models.game;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameVariant;
 
 /**
  * An immutable view of a NumberGameInstance set to the IN_PROGRESS status
@@ -10,6 +12,14 @@ public class NumberGameInstanceIPView implements NumberGameInstanceView{
      * The ID of the view's game instance
      */
     private int gameId;
+    /**
+     * The rules of the view's game instance
+     */
+    private NumberGameVariant variant;
+    /**
+     * The number of answers still consistent with the rounds played, if known
+     */
+    private Integer remainingCandidates;
     /**
      * The status of instance's associated with the view
      */
@@ -20,7 +30,18 @@ public class NumberGameInstanceIPView implements NumberGameInstanceView{
      * @param instance The instance to construct the view from
      */
     public NumberGameInstanceIPView(NumberGameInstance instance) {
+        this(instance, null);
+    }
+
+    /**
+     * Constructs a NumberGameInstanceIPView from a NumberGameInstance object and its remaining candidate count
+     * @param instance The instance to construct the view from
+     * @param remainingCandidates The number of answers still consistent with the rounds played, if known
+     */
+    public NumberGameInstanceIPView(NumberGameInstance instance, Integer remainingCandidates) {
         gameId = instance.getGameId();
+        variant = instance.getVariant();
+        this.remainingCandidates = remainingCandidates;
     }
 
     /**
@@ -38,4 +59,21 @@ public class NumberGameInstanceIPView implements NumberGameInstanceView{
     public ENumberGameStatus getStatus() {
         return status;
     }
+
+    /**
+     * Gets the rules of the view's game instance
+     * @return The rules of the view's game instance
+     */
+    public NumberGameVariant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Gets the number of answers still consistent with the rounds played in the view's game instance
+     * @return The number of remaining candidate answers, or null if it is not known
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer getRemainingCandidates() {
+        return remainingCandidates;
+    }
 }
@@ -1,5 +1,7 @@
 package com.sg.guess_the_number.models.game;
 
+import com.sg.guess_the_number.models.ENumberGameStatus;
+
 /**
  * A utility class for creating views from a given instance
  */
@@ -19,4 +21,18 @@ public class NumberGameInstanceViewFactory {
         assert false;
         return null;
     }
+
+    /**
+     * Constructs a NumberGameInstanceView from an NumberGameInstance object, including the
+     * number of answers still consistent with the rounds played in an in progress game
+     * @param instance The instance to construct a view of
+     * @param remainingCandidates The number of remaining candidate answers, if known
+     * @return The constructed view
+     */
+    public static NumberGameInstanceView createFromInstance(NumberGameInstance instance, Integer remainingCandidates) {
+        if(instance.getStatus() == ENumberGameStatus.IN_PROGRESS) {
+            return new NumberGameInstanceIPView(instance, remainingCandidates);
+        }
+        return createFromInstance(instance);
+    }
 }
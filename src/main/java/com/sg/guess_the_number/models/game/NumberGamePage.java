@@ -0,0 +1,46 @@
+package com.sg.guess_the_number.models.game;
+
+import java.util.List;
+
+/**
+ * An abstraction for one page of a game listing
+ *
+ * Games are listed in ascending order of their ID. The next page is retrieved by
+ * passing nextAfterId as the afterId of the next request.
+ */
+public class NumberGamePage {
+    /**
+     * The views of the games on the page
+     */
+    private List<NumberGameInstanceView> games;
+    /**
+     * The ID to continue the listing after, or null if this is the last page
+     */
+    private Integer nextAfterId;
+
+    /**
+     * Constructs a new NumberGamePage
+     * @param games The views of the games on the page
+     * @param nextAfterId The ID to continue the listing after, or null if this is the last page
+     */
+    public NumberGamePage(List<NumberGameInstanceView> games, Integer nextAfterId) {
+        this.games = games;
+        this.nextAfterId = nextAfterId;
+    }
+
+    /**
+     * Retrieves the views of the games on the page
+     * @return The views of the games on the page
+     */
+    public List<NumberGameInstanceView> getGames() {
+        return games;
+    }
+
+    /**
+     * Retrieves the ID to continue the listing after
+     * @return The ID to continue the listing after, or null if this is the last page
+     */
+    public Integer getNextAfterId() {
+        return nextAfterId;
+    }
+}
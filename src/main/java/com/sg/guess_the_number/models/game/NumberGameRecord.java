@@ -0,0 +1,45 @@
+package com.sg.guess_the_number.models.game;
+
+import com.sg.guess_the_number.models.NumberGameRound;
+
+import java.util.List;
+
+/**
+ * An abstraction for a single game's entry in an export, holding a view of the game along with its rounds
+ */
+public class NumberGameRecord {
+    /**
+     * The view of the game
+     */
+    private NumberGameInstanceView game;
+    /**
+     * The rounds played in the game, in the order they were played
+     */
+    private List<NumberGameRound> rounds;
+
+    /**
+     * Constructs a new NumberGameRecord
+     * @param game The view of the game
+     * @param rounds The rounds played in the game, in the order they were played
+     */
+    public NumberGameRecord(NumberGameInstanceView game, List<NumberGameRound> rounds) {
+        this.game = game;
+        this.rounds = rounds;
+    }
+
+    /**
+     * Retrieves the view of the game
+     * @return The view of the game
+     */
+    public NumberGameInstanceView getGame() {
+        return game;
+    }
+
+    /**
+     * Retrieves the rounds played in the game
+     * @return The rounds played in the game, in the order they were played
+     */
+    public List<NumberGameRound> getRounds() {
+        return rounds;
+    }
+}
@@ -0,0 +1,15 @@
+package com.sg.guess_the_number.service;
+
+/**
+ * An exception thrown when a guess is made for a game that is already finished
+ */
+public class GameFinishedException extends InvalidGuessException {
+    /**
+     * Constructs a new exception in the format
+     * "Game "GAMEID" is already finished"
+     * @param gameId The ID of the finished game
+     */
+    public GameFinishedException(int gameId) {
+        super(gameId);
+    }
+}
@@ -13,4 +13,13 @@ public class InvalidGuessException extends Exception {
     public InvalidGuessException(String guess) {
         super(String.format("Invalid guess \"%s\"", guess));
     }
+
+    /**
+     * Constructs a new exception in the format
+     * "Game "GAMEID" is already finished", for use by GameFinishedException
+     * @param gameId The ID of the finished game
+     */
+    protected InvalidGuessException(int gameId) {
+        super(String.format("Game \"%d\" is already finished", gameId));
+    }
 }
@@ -0,0 +1,19 @@
+package com.sg.guess_the_number.service;
+
+import com.sg.guess_the_number.models.NumberGameVariant;
+
+/**
+ * An exception thrown when the rules requested for a game
+ * are not supported by the service layer
+ */
+public class InvalidVariantException extends Exception {
+    /**
+     * Constructs a new exception in the format
+     * "Invalid variant LENGTH symbols from ALPHABET (duplicates: DUPLICATES)"
+     * @param variant The variant that caused the exception
+     */
+    public InvalidVariantException(NumberGameVariant variant) {
+        super(String.format("Invalid variant %d symbols from %d (duplicates: %b)",
+                variant.getAnswerLength(), variant.getAlphabetSize(), variant.isAllowDuplicates()));
+    }
+}
@@ -0,0 +1,38 @@
+package com.sg.guess_the_number.service;
+
+import com.sg.guess_the_number.models.NumberGameVariant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An abstraction for the source of answers to newly created games
+ */
+public interface NumberGameAnswerGenerator {
+    /**
+     * Generates the answer to a new game of the default variant
+     * @return The generated answer
+     */
+    String generateAnswer();
+
+    /**
+     * Generates the answer to a new game of a given variant
+     * @param variant The variant of the game, which must be valid
+     * @return The generated answer
+     */
+    String generateAnswer(NumberGameVariant variant);
+
+    /**
+     * Generates the answers to several new games of a given variant
+     * @param variant The variant of the games, which must be valid
+     * @param count The number of answers to generate
+     * @return The generated answers
+     */
+    default List<String> generateAnswers(NumberGameVariant variant, int count) {
+        List<String> answers = new ArrayList<>(count);
+        for(int i = 0; i < count; i ++) {
+            answers.add(generateAnswer(variant));
+        }
+        return answers;
+    }
+}
@@ -0,0 +1,182 @@
+package com.sg.guess_the_number.service;
+
+import com.sg.guess_the_number.models.NumberGameVariant;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A precomputed table of every valid answer of a game variant, in ascending order
+ *
+ * Pools are shared and built once per variant, and only for variants with at most
+ * MAX_SIZE answers. The default variant has 5040.
+ */
+public final class NumberGameAnswerPool {
+    /**
+     * The largest number of answers a pool will hold
+     */
+    public static final int MAX_SIZE = 1 << 16;
+
+    /**
+     * The pools built so far, keyed by a copy of their variant
+     */
+    private static final ConcurrentMap<NumberGameVariant, NumberGameAnswerPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * The variant the pool holds the answers of
+     */
+    private final NumberGameVariant variant;
+    /**
+     * Every valid answer of the variant
+     */
+    private final String[] answers;
+    /**
+     * Every answer packed with NumberGameScorer.pack, or null if the alphabet is too large to pack
+     */
+    private final long[] packedAnswers;
+
+    private NumberGameAnswerPool(NumberGameVariant variant) {
+        this.variant = variant;
+        this.answers = new String[(int)variant.getAnswerCount()];
+        fillAnswers(new char[variant.getAnswerLength()], 0, 0, 0);
+        if(variant.getAlphabetSize() <= 16) {
+            packedAnswers = new long[answers.length];
+            for(int i = 0; i < answers.length; i ++) {
+                packedAnswers[i] = NumberGameScorer.pack(answers[i]);
+            }
+        }
+        else {
+            packedAnswers = null;
+        }
+    }
+
+    /**
+     * Retrieves the pool of a given variant, building it if needed
+     * @param variant The variant to retrieve the pool of
+     * @return The pool of the variant, or null if the variant has more than MAX_SIZE answers
+     */
+    public static NumberGameAnswerPool forVariant(NumberGameVariant variant) {
+        NumberGameAnswerPool pool = POOLS.get(variant);
+        if(pool != null) {
+            return pool;
+        }
+        if(!variant.isValid() || variant.getAnswerCount() > MAX_SIZE) {
+            return null;
+        }
+        return POOLS.computeIfAbsent(new NumberGameVariant(variant), NumberGameAnswerPool::new);
+    }
+
+    /**
+     * Retrieves the variant the pool holds the answers of
+     * @return The variant of the pool
+     */
+    public NumberGameVariant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Retrieves the number of answers in the pool
+     * @return The number of answers in the pool
+     */
+    public int size() {
+        return answers.length;
+    }
+
+    /**
+     * Retrieves an answer from the pool
+     * @param index The index of the answer
+     * @return The answer at the given index
+     */
+    public String getAnswer(int index) {
+        return answers[index];
+    }
+
+    /**
+     * Checks whether the answers of the pool are also available packed
+     * @return Whether getPackedAnswer can be used
+     */
+    public boolean isPacked() {
+        return packedAnswers != null;
+    }
+
+    /**
+     * Retrieves an answer from the pool, packed with NumberGameScorer.pack
+     * @param index The index of the answer
+     * @return The packed answer at the given index
+     */
+    public long getPackedAnswer(int index) {
+        return packedAnswers[index];
+    }
+
+    /**
+     * Scores the answer at one index as a guess against the answer at another
+     * @param answerIndex The index of the answer to score against
+     * @param guessIndex The index of the answer to score as a guess
+     * @return The result code of the guess
+     */
+    public int score(int answerIndex, int guessIndex) {
+        if(packedAnswers != null) {
+            return NumberGameScorer.score(packedAnswers[answerIndex], packedAnswers[guessIndex],
+                    variant.getAnswerLength());
+        }
+        return NumberGameScorer.score(answers[answerIndex], answers[guessIndex]);
+    }
+
+    /**
+     * Creates a set holding the index of every answer in the pool
+     * @return The set of every answer index
+     */
+    public BitSet allAnswers() {
+        BitSet answerSet = new BitSet(answers.length);
+        answerSet.set(0, answers.length);
+        return answerSet;
+    }
+
+    /**
+     * Removes every answer that would not have scored a given result for a given guess
+     * @param candidates The indices of the answers to narrow down
+     * @param guess The guess that was played, which must be valid for the pool's variant
+     * @param resultCode The result code the guess scored
+     */
+    public void narrow(BitSet candidates, String guess, int resultCode) {
+        if(packedAnswers != null) {
+            long packedGuess = NumberGameScorer.pack(guess);
+            int length = variant.getAnswerLength();
+            for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if(NumberGameScorer.score(packedAnswers[i], packedGuess, length) != resultCode) {
+                    candidates.clear(i);
+                }
+            }
+        }
+        else {
+            for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if(NumberGameScorer.score(answers[i], guess) != resultCode) {
+                    candidates.clear(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recursively fills the pool with every valid answer
+     * @param symbols The symbols chosen so far
+     * @param position The position of the symbol to choose
+     * @param usedSymbols A bitmask of the symbols chosen so far
+     * @param next The next free index in the pool
+     * @return The next free index in the pool after filling
+     */
+    private int fillAnswers(char[] symbols, int position, long usedSymbols, int next) {
+        if(position == symbols.length) {
+            answers[next] = new String(symbols);
+            return next + 1;
+        }
+        for(int symbol = 0; symbol < variant.getAlphabetSize(); symbol ++) {
+            if(variant.isAllowDuplicates() || (usedSymbols & (1L << symbol)) == 0) {
+                symbols[position] = NumberGameVariant.symbolFor(symbol);
+                next = fillAnswers(symbols, position + 1, usedSymbols | (1L << symbol), next);
+            }
+        }
+        return next;
+    }
+}
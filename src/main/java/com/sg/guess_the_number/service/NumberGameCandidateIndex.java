@@ -0,0 +1,240 @@
+package com.sg.guess_the_number.service;
+
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Tracks, for each in progress game, the answers still consistent with every round played
+ *
+ * Each game holds a bitset over its variant's NumberGameAnswerPool, so it takes at most
+ * NumberGameAnswerPool.MAX_SIZE bits, and is narrowed by each new round rather than
+ * rebuilt from the game's history. Games whose variant has no pool are not tracked.
+ * Games missing from the index, such as those created before a restart or evicted, are
+ * rebuilt from their rounds the first time they are needed. At most maxGames games are
+ * tracked, evicting the least recently used ones, so abandoned games don't stay forever.
+ * Entries are spread over independently locked segments, like NumberGameLruCache.
+ */
+@Component
+public class NumberGameCandidateIndex {
+    /**
+     * The default number of games the index tracks at most
+     */
+    public static final int DEFAULT_MAX_GAMES = 100000;
+    /**
+     * The number of segments, which must be a power of two
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * The tracked games, keyed by their ID and spread over the segments
+     */
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    /**
+     * Constructs a NumberGameCandidateIndex tracking at most DEFAULT_MAX_GAMES games
+     */
+    public NumberGameCandidateIndex() {
+        this(DEFAULT_MAX_GAMES);
+    }
+
+    /**
+     * Constructs a NumberGameCandidateIndex
+     * @param maxGames The number of games the index tracks at most
+     */
+    @Autowired
+    public NumberGameCandidateIndex(@Value("${guess_the_number.candidates.max-games:" + DEFAULT_MAX_GAMES + "}") int maxGames) {
+        int perSegment = Math.max(1, (maxGames + SEGMENTS - 1) / SEGMENTS);
+        for(int i = 0; i < SEGMENTS; i ++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    private Segment segmentFor(int gameId) {
+        // Spread sequential IDs over every segment
+        int hash = gameId * 0x9E3779B9;
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private Entry get(int gameId) {
+        Segment segment = segmentFor(gameId);
+        synchronized(segment) {
+            return segment.get(gameId);
+        }
+    }
+
+    /**
+     * Starts tracking a newly created game, for which every answer is still possible
+     * @param gameId The ID of the game
+     * @param variant The rules of the game
+     */
+    public void track(int gameId, NumberGameVariant variant) {
+        NumberGameAnswerPool answers = NumberGameAnswerPool.forVariant(variant);
+        if(answers != null) {
+            Segment segment = segmentFor(gameId);
+            synchronized(segment) {
+                segment.put(gameId, new Entry(answers, answers.allAnswers()));
+            }
+        }
+    }
+
+    /**
+     * Narrows a tracked game down by a newly played round
+     * @param gameId The ID of the game
+     * @param guess The guess of the round, which must be valid for the game's variant
+     * @param resultCode The result code the guess scored
+     */
+    public void applyRound(int gameId, String guess, int resultCode) {
+        Entry entry = get(gameId);
+        if(entry != null) {
+            synchronized(entry) {
+                entry.answers.narrow(entry.candidates, guess, resultCode);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the answers still consistent with every round of a game, tracking the game if it isn't yet
+     * @param gameId The ID of the game
+     * @param variant The rules of the game
+     * @param rounds Supplies every round played in the game, if it has to be rebuilt
+     * @return A copy of the indices of the consistent answers in the variant's answer pool,
+     * or null if the variant has no answer pool
+     */
+    public BitSet getCandidates(int gameId, NumberGameVariant variant, Supplier<List<NumberGameRound>> rounds) {
+        while(true) {
+            Entry entry = get(gameId);
+            if(entry == null) {
+                NumberGameAnswerPool answers = NumberGameAnswerPool.forVariant(variant);
+                if(answers == null) {
+                    return null;
+                }
+                Entry rebuilt = new Entry(answers, answers.allAnswers());
+                synchronized(rebuilt) {
+                    Segment segment = segmentFor(gameId);
+                    synchronized(segment) {
+                        entry = segment.putIfAbsent(gameId, rebuilt);
+                    }
+                    if(entry == null) {
+                        // The entry is published, and locked, before the rounds are read, so a round
+                        // stored meanwhile is either among them or applied to the entry once it is built
+                        try {
+                            for(NumberGameRound round : rounds.get()) {
+                                answers.narrow(rebuilt.candidates, round.getGuess(),
+                                        NumberGameScorer.parseResult(round.getGuessResult()));
+                            }
+                        }
+                        catch(RuntimeException e) {
+                            rebuilt.failed = true;
+                            remove(gameId, rebuilt);
+                            throw e;
+                        }
+                        return (BitSet)rebuilt.candidates.clone();
+                    }
+                }
+            }
+            synchronized(entry) {
+                if(!entry.failed) {
+                    return (BitSet)entry.candidates.clone();
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of answers still consistent with every round of a game
+     * @param gameId The ID of the game
+     * @param variant The rules of the game
+     * @param rounds Supplies every round played in the game, if it has to be rebuilt
+     * @return The number of consistent answers, or null if the variant has no answer pool
+     */
+    public Integer getCandidateCount(int gameId, NumberGameVariant variant, Supplier<List<NumberGameRound>> rounds) {
+        Entry entry = get(gameId);
+        if(entry != null) {
+            synchronized(entry) {
+                if(!entry.failed) {
+                    return entry.candidates.cardinality();
+                }
+            }
+        }
+        BitSet candidates = getCandidates(gameId, variant, rounds);
+        return candidates == null ? null : candidates.cardinality();
+    }
+
+    /**
+     * Stops tracking a game, such as once it is finished or removed
+     * @param gameId The ID of the game
+     */
+    public void drop(int gameId) {
+        Segment segment = segmentFor(gameId);
+        synchronized(segment) {
+            segment.remove(gameId);
+        }
+    }
+
+    /**
+     * Stops tracking a game only if it is still tracked by the given entry
+     */
+    private void remove(int gameId, Entry entry) {
+        Segment segment = segmentFor(gameId);
+        synchronized(segment) {
+            segment.remove(gameId, entry);
+        }
+    }
+
+    /**
+     * Retrieves the number of games currently tracked
+     * @return The number of tracked games
+     */
+    public int size() {
+        int size = 0;
+        for(Segment segment : segments) {
+            synchronized(segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The candidates tracked for a single game
+     */
+    private static final class Entry {
+        private final NumberGameAnswerPool answers;
+        private final BitSet candidates;
+        /**
+         * Set when rebuilding the entry failed, so it is never read
+         */
+        private boolean failed;
+
+        Entry(NumberGameAnswerPool answers, BitSet candidates) {
+            this.answers = answers;
+            this.candidates = candidates;
+        }
+    }
+
+    /**
+     * A share of the tracked games in access order, guarded by its own monitor
+     */
+    private static final class Segment extends LinkedHashMap<Integer, Entry> {
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -2,15 +2,19 @@ package com.sg.guess_the_number.service;
 
 import com.sg.guess_the_number.data.GameNotFoundException;
 import com.sg.guess_the_number.data.NumberGameDao;
+import com.sg.guess_the_number.models.ENumberGameGuessOutcome;
 import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameGuess;
+import com.sg.guess_the_number.models.NumberGameGuessResult;
+import com.sg.guess_the_number.models.NumberGameHint;
+import com.sg.guess_the_number.models.NumberGameVariant;
 import com.sg.guess_the_number.models.game.NumberGameInstance;
 import com.sg.guess_the_number.models.NumberGameRound;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Random;
+import java.util.*;
+import java.util.function.BiConsumer;
 
 /**
  * The default implementation of the guess_the_number service layer backend
@@ -18,9 +22,25 @@ import java.util.Random;
 @Component
 public class NumberGameDefaultService implements NumberGameService {
     private final NumberGameDao dao;
+    private final NumberGameAnswerGenerator answerGenerator;
+    private final NumberGameSolver solver;
+    private final NumberGameCandidateIndex candidateIndex;
+    private final NumberGameEventHub events;
 
     public NumberGameDefaultService(NumberGameDao dao) {
+        this(dao, new PooledAnswerGenerator(), new NumberGameSolver(), new NumberGameCandidateIndex(),
+                new NumberGameEventHub(dao));
+    }
+
+    @Autowired
+    public NumberGameDefaultService(NumberGameDao dao, NumberGameAnswerGenerator answerGenerator,
+                                    NumberGameSolver solver, NumberGameCandidateIndex candidateIndex,
+                                    NumberGameEventHub events) {
         this.dao = dao;
+        this.answerGenerator = answerGenerator;
+        this.solver = solver;
+        this.candidateIndex = candidateIndex;
+        this.events = events;
     }
 
     /**
@@ -31,7 +51,10 @@ public class NumberGameDefaultService implements NumberGameService {
      */
     @Override
     public int createGame(String answer) {
-        return dao.createGame(answer, ENumberGameStatus.IN_PROGRESS);
+        NumberGameVariant variant = NumberGameVariant.forAnswer(answer);
+        int gameId = dao.createGame(answer, variant, ENumberGameStatus.IN_PROGRESS);
+        candidateIndex.track(gameId, variant);
+        return gameId;
     }
 
     /**
@@ -41,18 +64,45 @@ public class NumberGameDefaultService implements NumberGameService {
      */
     @Override
     public int createGame() {
-        Random rand = new Random();
-        StringBuilder answer = new StringBuilder();
-        HashSet<Integer> generatedDigits = new HashSet<>();
-        for(int i = 0; i < 4; i ++) {
-            int generated = rand.nextInt(10);
-            while(generatedDigits.contains(generated)) {
-                generated = rand.nextInt(10);
-            }
-            generatedDigits.add(generated);
-            answer.append(generated);
+        return createGame(answerGenerator.generateAnswer());
+    }
+
+    /**
+     * Creates a new game with a random answer following the given rules
+     *
+     * @param variant The rules of the game
+     * @return The created game's id
+     * @throws InvalidVariantException thrown when the rules are not supported
+     */
+    @Override
+    public int createGame(NumberGameVariant variant) throws InvalidVariantException {
+        if(!variant.isValid()) {
+            throw new InvalidVariantException(variant);
         }
-        return createGame(answer.toString());
+        int gameId = dao.createGame(answerGenerator.generateAnswer(variant), variant, ENumberGameStatus.IN_PROGRESS);
+        candidateIndex.track(gameId, variant);
+        return gameId;
+    }
+
+    /**
+     * Creates several games with random answers following the given rules, in one bulk creation
+     *
+     * @param variant The rules of the games
+     * @param count The number of games to create
+     * @return The created games' ids
+     * @throws InvalidVariantException thrown when the rules are not supported
+     */
+    @Override
+    public int[] createGames(NumberGameVariant variant, int count) throws InvalidVariantException {
+        if(!variant.isValid()) {
+            throw new InvalidVariantException(variant);
+        }
+        int[] gameIds = dao.createGames(answerGenerator.generateAnswers(variant, count), variant,
+                ENumberGameStatus.IN_PROGRESS);
+        for(int gameId : gameIds) {
+            candidateIndex.track(gameId, variant);
+        }
+        return gameIds;
     }
 
     /**
@@ -71,30 +121,131 @@ public class NumberGameDefaultService implements NumberGameService {
             curGame = dao.getGameById(gameId);
         }
         catch(GameNotFoundException e) {
+            candidateIndex.drop(gameId);
             return null;
         }
 
-        if(guess.length() != curGame.getAnswer().length()) {
+        if(curGame.getStatus() != ENumberGameStatus.IN_PROGRESS) {
+            candidateIndex.drop(gameId);
+            throw new GameFinishedException(gameId);
+        }
+        if(!curGame.getVariant().isValidGuess(guess)) {
             throw new InvalidGuessException(guess);
         }
 
-        MatchResults results = calculateMatchResults(guess, curGame.getAnswer());
-        // Update and insert rounds
-        NumberGameRound round = new NumberGameRound(guess, results.toString());
+        int result = NumberGameScorer.score(curGame.getAnswer(), guess);
+        boolean solved = NumberGameScorer.exactMatches(result) == curGame.getAnswer().length();
+        // Insert the round and finish the game together
+        NumberGameRound round = new NumberGameRound(guess, NumberGameScorer.resultString(result));
         try {
-            dao.addRound(gameId, round);
-            if(results.fullMatchCount == curGame.getAnswer().length()) {
-                dao.updateStatus(curGame.getGameId(), ENumberGameStatus.FINISHED);
+            if(!dao.applyGuess(gameId, round, solved)) {
+                // Another guess finished the game since it was read
+                candidateIndex.drop(gameId);
+                throw new GameFinishedException(gameId);
             }
         }
-        // Should not be reached, since we check earlier, but we have to
-        // catch this to make java happy
         catch(GameNotFoundException e) {
+            candidateIndex.drop(gameId);
             return null;
         }
+        if(solved) {
+            candidateIndex.drop(gameId);
+        }
+        else {
+            candidateIndex.applyRound(gameId, guess, result);
+        }
+        events.publish(gameId, solved);
         return round;
     }
 
+    /**
+     * Processes several guesses, for any number of games
+     *
+     * Guesses are grouped by game, every game is read in a single lookup, and guesses are
+     * scored in order, so a guess after the one that solves its game finds it finished. The
+     * rounds of every game are then stored in one write. A game finished by another request before the write has
+     * none of its rounds stored, and its guesses find it finished.
+     *
+     * @param guesses The guesses to process
+     * @return The result of every guess, in the order the guesses were given
+     */
+    @Override
+    public List<NumberGameGuessResult> guessForGames(List<NumberGameGuess> guesses) {
+        NumberGameGuessResult[] results = new NumberGameGuessResult[guesses.size()];
+        Map<Integer, List<Integer>> byGame = new LinkedHashMap<>();
+        for(int i = 0; i < guesses.size(); i ++) {
+            byGame.computeIfAbsent(guesses.get(i).getGameId(), gameId -> new ArrayList<>()).add(i);
+        }
+        Map<Integer, List<NumberGameRound>> rounds = new LinkedHashMap<>();
+        // The index of the guess every round is for
+        Map<Integer, List<Integer>> roundGuesses = new HashMap<>();
+        Set<Integer> solved = new HashSet<>();
+        // Every game is read at once, rather than one lookup per game
+        Map<Integer, NumberGameInstance> games = dao.getGamesByIds(byGame.keySet());
+        for(Map.Entry<Integer, List<Integer>> entry : byGame.entrySet()) {
+            int gameId = entry.getKey();
+            NumberGameInstance game = games.get(gameId);
+            if(game == null) {
+                candidateIndex.drop(gameId);
+                for(int i : entry.getValue()) {
+                    results[i] = new NumberGameGuessResult(ENumberGameGuessOutcome.GAME_NOT_FOUND, null);
+                }
+                continue;
+            }
+            boolean finished = game.getStatus() != ENumberGameStatus.IN_PROGRESS;
+            if(finished) {
+                candidateIndex.drop(gameId);
+            }
+            for(int i : entry.getValue()) {
+                String guess = guesses.get(i).getGuess();
+                if(finished) {
+                    results[i] = new NumberGameGuessResult(ENumberGameGuessOutcome.GAME_FINISHED, null);
+                }
+                else if(!game.getVariant().isValidGuess(guess)) {
+                    results[i] = new NumberGameGuessResult(ENumberGameGuessOutcome.INVALID_GUESS, null);
+                }
+                else {
+                    int result = NumberGameScorer.score(game.getAnswer(), guess);
+                    NumberGameRound round = new NumberGameRound(guess, NumberGameScorer.resultString(result));
+                    rounds.computeIfAbsent(gameId, id -> new ArrayList<>()).add(round);
+                    roundGuesses.computeIfAbsent(gameId, id -> new ArrayList<>()).add(i);
+                    results[i] = new NumberGameGuessResult(ENumberGameGuessOutcome.APPLIED, round);
+                    if(NumberGameScorer.exactMatches(result) == game.getAnswer().length()) {
+                        solved.add(gameId);
+                        finished = true;
+                    }
+                }
+            }
+        }
+
+        Map<Integer, Integer> added = dao.applyGuesses(rounds, solved);
+        for(Map.Entry<Integer, List<NumberGameRound>> entry : rounds.entrySet()) {
+            int gameId = entry.getKey();
+            List<NumberGameRound> gameRounds = entry.getValue();
+            List<Integer> indices = roundGuesses.get(gameId);
+            int count = added.getOrDefault(gameId, 0);
+            for(int r = count; r < gameRounds.size(); r ++) {
+                // Another request finished the game since it was read
+                results[indices.get(r)] = new NumberGameGuessResult(ENumberGameGuessOutcome.GAME_FINISHED, null);
+            }
+            boolean finished = count == gameRounds.size() && solved.contains(gameId);
+            // Rounds left out were refused because another request finished the game
+            if(finished || count < gameRounds.size()) {
+                candidateIndex.drop(gameId);
+            }
+            else {
+                for(int r = 0; r < count; r ++) {
+                    NumberGameRound round = gameRounds.get(r);
+                    candidateIndex.applyRound(gameId, round.getGuess(), NumberGameScorer.parseResult(round.getGuessResult()));
+                }
+            }
+            if(count > 0) {
+                events.publish(gameId, finished);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
     /**
      * Retrieves all games stored by the service's storage
      *
@@ -105,6 +256,30 @@ public class NumberGameDefaultService implements NumberGameService {
         return dao.getAllGames();
     }
 
+    /**
+     * Retrieves a page of games in ascending order of their ID
+     *
+     * @param afterId Only games with a greater ID than this are retrieved
+     * @param limit The most games to retrieve
+     * @param status Only games with this status are retrieved, or games of any status if it is null
+     * @return The retrieved games
+     */
+    @Override
+    public List<NumberGameInstance> getGames(int afterId, int limit, ENumberGameStatus status) {
+        return dao.getGames(afterId, limit, status);
+    }
+
+    /**
+     * Streams every game along with its rounds, in ascending order of the game IDs
+     *
+     * @param handler Receives every game along with its rounds in the order they were played.
+     * The list of rounds is only valid until the handler returns
+     */
+    @Override
+    public void exportGames(BiConsumer<NumberGameInstance, List<NumberGameRound>> handler) {
+        dao.exportGames(handler);
+    }
+
     /**
      * Gets a specified game by it's ID
      *
@@ -138,39 +313,80 @@ public class NumberGameDefaultService implements NumberGameService {
         }
     }
 
-    private MatchResults calculateMatchResults(String guess, String answer) {
-        // Calculate matches
-        int partialMatchCount = 0;
-        int fullMatchCount = 0;
-
-        for(int i = 0; i < answer.length(); i ++) {
-            // Look for full match
-            if(answer.charAt(i) == guess.charAt(i)) {
-                fullMatchCount++;
-            }
-            else {
-                // Search for partial match
-                for(int j = 0; j < guess.length(); j ++) {
-                    if(guess.charAt(j) == answer.charAt(i)) {
-                        partialMatchCount++;
-                    }
-                }
-            }
+    /**
+     * Gets the rounds played for a specified game after a given round
+     *
+     * @param gameId The ID of the game to get the rounds of
+     * @param afterRound The number of the latest round already seen, or 0 to get every round
+     * @return A list of the rounds played after the given round, or null if the game could not be found
+     */
+    @Override
+    public List<NumberGameRound> getRoundsForGameAfter(int gameId, int afterRound) {
+        try {
+            return dao.getGameRoundsAfter(gameId, afterRound);
+        }
+        catch(GameNotFoundException e) {
+            return null;
         }
-        return new MatchResults(fullMatchCount, partialMatchCount);
     }
 
-    private static final class MatchResults {
-        private int fullMatchCount;
-        private int partialMatchCount;
-        MatchResults(int fullMatchCount, int partialMatchCount) {
-            this.fullMatchCount = fullMatchCount;
-            this.partialMatchCount = partialMatchCount;
+    /**
+     * Gets several games by their IDs at once
+     *
+     * @param gameIds The IDs of the games to retrieve
+     * @return The retrieved games, by their ID. Games that could not be found are left out
+     */
+    @Override
+    public Map<Integer, NumberGameInstance> getGamesByIds(Collection<Integer> gameIds) {
+        return dao.getGamesByIds(gameIds);
+    }
+
+    /**
+     * Gets all rounds played for several games at once
+     *
+     * @param gameIds The IDs of the games to get the rounds of
+     * @return The played rounds of every game, by the game's ID. Games that could not be found are left out
+     */
+    @Override
+    public Map<Integer, List<NumberGameRound>> getRoundsForGames(Collection<Integer> gameIds) {
+        return dao.getRoundsByGameIds(gameIds);
+    }
+
+    /**
+     * Finds the best next guess for a specified game, given the rounds played so far
+     *
+     * @param gameId The ID of the game to find a guess for
+     * @return The hint for the game, or null if the game could not be found
+     * @throws InvalidVariantException thrown when the game's rules have too many possible answers to search
+     */
+    @Override
+    public NumberGameHint getHint(int gameId) throws InvalidVariantException {
+        NumberGameInstance game = getGameById(gameId);
+        if(game == null) {
+            return null;
+        }
+        BitSet candidates = candidateIndex.getCandidates(gameId, game.getVariant(), () -> getRoundsForGame(gameId));
+        if(candidates == null) {
+            throw new InvalidVariantException(game.getVariant());
         }
+        NumberGameAnswerPool answers = NumberGameAnswerPool.forVariant(game.getVariant());
+        return new NumberGameHint(gameId, solver.findBestGuess(answers, candidates), candidates.cardinality());
+    }
 
-        @Override
-        public String toString() {
-            return String.format("e:%d:p:%d", fullMatchCount, partialMatchCount);
+    /**
+     * Retrieves the number of answers still consistent with every round played in a game
+     *
+     * @param game The game to count the answers of
+     * @return The number of consistent answers, or null if the game is finished
+     * or its rules have too many possible answers to track
+     */
+    @Override
+    public Integer getRemainingCandidates(NumberGameInstance game) {
+        if(game.getStatus() != ENumberGameStatus.IN_PROGRESS) {
+            candidateIndex.drop(game.getGameId());
+            return null;
         }
+        return candidateIndex.getCandidateCount(game.getGameId(), game.getVariant(),
+                () -> getRoundsForGame(game.getGameId()));
     }
 }
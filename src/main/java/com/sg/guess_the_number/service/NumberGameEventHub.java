@@ -0,0 +1,606 @@
+package com.sg.guess_the_number.service;
+
+import com.sg.guess_the_number.data.GameNotFoundException;
+import com.sg.guess_the_number.data.NumberGameDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.game.NumberGameInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans the rounds and the FINISHED transition of games out to server-sent event subscribers
+ *
+ * Every game with subscribers has a topic, which remembers the latest round it has seen.
+ * Publishing a change only flags the topic and schedules it, so it never waits on a
+ * subscriber. The topic then reads the new rounds once, with getGameRoundsAfter, and
+ * queues them for every subscriber. Each subscriber has a bounded buffer, sent from by its
+ * own task on the hub's threads. A subscriber whose buffer overflows is disconnected rather
+ * than waited for, and catches up when it reconnects. The rounds a subscriber catches up on
+ * are already read in full, so they are queued apart from the buffer.
+ *
+ * Sending blocks while the client's connection is full. A watchdog disconnects subscribers
+ * whose send takes longer than the send timeout, and lends the hub another thread until
+ * the stalled send returns, so slow clients can't starve the others of threads. At most
+ * as many threads are lent as the hub has, so a wave of slow clients can't grow the pool
+ * without bound; stalled subscribers past that are disconnected without a lent thread.
+ * The stalled send itself ends once the server's write timeout closes the connection.
+ *
+ * Round events carry their round number as their ID, so a client reconnecting with the
+ * Last-Event-ID header is first sent the rounds it missed. Subscribing to a finished game
+ * sends its rounds and the FINISHED status, then ends the stream.
+ */
+@Component
+public class NumberGameEventHub implements Closeable {
+    /**
+     * The default number of events buffered per subscriber
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 64;
+    /**
+     * The default number of threads events are sent from
+     */
+    public static final int DEFAULT_THREADS = 8;
+    /**
+     * The default time subscriptions are kept open for, in milliseconds
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+    /**
+     * The default time a single event may take to send, in milliseconds
+     */
+    public static final long DEFAULT_SEND_TIMEOUT_MILLIS = 5000;
+
+    private static final int IDLE = 0;
+    private static final int SENDING = 1;
+    private static final int STALLED = 2;
+    private static final int STALLED_UNLENT = 3;
+
+    private final NumberGameDao dao;
+    private final int bufferSize;
+    private final int threads;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    /**
+     * Runs the topic and subscriber tasks
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * Checks the sends in progress for ones taking longer than the send timeout
+     */
+    private final ScheduledExecutorService watchdog;
+    /**
+     * The subscribers currently sending an event
+     */
+    private final Set<Subscriber> sending = ConcurrentHashMap.newKeySet();
+    /**
+     * The number of threads lent to the executor for sends that timed out but haven't returned yet
+     */
+    private int lentThreads;
+    /**
+     * The topics of games with subscribers, keyed by their game's ID
+     */
+    private final ConcurrentMap<Integer, Topic> topics = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a NumberGameEventHub with the default buffer size, threads and timeouts
+     * @param dao The DAO new rounds are read from
+     */
+    public NumberGameEventHub(NumberGameDao dao) {
+        this(dao, DEFAULT_BUFFER_SIZE, DEFAULT_THREADS, DEFAULT_TIMEOUT_MILLIS, DEFAULT_SEND_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Constructs a NumberGameEventHub
+     * @param dao The DAO new rounds are read from
+     * @param bufferSize The number of events buffered per subscriber
+     * @param threads The number of threads events are sent from
+     * @param timeoutMillis The time subscriptions are kept open for, in milliseconds
+     * @param sendTimeoutMillis The time a single event may take to send before its subscriber is disconnected, in milliseconds
+     */
+    @Autowired
+    public NumberGameEventHub(NumberGameDao dao,
+                              @Value("${guess_the_number.events.buffer-size:" + DEFAULT_BUFFER_SIZE + "}") int bufferSize,
+                              @Value("${guess_the_number.events.threads:" + DEFAULT_THREADS + "}") int threads,
+                              @Value("${guess_the_number.events.timeout-millis:" + DEFAULT_TIMEOUT_MILLIS + "}") long timeoutMillis,
+                              @Value("${guess_the_number.events.send-timeout-millis:" + DEFAULT_SEND_TIMEOUT_MILLIS + "}") long sendTimeoutMillis) {
+        if(bufferSize < 1) {
+            throw new IllegalArgumentException("The buffer size must be at least 1");
+        }
+        if(sendTimeoutMillis < 1) {
+            throw new IllegalArgumentException("The send timeout must be at least 1 millisecond");
+        }
+        this.dao = dao;
+        this.bufferSize = bufferSize;
+        this.threads = threads;
+        this.timeoutMillis = timeoutMillis;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        this.executor = (ThreadPoolExecutor)Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "number-game-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "number-game-events-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, sendTimeoutMillis / 4);
+        watchdog.scheduleWithFixedDelay(this::expireStalledSends, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Subscribes to the events of a game with a new emitter
+     * @param gameId The ID of the game
+     * @param afterRound The number of the latest round already seen, or 0 to be sent every round
+     * @return The emitter the events are sent to
+     */
+    public SseEmitter subscribe(int gameId, int afterRound) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        subscribe(gameId, afterRound, emitter);
+        return emitter;
+    }
+
+    /**
+     * Subscribes an emitter to the events of a game
+     *
+     * The subscriber is first sent the rounds played after the given round. If the game
+     * could not be found, the emitter is completed without any events.
+     *
+     * @param gameId The ID of the game
+     * @param afterRound The number of the latest round already seen, or 0 to be sent every round
+     * @param emitter The emitter to send the events to
+     */
+    public void subscribe(int gameId, int afterRound, SseEmitter emitter) {
+        Subscriber[] joining = new Subscriber[1];
+        // Joins are queued inside compute, so a topic is never removed with a join pending
+        Topic topic = topics.compute(gameId, (id, current) -> {
+            Topic joined = current == null ? new Topic(id) : current;
+            joining[0] = new Subscriber(joined, emitter, afterRound);
+            joined.joins.add(joining[0]);
+            return joined;
+        });
+        Subscriber subscriber = joining[0];
+        emitter.onCompletion(subscriber::leave);
+        emitter.onTimeout(subscriber::leave);
+        emitter.onError(e -> subscriber.leave());
+        topic.signal();
+    }
+
+    /**
+     * Notifies the subscribers of a game that rounds were added to it. Never blocks
+     * @param gameId The ID of the game
+     * @param finished Whether the game was finished by the new rounds
+     */
+    public void publish(int gameId, boolean finished) {
+        Topic topic = topics.get(gameId);
+        if(topic == null) {
+            return;
+        }
+        if(finished) {
+            topic.finished = true;
+        }
+        topic.changed = true;
+        topic.signal();
+    }
+
+    /**
+     * Retrieves the number of subscribers currently sent events, not counting those still catching up
+     * @return The number of subscribers
+     */
+    public int getSubscriberCount() {
+        int count = 0;
+        for(Topic topic : topics.values()) {
+            count += topic.subscriberCount;
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves the number of threads currently lent to the hub for stalled sends
+     * @return The number of lent threads, at most the hub's own number of threads
+     */
+    public synchronized int getLentThreadCount() {
+        return lentThreads;
+    }
+
+    /**
+     * Stops sending events. Open subscriptions end as the server closes their connections
+     */
+    @PreDestroy
+    @Override
+    public void close() {
+        watchdog.shutdownNow();
+        executor.shutdownNow();
+        topics.clear();
+    }
+
+    /**
+     * Disconnects the subscribers whose send has taken longer than the send timeout, and
+     * lends the executor a thread for each until its send returns, while any are left to lend
+     */
+    private void expireStalledSends() {
+        long now = System.nanoTime();
+        for(Subscriber subscriber : sending) {
+            if(now - subscriber.sendStarted > sendTimeoutNanos && subscriber.sendState.get() == SENDING) {
+                boolean lent = lend();
+                if(subscriber.sendState.compareAndSet(SENDING, lent ? STALLED : STALLED_UNLENT)) {
+                    subscriber.leave();
+                }
+                else if(lent) {
+                    // The send returned in the meantime
+                    giveBack();
+                }
+            }
+        }
+    }
+
+    /**
+     * Lends the executor a thread for a stalled send, unless as many are lent as it has of its own
+     * @return Whether a thread was lent
+     */
+    private synchronized boolean lend() {
+        if(lentThreads >= threads) {
+            return false;
+        }
+        lentThreads ++;
+        // The maximum size may never be below the core size
+        executor.setMaximumPoolSize(threads + lentThreads);
+        executor.setCorePoolSize(threads + lentThreads);
+        return true;
+    }
+
+    /**
+     * Takes back a thread lent for a stalled send that returned
+     */
+    private synchronized void giveBack() {
+        lentThreads --;
+        executor.setCorePoolSize(threads + lentThreads);
+        executor.setMaximumPoolSize(threads + lentThreads);
+    }
+
+    /**
+     * Builds the event for a round
+     */
+    private static SseEmitter.SseEventBuilder roundEvent(int roundNumber, NumberGameRound round) {
+        return SseEmitter.event().id(Integer.toString(roundNumber)).name("round").data(round, MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Builds the event for a game's status
+     */
+    private static SseEmitter.SseEventBuilder statusEvent(ENumberGameStatus status) {
+        return SseEmitter.event().name("status").data(status, MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Runs a task on the hub's threads, unless the hub was closed
+     * @return Whether the task was accepted
+     */
+    private boolean execute(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        }
+        catch(RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The subscribers of a single game. Its state is only touched by its task, which never runs concurrently
+     */
+    private final class Topic {
+        private final int gameId;
+        /**
+         * Subscribers waiting to be caught up and added
+         */
+        private final Queue<Subscriber> joins = new ConcurrentLinkedQueue<>();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        /**
+         * The size of subscribers, for reading outside the topic's task
+         */
+        private volatile int subscriberCount;
+        /**
+         * The number of the latest round read for the subscribers
+         */
+        private int cursor;
+        /**
+         * Set when rounds were added to the game since they were last read
+         */
+        private volatile boolean changed;
+        /**
+         * Set once the game is finished
+         */
+        private volatile boolean finished;
+        /**
+         * The number of times the task was signalled since it last caught up
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private Topic(int gameId) {
+            this.gameId = gameId;
+        }
+
+        /**
+         * Schedules the topic's task, unless it is already scheduled or running
+         */
+        void signal() {
+            if(pending.getAndIncrement() == 0 && !execute(this::drain)) {
+                pending.set(0);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                try {
+                    step();
+                }
+                catch(RuntimeException e) {
+                    // The DAO failed, so every subscriber is ended and left to reconnect
+                    for(Subscriber subscriber : subscribers) {
+                        subscriber.finish();
+                    }
+                    subscribers.clear();
+                    Subscriber joining;
+                    while((joining = joins.poll()) != null) {
+                        joining.finish();
+                    }
+                }
+                subscribers.removeIf(subscriber -> subscriber.closed);
+                subscriberCount = subscribers.size();
+                if(subscribers.isEmpty()) {
+                    topics.computeIfPresent(gameId, (id, topic) -> topic == this && joins.isEmpty() ? null : topic);
+                }
+                missed = pending.addAndGet(-missed);
+            } while(missed != 0);
+        }
+
+        private void step() {
+            Subscriber joining;
+            while((joining = joins.poll()) != null) {
+                try {
+                    catchUp(joining);
+                }
+                catch(RuntimeException e) {
+                    // Neither added nor finished yet, so it is ended along with the others
+                    joining.finish();
+                    throw e;
+                }
+            }
+            if(changed && !subscribers.isEmpty()) {
+                refresh();
+            }
+        }
+
+        /**
+         * Sends a new subscriber the rounds it missed, then adds it if the game is still in progress
+         */
+        private void catchUp(Subscriber subscriber) {
+            if(subscriber.closed) {
+                return;
+            }
+            if(!subscribers.isEmpty() && subscriber.cursor >= cursor) {
+                // Up to date with a game still in progress, so later rounds reach it with the other subscribers
+                subscribers.add(subscriber);
+                return;
+            }
+            NumberGameInstance game;
+            List<NumberGameRound> rounds;
+            int latest;
+            try {
+                // The status is read first, so a finished game's rounds are all read
+                game = dao.getGameById(gameId);
+                rounds = dao.getGameRoundsAfter(gameId, subscriber.cursor);
+                latest = subscriber.cursor + rounds.size();
+                if(subscribers.isEmpty() && rounds.isEmpty() && subscriber.cursor > 0) {
+                    // An empty read doesn't tell whether the cursor was the latest round
+                    latest = dao.getGameRounds(gameId).size();
+                }
+            }
+            catch(GameNotFoundException e) {
+                subscriber.finish();
+                return;
+            }
+            if(subscribers.isEmpty()) {
+                cursor = latest;
+            }
+            for(int i = 0; i < rounds.size(); i ++) {
+                subscriber.cursor ++;
+                subscriber.backlog.add(roundEvent(subscriber.cursor, rounds.get(i)));
+            }
+            subscriber.signal();
+            if(game.getStatus() == ENumberGameStatus.FINISHED) {
+                subscriber.backlog.add(statusEvent(ENumberGameStatus.FINISHED));
+                subscriber.finish();
+            }
+            else {
+                subscribers.add(subscriber);
+            }
+        }
+
+        /**
+         * Reads the rounds added since the last read once, and queues them for every subscriber
+         */
+        private void refresh() {
+            // Both flags are read before the rounds, so the rounds include the one finishing the game
+            changed = false;
+            boolean done = finished;
+            List<NumberGameRound> rounds;
+            try {
+                rounds = dao.getGameRoundsAfter(gameId, cursor);
+            }
+            catch(GameNotFoundException e) {
+                rounds = new ArrayList<>();
+                done = true;
+            }
+            for(int i = 0; i < rounds.size(); i ++) {
+                int roundNumber = cursor + i + 1;
+                for(Subscriber subscriber : subscribers) {
+                    if(roundNumber > subscriber.cursor) {
+                        subscriber.offer(roundNumber, rounds.get(i));
+                    }
+                }
+            }
+            cursor += rounds.size();
+            if(done) {
+                for(Subscriber subscriber : subscribers) {
+                    subscriber.offerStatus(ENumberGameStatus.FINISHED);
+                    subscriber.finish();
+                }
+                subscribers.clear();
+            }
+        }
+    }
+
+    /**
+     * A single subscription, sending its buffered events from its own task
+     */
+    private final class Subscriber {
+        private final Topic topic;
+        private final SseEmitter emitter;
+        /**
+         * The events of the rounds played before the subscriber was added to its topic, sent first
+         */
+        private final Queue<SseEmitter.SseEventBuilder> backlog = new ConcurrentLinkedQueue<>();
+        private final BlockingQueue<SseEmitter.SseEventBuilder> buffer = new ArrayBlockingQueue<>(bufferSize);
+        /**
+         * The number of the latest round queued for the subscriber. Only touched by its topic's task
+         */
+        private int cursor;
+        /**
+         * Set once the subscription has ended, after which nothing more is sent
+         */
+        private volatile boolean closed;
+        /**
+         * Set when the subscription should end once its buffer is sent
+         */
+        private volatile boolean finishing;
+        /**
+         * Set when an event didn't fit in the buffer
+         */
+        private volatile boolean overflowed;
+        /**
+         * The number of times the task was signalled since it last caught up
+         */
+        private final AtomicInteger pending = new AtomicInteger();
+        /**
+         * IDLE, SENDING while an event is sent, or STALLED once the watchdog timed the send out
+         * and lent a thread for it, or STALLED_UNLENT if it timed it out without lending one
+         */
+        private final AtomicInteger sendState = new AtomicInteger(IDLE);
+        /**
+         * When the event being sent started sending, from System.nanoTime
+         */
+        private volatile long sendStarted;
+
+        private Subscriber(Topic topic, SseEmitter emitter, int cursor) {
+            this.topic = topic;
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+
+        /**
+         * Marks the subscription as ended, so its topic drops it
+         */
+        void leave() {
+            closed = true;
+            topic.signal();
+        }
+
+        void offer(int roundNumber, NumberGameRound round) {
+            cursor = roundNumber;
+            offer(roundEvent(roundNumber, round));
+        }
+
+        void offerStatus(ENumberGameStatus status) {
+            offer(statusEvent(status));
+        }
+
+        private void offer(SseEmitter.SseEventBuilder event) {
+            if(!buffer.offer(event)) {
+                overflowed = true;
+            }
+            signal();
+        }
+
+        /**
+         * Ends the subscription once the events already buffered are sent
+         */
+        void finish() {
+            finishing = true;
+            signal();
+        }
+
+        private void signal() {
+            if(pending.getAndIncrement() == 0 && !execute(this::drain)) {
+                pending.set(0);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                SseEmitter.SseEventBuilder event;
+                while(!closed && !overflowed && ((event = backlog.poll()) != null || (event = buffer.poll()) != null)) {
+                    try {
+                        if(!send(event)) {
+                            // Too slow to keep up with, so it is ended and catches up when it reconnects
+                            emitter.completeWithError(new TimeoutException("Sending an event timed out"));
+                        }
+                    }
+                    catch(IOException | IllegalStateException e) {
+                        // The client is gone
+                        leave();
+                    }
+                }
+                if(!closed && (overflowed || (finishing && backlog.isEmpty() && buffer.isEmpty()))) {
+                    // An overflowing subscriber is ended, and catches up from its last event ID when it reconnects
+                    emitter.complete();
+                    leave();
+                }
+                if(closed) {
+                    backlog.clear();
+                    buffer.clear();
+                }
+                missed = pending.addAndGet(-missed);
+            } while(missed != 0);
+        }
+
+        /**
+         * Sends an event, watched by the hub's watchdog while it blocks
+         * @return Whether the event was sent within the send timeout
+         */
+        private boolean send(SseEmitter.SseEventBuilder event) throws IOException {
+            sendStarted = System.nanoTime();
+            sendState.set(SENDING);
+            sending.add(this);
+            boolean inTime;
+            try {
+                emitter.send(event);
+            }
+            finally {
+                sending.remove(this);
+                int state = sendState.getAndSet(IDLE);
+                inTime = state == SENDING;
+                if(state == STALLED) {
+                    // Returns the thread lent while this send was stalled
+                    giveBack();
+                }
+            }
+            return inTime;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.sg.guess_the_number.service;
+
+import com.sg.guess_the_number.models.NumberGameVariant;
+
+/**
+ * A utility class for scoring guesses against answers
+ *
+ * A full match is counted for every position where the guess and answer agree. The
+ * remaining positions are compared as histograms: a partial match is counted for every
+ * symbol the unmatched parts of the guess and answer have in common, counting a
+ * repeated symbol no more often than it appears in either of them. Scoring is linear in
+ * the length of the answer and keeps its histograms in a fixed number of longs, four
+ * bits per symbol, so it allocates nothing whatever the variant.
+ *
+ * A score is returned as a result code, a small integer encoding both the exact
+ * and partial match counts. Result codes index a table of pre-built result strings,
+ * so formatting the result of a guess allocates nothing either.
+ *
+ * Answers from an alphabet of at most 16 symbols can also be packed four bits per
+ * symbol into a long, with the first symbol in the highest used nibble, and scored
+ * with bitwise operations.
+ */
+public final class NumberGameScorer {
+    /**
+     * The longest answer that can be scored
+     */
+    public static final int MAX_LENGTH = NumberGameVariant.MAX_ANSWER_LENGTH;
+
+    /**
+     * The number of result codes where both counts total at most MAX_LENGTH
+     */
+    private static final int TABLE_SIZE = triangle(MAX_LENGTH + 1);
+    /**
+     * The result strings, full match counts and partial match counts of every result code
+     */
+    private static final String[] RESULT_STRINGS = new String[TABLE_SIZE];
+    private static final byte[] EXACT_MATCHES = new byte[TABLE_SIZE];
+    private static final byte[] PARTIAL_MATCHES = new byte[TABLE_SIZE];
+
+    /**
+     * The lowest bit of every nibble in a long
+     */
+    private static final long NIBBLE_LOW_BITS = 0x1111111111111111L;
+
+    static {
+        for(int total = 0; total <= MAX_LENGTH; total ++) {
+            for(int exact = 0; exact <= total; exact ++) {
+                int code = resultCode(exact, total - exact);
+                RESULT_STRINGS[code] = String.format("e:%d:p:%d", exact, total - exact).intern();
+                EXACT_MATCHES[code] = (byte)exact;
+                PARTIAL_MATCHES[code] = (byte)(total - exact);
+            }
+        }
+    }
+
+    private NumberGameScorer() {
+
+    }
+
+    /**
+     * Scores a guess against an answer. Both must have the same length, which must be at most
+     * MAX_LENGTH, and only use the symbols 0-9 and a-z
+     * @param answer The answer to score against
+     * @param guess The guess to score
+     * @return The result code of the guess
+     */
+    public static int score(CharSequence answer, CharSequence guess) {
+        int length = answer.length();
+        // Histogram of the unmatched guess symbols, split over three longs to cover 36 symbols
+        long low = 0;
+        long middle = 0;
+        long high = 0;
+        int exact = 0;
+        for(int i = 0; i < length; i ++) {
+            int guessSymbol = NumberGameVariant.symbolOf(guess.charAt(i));
+            if(NumberGameVariant.symbolOf(answer.charAt(i)) == guessSymbol) {
+                exact++;
+                continue;
+            }
+            long increment = 1L << ((guessSymbol & 0xF) << 2);
+            switch(guessSymbol >>> 4) {
+                case 0: low += increment; break;
+                case 1: middle += increment; break;
+                default: high += increment; break;
+            }
+        }
+        int partial = 0;
+        for(int i = 0; i < length; i ++) {
+            int answerSymbol = NumberGameVariant.symbolOf(answer.charAt(i));
+            if(answerSymbol == NumberGameVariant.symbolOf(guess.charAt(i))) {
+                continue;
+            }
+            // Take one matching symbol out of the guess histogram, if any are left
+            int shift = (answerSymbol & 0xF) << 2;
+            long decrement = 1L << shift;
+            switch(answerSymbol >>> 4) {
+                case 0:
+                    if(((low >>> shift) & 0xF) != 0) { low -= decrement; partial++; }
+                    break;
+                case 1:
+                    if(((middle >>> shift) & 0xF) != 0) { middle -= decrement; partial++; }
+                    break;
+                default:
+                    if(((high >>> shift) & 0xF) != 0) { high -= decrement; partial++; }
+                    break;
+            }
+        }
+        return resultCode(exact, partial);
+    }
+
+    /**
+     * Scores a packed guess against a packed answer, using the same rules as score(CharSequence, CharSequence)
+     * @param answer The packed answer to score against
+     * @param guess The packed guess to score
+     * @param length The number of symbols packed in the answer and guess
+     * @return The result code of the guess
+     */
+    public static int score(long answer, long guess, int length) {
+        // A nibble of the difference is zero wherever the symbols match
+        long difference = answer ^ guess;
+        difference |= difference >>> 1;
+        difference |= difference >>> 2;
+        long mismatches = difference & NIBBLE_LOW_BITS;
+        int exact = length - Long.bitCount(mismatches);
+
+        long guessCounts = 0;
+        for(long remaining = mismatches; remaining != 0; remaining &= remaining - 1) {
+            int shift = Long.numberOfTrailingZeros(remaining);
+            guessCounts += 1L << (((guess >>> shift) & 0xF) << 2);
+        }
+        int partial = 0;
+        for(long remaining = mismatches; remaining != 0; remaining &= remaining - 1) {
+            int shift = (int)((answer >>> Long.numberOfTrailingZeros(remaining)) & 0xF) << 2;
+            if(((guessCounts >>> shift) & 0xF) != 0) {
+                guessCounts -= 1L << shift;
+                partial++;
+            }
+        }
+        return resultCode(exact, partial);
+    }
+
+    /**
+     * Packs a string of symbols from an alphabet of at most 16 into a long, four bits per symbol
+     * @param symbols The symbols to pack
+     * @return The packed symbols
+     */
+    public static long pack(CharSequence symbols) {
+        long packed = 0;
+        for(int i = 0; i < symbols.length(); i ++) {
+            packed = (packed << 4) | NumberGameVariant.symbolOf(symbols.charAt(i));
+        }
+        return packed;
+    }
+
+    /**
+     * Retrieves the result code of a given pair of match counts
+     * @param exact The number of full matches
+     * @param partial The number of partial matches
+     * @return The result code of the counts
+     */
+    public static int resultCode(int exact, int partial) {
+        return triangle(exact + partial) + exact;
+    }
+
+    /**
+     * Retrieves the number of full matches of a result code
+     * @param code The result code
+     * @return The number of full matches of the code
+     */
+    public static int exactMatches(int code) {
+        return EXACT_MATCHES[code];
+    }
+
+    /**
+     * Retrieves the number of partial matches of a result code
+     * @param code The result code
+     * @return The number of partial matches of the code
+     */
+    public static int partialMatches(int code) {
+        return PARTIAL_MATCHES[code];
+    }
+
+    /**
+     * Retrieves the result string of a result code, in the format "e:EXACT:p:PARTIAL"
+     * @param code The result code
+     * @return The result string of the code
+     */
+    public static String resultString(int code) {
+        return RESULT_STRINGS[code];
+    }
+
+    /**
+     * Parses a result string in the format "e:EXACT:p:PARTIAL" back into its result code
+     * @param result The result string to parse
+     * @return The result code of the string, or -1 if it is not a valid result string
+     */
+    public static int parseResult(String result) {
+        if(result == null || !result.startsWith("e:")) {
+            return -1;
+        }
+        int separator = result.indexOf(":p:", 2);
+        if(separator < 0) {
+            return -1;
+        }
+        try {
+            int exact = Integer.parseInt(result.substring(2, separator));
+            int partial = Integer.parseInt(result.substring(separator + 3));
+            if(exact < 0 || partial < 0 || exact + partial > MAX_LENGTH) {
+                return -1;
+            }
+            return resultCode(exact, partial);
+        }
+        catch(NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Retrieves the number of distinct result codes a guess of a given length can score
+     * @param length The length of the guess
+     * @return The number of result codes, all of which are below this value
+     */
+    public static int resultCodeCount(int length) {
+        return triangle(length + 1);
+    }
+
+    private static int triangle(int n) {
+        return n * (n + 1) / 2;
+    }
+}
@@ -1,9 +1,17 @@
 package com.sg.guess_the_number.service;
 
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameGuess;
+import com.sg.guess_the_number.models.NumberGameGuessResult;
+import com.sg.guess_the_number.models.NumberGameHint;
+import com.sg.guess_the_number.models.NumberGameVariant;
 import com.sg.guess_the_number.models.game.NumberGameInstance;
 import com.sg.guess_the_number.models.NumberGameRound;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 /**
  * The public interface of a service layer for the guess_the_number backend
@@ -23,20 +31,63 @@ public interface NumberGameService {
      */
     int createGame();
 
+    /**
+     * Creates a new game with a random answer following the given rules
+     * @param variant The rules of the game
+     * @return The created game's id
+     * @throws InvalidVariantException thrown when the rules are not supported
+     */
+    int createGame(NumberGameVariant variant) throws InvalidVariantException;
+
+    /**
+     * Creates several games with random answers following the given rules
+     * @param variant The rules of the games
+     * @param count The number of games to create
+     * @return The created games' ids
+     * @throws InvalidVariantException thrown when the rules are not supported
+     */
+    int[] createGames(NumberGameVariant variant, int count) throws InvalidVariantException;
+
     /**
      * Processes a guess for a given game
      * @param gameId The ID of the game to process the guess for
      * @param guess The guess process
      * @return The round for the guess, or null if the game could not be found
+     * @throws InvalidGuessException thrown when the guess is not valid for the game's rules,
+     * or as a GameFinishedException when the game is already finished
      */
     NumberGameRound guessForGame(int gameId, String guess) throws InvalidGuessException;
 
+    /**
+     * Processes several guesses, for any number of games. Guesses for the same game are
+     * processed in the order they are given
+     * @param guesses The guesses to process
+     * @return The result of every guess, in the order the guesses were given
+     */
+    List<NumberGameGuessResult> guessForGames(List<NumberGameGuess> guesses);
+
     /**
      * Retrieves all games stored by the service's storage
      * @return All games stored by the service's storage
      */
     List<NumberGameInstance> getAllGames();
 
+    /**
+     * Retrieves a page of games in ascending order of their ID
+     * @param afterId Only games with a greater ID than this are retrieved
+     * @param limit The most games to retrieve
+     * @param status Only games with this status are retrieved, or games of any status if it is null
+     * @return The retrieved games
+     */
+    List<NumberGameInstance> getGames(int afterId, int limit, ENumberGameStatus status);
+
+    /**
+     * Streams every game along with its rounds, in ascending order of the game IDs
+     * @param handler Receives every game along with its rounds in the order they were played.
+     * The list of rounds is only valid until the handler returns
+     */
+    void exportGames(BiConsumer<NumberGameInstance, List<NumberGameRound>> handler);
+
     /**
      * Gets a specified game by it's ID
      * @param gameId The ID of the game to retrieve
@@ -52,4 +103,42 @@ public interface NumberGameService {
      */
     List<NumberGameRound> getRoundsForGame(int gameId);
 
+    /**
+     * Gets the rounds played for a specified game after a given round
+     * @param gameId The ID of the game to get the rounds of
+     * @param afterRound The number of the latest round already seen, or 0 to get every round
+     * @return A list of the rounds played after the given round, or null if the game could not be found
+     */
+    List<NumberGameRound> getRoundsForGameAfter(int gameId, int afterRound);
+
+    /**
+     * Gets several games by their IDs at once
+     * @param gameIds The IDs of the games to retrieve
+     * @return The retrieved games, by their ID. Games that could not be found are left out
+     */
+    Map<Integer, NumberGameInstance> getGamesByIds(Collection<Integer> gameIds);
+
+    /**
+     * Gets all rounds played for several games at once
+     * @param gameIds The IDs of the games to get the rounds of
+     * @return The played rounds of every game, by the game's ID. Games that could not be found are left out
+     */
+    Map<Integer, List<NumberGameRound>> getRoundsForGames(Collection<Integer> gameIds);
+
+    /**
+     * Finds the best next guess for a specified game, given the rounds played so far
+     * @param gameId The ID of the game to find a guess for
+     * @return The hint for the game, or null if the game could not be found
+     * @throws InvalidVariantException thrown when the game's rules have too many possible answers to search
+     */
+    NumberGameHint getHint(int gameId) throws InvalidVariantException;
+
+    /**
+     * Retrieves the number of answers still consistent with every round played in a game
+     * @param game The game to count the answers of
+     * @return The number of consistent answers, or null if the game is finished
+     * or its rules have too many possible answers to track
+     */
+    Integer getRemainingCandidates(NumberGameInstance game);
+
 }
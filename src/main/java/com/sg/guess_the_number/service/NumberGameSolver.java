@@ -0,0 +1,252 @@
+package com.sg.guess_the_number.service;
+
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the best next guess for a game using Knuth's minimax strategy
+ *
+ * Every guess is scored against every answer still consistent with the rounds played,
+ * and the guess whose largest group of answers sharing a result is the smallest wins.
+ * Ties prefer guesses that could themselves be the answer, then the lowest answer. The
+ * search is split over the guesses and run on a dedicated ForkJoinPool. A search never
+ * scores more than FULL_SEARCH_LIMIT pairs: past it, only the candidates are considered
+ * as guesses, and past that only an evenly spread sample of them, so a hint's cost is
+ * bounded whatever the variant. The opening guess of each variant only depends on the
+ * variant, so it is cached, and concurrent requests for an opening that is still being
+ * searched for wait for that search. The default variant's opening is computed in the
+ * background on startup.
+ */
+@Component
+public class NumberGameSolver {
+    /**
+     * The most guess and answer pairs a search will score. Searches that would score more
+     * while considering every answer of the variant as a guess only consider the answers
+     * still consistent with the rounds played, and sample those if they are still too many
+     */
+    private static final long FULL_SEARCH_LIMIT = 1L << 26;
+    /**
+     * The number of guesses a search task scores without splitting further
+     */
+    private static final int GUESSES_PER_TASK = 32;
+
+    /**
+     * The pool searches are run on
+     */
+    private final ForkJoinPool searchPool;
+    /**
+     * The opening guess of each variant, cached once found, or being searched for
+     */
+    private final ConcurrentMap<NumberGameVariant, CompletableFuture<String>> openings = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a NumberGameSolver using one search thread per processor
+     */
+    public NumberGameSolver() {
+        this(0);
+    }
+
+    /**
+     * Constructs a NumberGameSolver with a given number of search threads
+     * @param parallelism The number of search threads, or 0 to use one per processor
+     */
+    @Autowired
+    public NumberGameSolver(@Value("${guess_the_number.solver.parallelism:0}") int parallelism) {
+        this.searchPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Starts computing the default variant's opening guess in the background
+     */
+    @PostConstruct
+    public void precomputeOpenings() {
+        NumberGameAnswerPool answers = NumberGameAnswerPool.forVariant(new NumberGameVariant());
+        searchPool.execute(() -> findOpeningGuess(answers));
+    }
+
+    /**
+     * Stops the search threads
+     */
+    @PreDestroy
+    public void shutdown() {
+        searchPool.shutdownNow();
+    }
+
+    /**
+     * Finds the best next guess given the rounds played so far
+     * @param answers The answers of the game's variant
+     * @param rounds The rounds played so far, which must only hold valid guesses for the variant
+     * @return The best next guess, or null if no answer is consistent with the rounds
+     */
+    public String findBestGuess(NumberGameAnswerPool answers, List<NumberGameRound> rounds) {
+        if(rounds.isEmpty()) {
+            return findOpeningGuess(answers);
+        }
+        return findBestGuess(answers, findCandidates(answers, rounds));
+    }
+
+    /**
+     * Finds the best next guess given the answers still consistent with the rounds played
+     * @param answers The answers of the game's variant
+     * @param candidates The indices of the answers still consistent with the rounds played
+     * @return The best next guess, or null if there are no candidates
+     */
+    public String findBestGuess(NumberGameAnswerPool answers, BitSet candidates) {
+        int candidateCount = candidates.cardinality();
+        if(candidateCount == 0) {
+            return null;
+        }
+        if(candidateCount <= 2) {
+            return answers.getAnswer(candidates.nextSetBit(0));
+        }
+        if(candidateCount == answers.size()) {
+            return findOpeningGuess(answers);
+        }
+        return search(answers, candidates);
+    }
+
+    /**
+     * Finds the answers consistent with every round played
+     * @param answers The answers of the game's variant
+     * @param rounds The rounds played so far
+     * @return The indices of the consistent answers
+     */
+    public BitSet findCandidates(NumberGameAnswerPool answers, List<NumberGameRound> rounds) {
+        BitSet candidates = answers.allAnswers();
+        for(NumberGameRound round : rounds) {
+            answers.narrow(candidates, round.getGuess(), NumberGameScorer.parseResult(round.getGuessResult()));
+        }
+        return candidates;
+    }
+
+    /**
+     * Retrieves the opening guess of a variant, searching for it if it isn't cached yet
+     * @param answers The answers of the variant
+     * @return The opening guess of the variant
+     */
+    private String findOpeningGuess(NumberGameAnswerPool answers) {
+        CompletableFuture<String> searching = new CompletableFuture<>();
+        CompletableFuture<String> opening = openings.putIfAbsent(answers.getVariant(), searching);
+        if(opening != null) {
+            return opening.join();
+        }
+        try {
+            searching.complete(search(answers, answers.allAnswers()));
+        }
+        catch(RuntimeException e) {
+            // Not cached, so a later request searches again
+            openings.remove(answers.getVariant(), searching);
+            searching.completeExceptionally(e);
+            throw e;
+        }
+        return searching.join();
+    }
+
+    /**
+     * Runs a minimax search on the search pool
+     * @param answers The answers of the game's variant
+     * @param candidates The indices of the answers still consistent with the rounds played
+     * @return The best next guess
+     */
+    private String search(NumberGameAnswerPool answers, BitSet candidates) {
+        int[] candidateIndices = candidates.stream().toArray();
+        int[] guessIndices;
+        if((long)answers.size() * candidateIndices.length <= FULL_SEARCH_LIMIT) {
+            guessIndices = answers.allAnswers().stream().toArray();
+        }
+        else if((long)candidateIndices.length * candidateIndices.length <= FULL_SEARCH_LIMIT) {
+            guessIndices = candidateIndices;
+        }
+        else {
+            guessIndices = sample(candidateIndices, (int)Math.max(1, FULL_SEARCH_LIMIT / candidateIndices.length));
+        }
+        long best = searchPool.invoke(new SearchTask(answers, guessIndices, candidateIndices, candidates,
+                0, guessIndices.length));
+        return answers.getAnswer((int)best);
+    }
+
+    /**
+     * Picks evenly spread indices, so the same candidates always give the same sample
+     * @param indices The indices to pick from
+     * @param count The number of indices to pick, less than the number given
+     * @return The picked indices, in ascending order
+     */
+    private static int[] sample(int[] indices, int count) {
+        int[] sample = new int[count];
+        for(int i = 0; i < count; i ++) {
+            sample[i] = indices[(int)((long)i * indices.length / count)];
+        }
+        return sample;
+    }
+
+    /**
+     * A task searching a range of guesses for the one with the smallest worst case
+     *
+     * Results are encoded so the best one is the smallest: the worst case group size,
+     * then whether the guess is not a candidate, then the index of the guess.
+     */
+    private static final class SearchTask extends RecursiveTask<Long> {
+        private final NumberGameAnswerPool answers;
+        private final int[] guessIndices;
+        private final int[] candidateIndices;
+        private final BitSet candidates;
+        private final int from;
+        private final int to;
+
+        SearchTask(NumberGameAnswerPool answers, int[] guessIndices, int[] candidateIndices, BitSet candidates,
+                   int from, int to) {
+            this.answers = answers;
+            this.guessIndices = guessIndices;
+            this.candidateIndices = candidateIndices;
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if(to - from > GUESSES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                SearchTask left = new SearchTask(answers, guessIndices, candidateIndices, candidates, from, middle);
+                left.fork();
+                long right = new SearchTask(answers, guessIndices, candidateIndices, candidates, middle, to).compute();
+                return Math.min(left.join(), right);
+            }
+            int[] groupSizes = new int[NumberGameScorer.resultCodeCount(answers.getVariant().getAnswerLength())];
+            long best = Long.MAX_VALUE;
+            for(int i = from; i < to; i ++) {
+                int guess = guessIndices[i];
+                long rank = ((candidates.get(guess) ? 0L : 1L) << 32) | guess;
+                long bestWorst = best >>> 33;
+                int worst = 0;
+                Arrays.fill(groupSizes, 0);
+                for(int candidate : candidateIndices) {
+                    int size = ++groupSizes[answers.score(candidate, guess)];
+                    if(size > worst) {
+                        worst = size;
+                        // This guess can no longer beat the best one found
+                        if(worst > bestWorst) {
+                            break;
+                        }
+                    }
+                }
+                best = Math.min(best, ((long)worst << 33) | rank);
+            }
+            return best;
+        }
+    }
+}
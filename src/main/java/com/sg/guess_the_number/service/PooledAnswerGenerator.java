@@ -0,0 +1,117 @@
+package com.sg.guess_the_number.service;
+
+import com.sg.guess_the_number.models.NumberGameVariant;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An answer generator that picks answers from the variant's NumberGameAnswerPool,
+ * which for the default variant holds 5040 entries
+ *
+ * Variants with too many answers to pool have their answers built one symbol at a time.
+ * By default answers are picked with a per-thread random number generator. When a seed
+ * is given, answers are picked from a single seeded generator instead, so a sequence of
+ * games can be replayed.
+ */
+@Component
+public class PooledAnswerGenerator implements NumberGameAnswerGenerator {
+    /**
+     * The pool of the default variant
+     */
+    private static final NumberGameAnswerPool DEFAULT_POOL = NumberGameAnswerPool.forVariant(new NumberGameVariant());
+
+    /**
+     * The seeded random number generator, or null if per-thread generators are used
+     */
+    private final Random seeded;
+
+    /**
+     * Constructs a PooledAnswerGenerator using per-thread random number generators
+     */
+    public PooledAnswerGenerator() {
+        this.seeded = null;
+    }
+
+    /**
+     * Constructs a PooledAnswerGenerator with an optional seed
+     * @param seed The seed of the generator, or null to use per-thread random number generators
+     */
+    @Autowired
+    public PooledAnswerGenerator(@Value("${guess_the_number.answers.seed:#{null}}") Long seed) {
+        this.seeded = seed == null ? null : new Random(seed);
+    }
+
+    /**
+     * Generates the answer to a new game of the default variant
+     *
+     * @return The generated answer
+     */
+    @Override
+    public String generateAnswer() {
+        return DEFAULT_POOL.getAnswer(random().nextInt(DEFAULT_POOL.size()));
+    }
+
+    /**
+     * Generates the answer to a new game of a given variant
+     *
+     * @param variant The variant of the game, which must be valid
+     * @return The generated answer
+     */
+    @Override
+    public String generateAnswer(NumberGameVariant variant) {
+        NumberGameAnswerPool pool = NumberGameAnswerPool.forVariant(variant);
+        if(pool != null) {
+            return pool.getAnswer(random().nextInt(pool.size()));
+        }
+        Random random = random();
+        char[] symbols = new char[variant.getAnswerLength()];
+        long usedSymbols = 0;
+        for(int i = 0; i < symbols.length; i ++) {
+            int symbol = random.nextInt(variant.getAlphabetSize());
+            while(!variant.isAllowDuplicates() && (usedSymbols & (1L << symbol)) != 0) {
+                symbol = random.nextInt(variant.getAlphabetSize());
+            }
+            usedSymbols |= 1L << symbol;
+            symbols[i] = NumberGameVariant.symbolFor(symbol);
+        }
+        return new String(symbols);
+    }
+
+    /**
+     * Generates the answers to several new games of a given variant, looking up its pool once
+     *
+     * @param variant The variant of the games, which must be valid
+     * @param count The number of answers to generate
+     * @return The generated answers
+     */
+    @Override
+    public List<String> generateAnswers(NumberGameVariant variant, int count) {
+        NumberGameAnswerPool pool = NumberGameAnswerPool.forVariant(variant);
+        List<String> answers = new ArrayList<>(count);
+        if(pool == null) {
+            for(int i = 0; i < count; i ++) {
+                answers.add(generateAnswer(variant));
+            }
+            return answers;
+        }
+        Random random = random();
+        for(int i = 0; i < count; i ++) {
+            answers.add(pool.getAnswer(random.nextInt(pool.size())));
+        }
+        return answers;
+    }
+
+    /**
+     * Retrieves the random number generator to pick answers with
+     * @return The seeded generator if there is one, or the current thread's generator otherwise
+     */
+    private Random random() {
+        return seeded == null ? ThreadLocalRandom.current() : seeded;
+    }
+}
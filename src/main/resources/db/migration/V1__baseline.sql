@@ -0,0 +1,27 @@
+-- The schema NumberGameDbDao was originally written against.
+-- Scripts in this directory are applied in order of their version number.
+
+CREATE TABLE progress (
+    progressId INT PRIMARY KEY,
+    progressDesc VARCHAR(20) NOT NULL
+);
+
+INSERT INTO progress (progressId, progressDesc) VALUES
+    (1, 'IN_PROGRESS'),
+    (2, 'FINISHED');
+
+CREATE TABLE game (
+    gameId INT PRIMARY KEY AUTO_INCREMENT,
+    answer VARCHAR(4) NOT NULL,
+    progressId INT NOT NULL,
+    FOREIGN KEY (progressId) REFERENCES progress(progressId)
+);
+
+CREATE TABLE rounds (
+    roundId INT PRIMARY KEY AUTO_INCREMENT,
+    gameId INT NOT NULL,
+    guess VARCHAR(4) NOT NULL,
+    result VARCHAR(10) NOT NULL,
+    roundTime DATETIME NOT NULL,
+    FOREIGN KEY (gameId) REFERENCES game(gameId)
+);
@@ -0,0 +1,8 @@
+-- Stores the rules of each game. Existing games are 4 distinct decimal digits.
+
+ALTER TABLE game MODIFY answer VARCHAR(15) NOT NULL;
+ALTER TABLE game ADD COLUMN answerLength TINYINT NOT NULL DEFAULT 4;
+ALTER TABLE game ADD COLUMN alphabetSize TINYINT NOT NULL DEFAULT 10;
+ALTER TABLE game ADD COLUMN allowDuplicates BOOLEAN NOT NULL DEFAULT FALSE;
+
+ALTER TABLE rounds MODIFY guess VARCHAR(15) NOT NULL;
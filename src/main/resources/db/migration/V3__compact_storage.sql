@@ -0,0 +1,36 @@
+-- Stores answers and guesses as numbers in base alphabetSize, the way NumberGameCodec
+-- encodes them, and round results as their exact and partial match counts. Rounds are
+-- numbered per game, and ordered by that number rather than by roundTime.
+
+ALTER TABLE game ADD COLUMN answerCode BIGINT;
+UPDATE game SET answerCode = CONV(answer, alphabetSize, 10);
+ALTER TABLE game MODIFY answerCode BIGINT NOT NULL;
+ALTER TABLE game DROP COLUMN answer;
+
+ALTER TABLE rounds ADD COLUMN roundNumber INT UNSIGNED;
+ALTER TABLE rounds ADD COLUMN guessCode BIGINT;
+ALTER TABLE rounds ADD COLUMN exact TINYINT UNSIGNED;
+ALTER TABLE rounds ADD COLUMN partial TINYINT UNSIGNED;
+
+UPDATE rounds
+    INNER JOIN game ON game.gameId = rounds.gameId
+    SET rounds.guessCode = CONV(rounds.guess, game.alphabetSize, 10);
+-- Results are stored as "e:EXACT:p:PARTIAL"
+UPDATE rounds
+    SET exact = CAST(SUBSTRING_INDEX(SUBSTRING_INDEX(result, ':', 2), ':', -1) AS UNSIGNED),
+        partial = CAST(SUBSTRING_INDEX(result, ':', -1) AS UNSIGNED);
+-- Number the existing rounds of each game in the order they used to be read in
+SET @roundNumber := 0, @roundGame := NULL;
+UPDATE rounds
+    SET roundNumber = (@roundNumber := IF(@roundGame = gameId, @roundNumber + 1, 1)),
+        gameId = (@roundGame := gameId)
+    ORDER BY gameId, roundTime, roundId;
+
+ALTER TABLE rounds MODIFY roundNumber INT UNSIGNED NOT NULL;
+ALTER TABLE rounds MODIFY guessCode BIGINT NOT NULL;
+ALTER TABLE rounds MODIFY exact TINYINT UNSIGNED NOT NULL;
+ALTER TABLE rounds MODIFY partial TINYINT UNSIGNED NOT NULL;
+ALTER TABLE rounds DROP COLUMN guess;
+ALTER TABLE rounds DROP COLUMN result;
+-- Also serves lookups of a game's rounds, and the foreign key on gameId
+ALTER TABLE rounds ADD UNIQUE INDEX rounds_game_round (gameId, roundNumber);
@@ -0,0 +1,10 @@
+-- Clusters rounds by game and round number, so a game's rounds are stored together
+-- and read in order straight from the primary key, which covers every column.
+-- This takes the place of the separate (gameId, roundNumber) index.
+ALTER TABLE rounds MODIFY roundId INT NOT NULL;
+ALTER TABLE rounds DROP PRIMARY KEY, ADD PRIMARY KEY (gameId, roundNumber);
+ALTER TABLE rounds DROP COLUMN roundId;
+ALTER TABLE rounds DROP INDEX rounds_game_round;
+
+-- Serves listing games with a given status in order of their ID
+CREATE INDEX game_progress ON game (progressId, gameId);
@@ -0,0 +1,9 @@
+-- Blocks of game IDs are leased from here by NumberGameBlockIdAllocator, so games are
+-- inserted with IDs assigned up front instead of waiting for AUTO_INCREMENT keys.
+CREATE TABLE id_sequence (
+    name VARCHAR(50) PRIMARY KEY,
+    nextValue BIGINT NOT NULL
+);
+
+INSERT INTO id_sequence (name, nextValue)
+    SELECT 'game', COALESCE(MAX(gameId), 0) + 1 FROM game;
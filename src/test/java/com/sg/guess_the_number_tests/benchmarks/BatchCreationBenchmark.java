@@ -0,0 +1,88 @@
+package com.sg.guess_the_number_tests.benchmarks;
+
+import com.sg.guess_the_number.data.NumberGameDao;
+import com.sg.guess_the_number.data.NumberGameDbDao;
+import com.sg.guess_the_number.data.NumberGameMemoryDao;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.service.InvalidVariantException;
+import com.sg.guess_the_number.service.NumberGameDefaultService;
+import com.sg.guess_the_number_tests.TestNumberGameConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of creating games one at a time and in batches, the work behind
+ * POST /begin and POST /begin/batch
+ *
+ * Both are reported in games per second. The database storage needs the database the
+ * database profile points to, so run with -p storage=memory without one.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sg.guess_the_number_tests.benchmarks.BatchCreationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BatchCreationBenchmark {
+    /**
+     * The number of games created per batch
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"memory", "database"})
+    public String storage;
+
+    private ConfigurableApplicationContext context;
+    private NumberGameDefaultService service;
+    private final NumberGameVariant variant = new NumberGameVariant();
+
+    @Setup
+    public void setup() {
+        NumberGameDao dao;
+        if(storage.equals("database")) {
+            context = new SpringApplicationBuilder(TestNumberGameConfiguration.class)
+                    .profiles("database")
+                    .run();
+            dao = context.getBean(NumberGameDbDao.class);
+        }
+        else {
+            dao = new NumberGameMemoryDao();
+        }
+        service = new NumberGameDefaultService(dao);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if(context != null) {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public int single() throws InvalidVariantException {
+        return service.createGame(variant);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int[] batch() throws InvalidVariantException {
+        return service.createGames(variant, BATCH_SIZE);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BatchCreationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
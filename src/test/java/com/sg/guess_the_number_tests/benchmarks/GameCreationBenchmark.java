@@ -0,0 +1,66 @@
+package com.sg.guess_the_number_tests.benchmarks;
+
+import com.sg.guess_the_number.data.NumberGameDbDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number_tests.TestNumberGameConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of creating games, the work behind POST /begin, for several ID block sizes
+ *
+ * A block size of 1 leases every ID on its own, taking an extra round trip per game.
+ * Needs the database the database profile points to.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sg.guess_the_number_tests.benchmarks.GameCreationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(8)
+@Fork(1)
+public class GameCreationBenchmark {
+    @Param({"1", "100", "1000"})
+    public int idBlockSize;
+
+    private ConfigurableApplicationContext context;
+    private NumberGameDbDao dao;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(TestNumberGameConfiguration.class)
+                .profiles("database")
+                .run();
+        dao = new NumberGameDbDao(context.getBean(JdbcTemplate.class), 1, 0,
+                NumberGameDbDao.DEFAULT_EXPORT_FETCH_SIZE, idBlockSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dao.close();
+        context.close();
+    }
+
+    @Benchmark
+    public int createGame() {
+        return dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(GameCreationBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
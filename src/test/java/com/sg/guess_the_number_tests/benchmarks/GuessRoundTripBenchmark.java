@@ -0,0 +1,174 @@
+package com.sg.guess_the_number_tests.benchmarks;
+
+import com.sg.guess_the_number.data.GameNotFoundException;
+import com.sg.guess_the_number.data.NumberGameDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.service.InvalidGuessException;
+import com.sg.guess_the_number.service.NumberGameService;
+import com.sg.guess_the_number_tests.TestNumberGameConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the database round trips of a guess and of reading a game's rounds
+ *
+ * Every executed statement, commit, rollback and change of auto-commit mode is counted
+ * as one round trip, through a proxy around the application's DataSource. The legacy
+ * benchmarks replay the DAO calls the controller and service used to make for the same
+ * requests. Needs the database the database profile points to.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sg.guess_the_number_tests.benchmarks.GuessRoundTripBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class GuessRoundTripBenchmark {
+    /**
+     * The round trips made since the benchmark started
+     */
+    private static final AtomicLong ROUND_TRIPS = new AtomicLong();
+
+    private ConfigurableApplicationContext context;
+    private NumberGameService service;
+    private NumberGameDao dao;
+    private int gameId;
+
+    /**
+     * The round trips made by the requests of a single iteration
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RoundTrips {
+        public long roundTrips;
+        public long requests;
+        private long start;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            roundTrips = 0;
+            requests = 0;
+            start = ROUND_TRIPS.get();
+        }
+
+        void count() {
+            requests++;
+            roundTrips = ROUND_TRIPS.get() - start;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(TestNumberGameConfiguration.class)
+                .profiles("database")
+                .initializers(ctx -> ctx.getBeanFactory().addBeanPostProcessor(new CountingPostProcessor()))
+                .run();
+        service = context.getBean(NumberGameService.class);
+        dao = context.getBean(NumberGameDao.class);
+        gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+    }
+
+    @TearDown
+    public void tearDown() throws GameNotFoundException {
+        dao.removeGame(gameId);
+        context.close();
+    }
+
+    @Benchmark
+    public NumberGameRound guess(RoundTrips trips) throws InvalidGuessException {
+        NumberGameRound round = service.guessForGame(gameId, "5678");
+        trips.count();
+        return round;
+    }
+
+    @Benchmark
+    public NumberGameRound guessLegacy(RoundTrips trips) throws GameNotFoundException {
+        // The controller's status check, then the service's validation read and insert
+        dao.getGameById(gameId);
+        dao.getGameById(gameId);
+        NumberGameRound round = new NumberGameRound("5678", "e:0:p:0");
+        dao.addRound(gameId, round);
+        trips.count();
+        return round;
+    }
+
+    @Benchmark
+    public List<NumberGameRound> rounds(RoundTrips trips) throws GameNotFoundException {
+        List<NumberGameRound> rounds = dao.getGameRounds(gameId);
+        trips.count();
+        return rounds;
+    }
+
+    @Benchmark
+    public List<NumberGameRound> roundsLegacy(RoundTrips trips) throws GameNotFoundException {
+        // The existence check made before the rounds were fetched
+        dao.getGameById(gameId);
+        List<NumberGameRound> rounds = dao.getGameRounds(gameId);
+        trips.count();
+        return rounds;
+    }
+
+    /**
+     * Wraps the application's DataSource so every round trip is counted
+     */
+    private static final class CountingPostProcessor implements BeanPostProcessor {
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if(!(bean instanceof DataSource)) {
+                return bean;
+            }
+            return proxy(bean, DataSource.class);
+        }
+
+        private static Object proxy(Object target, Class<?> type) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+                String name = method.getName();
+                if(name.startsWith("execute") || name.equals("commit") || name.equals("rollback") ||
+                        name.equals("setAutoCommit")) {
+                    ROUND_TRIPS.incrementAndGet();
+                }
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                }
+                catch(InvocationTargetException e) {
+                    throw e.getCause();
+                }
+                // Follow the connections and statements handed out, and what they return
+                if(result instanceof Connection && method.getReturnType() == Connection.class) {
+                    return proxy(result, Connection.class);
+                }
+                if(result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                    return proxy(result, method.getReturnType());
+                }
+                return result;
+            });
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(GuessRoundTripBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
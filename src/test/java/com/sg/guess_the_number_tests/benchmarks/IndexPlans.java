@@ -0,0 +1,201 @@
+package com.sg.guess_the_number_tests.benchmarks;
+
+import com.sg.guess_the_number.data.NumberGameDbDao;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Prints the EXPLAIN output and latency of the game queries before and after V4__indexes.sql
+ *
+ * Builds a scratch database up to V3, fills it with GAMES games of ROUNDS_PER_GAME rounds
+ * each, and measures the queries NumberGameDbDao ran before V4, with their progress join.
+ * It then applies V4 and measures the queries the DAO runs now. The queries measured are
+ * those behind getGameRounds, getGames with a status filter, and exportGames.
+ *
+ * Takes the server URL, user and password as arguments, and defaults to those of
+ * application.properties. The scratch database is dropped when it finishes.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sg.guess_the_number_tests.benchmarks.IndexPlans
+ */
+public class IndexPlans {
+    private static final String DATABASE = "guess_the_number_plans";
+    private static final int GAMES = 100000;
+    private static final int ROUNDS_PER_GAME = 10;
+    /**
+     * One game in this many is still in progress
+     */
+    private static final int IN_PROGRESS_EVERY = 10;
+    private static final int PAGE_SIZE = 100;
+    private static final int LOOKUPS = 1000;
+    private static final int EXPORTS = 3;
+
+    private static final String BEFORE_GAME_COLUMNS = "game.gameId, game.answerCode, game.answerLength, " +
+            "game.alphabetSize, game.allowDuplicates, progress.progressDesc";
+    private static final String AFTER_GAME_COLUMNS = "game.gameId, game.answerCode, game.answerLength, " +
+            "game.alphabetSize, game.allowDuplicates, game.progressId";
+    private static final String ROUND_COLUMNS = "rounds.roundNumber, rounds.guessCode, rounds.exact, rounds.partial, " +
+            "rounds.roundTime";
+
+    private static final String BEFORE_ROUNDS = "SELECT game.gameId, game.answerLength, game.alphabetSize, " +
+            ROUND_COLUMNS + " FROM game " +
+            "LEFT JOIN rounds ON rounds.gameId = game.gameId " +
+            "WHERE game.gameId = ? " +
+            "ORDER BY rounds.roundNumber ASC";
+    private static final String AFTER_ROUNDS = "SELECT game.gameId, game.answerLength, game.alphabetSize, " +
+            ROUND_COLUMNS + " FROM game " +
+            "LEFT JOIN rounds ON rounds.gameId = game.gameId AND rounds.roundNumber > 0 " +
+            "WHERE game.gameId = ? " +
+            "ORDER BY rounds.roundNumber ASC";
+    private static final String BEFORE_GAMES = "SELECT " + BEFORE_GAME_COLUMNS + " FROM game " +
+            "INNER JOIN progress ON progress.progressId = game.progressId " +
+            "WHERE game.gameId > ? AND game.progressId = 1 " +
+            "ORDER BY game.gameId ASC LIMIT " + PAGE_SIZE;
+    private static final String AFTER_GAMES = "SELECT " + AFTER_GAME_COLUMNS + " FROM game " +
+            "WHERE game.gameId > ? AND game.progressId = 1 " +
+            "ORDER BY game.gameId ASC LIMIT " + PAGE_SIZE;
+    private static final String BEFORE_EXPORT = "SELECT " + BEFORE_GAME_COLUMNS + ", " + ROUND_COLUMNS + " FROM game " +
+            "INNER JOIN progress ON progress.progressId = game.progressId " +
+            "LEFT JOIN rounds ON rounds.gameId = game.gameId " +
+            "ORDER BY game.gameId ASC, rounds.roundNumber ASC";
+    private static final String AFTER_EXPORT = "SELECT " + AFTER_GAME_COLUMNS + ", " + ROUND_COLUMNS + " FROM game " +
+            "LEFT JOIN rounds ON rounds.gameId = game.gameId " +
+            "ORDER BY game.gameId ASC, rounds.roundNumber ASC";
+
+    public static void main(String[] args) {
+        String server = args.length > 0 ? args[0] : "jdbc:mysql://localhost:3306/";
+        String user = args.length > 1 ? args[1] : "root";
+        String password = args.length > 2 ? args[2] : "root";
+        String options = "?serverTimezone=UTC&useSSL=false&rewriteBatchedStatements=true";
+        JdbcTemplate admin = new JdbcTemplate(new DriverManagerDataSource(server + options, user, password));
+        admin.execute("DROP DATABASE IF EXISTS " + DATABASE);
+        admin.execute("CREATE DATABASE " + DATABASE);
+        try {
+            JdbcTemplate template = new JdbcTemplate(new DriverManagerDataSource(server + DATABASE + options, user, password));
+            migrate(template, "V1__baseline.sql", "V2__game_variants.sql", "V3__compact_storage.sql");
+            fill(template);
+
+            System.out.println("==== Before V4");
+            measure(template, BEFORE_ROUNDS, BEFORE_GAMES, BEFORE_EXPORT);
+
+            long start = System.nanoTime();
+            migrate(template, "V4__indexes.sql");
+            System.out.printf("%nV4 applied in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+            template.execute("ANALYZE TABLE game, rounds");
+
+            System.out.println("==== After V4");
+            measure(template, AFTER_ROUNDS, AFTER_GAMES, AFTER_EXPORT);
+        }
+        finally {
+            admin.execute("DROP DATABASE IF EXISTS " + DATABASE);
+        }
+    }
+
+    private static void migrate(JdbcTemplate template, String... scripts) {
+        template.execute((ConnectionCallback<Void>) conn -> {
+            for(String script : scripts) {
+                ScriptUtils.executeSqlScript(conn,
+                        new EncodedResource(new ClassPathResource("db/migration/" + script), StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Fills the V3 schema with games and their rounds
+     */
+    private static void fill(JdbcTemplate template) {
+        long start = System.nanoTime();
+        Random random = new Random(1L);
+        List<Object[]> games = new ArrayList<>();
+        List<Object[]> rounds = new ArrayList<>();
+        Timestamp time = new Timestamp(System.currentTimeMillis());
+        for(int gameId = 1; gameId <= GAMES; gameId ++) {
+            int progressId = gameId % IN_PROGRESS_EVERY == 0 ? 1 : 2;
+            games.add(new Object[] {gameId, random.nextInt(10000), progressId});
+            for(int r = 1; r <= ROUNDS_PER_GAME; r ++) {
+                rounds.add(new Object[] {gameId, r, random.nextInt(10000), random.nextInt(5), random.nextInt(5), time});
+            }
+            if(gameId % 1000 == 0) {
+                template.batchUpdate("INSERT INTO game(gameId, answerCode, progressId) VALUES(?, ?, ?)", games);
+                template.batchUpdate("INSERT INTO rounds(gameId, roundNumber, guessCode, exact, partial, roundTime) " +
+                        "VALUES(?, ?, ?, ?, ?, ?)", rounds);
+                games.clear();
+                rounds.clear();
+            }
+        }
+        template.execute("ANALYZE TABLE game, rounds");
+        System.out.printf("Filled %,d games and %,d rounds in %,d ms%n", GAMES, GAMES * ROUNDS_PER_GAME,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static void measure(JdbcTemplate template, String rounds, String games, String export) {
+        int middle = GAMES / 2;
+
+        System.out.printf("%n-- getGameRounds%n%s%n", rounds);
+        explain(template, rounds, middle);
+        Random random = new Random(2L);
+        long start = System.nanoTime();
+        for(int i = 0; i < LOOKUPS; i ++) {
+            template.query(rounds, (ResultSet resultSet) -> { }, 1 + random.nextInt(GAMES));
+        }
+        report(start, LOOKUPS);
+
+        System.out.printf("%n-- getGames with a status filter%n%s%n", games);
+        explain(template, games, middle);
+        random = new Random(3L);
+        start = System.nanoTime();
+        for(int i = 0; i < LOOKUPS; i ++) {
+            template.query(games, (ResultSet resultSet) -> { }, random.nextInt(GAMES));
+        }
+        report(start, LOOKUPS);
+
+        System.out.printf("%n-- exportGames%n%s%n", export);
+        explain(template, export);
+        start = System.nanoTime();
+        for(int i = 0; i < EXPORTS; i ++) {
+            // Streamed the way exportGames reads it
+            template.query((Connection conn) -> {
+                PreparedStatement statement = conn.prepareStatement(export, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(NumberGameDbDao.DEFAULT_EXPORT_FETCH_SIZE);
+                return statement;
+            }, (ResultSet resultSet) -> { });
+        }
+        report(start, EXPORTS);
+    }
+
+    private static void explain(JdbcTemplate template, String sql, Object... args) {
+        String[] columns = {"id", "select_type", "table", "type", "possible_keys", "key", "key_len", "ref",
+                "rows", "filtered", "Extra"};
+        StringBuilder header = new StringBuilder();
+        for(String column : columns) {
+            header.append(column).append(" | ");
+        }
+        System.out.println(header);
+        for(Map<String, Object> row : template.queryForList("EXPLAIN " + sql, args)) {
+            StringBuilder line = new StringBuilder();
+            for(String column : columns) {
+                line.append(row.get(column)).append(" | ");
+            }
+            System.out.println(line);
+        }
+    }
+
+    private static void report(long start, int runs) {
+        System.out.printf("Mean latency %.3f ms%n", (System.nanoTime() - start) / 1_000_000.0 / runs);
+    }
+}
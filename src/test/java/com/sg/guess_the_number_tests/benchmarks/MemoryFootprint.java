@@ -0,0 +1,92 @@
+package com.sg.guess_the_number_tests.benchmarks;
+
+import com.sg.guess_the_number.data.GameNotFoundException;
+import com.sg.guess_the_number.data.NumberGameMemoryDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.service.NumberGameScorer;
+import com.sg.guess_the_number.service.PooledAnswerGenerator;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.function.Supplier;
+
+/**
+ * Measures the heap taken per game and per round by the memory profile's storage
+ *
+ * Compares rounds kept as NumberGameRound objects, the way the memory DAO used to keep
+ * them, against the memory DAO itself. Each measurement is the growth of the used heap
+ * after full collections, so run it with a fixed heap to keep collections comparable.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sg.guess_the_number_tests.benchmarks.MemoryFootprint
+ */
+public class MemoryFootprint {
+    private static final int GAMES = 10000;
+    private static final int ROUNDS_PER_GAME = 100;
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws GameNotFoundException {
+        PooledAnswerGenerator generator = new PooledAnswerGenerator(1L);
+        String[] answers = new String[GAMES];
+        for(int i = 0; i < GAMES; i ++) {
+            answers[i] = generator.generateAnswer();
+        }
+
+        Object legacy = measure("Round objects", () -> {
+            NumberGameRound[][] games = new NumberGameRound[GAMES][];
+            for(int i = 0; i < GAMES; i ++) {
+                games[i] = new NumberGameRound[ROUNDS_PER_GAME];
+                for(int r = 0; r < ROUNDS_PER_GAME; r ++) {
+                    games[i][r] = round(answers[i], answers[(i + r + 1) % GAMES]);
+                }
+            }
+            return games;
+        });
+
+        Object compact = measure("Memory DAO", () -> {
+            NumberGameMemoryDao dao = new NumberGameMemoryDao();
+            try {
+                for(int i = 0; i < GAMES; i ++) {
+                    int gameId = dao.createGame(answers[i], new NumberGameVariant(), ENumberGameStatus.IN_PROGRESS);
+                    for(int r = 0; r < ROUNDS_PER_GAME; r ++) {
+                        dao.addRound(gameId, round(answers[i], answers[(i + r + 1) % GAMES]));
+                    }
+                }
+            }
+            catch(GameNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+            return dao;
+        });
+
+        // Keep both alive until both are measured
+        System.out.println(legacy.hashCode() ^ compact.hashCode());
+    }
+
+    /**
+     * Builds a round the way the service does, with a guess string of its own
+     */
+    private static NumberGameRound round(String answer, String guess) {
+        return new NumberGameRound(new String(guess.toCharArray()),
+                NumberGameScorer.resultString(NumberGameScorer.score(answer, guess)));
+    }
+
+    private static Object measure(String name, Supplier<Object> build) {
+        long before = usedHeap();
+        Object built = build.get();
+        long after = usedHeap();
+        long rounds = (long)GAMES * ROUNDS_PER_GAME;
+        System.out.printf("%-14s %,d bytes, %.1f bytes per round%n", name, after - before, (after - before) / (double)rounds);
+        return built;
+    }
+
+    private static long usedHeap() {
+        for(int i = 0; i < 3; i ++) {
+            System.gc();
+        }
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,88 @@
+package com.sg.guess_the_number_tests.benchmarks;
+
+import com.sg.guess_the_number.data.GameNotFoundException;
+import com.sg.guess_the_number.data.NumberGameJournaledDao;
+import com.sg.guess_the_number.data.NumberGameMemoryDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.service.NumberGameScorer;
+import com.sg.guess_the_number.service.PooledAnswerGenerator;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures how long the journaled memory profile takes to recover 10M rounds
+ *
+ * Journals GAMES games of ROUNDS_PER_GAME rounds each, then times recovering them by
+ * replaying the whole journal, and again from a snapshot with nothing left to replay.
+ * Give it a heap big enough to hold the rounds twice.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sg.guess_the_number_tests.benchmarks.RecoveryTime
+ */
+public class RecoveryTime {
+    private static final int GAMES = 100000;
+    private static final int ROUNDS_PER_GAME = 100;
+
+    public static void main(String[] args) throws IOException, GameNotFoundException {
+        Path directory = Files.createTempDirectory("recovery");
+        Path journal = directory.resolve("games");
+        try {
+            PooledAnswerGenerator generator = new PooledAnswerGenerator(1L);
+            NumberGameJournaledDao dao = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+            long start = System.nanoTime();
+            for(int i = 0; i < GAMES; i ++) {
+                String answer = generator.generateAnswer();
+                int gameId = dao.createGame(answer, ENumberGameStatus.IN_PROGRESS);
+                for(int r = 0; r < ROUNDS_PER_GAME; r ++) {
+                    String guess = generator.generateAnswer();
+                    dao.applyGuess(gameId, new NumberGameRound(guess,
+                            NumberGameScorer.resultString(NumberGameScorer.score(answer, guess))), false);
+                }
+            }
+            report("Journaling", start);
+            System.out.printf("Journal size   %,d bytes%n", size(directory));
+
+            start = System.nanoTime();
+            NumberGameJournaledDao replayed = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+            report("Journal replay", start);
+            System.out.printf("Replayed       %,d records%n", replayed.getRecoveredRecords());
+
+            start = System.nanoTime();
+            replayed.snapshot();
+            report("Snapshot", start);
+            System.out.printf("Snapshot size  %,d bytes%n", size(directory));
+            replayed = null;
+
+            start = System.nanoTime();
+            NumberGameJournaledDao loaded = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+            report("Snapshot load", start);
+            System.out.printf("Loaded         %,d games%n", loaded.getAllGames().size());
+        }
+        finally {
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for(Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void report(String name, long start) {
+        System.out.printf("%-14s %,d ms%n", name, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static long size(Path directory) throws IOException {
+        long size = 0;
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for(Path file : files) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+}
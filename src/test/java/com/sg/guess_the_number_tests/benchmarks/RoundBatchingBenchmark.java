@@ -0,0 +1,88 @@
+package com.sg.guess_the_number_tests.benchmarks;
+
+import com.sg.guess_the_number.data.GameNotFoundException;
+import com.sg.guess_the_number.data.NumberGameDbDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number_tests.TestNumberGameConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of non-solving guesses written directly and in write-behind batches
+ *
+ * A batch size of 1 writes every round directly. Every thread guesses for its own game.
+ * Needs the database the database profile points to.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sg.guess_the_number_tests.benchmarks.RoundBatchingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(8)
+@Fork(1)
+public class RoundBatchingBenchmark {
+    @Param({"1", "16", "128"})
+    public int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private NumberGameDbDao dao;
+
+    /**
+     * The game a single benchmark thread guesses for
+     */
+    @State(Scope.Thread)
+    public static class Game {
+        private NumberGameDbDao dao;
+        private int gameId;
+
+        @Setup
+        public void setup(RoundBatchingBenchmark benchmark) {
+            dao = benchmark.dao;
+            gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        }
+
+        @TearDown
+        public void tearDown() throws GameNotFoundException {
+            dao.removeGame(gameId);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(TestNumberGameConfiguration.class)
+                .profiles("database")
+                .run();
+        dao = new NumberGameDbDao(context.getBean(JdbcTemplate.class), batchSize, 20,
+                NumberGameDbDao.DEFAULT_EXPORT_FETCH_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        dao.close();
+        context.close();
+    }
+
+    @Benchmark
+    public boolean guess(Game game) throws GameNotFoundException {
+        return dao.applyGuess(game.gameId, new NumberGameRound("5678", "e:0:p:0"), false);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RoundBatchingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
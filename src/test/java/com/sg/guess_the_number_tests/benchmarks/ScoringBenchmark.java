@@ -0,0 +1,88 @@
+package com.sg.guess_the_number_tests.benchmarks;
+
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.service.NumberGameScorer;
+import com.sg.guess_the_number.service.PooledAnswerGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the nested loop scoring the service used to do against NumberGameScorer
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.sg.guess_the_number_tests.benchmarks.ScoringBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoringBenchmark {
+    private static final int PAIRS = 1024;
+
+    private final String[] answers = new String[PAIRS];
+    private final String[] guesses = new String[PAIRS];
+    private final long[] packedAnswers = new long[PAIRS];
+    private final long[] packedGuesses = new long[PAIRS];
+    private int next;
+
+    @Setup
+    public void setup() {
+        PooledAnswerGenerator generator = new PooledAnswerGenerator(1L);
+        for(int i = 0; i < PAIRS; i ++) {
+            answers[i] = generator.generateAnswer();
+            guesses[i] = generator.generateAnswer();
+            packedAnswers[i] = NumberGameScorer.pack(answers[i]);
+            packedGuesses[i] = NumberGameScorer.pack(guesses[i]);
+        }
+    }
+
+    @Benchmark
+    public String legacy() {
+        int i = next++ & (PAIRS - 1);
+        String guess = guesses[i];
+        String answer = answers[i];
+        int partialMatchCount = 0;
+        int fullMatchCount = 0;
+        for(int a = 0; a < answer.length(); a ++) {
+            if(answer.charAt(a) == guess.charAt(a)) {
+                fullMatchCount++;
+            }
+            else {
+                for(int g = 0; g < guess.length(); g ++) {
+                    if(guess.charAt(g) == answer.charAt(a)) {
+                        partialMatchCount++;
+                    }
+                }
+            }
+        }
+        return String.format("e:%d:p:%d", fullMatchCount, partialMatchCount);
+    }
+
+    @Benchmark
+    public String scorer() {
+        int i = next++ & (PAIRS - 1);
+        return NumberGameScorer.resultString(NumberGameScorer.score(answers[i], guesses[i]));
+    }
+
+    @Benchmark
+    public String scorerPacked() {
+        int i = next++ & (PAIRS - 1);
+        return NumberGameScorer.resultString(
+                NumberGameScorer.score(packedAnswers[i], packedGuesses[i], NumberGameVariant.DEFAULT_ANSWER_LENGTH));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ScoringBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,123 @@
+package com.sg.guess_the_number_tests.data;
+
+import com.sg.guess_the_number.data.GameNotFoundException;
+import com.sg.guess_the_number.data.NumberGameCachingDao;
+import com.sg.guess_the_number.data.NumberGameMemoryDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.models.game.NumberGameInstance;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberGameCachingDaoTest {
+
+    @Test
+    void getGameById() throws GameNotFoundException {
+        NumberGameMemoryDao store = new NumberGameMemoryDao();
+        int stored = store.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        NumberGameCachingDao dao = new NumberGameCachingDao(store, 100);
+
+        assertEquals("1234", dao.getGameById(stored).getAnswer());
+        assertEquals(0, dao.getGameHits());
+        assertEquals(1, dao.getGameMisses());
+        // Callers can't change the cached game
+        dao.getGameById(stored).setStatus(ENumberGameStatus.FINISHED);
+        assertEquals(ENumberGameStatus.IN_PROGRESS, dao.getGameById(stored).getStatus());
+        assertEquals(2, dao.getGameHits());
+
+        int created = dao.createGame("5678", ENumberGameStatus.IN_PROGRESS);
+        assertEquals("5678", dao.getGameById(created).getAnswer());
+        assertEquals(3, dao.getGameHits());
+
+        assertThrows(GameNotFoundException.class, () -> dao.getGameById(-1));
+    }
+
+    @Test
+    void createGames() throws GameNotFoundException {
+        NumberGameMemoryDao store = new NumberGameMemoryDao();
+        NumberGameCachingDao dao = new NumberGameCachingDao(store, 2);
+        int cached = store.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        dao.getGameById(cached);
+
+        // A bulk create doesn't evict the games being read
+        int[] created = dao.createGames(Arrays.asList("5678", "9012", "3456"), new NumberGameVariant(),
+                ENumberGameStatus.IN_PROGRESS);
+        assertEquals(1, dao.getCachedGames());
+        dao.getGameById(cached);
+        assertEquals(1, dao.getGameHits());
+        assertEquals("9012", dao.getGameById(created[1]).getAnswer());
+        assertEquals(2, dao.getGameMisses());
+    }
+
+    @Test
+    void applyGuess() throws GameNotFoundException {
+        NumberGameCachingDao dao = new NumberGameCachingDao(new NumberGameMemoryDao(), 100);
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        assertTrue(dao.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false));
+        assertEquals(ENumberGameStatus.IN_PROGRESS, dao.getGameById(gameId).getStatus());
+        assertTrue(dao.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true));
+        assertEquals(ENumberGameStatus.FINISHED, dao.getGameById(gameId).getStatus());
+        assertFalse(dao.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true));
+
+        dao.updateStatus(gameId, ENumberGameStatus.IN_PROGRESS);
+        assertEquals(ENumberGameStatus.IN_PROGRESS, dao.getGameById(gameId).getStatus());
+        dao.removeGame(gameId);
+        assertThrows(GameNotFoundException.class, () -> dao.getGameById(gameId));
+    }
+
+    @Test
+    void getGameRounds() throws GameNotFoundException {
+        NumberGameCachingDao dao = new NumberGameCachingDao(new NumberGameMemoryDao(), 100);
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        dao.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false);
+        // Rounds of games in progress are never cached
+        assertEquals(1, dao.getGameRounds(gameId).size());
+        dao.applyGuess(gameId, new NumberGameRound("1243", "e:2:p:2"), false);
+        assertEquals(2, dao.getGameRounds(gameId).size());
+        assertEquals(0, dao.getCachedRounds());
+
+        dao.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true);
+        dao.getGameById(gameId);
+        List<NumberGameRound> rounds = dao.getGameRounds(gameId);
+        assertEquals(3, rounds.size());
+        assertEquals(1, dao.getCachedRounds());
+        assertSame(rounds, dao.getGameRounds(gameId));
+        assertEquals(1, dao.getRoundHits());
+
+        dao.addRound(gameId, new NumberGameRound("4321", "e:0:p:4"));
+        assertEquals(4, dao.getGameRounds(gameId).size());
+        assertThrows(GameNotFoundException.class, () -> dao.getGameRounds(-1));
+    }
+
+    @Test
+    void getGameRoundsAfter() throws GameNotFoundException {
+        NumberGameCachingDao dao = new NumberGameCachingDao(new NumberGameMemoryDao(), 100);
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        dao.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false);
+        assertEquals(1, dao.getGameRoundsAfter(gameId, 0).size());
+        dao.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true);
+        // Finished games have their rounds cached, which are then sliced
+        assertEquals(2, dao.getGameRounds(gameId).size());
+        List<NumberGameRound> after = dao.getGameRoundsAfter(gameId, 1);
+        assertEquals(1, after.size());
+        assertEquals("1234", after.get(0).getGuess());
+        assertEquals(0, dao.getGameRoundsAfter(gameId, 5).size());
+        assertThrows(GameNotFoundException.class, () -> dao.getGameRoundsAfter(-1, 0));
+    }
+
+    @Test
+    void eviction() throws GameNotFoundException {
+        NumberGameCachingDao dao = new NumberGameCachingDao(new NumberGameMemoryDao(), 16);
+        for(int i = 0; i < 1000; i ++) {
+            dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        }
+        assertTrue(dao.getCachedGames() <= 16);
+        NumberGameInstance first = dao.getGameById(1);
+        assertEquals(1, first.getGameId());
+    }
+}
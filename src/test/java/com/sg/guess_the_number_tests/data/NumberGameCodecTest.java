@@ -0,0 +1,55 @@
+package com.sg.guess_the_number_tests.data;
+
+import com.sg.guess_the_number.data.NumberGameCodec;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.service.PooledAnswerGenerator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberGameCodecTest {
+    @Test
+    void encode() {
+        // Matches MySQL's CONV(symbols, alphabetSize, 10)
+        assertEquals(1234, NumberGameCodec.encode("1234", 10));
+        assertEquals(123, NumberGameCodec.encode("0123", 10));
+        assertEquals(1295, NumberGameCodec.encode("zz", 36));
+        assertEquals(1295, NumberGameCodec.encode("ZZ", 36));
+        assertEquals(5, NumberGameCodec.encode("101", 2));
+    }
+
+    @Test
+    void decode() {
+        assertEquals("1234", NumberGameCodec.decode(1234, 10, 4));
+        assertEquals("0123", NumberGameCodec.decode(123, 10, 4));
+        assertEquals("0000", NumberGameCodec.decode(0, 10, 4));
+        assertEquals("zz", NumberGameCodec.decode(1295, 36, 2));
+    }
+
+    @Test
+    void roundTrip() {
+        PooledAnswerGenerator generator = new PooledAnswerGenerator(1L);
+        NumberGameVariant[] variants = {
+                new NumberGameVariant(),
+                new NumberGameVariant(15, 16, true),
+                new NumberGameVariant(12, 36, false),
+                new NumberGameVariant(15, 18, true)
+        };
+        for(NumberGameVariant variant : variants) {
+            assertTrue(variant.isValid());
+            for(int i = 0; i < 100; i ++) {
+                String answer = generator.generateAnswer(variant);
+                long code = NumberGameCodec.encode(answer, variant.getAlphabetSize());
+                assertTrue(code >= 0);
+                assertEquals(answer, NumberGameCodec.decode(code, variant.getAlphabetSize(), variant.getAnswerLength()));
+            }
+        }
+        assertFalse(new NumberGameVariant(15, 19, true).isValid());
+    }
+
+    @Test
+    void decodeResult() {
+        assertEquals("e:2:p:1", NumberGameCodec.decodeResult(2, 1));
+        assertEquals("e:0:p:0", NumberGameCodec.decodeResult(0, 0));
+    }
+}
@@ -2,8 +2,11 @@ package com.sg.guess_the_number_tests.data;
 
 import com.sg.guess_the_number.data.GameNotFoundException;
 import com.sg.guess_the_number.data.NumberGameDao;
+import com.sg.guess_the_number.data.NumberGameDbDao;
+import com.sg.guess_the_number.data.NumberGameTieredDao;
 import com.sg.guess_the_number.models.ENumberGameStatus;
 import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
 import com.sg.guess_the_number.models.game.NumberGameInstance;
 import com.sg.guess_the_number_tests.TestNumberGameConfiguration;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,10 +14,19 @@ import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -24,6 +36,8 @@ import static org.junit.jupiter.api.Assertions.*;
 class NumberGameDbDaoTest {
     @Autowired
     private NumberGameDao dao;
+    @Autowired
+    private JdbcTemplate template;
 
     @BeforeEach
     public void initData() throws GameNotFoundException {
@@ -43,6 +57,24 @@ class NumberGameDbDaoTest {
         assertEquals(gameId, dao.getAllGames().get(0).getGameId());
     }
 
+    @Test
+    void getGames() {
+        int first = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int second = dao.createGame("1234", ENumberGameStatus.FINISHED);
+        int third = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        List<NumberGameInstance> page = dao.getGames(0, 2, null);
+        assertEquals(2, page.size());
+        assertEquals(first, page.get(0).getGameId());
+        assertEquals(second, page.get(1).getGameId());
+        page = dao.getGames(second, 2, null);
+        assertEquals(1, page.size());
+        assertEquals(third, page.get(0).getGameId());
+
+        page = dao.getGames(first, 10, ENumberGameStatus.IN_PROGRESS);
+        assertEquals(1, page.size());
+        assertEquals(third, page.get(0).getGameId());
+    }
+
     @Test
     void getGameById() {
         assertThrows(GameNotFoundException.class, () -> dao.getGameById(1));
@@ -83,6 +115,8 @@ class NumberGameDbDaoTest {
     void createGame() {
         int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
         int gameIdTwo = dao.createGame("5678", ENumberGameStatus.IN_PROGRESS);
+        NumberGameVariant variant = new NumberGameVariant(6, 16, true);
+        int gameIdThree = dao.createGame("ff00aa", variant, ENumberGameStatus.IN_PROGRESS);
         assertNotEquals(gameId, gameIdTwo);
         try {
             NumberGameInstance instance = dao.getGameById(gameId);
@@ -91,6 +125,8 @@ class NumberGameDbDaoTest {
             NumberGameInstance instanceTwo = dao.getGameById(gameIdTwo);
             assertEquals(instanceTwo.getAnswer(), "5678");
             assertEquals(instanceTwo.getStatus(), ENumberGameStatus.IN_PROGRESS);
+            assertEquals(new NumberGameVariant(), instanceTwo.getVariant());
+            assertEquals(variant, dao.getGameById(gameIdThree).getVariant());
         }
         catch(GameNotFoundException e) {
             fail();
@@ -112,4 +148,283 @@ class NumberGameDbDaoTest {
             fail();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void applyGuess() {
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        try {
+            assertTrue(dao.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false));
+            assertEquals(ENumberGameStatus.IN_PROGRESS, dao.getGameById(gameId).getStatus());
+            assertTrue(dao.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true));
+            assertEquals(ENumberGameStatus.FINISHED, dao.getGameById(gameId).getStatus());
+            assertFalse(dao.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false));
+            assertFalse(dao.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true));
+
+            List<NumberGameRound> rounds = dao.getGameRounds(gameId);
+            assertEquals(2, rounds.size());
+            assertEquals("5678", rounds.get(0).getGuess());
+            assertEquals("1234", rounds.get(1).getGuess());
+        }
+        catch(GameNotFoundException e) {
+            fail();
+        }
+        assertThrows(GameNotFoundException.class, () -> dao.applyGuess(gameId + 1, new NumberGameRound("1234", "e:4:p:0"), false));
+        assertThrows(GameNotFoundException.class, () -> dao.getGameRounds(gameId + 1));
+    }
+
+    @Test
+    void applyGuessWriteBehind() {
+        NumberGameDbDao batched = new NumberGameDbDao(template, 16, 60000, NumberGameDbDao.DEFAULT_EXPORT_FETCH_SIZE);
+        int gameId = batched.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        try {
+            assertTrue(batched.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false));
+            assertTrue(batched.applyGuess(gameId, new NumberGameRound("1243", "e:2:p:2"), false));
+            // Still queued, but visible to the game's own reads
+            assertEquals(0, dao.getGameRounds(gameId).size());
+            assertEquals(2, batched.getGameRounds(gameId).size());
+            assertEquals(2, dao.getGameRounds(gameId).size());
+
+            assertTrue(batched.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false));
+            assertTrue(batched.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true));
+            List<NumberGameRound> rounds = dao.getGameRounds(gameId);
+            assertEquals(4, rounds.size());
+            assertEquals("1234", rounds.get(3).getGuess());
+            assertEquals(ENumberGameStatus.FINISHED, dao.getGameById(gameId).getStatus());
+
+            int otherId = batched.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+            batched.applyGuess(otherId, new NumberGameRound("5678", "e:0:p:0"), false);
+            batched.close();
+            assertEquals(1, dao.getGameRounds(otherId).size());
+        }
+        catch(GameNotFoundException e) {
+            fail();
+        }
+    }
+
+    @Test
+    void concurrentGuesses() throws Exception {
+        final int threadCount = 8;
+        final int guessesPerThread = 25;
+        NumberGameDbDao batched = new NumberGameDbDao(template, 4, 60000, NumberGameDbDao.DEFAULT_EXPORT_FETCH_SIZE);
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t = 0; t < threadCount; t ++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for(int g = 0; g < guessesPerThread; g ++) {
+                    NumberGameRound round = new NumberGameRound("5678", "e:0:p:0");
+                    // Every path that numbers a round races on the same game
+                    if(thread % 3 == 0) {
+                        assertTrue(dao.applyGuess(gameId, round, false));
+                    }
+                    else if(thread % 3 == 1) {
+                        dao.addRound(gameId, round);
+                    }
+                    else {
+                        assertTrue(batched.applyGuess(gameId, round, false));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for(Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        batched.close();
+
+        assertEquals(threadCount * guessesPerThread, dao.getGameRounds(gameId).size());
+        int numbers = template.queryForObject(
+                "SELECT COUNT(DISTINCT roundNumber) FROM rounds WHERE gameId = ?;", Integer.class, gameId);
+        int latest = template.queryForObject(
+                "SELECT MAX(roundNumber) FROM rounds WHERE gameId = ?;", Integer.class, gameId);
+        assertEquals(threadCount * guessesPerThread, numbers);
+        assertEquals(threadCount * guessesPerThread, latest);
+    }
+
+    @Test
+    void concurrentBatchGuesses() throws Exception {
+        final int threadCount = 8;
+        final int guessesPerThread = 25;
+        int first = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int second = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for(int t = 0; t < threadCount; t ++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for(int g = 0; g < guessesPerThread; g ++) {
+                    // Single guesses race with batches numbering rounds for the same games
+                    if(thread % 2 == 0) {
+                        assertTrue(dao.applyGuess(first, new NumberGameRound("5678", "e:0:p:0"), false));
+                    }
+                    else {
+                        Map<Integer, List<NumberGameRound>> rounds = new LinkedHashMap<>();
+                        // Games in opposite orders, which could deadlock if they weren't locked in ID order
+                        rounds.put(g % 2 == 0 ? first : second, Collections.singletonList(new NumberGameRound("5678", "e:0:p:0")));
+                        rounds.put(g % 2 == 0 ? second : first, Collections.singletonList(new NumberGameRound("5678", "e:0:p:0")));
+                        Map<Integer, Integer> added = dao.applyGuesses(rounds, Collections.emptySet());
+                        assertEquals(1, (int)added.get(first));
+                        assertEquals(1, (int)added.get(second));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for(Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        int batches = threadCount / 2 * guessesPerThread;
+        assertEquals(batches * 2, dao.getGameRounds(first).size());
+        assertEquals(batches, dao.getGameRounds(second).size());
+        int latest = template.queryForObject(
+                "SELECT MAX(roundNumber) FROM rounds WHERE gameId = ?;", Integer.class, first);
+        assertEquals(batches * 2, latest);
+    }
+
+    @Test
+    void applyGuesses() throws GameNotFoundException {
+        int first = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int finished = dao.createGame("5678", ENumberGameStatus.FINISHED);
+        dao.addRound(first, new NumberGameRound("9012", "e:0:p:0"));
+        Map<Integer, List<NumberGameRound>> rounds = new HashMap<>();
+        rounds.put(first, Arrays.asList(new NumberGameRound("5678", "e:0:p:0"), new NumberGameRound("1234", "e:4:p:0")));
+        rounds.put(finished, Collections.singletonList(new NumberGameRound("1234", "e:0:p:0")));
+        rounds.put(-1, Collections.singletonList(new NumberGameRound("1234", "e:0:p:0")));
+        Map<Integer, Integer> added = dao.applyGuesses(rounds, Collections.singleton(first));
+        assertEquals(2, (int)added.get(first));
+        assertEquals(0, (int)added.get(finished));
+        assertEquals(0, (int)added.get(-1));
+        List<NumberGameRound> firstRounds = dao.getGameRounds(first);
+        assertEquals(3, firstRounds.size());
+        assertEquals("1234", firstRounds.get(2).getGuess());
+        assertEquals("e:4:p:0", firstRounds.get(2).getGuessResult());
+        assertEquals(ENumberGameStatus.FINISHED, dao.getGameById(first).getStatus());
+        assertEquals(0, dao.getGameRounds(finished).size());
+    }
+
+    @Test
+    void getByIds() throws GameNotFoundException {
+        int first = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int second = dao.createGame("5678", ENumberGameStatus.FINISHED);
+        dao.addRound(first, new NumberGameRound("5678", "e:0:p:0"));
+        dao.addRound(first, new NumberGameRound("1243", "e:2:p:2"));
+        Map<Integer, NumberGameInstance> games = dao.getGamesByIds(Arrays.asList(first, second, -1, 999));
+        assertEquals(2, games.size());
+        assertEquals("1234", games.get(first).getAnswer());
+        assertEquals(ENumberGameStatus.FINISHED, games.get(second).getStatus());
+
+        Map<Integer, List<NumberGameRound>> rounds = dao.getRoundsByGameIds(Arrays.asList(first, second, 999));
+        assertEquals(2, rounds.size());
+        assertEquals(2, rounds.get(first).size());
+        assertEquals("1243", rounds.get(first).get(1).getGuess());
+        assertEquals(0, rounds.get(second).size());
+        assertTrue(dao.getGamesByIds(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void getGameRoundsAfter() throws GameNotFoundException {
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        assertEquals(0, dao.getGameRoundsAfter(gameId, 0).size());
+        dao.addRound(gameId, new NumberGameRound("5678", "e:0:p:0"));
+        dao.addRound(gameId, new NumberGameRound("1243", "e:2:p:2"));
+        List<NumberGameRound> after = dao.getGameRoundsAfter(gameId, 1);
+        assertEquals(1, after.size());
+        assertEquals("1243", after.get(0).getGuess());
+        dao.addRound(gameId, new NumberGameRound("1234", "e:4:p:0"));
+        after = dao.getGameRoundsAfter(gameId, 1);
+        assertEquals(2, after.size());
+        assertEquals("1234", after.get(1).getGuess());
+        assertEquals(3, dao.getGameRoundsAfter(gameId, 0).size());
+        assertEquals(0, dao.getGameRoundsAfter(gameId, 3).size());
+        assertEquals(0, dao.getGameRoundsAfter(gameId, 10).size());
+        assertThrows(GameNotFoundException.class, () -> dao.getGameRoundsAfter(-1, 0));
+    }
+
+    @Test
+    void sharedIdSequence() {
+        NumberGameDbDao other = new NumberGameDbDao(template, 1, 0, NumberGameDbDao.DEFAULT_EXPORT_FETCH_SIZE, 3);
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 0; i < 10; i ++) {
+            ids.add(dao.createGame("1234", ENumberGameStatus.IN_PROGRESS));
+            ids.add(other.createGame("5678", ENumberGameStatus.IN_PROGRESS));
+        }
+        assertEquals(ids.size(), ids.stream().distinct().count());
+        assertEquals(ids.size(), dao.getAllGames().size());
+    }
+
+    @Test
+    void tieredRestart() throws IOException, InterruptedException {
+        Path journal = Files.createTempFile("tiered", ".journal");
+        NumberGameTieredDao tiered = new NumberGameTieredDao(new NumberGameDbDao(template), journal, false, 60000, 1 << 20);
+        int gameId = tiered.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        try {
+            assertTrue(tiered.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false));
+            // Only the game row is in the database while it is hot
+            assertEquals(0, dao.getGameRounds(gameId).size());
+            tiered.close();
+
+            tiered = new NumberGameTieredDao(new NumberGameDbDao(template), journal, false, 60000, 1 << 20);
+            assertEquals(1, tiered.getGameRounds(gameId).size());
+            assertTrue(tiered.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true));
+            assertEquals(ENumberGameStatus.FINISHED, tiered.getGameById(gameId).getStatus());
+            for(int i = 0; i < 100 && dao.getGameById(gameId).getStatus() != ENumberGameStatus.FINISHED; i ++) {
+                Thread.sleep(50);
+            }
+            assertEquals(ENumberGameStatus.FINISHED, dao.getGameById(gameId).getStatus());
+            assertEquals(2, dao.getGameRounds(gameId).size());
+            assertFalse(tiered.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true));
+            tiered.close();
+        }
+        catch(GameNotFoundException e) {
+            fail();
+        }
+        finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+
+    @Test
+    void tieredBulk() throws IOException, GameNotFoundException {
+        Path journal = Files.createTempFile("tiered", ".journal");
+        NumberGameTieredDao tiered = new NumberGameTieredDao(new NumberGameDbDao(template), journal, false, 60000, 1 << 20);
+        try {
+            int hotId = tiered.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+            // Created finished, so it is only in the database
+            int coldId = tiered.createGame("5678", ENumberGameStatus.FINISHED);
+            int coldInProgress = dao.createGame("9012", ENumberGameStatus.IN_PROGRESS);
+            tiered.applyGuess(hotId, new NumberGameRound("5678", "e:0:p:0"), false);
+
+            Map<Integer, List<NumberGameRound>> rounds = new HashMap<>();
+            rounds.put(hotId, Collections.singletonList(new NumberGameRound("1234", "e:4:p:0")));
+            rounds.put(coldInProgress, Collections.singletonList(new NumberGameRound("1234", "e:0:p:0")));
+            rounds.put(coldId, Collections.singletonList(new NumberGameRound("1234", "e:0:p:0")));
+            Map<Integer, Integer> added = tiered.applyGuesses(rounds, Collections.singleton(hotId));
+            assertEquals(1, (int)added.get(hotId));
+            assertEquals(1, (int)added.get(coldInProgress));
+            assertEquals(0, (int)added.get(coldId));
+
+            Map<Integer, NumberGameInstance> games = tiered.getGamesByIds(Arrays.asList(hotId, coldId, coldInProgress, -1));
+            assertEquals(3, games.size());
+            assertEquals(ENumberGameStatus.FINISHED, games.get(hotId).getStatus());
+            assertEquals("5678", games.get(coldId).getAnswer());
+            Map<Integer, List<NumberGameRound>> found = tiered.getRoundsByGameIds(Arrays.asList(hotId, coldInProgress, -1));
+            assertEquals(2, found.size());
+            assertEquals(2, found.get(hotId).size());
+            assertEquals(1, found.get(coldInProgress).size());
+            tiered.close();
+        }
+        finally {
+            Files.deleteIfExists(journal);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.sg.guess_the_number_tests.data;
+
+import com.sg.guess_the_number.data.GameNotFoundException;
+import com.sg.guess_the_number.data.NumberGameJournaledDao;
+import com.sg.guess_the_number.data.NumberGameMemoryDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberGameJournaledDaoTest {
+    private Path directory;
+    private Path journal;
+
+    @BeforeEach
+    void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        journal = directory.resolve("games");
+    }
+
+    @AfterEach
+    void deleteDirectory() throws IOException {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for(Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    void recoverFromJournal() throws IOException, GameNotFoundException {
+        NumberGameJournaledDao dao = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+        int first = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int second = dao.createGame("0a1b", new NumberGameVariant(4, 16, false), ENumberGameStatus.IN_PROGRESS);
+        int removed = dao.createGame("5678", ENumberGameStatus.IN_PROGRESS);
+        NumberGameRound round = new NumberGameRound("5678", "e:0:p:0");
+        assertTrue(dao.applyGuess(first, round, false));
+        assertTrue(dao.applyGuess(first, new NumberGameRound("1234", "e:4:p:0"), true));
+        dao.addRound(second, new NumberGameRound("ZZZZ", "bogus"));
+        dao.removeGame(removed);
+
+        // Not closed, as if the process crashed
+        NumberGameJournaledDao recovered = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+        assertEquals(7, recovered.getRecoveredRecords());
+        assertEquals(2, recovered.getAllGames().size());
+        assertEquals(ENumberGameStatus.FINISHED, recovered.getGameById(first).getStatus());
+        List<NumberGameRound> rounds = recovered.getGameRounds(first);
+        assertEquals(2, rounds.size());
+        assertEquals("5678", rounds.get(0).getGuess());
+        assertEquals(round.getTimestamp(), rounds.get(0).getTimestamp());
+        assertEquals("0a1b", recovered.getGameById(second).getAnswer());
+        assertEquals("ZZZZ", recovered.getGameRounds(second).get(0).getGuess());
+        assertThrows(GameNotFoundException.class, () -> recovered.getGameById(removed));
+        // IDs aren't handed out again
+        assertTrue(recovered.createGame("1234", ENumberGameStatus.IN_PROGRESS) > removed);
+    }
+
+    @Test
+    void recoverTornJournal() throws IOException, GameNotFoundException {
+        NumberGameJournaledDao dao = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        dao.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false);
+        Path segment = journal.resolveSibling("games.0");
+        Files.write(segment, new byte[] {0, 0, 0, 40, 2, 0}, StandardOpenOption.APPEND);
+
+        NumberGameJournaledDao recovered = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+        assertEquals(2, recovered.getRecoveredRecords());
+        recovered.applyGuess(gameId, new NumberGameRound("1243", "e:2:p:2"), false);
+        assertEquals(2, new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0)
+                .getGameRounds(gameId).size());
+    }
+
+    @Test
+    void recoverSolvingGuess() throws IOException, GameNotFoundException {
+        NumberGameJournaledDao dao = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        dao.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false);
+        Path segment = journal.resolveSibling("games.0");
+        long before = Files.size(segment);
+        dao.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true);
+        byte[] written = Files.readAllBytes(segment);
+
+        // Cut off anywhere in the solving guess, as if the process crashed while writing it
+        for(int length = (int)before; length <= written.length; length ++) {
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for(Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.write(segment, Arrays.copyOf(written, length));
+            NumberGameJournaledDao recovered = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+            boolean whole = length == written.length;
+            assertEquals(whole ? 2 : 1, recovered.getGameRounds(gameId).size());
+            assertEquals(whole ? ENumberGameStatus.FINISHED : ENumberGameStatus.IN_PROGRESS,
+                    recovered.getGameById(gameId).getStatus());
+            recovered.close();
+        }
+    }
+
+    @Test
+    void recoverFromSnapshot() throws IOException, GameNotFoundException {
+        NumberGameJournaledDao dao = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, true, 0);
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        for(int i = 0; i < 10; i ++) {
+            dao.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false);
+        }
+        dao.snapshot();
+        dao.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true);
+
+        NumberGameJournaledDao recovered = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+        // Only the writes after the snapshot are replayed
+        assertEquals(1, recovered.getRecoveredRecords());
+        assertEquals(11, recovered.getGameRounds(gameId).size());
+        assertEquals(ENumberGameStatus.FINISHED, recovered.getGameById(gameId).getStatus());
+        recovered.close();
+        assertFalse(Files.exists(journal.resolveSibling("games.0")));
+
+        recovered = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+        assertEquals(0, recovered.getRecoveredRecords());
+        assertEquals(11, recovered.getGameRounds(gameId).size());
+    }
+
+    @Test
+    void concurrentWrites() throws IOException, InterruptedException, ExecutionException, GameNotFoundException {
+        NumberGameJournaledDao dao = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, true, 0);
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for(int t = 0; t < 8; t ++) {
+            results.add(pool.submit(() -> {
+                for(int i = 0; i < 50; i ++) {
+                    int created = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+                    dao.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false);
+                    dao.applyGuess(created, new NumberGameRound("1234", "e:4:p:0"), true);
+                    if(i == 25) {
+                        dao.snapshot();
+                    }
+                }
+                return null;
+            }));
+        }
+        for(Future<?> result : results) {
+            result.get();
+        }
+        pool.shutdown();
+
+        NumberGameJournaledDao recovered = new NumberGameJournaledDao(new NumberGameMemoryDao(), journal, false, 0);
+        assertEquals(401, recovered.getAllGames().size());
+        assertEquals(400, recovered.getGameRounds(gameId).size());
+        assertEquals(400, recovered.getGames(gameId, 1000, ENumberGameStatus.FINISHED).size());
+    }
+}
@@ -0,0 +1,74 @@
+package com.sg.guess_the_number_tests.data;
+
+import com.sg.guess_the_number.data.GameNotFoundException;
+import com.sg.guess_the_number.data.NumberGameDao;
+import com.sg.guess_the_number.data.NumberGameMappedDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the memory DAO's tests against the mapped DAO, along with its own
+ */
+class NumberGameMappedDaoTest extends NumberGameMemoryDaoTest {
+    private final List<Path> directories = new ArrayList<>();
+
+    @Override
+    protected NumberGameDao newDao() {
+        try {
+            Path directory = Files.createTempDirectory("mapped");
+            directories.add(directory);
+            return new NumberGameMappedDao(directory);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @AfterEach
+    void deleteFiles() throws IOException {
+        for(Path directory : directories) {
+            try(Stream<Path> files = Files.walk(directory)) {
+                for(Path file : (Iterable<Path>)files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    void reopen() throws Exception {
+        NumberGameMappedDao dao = (NumberGameMappedDao)newDao();
+        int first = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int second = dao.createGame("Not packed", new NumberGameVariant(4, 10, false), ENumberGameStatus.IN_PROGRESS);
+        dao.addRound(first, new NumberGameRound("5678", "e:0:p:0"));
+        dao.applyGuess(first, new NumberGameRound("1234", "e:4:p:0"), true);
+        dao.addRound(second, new NumberGameRound("ABCD", null));
+        dao.removeGame(dao.createGame("5678", ENumberGameStatus.IN_PROGRESS));
+        dao.close();
+
+        NumberGameMappedDao reopened = new NumberGameMappedDao(directories.get(0));
+        assertEquals(2, reopened.getAllGames().size());
+        assertEquals(ENumberGameStatus.FINISHED, reopened.getGameById(first).getStatus());
+        assertEquals(2, reopened.getGameRounds(first).size());
+        assertEquals("1234", reopened.getGameRounds(first).get(1).getGuess());
+        assertEquals("Not packed", reopened.getGameById(second).getAnswer());
+        assertEquals("ABCD", reopened.getGameRounds(second).get(0).getGuess());
+        assertNull(reopened.getGameRounds(second).get(0).getGuessResult());
+        assertThrows(GameNotFoundException.class, () -> reopened.getGameById(3));
+        assertEquals(4, reopened.createGame("9012", ENumberGameStatus.IN_PROGRESS));
+    }
+}
@@ -1,21 +1,35 @@
 package com.sg.guess_the_number_tests.data;
 
 import com.sg.guess_the_number.data.GameNotFoundException;
+import com.sg.guess_the_number.data.NumberGameCountingIdAllocator;
+import com.sg.guess_the_number.data.NumberGameDao;
+import com.sg.guess_the_number.data.NumberGameIdAllocator;
 import com.sg.guess_the_number.data.NumberGameMemoryDao;
 import com.sg.guess_the_number.models.ENumberGameStatus;
 import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
 import com.sg.guess_the_number.models.game.NumberGameInstance;
 import org.junit.jupiter.api.Test;
 
-import java.util.List;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class NumberGameMemoryDaoTest {
 
+    /**
+     * Creates an empty DAO for a test
+     * @return The DAO to test
+     */
+    protected NumberGameDao newDao() {
+        return new NumberGameMemoryDao();
+    }
+
     @Test
     void getAllGames() {
-        NumberGameMemoryDao dao = new NumberGameMemoryDao();
+        NumberGameDao dao = newDao();
         assertEquals(0, dao.getAllGames().size());
         dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
         assertEquals(1, dao.getAllGames().size());
@@ -23,9 +37,57 @@ class NumberGameMemoryDaoTest {
         assertEquals(ENumberGameStatus.IN_PROGRESS, dao.getAllGames().get(0).getStatus());
     }
 
+    @Test
+    void getGames() {
+        NumberGameDao dao = newDao();
+        for(int i = 0; i < 10; i ++) {
+            dao.createGame("1234", i % 2 == 0 ? ENumberGameStatus.IN_PROGRESS : ENumberGameStatus.FINISHED);
+        }
+        List<NumberGameInstance> page = dao.getGames(0, 4, null);
+        assertEquals(4, page.size());
+        assertEquals(1, page.get(0).getGameId());
+        assertEquals(4, page.get(3).getGameId());
+        page = dao.getGames(4, 4, null);
+        assertEquals(5, page.get(0).getGameId());
+        assertEquals(2, dao.getGames(8, 4, null).size());
+        assertEquals(0, dao.getGames(10, 4, null).size());
+
+        page = dao.getGames(2, 10, ENumberGameStatus.IN_PROGRESS);
+        assertEquals(4, page.size());
+        for(NumberGameInstance game : page) {
+            assertEquals(ENumberGameStatus.IN_PROGRESS, game.getStatus());
+            assertTrue(game.getGameId() > 2);
+        }
+    }
+
+    @Test
+    void exportGames() {
+        NumberGameDao dao = newDao();
+        int first = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int second = dao.createGame("5678", ENumberGameStatus.FINISHED);
+        try {
+            dao.addRound(first, new NumberGameRound("5678", "e:0:p:0"));
+            dao.addRound(first, new NumberGameRound("1243", "e:2:p:2"));
+        }
+        catch(GameNotFoundException e) {
+            fail();
+        }
+        List<Integer> ids = new ArrayList<>();
+        List<Integer> roundCounts = new ArrayList<>();
+        dao.exportGames((game, rounds) -> {
+            ids.add(game.getGameId());
+            roundCounts.add(rounds.size());
+        });
+        assertEquals(2, ids.size());
+        assertEquals(first, (int)ids.get(0));
+        assertEquals(second, (int)ids.get(1));
+        assertEquals(2, (int)roundCounts.get(0));
+        assertEquals(0, (int)roundCounts.get(1));
+    }
+
     @Test
     void getGameById() {
-        NumberGameMemoryDao dao = new NumberGameMemoryDao();
+        NumberGameDao dao = newDao();
         assertThrows(GameNotFoundException.class, () -> dao.getGameById(1));
         int id = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
         assertDoesNotThrow(() -> dao.getGameById(id));
@@ -41,7 +103,7 @@ class NumberGameMemoryDaoTest {
 
     @Test
     void getGameRounds() {
-        NumberGameMemoryDao dao = new NumberGameMemoryDao();
+        NumberGameDao dao = newDao();
         assertThrows(GameNotFoundException.class, () -> dao.getGameRounds(1));
         int id = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
         assertDoesNotThrow(() -> dao.getGameRounds(id));
@@ -59,21 +121,90 @@ class NumberGameMemoryDaoTest {
         }
     }
 
+    @Test
+    void getGameRoundsExact() {
+        NumberGameDao dao = newDao();
+        int id = dao.createGame("0123", ENumberGameStatus.IN_PROGRESS);
+        NumberGameRound packed = new NumberGameRound("0321", "e:2:p:2");
+        packed.setTimestamp(LocalDateTime.of(2019, 5, 4, 3, 2, 1, 123456789));
+        // Neither can be packed and rebuilt exactly, so both are kept as they are
+        NumberGameRound upperCase = new NumberGameRound("ABCD", "e:0:p:0");
+        NumberGameRound tooLong = new NumberGameRound("01234", "e:0:p:0");
+        try {
+            dao.addRound(id, packed);
+            dao.addRound(id, upperCase);
+            dao.addRound(id, tooLong);
+            List<NumberGameRound> rounds = dao.getGameRounds(id);
+            assertEquals("0321", rounds.get(0).getGuess());
+            assertEquals("e:2:p:2", rounds.get(0).getGuessResult());
+            assertEquals(packed.getTimestamp(), rounds.get(0).getTimestamp());
+            assertEquals("ABCD", rounds.get(1).getGuess());
+            assertEquals("01234", rounds.get(2).getGuess());
+            assertEquals("0123", dao.getGameById(id).getAnswer());
+        }
+        catch(GameNotFoundException e) {
+            fail();
+        }
+    }
+
+    @Test
+    void getGameRoundsOrdered() {
+        NumberGameDao dao = newDao();
+        int id = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        try {
+            for(int i = 0; i < 100; i ++) {
+                dao.addRound(id, new NumberGameRound(String.format("%04d", i), "e:0:p:0"));
+            }
+            List<NumberGameRound> rounds = dao.getGameRounds(id);
+            dao.addRound(id, new NumberGameRound("9999", "e:0:p:0"));
+            assertEquals(100, rounds.size());
+            for(int i = 0; i < rounds.size(); i ++) {
+                assertEquals(String.format("%04d", i), rounds.get(i).getGuess());
+            }
+            assertThrows(UnsupportedOperationException.class, () -> rounds.add(new NumberGameRound()));
+            assertEquals(101, dao.getGameRounds(id).size());
+        }
+        catch(GameNotFoundException e) {
+            fail();
+        }
+    }
+
     @Test
     void createGame() {
-        NumberGameMemoryDao dao = new NumberGameMemoryDao();
+        NumberGameDao dao = newDao();
         int id = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        NumberGameVariant variant = new NumberGameVariant(6, 16, true);
+        int idTwo = dao.createGame("ff00aa", variant, ENumberGameStatus.IN_PROGRESS);
         try {
-            dao.getGameById(id);
+            assertEquals(new NumberGameVariant(4, 10, false), dao.getGameById(id).getVariant());
+            assertEquals(variant, dao.getGameById(idTwo).getVariant());
         }
         catch(GameNotFoundException e) {
             fail();
         }
     }
 
+    @Test
+    void createGames() {
+        NumberGameDao dao = newDao();
+        int before = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        NumberGameVariant variant = new NumberGameVariant(5, 16, false);
+        int[] gameIds = dao.createGames(Arrays.asList("0abcd", "fedcb", "12345"), variant, ENumberGameStatus.IN_PROGRESS);
+        assertEquals(3, gameIds.length);
+        try {
+            assertEquals("fedcb", dao.getGameById(gameIds[1]).getAnswer());
+            assertEquals(variant, dao.getGameById(gameIds[2]).getVariant());
+        }
+        catch(GameNotFoundException e) {
+            fail();
+        }
+        assertEquals(3, Arrays.stream(gameIds).filter(id -> id != before).distinct().count());
+        assertEquals(0, dao.createGames(new ArrayList<>(), variant, ENumberGameStatus.IN_PROGRESS).length);
+    }
+
     @Test
     void updateStatus() {
-        NumberGameMemoryDao dao = new NumberGameMemoryDao();
+        NumberGameDao dao = newDao();
         int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
         try {
             assertEquals(dao.getGameById(gameId).getStatus(), ENumberGameStatus.IN_PROGRESS);
@@ -85,13 +216,175 @@ class NumberGameMemoryDaoTest {
         }
     }
 
+    @Test
+    void applyGuess() {
+        NumberGameDao dao = newDao();
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        try {
+            assertTrue(dao.applyGuess(gameId, new NumberGameRound("5678", "e:0:p:0"), false));
+            assertEquals(ENumberGameStatus.IN_PROGRESS, dao.getGameById(gameId).getStatus());
+            assertTrue(dao.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true));
+            assertEquals(ENumberGameStatus.FINISHED, dao.getGameById(gameId).getStatus());
+            assertFalse(dao.applyGuess(gameId, new NumberGameRound("1234", "e:4:p:0"), true));
+            assertEquals(2, dao.getGameRounds(gameId).size());
+        }
+        catch(GameNotFoundException e) {
+            fail();
+        }
+        assertThrows(GameNotFoundException.class, () -> dao.applyGuess(999, new NumberGameRound("1234", "e:4:p:0"), false));
+    }
+
+    @Test
+    void applyGuesses() {
+        NumberGameDao dao = newDao();
+        int first = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int second = dao.createGame("5678", ENumberGameStatus.IN_PROGRESS);
+        int finished = dao.createGame("9012", ENumberGameStatus.FINISHED);
+        Map<Integer, List<NumberGameRound>> rounds = new HashMap<>();
+        rounds.put(first, Arrays.asList(new NumberGameRound("5678", "e:0:p:0"), new NumberGameRound("1234", "e:4:p:0")));
+        rounds.put(second, Collections.singletonList(new NumberGameRound("1234", "e:0:p:0")));
+        rounds.put(finished, Collections.singletonList(new NumberGameRound("1234", "e:0:p:0")));
+        rounds.put(999, Collections.singletonList(new NumberGameRound("1234", "e:0:p:0")));
+        Map<Integer, Integer> added = dao.applyGuesses(rounds, Collections.singleton(first));
+        assertEquals(2, (int)added.get(first));
+        assertEquals(1, (int)added.get(second));
+        assertEquals(0, (int)added.get(finished));
+        assertEquals(0, (int)added.get(999));
+        try {
+            assertEquals(ENumberGameStatus.FINISHED, dao.getGameById(first).getStatus());
+            assertEquals(ENumberGameStatus.IN_PROGRESS, dao.getGameById(second).getStatus());
+            assertEquals(2, dao.getGameRounds(first).size());
+            assertEquals(0, dao.getGameRounds(finished).size());
+        }
+        catch(GameNotFoundException e) {
+            fail();
+        }
+    }
+
+    @Test
+    void getByIds() throws GameNotFoundException {
+        NumberGameDao dao = newDao();
+        int first = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int second = dao.createGame("5678", ENumberGameStatus.FINISHED);
+        dao.addRound(first, new NumberGameRound("5678", "e:0:p:0"));
+        dao.addRound(first, new NumberGameRound("1243", "e:2:p:2"));
+        Map<Integer, NumberGameInstance> games = dao.getGamesByIds(Arrays.asList(first, second, -1, 999));
+        assertEquals(2, games.size());
+        assertEquals("1234", games.get(first).getAnswer());
+        assertEquals(ENumberGameStatus.FINISHED, games.get(second).getStatus());
+
+        Map<Integer, List<NumberGameRound>> rounds = dao.getRoundsByGameIds(Arrays.asList(first, second, 999));
+        assertEquals(2, rounds.size());
+        assertEquals(2, rounds.get(first).size());
+        assertEquals("1243", rounds.get(first).get(1).getGuess());
+        assertEquals(0, rounds.get(second).size());
+        assertTrue(dao.getGamesByIds(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void getGameRoundsAfter() throws GameNotFoundException {
+        NumberGameDao dao = newDao();
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        assertEquals(0, dao.getGameRoundsAfter(gameId, 0).size());
+        dao.addRound(gameId, new NumberGameRound("5678", "e:0:p:0"));
+        dao.addRound(gameId, new NumberGameRound("1243", "e:2:p:2"));
+        List<NumberGameRound> after = dao.getGameRoundsAfter(gameId, 1);
+        assertEquals(1, after.size());
+        assertEquals("1243", after.get(0).getGuess());
+        dao.addRound(gameId, new NumberGameRound("1234", "e:4:p:0"));
+        after = dao.getGameRoundsAfter(gameId, 1);
+        assertEquals(2, after.size());
+        assertEquals("1234", after.get(1).getGuess());
+        assertEquals(3, dao.getGameRoundsAfter(gameId, 0).size());
+        assertEquals(0, dao.getGameRoundsAfter(gameId, 3).size());
+        assertEquals(0, dao.getGameRoundsAfter(gameId, 10).size());
+        assertThrows(GameNotFoundException.class, () -> dao.getGameRoundsAfter(-1, 0));
+    }
+
     @Test
     void removeGame() {
-        NumberGameMemoryDao dao = new NumberGameMemoryDao();
+        NumberGameDao dao = newDao();
         int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
         assertDoesNotThrow(() -> dao.getGameById(gameId));
         assertDoesNotThrow(() -> dao.removeGame(gameId));
         assertThrows(GameNotFoundException.class, () -> dao.getGameById(gameId));
 
     }
+
+    @Test
+    void removeGameKeepsIds() {
+        NumberGameDao dao = newDao();
+        int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int gameIdTwo = dao.createGame("5678", ENumberGameStatus.IN_PROGRESS);
+        assertDoesNotThrow(() -> dao.removeGame(gameId));
+        assertThrows(GameNotFoundException.class, () -> dao.removeGame(gameId));
+        try {
+            assertEquals("5678", dao.getGameById(gameIdTwo).getAnswer());
+            assertNotEquals(gameIdTwo, dao.createGame("9012", ENumberGameStatus.IN_PROGRESS));
+        }
+        catch(GameNotFoundException e) {
+            fail();
+        }
+    }
+
+    @Test
+    void sharedIdAllocator() {
+        NumberGameIdAllocator ids = new NumberGameCountingIdAllocator();
+        NumberGameMemoryDao first = new NumberGameMemoryDao(ids);
+        NumberGameMemoryDao second = new NumberGameMemoryDao(ids);
+        assertEquals(1, first.createGame("1234", ENumberGameStatus.IN_PROGRESS));
+        assertEquals(2, second.createGame("1234", ENumberGameStatus.IN_PROGRESS));
+        assertArrayEquals(new int[] {3, 4, 5}, ids.nextIds(3));
+        first.restoreGame(10, "1234", NumberGameVariant.forAnswer("1234"), ENumberGameStatus.IN_PROGRESS);
+        assertEquals(11, second.createGame("1234", ENumberGameStatus.IN_PROGRESS));
+    }
+
+    @Test
+    void concurrentAccess() throws Exception {
+        final int threadCount = 8;
+        final int gamesPerThread = 200;
+        final int roundsPerGame = 10;
+        NumberGameDao dao = newDao();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+        for(int t = 0; t < threadCount; t ++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                List<Integer> kept = new ArrayList<>();
+                for(int g = 0; g < gamesPerThread; g ++) {
+                    int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+                    for(int r = 0; r < roundsPerGame; r ++) {
+                        dao.addRound(gameId, new NumberGameRound("0000", "e:0:p:0"));
+                        dao.getGameRounds(gameId);
+                        dao.getAllGames();
+                    }
+                    dao.updateStatus(gameId, ENumberGameStatus.FINISHED);
+                    if(g % 2 == 0) {
+                        dao.removeGame(gameId);
+                    }
+                    else {
+                        kept.add(gameId);
+                    }
+                }
+                return kept;
+            }));
+        }
+        start.countDown();
+        List<Integer> keptIds = new ArrayList<>();
+        for(Future<List<Integer>> future : futures) {
+            keptIds.addAll(future.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(threadCount * gamesPerThread / 2, keptIds.size());
+        assertEquals(keptIds.size(), dao.getAllGames().size());
+        assertEquals(keptIds.size(), keptIds.stream().distinct().count());
+        for(int gameId : keptIds) {
+            NumberGameInstance instance = dao.getGameById(gameId);
+            assertEquals(gameId, instance.getGameId());
+            assertEquals(ENumberGameStatus.FINISHED, instance.getStatus());
+            assertEquals(roundsPerGame, dao.getGameRounds(gameId).size());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,158 @@
+package com.sg.guess_the_number_tests.data;
+
+import com.sg.guess_the_number.data.GameNotFoundException;
+import com.sg.guess_the_number.data.NumberGameMemoryDao;
+import com.sg.guess_the_number.data.NumberGameShardedDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.models.game.NumberGameInstance;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberGameShardedDaoTest {
+    private List<NumberGameMemoryDao> shards;
+    private NumberGameShardedDao dao;
+
+    @BeforeEach
+    void createShards() {
+        shards = Arrays.asList(new NumberGameMemoryDao(), new NumberGameMemoryDao(), new NumberGameMemoryDao());
+        dao = new NumberGameShardedDao(shards);
+    }
+
+    @Test
+    void createGame() throws GameNotFoundException {
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 0; i < 9; i ++) {
+            ids.add(dao.createGame(String.format("%04d", i), ENumberGameStatus.IN_PROGRESS));
+        }
+        assertEquals(9, ids.stream().distinct().count());
+        for(NumberGameMemoryDao shard : shards) {
+            assertEquals(3, shard.getAllGames().size());
+        }
+        for(int i = 0; i < ids.size(); i ++) {
+            NumberGameInstance game = dao.getGameById(ids.get(i));
+            assertEquals((int)ids.get(i), game.getGameId());
+            assertEquals(String.format("%04d", i), game.getAnswer());
+        }
+    }
+
+    @Test
+    void createGames() throws GameNotFoundException {
+        List<String> answers = new ArrayList<>();
+        for(int i = 0; i < 10; i ++) {
+            answers.add(String.format("%04d", i));
+        }
+        int[] gameIds = dao.createGames(answers, NumberGameVariant.forAnswer("0000"), ENumberGameStatus.IN_PROGRESS);
+        assertEquals(10, Arrays.stream(gameIds).distinct().count());
+        for(int i = 0; i < gameIds.length; i ++) {
+            assertEquals(answers.get(i), dao.getGameById(gameIds[i]).getAnswer());
+        }
+        assertEquals(4, shards.get(0).getAllGames().size());
+        assertEquals(3, shards.get(2).getAllGames().size());
+    }
+
+    @Test
+    void routing() throws GameNotFoundException {
+        int first = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        int second = dao.createGame("5678", ENumberGameStatus.IN_PROGRESS);
+        assertNotEquals(dao.shardOf(first), dao.shardOf(second));
+        dao.addRound(first, new NumberGameRound("5678", "e:0:p:0"));
+        assertTrue(dao.applyGuess(first, new NumberGameRound("1234", "e:4:p:0"), true));
+        assertEquals(ENumberGameStatus.FINISHED, dao.getGameById(first).getStatus());
+        assertEquals(2, dao.getGameRounds(first).size());
+        assertEquals(0, dao.getGameRounds(second).size());
+        dao.removeGame(second);
+
+        GameNotFoundException e = assertThrows(GameNotFoundException.class, () -> dao.getGameById(second));
+        assertTrue(e.getMessage().contains(Integer.toString(second)));
+        assertThrows(GameNotFoundException.class, () -> dao.getGameById(0));
+        assertThrows(GameNotFoundException.class, () -> dao.getGameById(-5));
+        assertThrows(GameNotFoundException.class, () -> dao.updateStatus(999, ENumberGameStatus.FINISHED));
+    }
+
+    @Test
+    void getByIds() throws GameNotFoundException {
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 0; i < 6; i ++) {
+            ids.add(dao.createGame(String.format("%04d", i), ENumberGameStatus.IN_PROGRESS));
+        }
+        dao.addRound(ids.get(4), new NumberGameRound("5678", "e:0:p:0"));
+        List<Integer> requested = new ArrayList<>(ids);
+        requested.addAll(Arrays.asList(0, 2, -4, 9999));
+        Map<Integer, NumberGameInstance> games = dao.getGamesByIds(requested);
+        assertEquals(6, games.size());
+        for(int i = 0; i < ids.size(); i ++) {
+            assertEquals((int)ids.get(i), games.get(ids.get(i)).getGameId());
+            assertEquals(String.format("%04d", i), games.get(ids.get(i)).getAnswer());
+        }
+        Map<Integer, List<NumberGameRound>> rounds = dao.getRoundsByGameIds(requested);
+        assertEquals(games.keySet(), rounds.keySet());
+        assertEquals(1, rounds.get(ids.get(4)).size());
+        assertEquals(0, rounds.get(ids.get(3)).size());
+    }
+
+    @Test
+    void getGames() {
+        // Uneven shards, so their IDs don't simply take turns
+        for(int i = 0; i < 10; i ++) {
+            dao.createGame("1234", i % 2 == 0 ? ENumberGameStatus.IN_PROGRESS : ENumberGameStatus.FINISHED);
+        }
+        shards.get(1).createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        List<Integer> all = new ArrayList<>();
+        for(NumberGameInstance game : dao.getAllGames()) {
+            all.add(game.getGameId());
+        }
+        assertEquals(11, all.size());
+
+        List<Integer> paged = new ArrayList<>();
+        List<NumberGameInstance> page = dao.getGames(0, 4, null);
+        while(!page.isEmpty()) {
+            assertTrue(page.size() <= 4);
+            for(NumberGameInstance game : page) {
+                paged.add(game.getGameId());
+            }
+            page = dao.getGames(page.get(page.size() - 1).getGameId(), 4, null);
+        }
+        assertEquals(all, paged);
+        for(int i = 1; i < paged.size(); i ++) {
+            assertTrue(paged.get(i - 1) < paged.get(i));
+        }
+
+        for(NumberGameInstance game : dao.getGames(all.get(2), 100, ENumberGameStatus.FINISHED)) {
+            assertEquals(ENumberGameStatus.FINISHED, game.getStatus());
+            assertTrue(game.getGameId() > all.get(2));
+        }
+    }
+
+    @Test
+    void exportGames() throws GameNotFoundException {
+        for(int i = 0; i < 1000; i ++) {
+            int gameId = dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+            for(int r = 0; r < i % 3; r ++) {
+                dao.addRound(gameId, new NumberGameRound("5678", "e:0:p:0"));
+            }
+        }
+        List<Integer> ids = new ArrayList<>();
+        dao.exportGames((game, rounds) -> {
+            assertEquals(ids.size() % 3, rounds.size());
+            ids.add(game.getGameId());
+        });
+        assertEquals(1000, ids.size());
+        for(int i = 1; i < ids.size(); i ++) {
+            assertTrue(ids.get(i - 1) < ids.get(i));
+        }
+
+        // A failing handler stops every shard's export
+        assertThrows(IllegalArgumentException.class, () -> dao.exportGames((game, rounds) -> {
+            throw new IllegalArgumentException();
+        }));
+    }
+}
@@ -0,0 +1,68 @@
+package com.sg.guess_the_number_tests.service;
+
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.service.NumberGameCandidateIndex;
+import com.sg.guess_the_number.service.NumberGameScorer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberGameCandidateIndexTest {
+    private static final NumberGameVariant VARIANT = new NumberGameVariant();
+
+    @Test
+    void roundAppliedDuringRebuild() throws InterruptedException {
+        NumberGameCandidateIndex index = new NumberGameCandidateIndex();
+        List<Thread> appliers = new ArrayList<>();
+        int rebuilt = index.getCandidates(1, VARIANT, () -> {
+            // A round stored right after the rounds were read, applied while the entry is rebuilt
+            Thread applier = new Thread(() -> index.applyRound(1, "5678", NumberGameScorer.score("1234", "5678")));
+            applier.start();
+            appliers.add(applier);
+            try {
+                // Gives the round time to be lost, were the entry not published yet
+                applier.join(100);
+            }
+            catch(InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return Collections.emptyList();
+        }).cardinality();
+        assertEquals(5040, rebuilt);
+        appliers.get(0).join();
+        assertEquals(360, (int)index.getCandidateCount(1, VARIANT, Collections::emptyList));
+    }
+
+    @Test
+    void failedRebuild() {
+        NumberGameCandidateIndex index = new NumberGameCandidateIndex();
+        assertThrows(IllegalStateException.class, () -> index.getCandidates(1, VARIANT, () -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(0, index.size());
+        List<NumberGameRound> rounds = Collections.singletonList(new NumberGameRound("5678", "e:0:p:0"));
+        assertEquals(360, index.getCandidates(1, VARIANT, () -> rounds).cardinality());
+    }
+
+    @Test
+    void eviction() {
+        NumberGameCandidateIndex index = new NumberGameCandidateIndex(32);
+        for(int gameId = 1; gameId <= 1000; gameId ++) {
+            index.track(gameId, VARIANT);
+        }
+        assertTrue(index.size() <= 32);
+        // The newest games are still tracked, and evicted ones are rebuilt from their rounds
+        index.applyRound(1000, "5678", NumberGameScorer.score("1234", "5678"));
+        assertEquals(360, (int)index.getCandidateCount(1000, VARIANT, Collections::emptyList));
+        List<NumberGameRound> rounds = Collections.singletonList(new NumberGameRound("5678", "e:0:p:0"));
+        assertEquals(360, (int)index.getCandidateCount(1, VARIANT, () -> rounds));
+
+        index.drop(1000);
+        assertEquals(5040, (int)index.getCandidateCount(1000, VARIANT, Collections::emptyList));
+    }
+}
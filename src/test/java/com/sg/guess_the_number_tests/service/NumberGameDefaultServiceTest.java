@@ -1,15 +1,24 @@
 package com.sg.guess_the_number_tests.service;
 
+import com.sg.guess_the_number.data.GameNotFoundException;
 import com.sg.guess_the_number.data.NumberGameMemoryDao;
 import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameGuess;
+import com.sg.guess_the_number.models.NumberGameGuessResult;
+import com.sg.guess_the_number.models.NumberGameHint;
+import com.sg.guess_the_number.models.NumberGameVariant;
 import com.sg.guess_the_number.models.NumberGameRound;
 import com.sg.guess_the_number.models.game.NumberGameInstance;
+import com.sg.guess_the_number.service.GameFinishedException;
 import com.sg.guess_the_number.service.InvalidGuessException;
+import com.sg.guess_the_number.service.InvalidVariantException;
 import com.sg.guess_the_number.service.NumberGameDefaultService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -67,6 +76,7 @@ class NumberGameDefaultServiceTest {
             assertEquals(Integer.parseInt(matches[1]), 4);
             assertEquals(Integer.parseInt(matches[3]), 0);
 
+            assertThrows(GameFinishedException.class, () -> service.guessForGame(1, "1234"));
             assertThrows(InvalidGuessException.class, () -> service.guessForGame(1, "12345"));
             assertNull(service.guessForGame(999, "12345"));
         }
@@ -103,4 +113,146 @@ class NumberGameDefaultServiceTest {
         assertEquals(service.getRoundsForGame(2).size(), 0);
         assertNull(service.getGameById(999));
     }
-}
\ No newline at end of file
+
+    @Test
+    void createGames() {
+        assertThrows(InvalidVariantException.class, () -> service.createGames(new NumberGameVariant(0, 10, false), 5));
+        try {
+            NumberGameVariant variant = new NumberGameVariant(4, 8, false);
+            int[] gameIds = service.createGames(variant, 500);
+            assertEquals(500, gameIds.length);
+            HashSet<Integer> distinct = new HashSet<>();
+            for(int gameId : gameIds) {
+                NumberGameInstance game = service.getGameById(gameId);
+                assertEquals(variant, game.getVariant());
+                assertTrue(variant.isValidGuess(game.getAnswer()));
+                assertEquals(Integer.valueOf(1680), service.getRemainingCandidates(game));
+                distinct.add(gameId);
+            }
+            assertEquals(500, distinct.size());
+        }
+        catch(InvalidVariantException e) {
+            fail();
+        }
+    }
+
+    @Test
+    void guessForGames() {
+        int first = service.createGame("1234");
+        int second = service.createGame("5678");
+        int finished = service.createGame("9012");
+        try {
+            service.guessForGame(finished, "9012");
+        }
+        catch(InvalidGuessException e) {
+            fail();
+        }
+        List<NumberGameGuessResult> results = service.guessForGames(Arrays.asList(
+                new NumberGameGuess(first, "1243"),
+                new NumberGameGuess(second, "5678"),
+                new NumberGameGuess(first, "12"),
+                new NumberGameGuess(999, "1234"),
+                new NumberGameGuess(finished, "1234"),
+                new NumberGameGuess(first, "1234"),
+                new NumberGameGuess(second, "1234"),
+                new NumberGameGuess(first, "1234")));
+        int[] statuses = results.stream().mapToInt(NumberGameGuessResult::getStatus).toArray();
+        assertArrayEquals(new int[] {200, 200, 422, 404, 423, 200, 423, 423}, statuses);
+        assertEquals("e:2:p:2", results.get(0).getRound().getGuessResult());
+        assertNull(results.get(2).getRound());
+
+        assertEquals(2, service.getRoundsForGame(first).size());
+        assertEquals("1243", service.getRoundsForGame(first).get(0).getGuess());
+        assertEquals(1, service.getRoundsForGame(second).size());
+        assertEquals(ENumberGameStatus.FINISHED, service.getGameById(first).getStatus());
+        assertEquals(ENumberGameStatus.FINISHED, service.getGameById(second).getStatus());
+    }
+
+    @Test
+    void createGameVariant() {
+        assertThrows(InvalidVariantException.class, () -> service.createGame(new NumberGameVariant(0, 10, false)));
+        assertThrows(InvalidVariantException.class, () -> service.createGame(new NumberGameVariant(4, 37, false)));
+        assertThrows(InvalidVariantException.class, () -> service.createGame(new NumberGameVariant(11, 10, false)));
+        assertThrows(InvalidVariantException.class, () -> service.createGame(new NumberGameVariant(15, 36, true)));
+        try {
+            NumberGameVariant variant = new NumberGameVariant(8, 36, true);
+            int gameId = service.createGame(variant);
+            NumberGameInstance game = service.getGameById(gameId);
+            assertEquals(variant, game.getVariant());
+            assertEquals(8, game.getAnswer().length());
+            assertThrows(InvalidGuessException.class, () -> service.guessForGame(gameId, "1234"));
+            assertThrows(InvalidGuessException.class, () -> service.guessForGame(gameId, "1234567!"));
+            assertNotNull(service.guessForGame(gameId, "zzzzzzzz"));
+            assertEquals("e:8:p:0", service.guessForGame(gameId, game.getAnswer()).getGuessResult());
+            assertEquals(ENumberGameStatus.FINISHED, service.getGameById(gameId).getStatus());
+        }
+        catch(InvalidVariantException | InvalidGuessException e) {
+            fail();
+        }
+    }
+
+    @Test
+    void guessForGameDuplicates() {
+        int gameId = service.createGame("1122");
+        try {
+            String[] matches = gameGuessHelper(gameId, "2211");
+            assertEquals(0, Integer.parseInt(matches[1]));
+            assertEquals(4, Integer.parseInt(matches[3]));
+
+            matches = gameGuessHelper(gameId, "1222");
+            assertEquals(3, Integer.parseInt(matches[1]));
+            assertEquals(0, Integer.parseInt(matches[3]));
+        }
+        catch(InvalidGuessException e) {
+            fail();
+        }
+    }
+
+    @Test
+    void getHint() {
+        assertDoesNotThrow(() -> assertNull(service.getHint(999)));
+        try {
+            for(String answer : new String[] {"1234", "9876", "0527"}) {
+                int gameId = service.createGame(answer);
+                int guesses = 0;
+                while(service.getGameById(gameId).getStatus() == ENumberGameStatus.IN_PROGRESS) {
+                    NumberGameHint hint = service.getHint(gameId);
+                    assertTrue(hint.getRemainingCandidates() > 0);
+                    service.guessForGame(gameId, hint.getGuess());
+                    guesses++;
+                }
+                assertTrue(guesses <= 7);
+            }
+            int gameId = service.createGame(new NumberGameVariant(12, 36, true));
+            assertThrows(InvalidVariantException.class, () -> service.getHint(gameId));
+        }
+        catch(InvalidVariantException | InvalidGuessException e) {
+            fail();
+        }
+    }
+
+    @Test
+    void getRemainingCandidates() {
+        int gameId = service.createGame("1234");
+        assertEquals(5040, (int)service.getRemainingCandidates(service.getGameById(gameId)));
+        try {
+            service.guessForGame(gameId, "5678");
+            service.guessForGame(gameId, "1243");
+            // Matches a fresh rebuild from the rounds played
+            NumberGameMemoryDao dao = new NumberGameMemoryDao();
+            dao.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+            dao.addRound(1, new NumberGameRound("5678", "e:0:p:0"));
+            dao.addRound(1, new NumberGameRound("1243", "e:2:p:2"));
+            NumberGameDefaultService rebuilt = new NumberGameDefaultService(dao);
+            int remaining = service.getRemainingCandidates(service.getGameById(gameId));
+            assertEquals(remaining, (int)rebuilt.getRemainingCandidates(rebuilt.getGameById(1)));
+            assertEquals(6, remaining);
+
+            service.guessForGame(gameId, "1234");
+            assertNull(service.getRemainingCandidates(service.getGameById(gameId)));
+        }
+        catch(InvalidGuessException | GameNotFoundException e) {
+            fail();
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.sg.guess_the_number_tests.service;
+
+import com.sg.guess_the_number.data.NumberGameMemoryDao;
+import com.sg.guess_the_number.models.ENumberGameStatus;
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.service.InvalidGuessException;
+import com.sg.guess_the_number.service.NumberGameAnswerGenerator;
+import com.sg.guess_the_number.service.NumberGameCandidateIndex;
+import com.sg.guess_the_number.service.NumberGameDefaultService;
+import com.sg.guess_the_number.service.NumberGameEventHub;
+import com.sg.guess_the_number.service.NumberGameSolver;
+import com.sg.guess_the_number.service.PooledAnswerGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberGameEventHubTest {
+    private NumberGameMemoryDao dao;
+    private NumberGameEventHub hub;
+    private NumberGameDefaultService service;
+
+    @BeforeEach
+    void createService() {
+        dao = new NumberGameMemoryDao();
+        hub = new NumberGameEventHub(dao, 4, 4, 60000, 60000);
+        NumberGameAnswerGenerator answers = new PooledAnswerGenerator();
+        service = new NumberGameDefaultService(dao, answers, new NumberGameSolver(), new NumberGameCandidateIndex(), hub);
+    }
+
+    @AfterEach
+    void closeHub() {
+        hub.close();
+    }
+
+    @Test
+    void streamsRoundsAndFinish() throws InvalidGuessException, InterruptedException {
+        int gameId = service.createGame("1234");
+        RecordingEmitter emitter = new RecordingEmitter();
+        hub.subscribe(gameId, 0, emitter);
+        await(() -> hub.getSubscriberCount() == 1);
+        service.guessForGame(gameId, "5678");
+        service.guessForGame(gameId, "1234");
+        assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(3, emitter.data.size());
+        assertEquals("5678", ((NumberGameRound)emitter.data.get(0)).getGuess());
+        assertEquals("1234", ((NumberGameRound)emitter.data.get(1)).getGuess());
+        assertEquals(ENumberGameStatus.FINISHED, emitter.data.get(2));
+        assertEquals(Arrays.asList("1", "2"), emitter.ids);
+        await(() -> hub.getSubscriberCount() == 0);
+    }
+
+    @Test
+    void catchesUpAfterLastEventId() throws InvalidGuessException, InterruptedException {
+        int gameId = service.createGame("1234");
+        service.guessForGame(gameId, "5678");
+        service.guessForGame(gameId, "1243");
+        RecordingEmitter emitter = new RecordingEmitter();
+        hub.subscribe(gameId, 1, emitter);
+        await(() -> emitter.data.size() == 1);
+        assertEquals("1243", ((NumberGameRound)emitter.data.get(0)).getGuess());
+        await(() -> hub.getSubscriberCount() == 1);
+        service.guessForGame(gameId, "4321");
+        await(() -> emitter.data.size() == 2);
+        assertEquals(Arrays.asList("2", "3"), emitter.ids);
+
+        // A finished game sends everything and ends the stream right away
+        service.guessForGame(gameId, "1234");
+        RecordingEmitter late = new RecordingEmitter();
+        hub.subscribe(gameId, 0, late);
+        assertTrue(late.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(5, late.data.size());
+        assertEquals(ENumberGameStatus.FINISHED, late.data.get(4));
+
+        RecordingEmitter missing = new RecordingEmitter();
+        hub.subscribe(-1, 0, missing);
+        assertTrue(missing.completed.await(5, TimeUnit.SECONDS));
+        assertTrue(missing.data.isEmpty());
+    }
+
+    @Test
+    void slowSubscriber() throws InvalidGuessException, InterruptedException {
+        int gameId = service.createGame("1234");
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(release);
+        RecordingEmitter fast = new RecordingEmitter();
+        hub.subscribe(gameId, 0, slow);
+        hub.subscribe(gameId, 0, fast);
+        await(() -> hub.getSubscriberCount() == 2);
+        for(int i = 0; i < 20; i ++) {
+            // Never waits for the blocked subscriber
+            assertNotNull(service.guessForGame(gameId, "5678"));
+            int sent = i + 1;
+            await(() -> fast.data.size() == sent);
+        }
+        release.countDown();
+        // The slow subscriber's buffer overflowed, so it is disconnected to catch up later
+        assertTrue(slow.completed.await(5, TimeUnit.SECONDS));
+        assertTrue(slow.data.size() < 20);
+        await(() -> hub.getSubscriberCount() == 1);
+    }
+
+    @Test
+    void stalledSend() throws InvalidGuessException, InterruptedException {
+        hub.close();
+        // A single thread, so the stalled send would hold every thread without the watchdog
+        hub = new NumberGameEventHub(dao, 64, 1, 60000, 50);
+        service = new NumberGameDefaultService(dao, new PooledAnswerGenerator(), new NumberGameSolver(),
+                new NumberGameCandidateIndex(), hub);
+        int gameId = service.createGame("1234");
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingEmitter stalled = new RecordingEmitter(release);
+        hub.subscribe(gameId, 0, stalled);
+        await(() -> hub.getSubscriberCount() == 1);
+        service.guessForGame(gameId, "5678");
+
+        // The stalled subscriber is dropped, and the others are still sent events
+        await(() -> hub.getSubscriberCount() == 0);
+        RecordingEmitter fast = new RecordingEmitter();
+        hub.subscribe(gameId, 0, fast);
+        await(() -> fast.data.size() == 1);
+        service.guessForGame(gameId, "1234");
+        assertTrue(fast.completed.await(5, TimeUnit.SECONDS));
+
+        // Once its send returns, the stalled subscriber is disconnected
+        release.countDown();
+        assertTrue(stalled.failed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, stalled.data.size());
+    }
+
+    @Test
+    void lentThreadsCapped() throws InvalidGuessException, InterruptedException {
+        hub.close();
+        hub = new NumberGameEventHub(dao, 64, 1, 60000, 50);
+        service = new NumberGameDefaultService(dao, new PooledAnswerGenerator(), new NumberGameSolver(),
+                new NumberGameCandidateIndex(), hub);
+        int gameId = service.createGame("1234");
+        CountDownLatch release = new CountDownLatch(1);
+        List<RecordingEmitter> stalled = new ArrayList<>();
+        for(int i = 0; i < 4; i ++) {
+            RecordingEmitter emitter = new RecordingEmitter(release);
+            stalled.add(emitter);
+            hub.subscribe(gameId, 0, emitter);
+        }
+        await(() -> hub.getSubscriberCount() == 4);
+        service.guessForGame(gameId, "5678");
+
+        // The one thread is lent once, and the send that stalls on the lent thread gets none
+        await(() -> hub.getLentThreadCount() == 1);
+        Thread.sleep(300);
+        assertEquals(1, hub.getLentThreadCount());
+
+        release.countDown();
+        await(() -> hub.getLentThreadCount() == 0);
+        // Both stalled subscribers are disconnected once their sends return
+        assertTrue(stalled.get(0).failed.await(5, TimeUnit.SECONDS));
+        assertTrue(stalled.get(1).failed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failedCatchUp() throws InterruptedException {
+        hub.close();
+        NumberGameMemoryDao failing = new NumberGameMemoryDao() {
+            @Override
+            public List<NumberGameRound> getGameRoundsAfter(int gameId, int afterRound) {
+                throw new IllegalStateException("Storage failed");
+            }
+        };
+        hub = new NumberGameEventHub(failing, 4, 4, 60000, 60000);
+        int gameId = failing.createGame("1234", ENumberGameStatus.IN_PROGRESS);
+        RecordingEmitter emitter = new RecordingEmitter();
+        hub.subscribe(gameId, 0, emitter);
+        // Ended to reconnect rather than left open without events
+        assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(0, hub.getSubscriberCount());
+    }
+
+    @Test
+    void manySubscribers() throws InvalidGuessException, InterruptedException {
+        int gameId = service.createGame("1234");
+        List<RecordingEmitter> emitters = new ArrayList<>();
+        for(int i = 0; i < 10000; i ++) {
+            RecordingEmitter emitter = new RecordingEmitter();
+            emitters.add(emitter);
+            hub.subscribe(gameId, 0, emitter);
+        }
+        await(() -> hub.getSubscriberCount() == 10000);
+        service.guessForGame(gameId, "5678");
+        service.guessForGame(gameId, "1234");
+        for(RecordingEmitter emitter : emitters) {
+            assertTrue(emitter.completed.await(10, TimeUnit.SECONDS));
+            assertEquals(3, emitter.data.size());
+        }
+    }
+
+    /**
+     * Waits up to 10 seconds for a condition to hold
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting");
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Records the events sent to it rather than writing them to a response
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private final List<Object> data = Collections.synchronizedList(new ArrayList<>());
+        private final List<String> ids = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private final CountDownLatch failed = new CountDownLatch(1);
+        /**
+         * Held by every send until released, if given
+         */
+        private final CountDownLatch release;
+
+        RecordingEmitter() {
+            this(null);
+        }
+
+        RecordingEmitter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if(release != null) {
+                try {
+                    release.await();
+                }
+                catch(InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            for(ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                if(part.getData() instanceof String) {
+                    String text = (String)part.getData();
+                    if(text.startsWith("id:")) {
+                        ids.add(text.substring(3, text.indexOf('\n')));
+                    }
+                }
+                else {
+                    data.add(part.getData());
+                }
+            }
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed.countDown();
+        }
+
+        @Override
+        public synchronized void completeWithError(Throwable ex) {
+            failed.countDown();
+        }
+    }
+}
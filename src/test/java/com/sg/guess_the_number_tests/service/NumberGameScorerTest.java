@@ -0,0 +1,86 @@
+package com.sg.guess_the_number_tests.service;
+
+import com.sg.guess_the_number.service.NumberGameScorer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberGameScorerTest {
+
+    /**
+     * Scores a guess by counting the symbols of the unmatched positions into arrays
+     */
+    private static String referenceScore(String guess, String answer) {
+        int[] answerCounts = new int[36];
+        int[] guessCounts = new int[36];
+        int exact = 0;
+        for(int i = 0; i < answer.length(); i ++) {
+            if(answer.charAt(i) == guess.charAt(i)) {
+                exact++;
+            }
+            else {
+                answerCounts[Character.digit(answer.charAt(i), 36)]++;
+                guessCounts[Character.digit(guess.charAt(i), 36)]++;
+            }
+        }
+        int partial = 0;
+        for(int i = 0; i < 36; i ++) {
+            partial += Math.min(answerCounts[i], guessCounts[i]);
+        }
+        return String.format("e:%d:p:%d", exact, partial);
+    }
+
+    @Test
+    void score() {
+        assertEquals("e:0:p:1", NumberGameScorer.resultString(NumberGameScorer.score("1234", "0001")));
+        assertEquals("e:1:p:0", NumberGameScorer.resultString(NumberGameScorer.score("1234", "4444")));
+        assertEquals("e:0:p:4", NumberGameScorer.resultString(NumberGameScorer.score("1234", "4321")));
+        assertEquals("e:4:p:0", NumberGameScorer.resultString(NumberGameScorer.score("1234", "1234")));
+    }
+
+    @Test
+    void scoreDuplicates() {
+        assertEquals("e:0:p:2", NumberGameScorer.resultString(NumberGameScorer.score("1234", "2122")));
+        assertEquals("e:1:p:2", NumberGameScorer.resultString(NumberGameScorer.score("1122", "1213")));
+        assertEquals("e:1:p:3", NumberGameScorer.resultString(NumberGameScorer.score("zzab", "zbza")));
+    }
+
+    @Test
+    void scoreMatchesReference() {
+        Random rand = new Random(7);
+        for(int i = 0; i < 20000; i ++) {
+            int length = 1 + rand.nextInt(NumberGameScorer.MAX_LENGTH);
+            int alphabetSize = 2 + rand.nextInt(35);
+            String answer = randomSymbols(rand, length, alphabetSize);
+            String guess = randomSymbols(rand, length, alphabetSize);
+            int code = NumberGameScorer.score(answer, guess);
+            assertEquals(referenceScore(guess, answer), NumberGameScorer.resultString(code));
+            if(alphabetSize <= 16) {
+                assertEquals(code, NumberGameScorer.score(NumberGameScorer.pack(answer), NumberGameScorer.pack(guess), length));
+            }
+        }
+    }
+
+    @Test
+    void resultCode() {
+        for(int exact = 0; exact <= NumberGameScorer.MAX_LENGTH; exact ++) {
+            for(int partial = 0; exact + partial <= NumberGameScorer.MAX_LENGTH; partial ++) {
+                int code = NumberGameScorer.resultCode(exact, partial);
+                assertEquals(exact, NumberGameScorer.exactMatches(code));
+                assertEquals(partial, NumberGameScorer.partialMatches(code));
+            }
+        }
+        int code = NumberGameScorer.resultCode(2, 1);
+        assertSame(NumberGameScorer.resultString(code), NumberGameScorer.resultString(code));
+    }
+
+    private static String randomSymbols(Random rand, int length, int alphabetSize) {
+        StringBuilder symbols = new StringBuilder();
+        for(int i = 0; i < length; i ++) {
+            symbols.append(Character.forDigit(rand.nextInt(alphabetSize), 36));
+        }
+        return symbols.toString();
+    }
+}
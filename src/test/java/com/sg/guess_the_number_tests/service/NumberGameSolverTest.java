@@ -0,0 +1,68 @@
+package com.sg.guess_the_number_tests.service;
+
+import com.sg.guess_the_number.models.NumberGameRound;
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.service.NumberGameAnswerPool;
+import com.sg.guess_the_number.service.NumberGameScorer;
+import com.sg.guess_the_number.service.NumberGameSolver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NumberGameSolverTest {
+    private NumberGameSolver solver;
+
+    @BeforeEach
+    void createSolver() {
+        solver = new NumberGameSolver();
+    }
+
+    @AfterEach
+    void shutdownSolver() {
+        solver.shutdown();
+    }
+
+    @Test
+    void concurrentOpenings() throws Exception {
+        // The largest variant, whose full opening search would score 2^32 pairs
+        NumberGameAnswerPool answers = NumberGameAnswerPool.forVariant(new NumberGameVariant(4, 16, true));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<String>> openings = new ArrayList<>();
+        for(int t = 0; t < 4; t ++) {
+            openings.add(executor.submit(() -> {
+                start.await();
+                return solver.findBestGuess(answers, Collections.<NumberGameRound>emptyList());
+            }));
+        }
+        start.countDown();
+        String opening = openings.get(0).get(60, TimeUnit.SECONDS);
+        for(Future<String> other : openings) {
+            // Every request shares the one search
+            assertSame(opening, other.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    void boundedSearch() {
+        NumberGameAnswerPool answers = NumberGameAnswerPool.forVariant(new NumberGameVariant(4, 16, true));
+        BitSet candidates = answers.allAnswers();
+        // Leaves tens of thousands of candidates, too many to consider every one as a guess
+        answers.narrow(candidates, "0123", NumberGameScorer.parseResult("e:0:p:0"));
+        assertTrue(candidates.cardinality() > 1 << 13);
+        String guess = assertTimeoutPreemptively(Duration.ofSeconds(60),
+                () -> solver.findBestGuess(answers, candidates));
+        assertNotNull(guess);
+        assertEquals(4, guess.length());
+    }
+}
@@ -0,0 +1,52 @@
+package com.sg.guess_the_number_tests.service;
+
+import com.sg.guess_the_number.models.NumberGameVariant;
+import com.sg.guess_the_number.service.NumberGameAnswerPool;
+import com.sg.guess_the_number.service.PooledAnswerGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PooledAnswerGeneratorTest {
+
+    @Test
+    void generateAnswer() {
+        PooledAnswerGenerator generator = new PooledAnswerGenerator();
+        assertEquals(5040, NumberGameAnswerPool.forVariant(new NumberGameVariant()).size());
+        for(int i = 0; i < 1000; i ++) {
+            String answer = generator.generateAnswer();
+            assertEquals(NumberGameVariant.DEFAULT_ANSWER_LENGTH, answer.length());
+            HashSet<Character> digits = new HashSet<>();
+            for(char c : answer.toCharArray()) {
+                assertTrue(Character.isDigit(c));
+                assertTrue(digits.add(c));
+            }
+        }
+    }
+
+    @Test
+    void generateAnswerSeeded() {
+        PooledAnswerGenerator generator = new PooledAnswerGenerator(42L);
+        PooledAnswerGenerator generatorTwo = new PooledAnswerGenerator(42L);
+        for(int i = 0; i < 100; i ++) {
+            assertEquals(generator.generateAnswer(), generatorTwo.generateAnswer());
+        }
+    }
+
+    @Test
+    void generateAnswerVariant() {
+        PooledAnswerGenerator generator = new PooledAnswerGenerator();
+        NumberGameVariant pooled = new NumberGameVariant(3, 6, true);
+        NumberGameVariant unpooled = new NumberGameVariant(12, 36, false);
+        assertEquals(216, NumberGameAnswerPool.forVariant(pooled).size());
+        assertNull(NumberGameAnswerPool.forVariant(unpooled));
+        for(int i = 0; i < 1000; i ++) {
+            assertTrue(pooled.isValidGuess(generator.generateAnswer(pooled)));
+            String answer = generator.generateAnswer(unpooled);
+            assertTrue(unpooled.isValidGuess(answer));
+            assertEquals(12, answer.chars().distinct().count());
+        }
+    }
+}